@@ -0,0 +1,110 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.View;
+
+import com.bgauthey.speedotracker.util.SpeedFormatter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Render-time benchmark of {@link SpeedGaugeView}, run on a device to measure its real canvas:
+ * draws a drive of speed updates with the cached dial layer, and the same drive drawing the dial
+ * on each frame, and reports the mean time per frame of both.
+ * <p>
+ * Run it with {@code ./gradlew connectedAndroidTest}, results are logged under the
+ * {@code SpeedGaugeViewRender} tag and sent as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SpeedGaugeViewRenderBenchmark {
+
+    private static final String TAG = "SpeedGaugeViewRender";
+    private static final int SIZE = 720;
+    private static final int WARM_UP_FRAME_COUNT = 200;
+    private static final int FRAME_COUNT = 2000;
+
+    private SpeedGaugeView mView;
+    private Canvas mCanvas;
+    private String[] mValues;
+
+    @Before
+    public void setUp() {
+        mView = new SpeedGaugeView(InstrumentationRegistry.getTargetContext());
+        mView.setUnit("km/h");
+        mView.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, SIZE, SIZE);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+
+        SpeedFormatter formatter = new SpeedFormatter(0);
+        mValues = new String[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mValues[i] = formatter.format(getSpeed(i));
+        }
+    }
+
+    @Test
+    public void renderGauge() {
+        drawFrames(WARM_UP_FRAME_COUNT, true);
+        drawFrames(WARM_UP_FRAME_COUNT, false);
+
+        long cachedNanos = drawFrames(FRAME_COUNT, true);
+        long uncachedNanos = drawFrames(FRAME_COUNT, false);
+
+        Bundle results = new Bundle();
+        results.putLong("cachedFrameNanos", cachedNanos / FRAME_COUNT);
+        results.putLong("uncachedFrameNanos", uncachedNanos / FRAME_COUNT);
+        Log.i(TAG, results.toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+        assertEquals(1, mView.getDialRenderCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void shouldNotAllocateWhenDrawing() {
+        drawFrames(WARM_UP_FRAME_COUNT, true);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        drawFrames(FRAME_COUNT, true);
+        Debug.stopAllocCounting();
+
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+
+    /**
+     * @param cached true to draw the view as is, false to draw its dial on each frame
+     * @return time spent drawing, in nanoseconds
+     */
+    private long drawFrames(int frameCount, boolean cached) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < frameCount; i++) {
+            mView.setSpeed(getSpeed(i), mValues[i % FRAME_COUNT]);
+            if (cached) {
+                mView.draw(mCanvas);
+            } else {
+                mView.drawDial(mCanvas);
+                mView.drawNeedle(mCanvas);
+            }
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    /**
+     * Speed of a drive accelerating and braking between 0 and 130 km/h
+     */
+    private static float getSpeed(int frame) {
+        return (float) (65 - 65 * Math.cos(frame * 0.01));
+    }
+}
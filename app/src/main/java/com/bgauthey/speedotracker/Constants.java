@@ -6,14 +6,61 @@ package com.bgauthey.speedotracker;
 public class Constants {
 
     /**
-     * True to show debug info in concerned screens.
-     * <p>
-     * As app is not built in release mode, play with this flag when you don't want to see debug info.
+     * True to display instant speed on an analog gauge instead of digits.
      */
-    public static final boolean SHOW_DEBUG_INFO = false;
+    public static final boolean USE_SPEED_GAUGE = false;
+
+    /**
+     * True to display instant speed at display rate, interpolated between fixes, instead of
+     * updating it on each fix.
+     */
+    public static final boolean INTERPOLATE_SPEED = true;
+
+    /**
+     * True to get fixes from the fused location provider of Google Play services, batched while
+     * the screen is off, instead of the GPS provider of the system location manager.
+     */
+    public static final boolean USE_FUSED_LOCATION = false;
+
+    /**
+     * True to merge the fixes of the GPS, network and passive providers of the system location
+     * manager, to get a first fix sooner and fill the gaps of GPS fixes. Ignored with
+     * {@link #USE_FUSED_LOCATION}.
+     */
+    public static final boolean USE_MULTI_SOURCE_LOCATION = false;
+
+    /**
+     * True to estimate the speed between fixes from the linear acceleration sensor, notifying it
+     * on each frame instead of on each fix.
+     */
+    public static final boolean USE_DEAD_RECKONING = false;
+
+    /**
+     * True to estimate the speed of fixes with a Kalman filter over their positions and speeds,
+     * false to trust their Doppler speeds. Both derive the speed of fixes without Doppler speed from
+     * their positions.
+     */
+    public static final boolean USE_KALMAN_SPEED_ESTIMATOR = false;
 
     /**
      * The minimum speed to consider device is moving. Expressed in km/h.
      */
     public static int MINIMUM_SPEED_RUNNING_KM_PER_H = 5;
+
+    /**
+     * The speed under which a moving device is considered stopped. Expressed in km/h.
+     */
+    public static final int MAXIMUM_SPEED_STOPPED_KM_PER_H = 3;
+
+    /**
+     * How long the speed must stay at least {@link #MINIMUM_SPEED_RUNNING_KM_PER_H} to consider
+     * device is moving. Expressed in seconds.
+     */
+    public static final int SECTION_START_DWELL_SECONDS = 2;
+
+    /**
+     * How long the speed must stay under {@link #MAXIMUM_SPEED_STOPPED_KM_PER_H} to consider device
+     * is stopped. Expressed in seconds.
+     */
+    public static final int SECTION_END_DWELL_SECONDS = 3;
 }
@@ -0,0 +1,222 @@
+package com.bgauthey.speedotracker.service;
+
+import android.arch.lifecycle.LifecycleOwner;
+import android.support.annotation.Nullable;
+
+import com.bgauthey.speedotracker.util.FrameExecutor;
+import com.bgauthey.speedotracker.util.MainThreadExecutor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.bgauthey.speedotracker.util.Preconditions.checkNotNull;
+
+/**
+ * How a listener registered on a {@link LocationProvider} is notified: on the thread notifying
+ * listeners ({@link #inline()}), on the main thread ({@link #mainThread()}), on a background
+ * thread with a bounded queue ({@link #background(String, int)}) or with any {@link Executor}.
+ * <p>
+ * A {@link #conflated(Executor) conflated} delivery keeps only the latest speed and average speed
+ * of each listener until its executor runs: {@link #frame()} notifies UI listeners at most once per
+ * display frame, whatever the rate of fixes.
+ * <p>
+ * By default, the provider keeps a strong reference to listeners until they are unregistered. A
+ * delivery can instead {@link #withWeakReference() hold listeners weakly} or
+ * {@link #boundTo(LifecycleOwner) unregister them when a lifecycle owner is destroyed}, so that a
+ * listener forgotten by its owner doesn't keep a whole activity reachable.
+ * <p>
+ * Listeners are notified by decreasing priority. A listener with an executor only delays its own
+ * notifications: the provider hands them over to the executor and goes on with the other
+ * listeners.
+ */
+public final class Delivery {
+
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_DEFAULT = 0;
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * Time before an idle background thread ends (in seconds)
+     */
+    private static final long BACKGROUND_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Delivery INLINE = new Delivery(null, false, PRIORITY_DEFAULT, null, false, null);
+
+    private static Delivery sFrame;
+
+    private final Executor mExecutor;
+    private final boolean mConflated;
+    private final int mPriority;
+    private final AtomicLong mDropCount;
+    private final boolean mWeakReference;
+    private final LifecycleOwner mLifecycleOwner;
+
+    private Delivery(Executor executor, boolean conflated, int priority, AtomicLong dropCount,
+                     boolean weakReference, LifecycleOwner lifecycleOwner) {
+        mExecutor = executor;
+        mConflated = conflated;
+        mPriority = priority;
+        mDropCount = dropCount;
+        mWeakReference = weakReference;
+        mLifecycleOwner = lifecycleOwner;
+    }
+
+    /**
+     * Notify on the thread notifying listeners, the default.
+     */
+    public static Delivery inline() {
+        return INLINE;
+    }
+
+    /**
+     * Notify on the main thread, for listeners updating the UI.
+     */
+    public static Delivery mainThread() {
+        return on(new MainThreadExecutor());
+    }
+
+    /**
+     * Notify with an executor.
+     *
+     * @param executor executor running notifications
+     */
+    public static Delivery on(Executor executor) {
+        return new Delivery(checkNotNull(executor), false, PRIORITY_DEFAULT, null, false, null);
+    }
+
+    /**
+     * Notify with an executor, keeping only the latest speed and average speed while a
+     * notification is pending. Speed recording state changes are all notified.
+     *
+     * @param executor executor running notifications
+     */
+    public static Delivery conflated(Executor executor) {
+        return new Delivery(checkNotNull(executor), true, PRIORITY_DEFAULT, null, false, null);
+    }
+
+    /**
+     * Notify on the main thread at most once per display frame, with the latest values only.
+     */
+    public static synchronized Delivery frame() {
+        if (sFrame == null) {
+            sFrame = conflated(new FrameExecutor());
+        }
+        return sFrame;
+    }
+
+    /**
+     * Notify on a dedicated low priority thread, for heavy listeners such as recorders. When the
+     * listener is late, the oldest pending notifications are dropped: the provider never waits.
+     *
+     * @param name          name of the thread
+     * @param queueCapacity maximum number of pending notifications
+     */
+    public static Delivery background(final String name, int queueCapacity) {
+        final AtomicLong dropCount = new AtomicLong();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, BACKGROUND_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            return;
+                        }
+                        executor.getQueue().poll();
+                        dropCount.incrementAndGet();
+                        executor.execute(runnable);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return new Delivery(executor, false, PRIORITY_DEFAULT, dropCount, false, null);
+    }
+
+    /**
+     * @param priority listeners with a higher priority are notified first
+     * @return a delivery using the same executor with the given priority
+     */
+    public Delivery withPriority(int priority) {
+        return priority == mPriority ? this
+                : new Delivery(mExecutor, mConflated, priority, mDropCount, mWeakReference, mLifecycleOwner);
+    }
+
+    /**
+     * Hold listeners with a weak reference: a listener only reachable from the provider is
+     * collected and its registration removed. The listener must be kept by its owner, typically in
+     * a field of a presenter.
+     *
+     * @return a delivery using the same executor holding listeners weakly
+     */
+    public Delivery withWeakReference() {
+        return mWeakReference ? this
+                : new Delivery(mExecutor, mConflated, mPriority, mDropCount, true, mLifecycleOwner);
+    }
+
+    /**
+     * Unregister listeners when a lifecycle owner (an activity or a fragment) is destroyed, even if
+     * its owner forgot to unregister them. Listeners aren't registered if the owner is already
+     * destroyed.
+     *
+     * @param lifecycleOwner the owner bounding the registration
+     * @return a delivery using the same executor bound to the owner
+     */
+    public Delivery boundTo(LifecycleOwner lifecycleOwner) {
+        return new Delivery(mExecutor, mConflated, mPriority, mDropCount, mWeakReference, checkNotNull(lifecycleOwner));
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return true if listeners are notified on the thread notifying them
+     */
+    public boolean isInline() {
+        return mExecutor == null;
+    }
+
+    public boolean isWeakReference() {
+        return mWeakReference;
+    }
+
+    @Nullable
+    public LifecycleOwner getLifecycleOwner() {
+        return mLifecycleOwner;
+    }
+
+    /**
+     * @return true if only the latest values are notified
+     */
+    public boolean isConflated() {
+        return mConflated;
+    }
+
+    /**
+     * @return number of notifications dropped because the listener was late, only counted by
+     * {@link #background(String, int)} deliveries
+     */
+    public long getDropCount() {
+        return mDropCount == null ? 0 : mDropCount.get();
+    }
+
+    void execute(Runnable notification) {
+        if (mExecutor == null) {
+            notification.run();
+        } else {
+            mExecutor.execute(notification);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bgauthey.speedotracker.service;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.bgauthey.speedotracker.engine.LatencyHistogram;
+
+import java.io.PrintWriter;
+
+/**
+ * Measures how stale the displayed speed is, with timestamps taken at three points of the life of
+ * a fix: the fix time ({@code Location.getElapsedRealtimeNanos()}), the start of its processing
+ * and the moment its speed is displayed.
+ * <p>
+ * Fix to process and process to render latencies are counted in {@link LatencyHistogram}s, in a
+ * fixed amount of memory. A render is matched with the last fix processed, by time of fix, only
+ * once: frames displaying the same fix again don't count, nor renders of fixes processed since.
+ * <p>
+ * Timestamps must all come from {@code SystemClock.elapsedRealtimeNanos()}. Methods can be called
+ * from any thread and don't allocate, except the dump.
+ */
+public class FixLatencyMonitor {
+
+    private static final FixLatencyMonitor sInstance = new FixLatencyMonitor();
+
+    private final LatencyHistogram mFixToProcess = new LatencyHistogram("fix->process");
+    private final LatencyHistogram mProcessToRender = new LatencyHistogram("process->render");
+    /**
+     * Guards the last fix not rendered yet
+     */
+    private final Object mPendingLock = new Object();
+    private boolean mHasPendingFix;
+    private long mPendingFixNanos;
+    private long mPendingProcessNanos;
+
+    public static FixLatencyMonitor getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    public FixLatencyMonitor() {
+    }
+
+    /**
+     * A fix starts being processed.
+     *
+     * @param fixNanos     time of the fix
+     * @param processNanos current time
+     */
+    public void onFixProcessed(long fixNanos, long processNanos) {
+        mFixToProcess.record(processNanos - fixNanos);
+        synchronized (mPendingLock) {
+            mHasPendingFix = true;
+            mPendingFixNanos = fixNanos;
+            mPendingProcessNanos = processNanos;
+        }
+    }
+
+    /**
+     * The speed of a fix is displayed for the first time.
+     *
+     * @param fixNanos    time of the displayed fix
+     * @param renderNanos current time
+     */
+    public void onSpeedRendered(long fixNanos, long renderNanos) {
+        long processNanos;
+        synchronized (mPendingLock) {
+            if (!mHasPendingFix || mPendingFixNanos != fixNanos) {
+                return;
+            }
+            mHasPendingFix = false;
+            processNanos = mPendingProcessNanos;
+        }
+        mProcessToRender.record(renderNanos - processNanos);
+    }
+
+    public LatencyHistogram getFixToProcess() {
+        return mFixToProcess;
+    }
+
+    public LatencyHistogram getProcessToRender() {
+        return mProcessToRender;
+    }
+
+    /**
+     * Forget all latencies.
+     */
+    public void reset() {
+        mFixToProcess.reset();
+        mProcessToRender.reset();
+        synchronized (mPendingLock) {
+            mHasPendingFix = false;
+        }
+    }
+
+    /**
+     * Write both histograms.
+     *
+     * @param writer writer of the report
+     */
+    public void dump(PrintWriter writer) {
+        mFixToProcess.dump(writer);
+        mProcessToRender.dump(writer);
+    }
+
+    /**
+     * @return percentiles of both latencies, on one line each
+     */
+    @Override
+    public String toString() {
+        return mFixToProcess + "\n" + mProcessToRender;
+    }
+}
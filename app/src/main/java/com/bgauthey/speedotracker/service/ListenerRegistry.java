@@ -0,0 +1,215 @@
+package com.bgauthey.speedotracker.service;
+
+import java.lang.ref.WeakReference;
+
+import static com.bgauthey.speedotracker.util.Preconditions.checkNotNull;
+
+/**
+ * A set of listeners which can be registered, unregistered and notified from any thread.
+ * <p>
+ * Registration and unregistration are atomic: a listener registered from several threads at once
+ * is registered only once, and concurrent registrations of different listeners are never lost.
+ * Listeners are kept in an array replaced on every change: notifying iterates over a
+ * {@link #snapshot()} without locking and without allocating.
+ * <p>
+ * Each listener is registered with a {@link Delivery}. Entries are sorted by decreasing
+ * {@link Delivery#getPriority() priority}, then by registration order. Listeners registered with a
+ * {@link Delivery#withWeakReference() weak reference} are not kept reachable by the registry: once
+ * collected, their entries are removed by {@link #purge()}.
+ *
+ * @param <T> type of listeners
+ */
+public final class ListenerRegistry<T> {
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private final Object mLock = new Object();
+    private volatile Entry[] mEntries = EMPTY;
+
+    /**
+     * Register a listener, if not already registered.
+     *
+     * @param listener the listener to register
+     * @param delivery how the listener is notified
+     * @return true if the listener has been registered, false if it was already registered
+     */
+    public boolean register(T listener, Delivery delivery) {
+        return register(listener, delivery, null);
+    }
+
+    /**
+     * Register a listener with a state kept by the owner of the registry, if not already
+     * registered.
+     *
+     * @param listener the listener to register
+     * @param delivery how the listener is notified
+     * @param state    state of the entry, see {@link Entry#getState()}
+     * @return true if the listener has been registered, false if it was already registered
+     */
+    public boolean register(T listener, Delivery delivery, Object state) {
+        checkNotNull(listener);
+        checkNotNull(delivery);
+        synchronized (mLock) {
+            Entry[] entries = removeCleared(mEntries);
+            if (indexOf(entries, listener) >= 0) {
+                mEntries = entries;
+                return false;
+            }
+            int index = entries.length;
+            while (index > 0 && entries[index - 1].mDelivery.getPriority() < delivery.getPriority()) {
+                index--;
+            }
+            Entry[] newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, index);
+            newEntries[index] = new Entry<>(listener, delivery, state);
+            System.arraycopy(entries, index, newEntries, index + 1, entries.length - index);
+            mEntries = newEntries;
+            return true;
+        }
+    }
+
+    /**
+     * Unregister a listener. Notifications already handed over to its delivery executor are
+     * dropped.
+     *
+     * @param listener the listener to unregister
+     * @return true if the listener has been unregistered, false if it wasn't registered
+     */
+    public boolean unregister(T listener) {
+        synchronized (mLock) {
+            Entry[] entries = removeCleared(mEntries);
+            int index = indexOf(entries, listener);
+            if (index < 0) {
+                mEntries = entries;
+                return false;
+            }
+            entries[index].mRegistered = false;
+            if (entries.length == 1) {
+                mEntries = EMPTY;
+                return true;
+            }
+            Entry[] newEntries = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, newEntries, 0, index);
+            System.arraycopy(entries, index + 1, newEntries, index, entries.length - index - 1);
+            mEntries = newEntries;
+            return true;
+        }
+    }
+
+    /**
+     * Remove the entries of weakly referenced listeners which have been collected.
+     */
+    public void purge() {
+        synchronized (mLock) {
+            mEntries = removeCleared(mEntries);
+        }
+    }
+
+    public boolean isRegistered(T listener) {
+        return indexOf(mEntries, listener) >= 0;
+    }
+
+    public int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * Get the entries registered at the time of the call, by decreasing priority. Later changes
+     * don't affect the returned array, which must not be modified.
+     *
+     * @return registered entries
+     */
+    @SuppressWarnings("unchecked")
+    public Entry<T>[] snapshot() {
+        return mEntries;
+    }
+
+    private static int indexOf(Entry[] entries, Object listener) {
+        for (int i = 0; i < entries.length; i++) {
+            Object registered = entries[i].getListener();
+            if (registered != null && registered.equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the entries without the cleared ones, the same array when none is cleared
+     */
+    private static Entry[] removeCleared(Entry[] entries) {
+        int clearedCount = 0;
+        for (Entry entry : entries) {
+            if (entry.getListener() == null) {
+                clearedCount++;
+            }
+        }
+        if (clearedCount == 0) {
+            return entries;
+        }
+        if (clearedCount == entries.length) {
+            return EMPTY;
+        }
+        Entry[] newEntries = new Entry[entries.length - clearedCount];
+        int index = 0;
+        for (Entry entry : entries) {
+            if (entry.getListener() != null) {
+                newEntries[index++] = entry;
+            } else {
+                entry.mRegistered = false;
+            }
+        }
+        return newEntries;
+    }
+
+    /**
+     * A registered listener and its {@link Delivery}.
+     *
+     * @param <T> type of listener
+     */
+    public static final class Entry<T> {
+
+        /**
+         * The listener, or a {@link WeakReference} to it
+         */
+        private final Object mListener;
+        private final Delivery mDelivery;
+        private final Object mState;
+        private volatile boolean mRegistered = true;
+
+        private Entry(T listener, Delivery delivery, Object state) {
+            mListener = delivery.isWeakReference() ? new WeakReference<>(listener) : listener;
+            mDelivery = delivery;
+            mState = state;
+        }
+
+        /**
+         * @return the listener, null if it was weakly referenced and has been collected
+         */
+        @SuppressWarnings("unchecked")
+        public T getListener() {
+            if (mDelivery.isWeakReference()) {
+                return ((WeakReference<T>) mListener).get();
+            }
+            return (T) mListener;
+        }
+
+        public Delivery getDelivery() {
+            return mDelivery;
+        }
+
+        /**
+         * @return state given at registration, such as values waiting for a conflated delivery
+         */
+        public Object getState() {
+            return mState;
+        }
+
+        /**
+         * @return false once the listener has been unregistered
+         */
+        public boolean isRegistered() {
+            return mRegistered;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.bgauthey.speedotracker.service;
 
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
 import android.location.Location;
+import android.support.annotation.VisibleForTesting;
 
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.lang.ref.WeakReference;
 
 /**
  * A base to create a provider handling location and speed.
@@ -14,6 +19,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * {@link OnSpeedChangedListener} gives feedback about speed changed.
  * <p>
  * {@link OnAverageSpeedChangedListener} gives feedback about average speed changed.
+ * <p>
+ * Listeners are kept in {@link ListenerRegistry}s: they can be registered, unregistered and
+ * notified from any thread. Each listener is registered with a {@link Delivery} telling on which
+ * thread and in which order it is notified, {@link Delivery#inline()} by default, and how long it
+ * is kept registered.
  */
 public abstract class LocationProvider {
 
@@ -62,9 +72,9 @@ public abstract class LocationProvider {
 
     }
 
-    private CopyOnWriteArrayList<OnSpeedRecordingStateChangedListener> mOnSpeedRecordingStateChangedListeners = new CopyOnWriteArrayList<>();
-    private CopyOnWriteArrayList<OnSpeedChangedListener> mOnSpeedChangedListeners = new CopyOnWriteArrayList<>();
-    private CopyOnWriteArrayList<OnAverageSpeedChangedListener> mOnAverageSpeedChangedListeners = new CopyOnWriteArrayList<>();
+    private final ListenerRegistry<OnSpeedRecordingStateChangedListener> mOnSpeedRecordingStateChangedListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<OnSpeedChangedListener> mOnSpeedChangedListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<OnAverageSpeedChangedListener> mOnAverageSpeedChangedListeners = new ListenerRegistry<>();
 
     /**
      * Get the tracking state to know if {@link LocationProvider} is ready to start recording speed.
@@ -122,10 +132,18 @@ public abstract class LocationProvider {
      * @see #unregisterOnLocationServiceStateChangedListener(OnSpeedRecordingStateChangedListener)
      */
     public final void registerOnLocationServiceStateChangedListener(OnSpeedRecordingStateChangedListener locationServiceStateChangedListener) {
-        if (mOnSpeedRecordingStateChangedListeners.contains(locationServiceStateChangedListener)) {
-            return;
-        }
-        mOnSpeedRecordingStateChangedListeners.add(locationServiceStateChangedListener);
+        registerOnLocationServiceStateChangedListener(locationServiceStateChangedListener, Delivery.inline());
+    }
+
+    /**
+     * Register a {@link OnSpeedRecordingStateChangedListener} notified with a given {@link Delivery}.
+     *
+     * @param locationServiceStateChangedListener the listener to register
+     * @param delivery how the listener is notified
+     * @see #unregisterOnLocationServiceStateChangedListener(OnSpeedRecordingStateChangedListener)
+     */
+    public final void registerOnLocationServiceStateChangedListener(OnSpeedRecordingStateChangedListener locationServiceStateChangedListener, Delivery delivery) {
+        register(mOnSpeedRecordingStateChangedListeners, locationServiceStateChangedListener, delivery, null);
     }
 
     /**
@@ -134,9 +152,7 @@ public abstract class LocationProvider {
      * @param locationServiceStateChangedListener the listener to unregister
      */
     public final void unregisterOnLocationServiceStateChangedListener(OnSpeedRecordingStateChangedListener locationServiceStateChangedListener) {
-        if (mOnSpeedRecordingStateChangedListeners.contains(locationServiceStateChangedListener)) {
-            mOnSpeedRecordingStateChangedListeners.remove(locationServiceStateChangedListener);
-        }
+        mOnSpeedRecordingStateChangedListeners.unregister(locationServiceStateChangedListener);
     }
 
     /**
@@ -148,10 +164,19 @@ public abstract class LocationProvider {
      * @see #unregisterOnLocationServiceSpeedChangedListener(OnSpeedChangedListener)
      */
     public final void registerOnLocationServiceSpeedChangedListener(OnSpeedChangedListener onSpeedChangedListener) {
-        if (mOnSpeedChangedListeners.contains(onSpeedChangedListener)) {
-            return;
-        }
-        mOnSpeedChangedListeners.add(onSpeedChangedListener);
+        registerOnLocationServiceSpeedChangedListener(onSpeedChangedListener, Delivery.inline());
+    }
+
+    /**
+     * Register a {@link OnSpeedChangedListener} notified with a given {@link Delivery}.
+     *
+     * @param onSpeedChangedListener the listener to register
+     * @param delivery how the listener is notified
+     * @see #unregisterOnLocationServiceSpeedChangedListener(OnSpeedChangedListener)
+     */
+    public final void registerOnLocationServiceSpeedChangedListener(OnSpeedChangedListener onSpeedChangedListener, Delivery delivery) {
+        register(mOnSpeedChangedListeners, onSpeedChangedListener, delivery,
+                delivery.isConflated() ? new PendingSpeed(onSpeedChangedListener) : null);
     }
 
     /**
@@ -160,9 +185,7 @@ public abstract class LocationProvider {
      * @param locationServiceSpeedChangedListener the listener to unregister
      */
     public final void unregisterOnLocationServiceSpeedChangedListener(OnSpeedChangedListener locationServiceSpeedChangedListener) {
-        if (mOnSpeedChangedListeners.contains(locationServiceSpeedChangedListener)) {
-            mOnSpeedChangedListeners.remove(locationServiceSpeedChangedListener);
-        }
+        mOnSpeedChangedListeners.unregister(locationServiceSpeedChangedListener);
     }
 
     /**
@@ -174,10 +197,19 @@ public abstract class LocationProvider {
      * @see #unregisterOnLocationServiceAverageSpeedChangedListener(OnAverageSpeedChangedListener)
      */
     public final void registerOnLocationServiceAverageSpeedChangedListener(OnAverageSpeedChangedListener onAverageSpeedChangedListener) {
-        if (mOnAverageSpeedChangedListeners.contains(onAverageSpeedChangedListener)) {
-            return;
-        }
-        mOnAverageSpeedChangedListeners.add(onAverageSpeedChangedListener);
+        registerOnLocationServiceAverageSpeedChangedListener(onAverageSpeedChangedListener, Delivery.inline());
+    }
+
+    /**
+     * Register a {@link OnAverageSpeedChangedListener} notified with a given {@link Delivery}.
+     *
+     * @param onAverageSpeedChangedListener the listener to register
+     * @param delivery how the listener is notified
+     * @see #unregisterOnLocationServiceAverageSpeedChangedListener(OnAverageSpeedChangedListener)
+     */
+    public final void registerOnLocationServiceAverageSpeedChangedListener(OnAverageSpeedChangedListener onAverageSpeedChangedListener, Delivery delivery) {
+        register(mOnAverageSpeedChangedListeners, onAverageSpeedChangedListener, delivery,
+                delivery.isConflated() ? new PendingAverageSpeed(onAverageSpeedChangedListener) : null);
     }
 
     /**
@@ -186,44 +218,357 @@ public abstract class LocationProvider {
      * @param locationServiceAverageSpeedChangedListener the listener to unregister
      */
     public final void unregisterOnLocationServiceAverageSpeedChangedListener(OnAverageSpeedChangedListener locationServiceAverageSpeedChangedListener) {
-        if (mOnAverageSpeedChangedListeners.contains(locationServiceAverageSpeedChangedListener)) {
-            mOnAverageSpeedChangedListeners.remove(locationServiceAverageSpeedChangedListener);
+        mOnAverageSpeedChangedListeners.unregister(locationServiceAverageSpeedChangedListener);
+    }
+
+    private static <T> void register(ListenerRegistry<T> registry, T listener, Delivery delivery, Object state) {
+        LifecycleOwner lifecycleOwner = delivery.getLifecycleOwner();
+        if (lifecycleOwner == null) {
+            registry.register(listener, delivery, state);
+            return;
+        }
+        Lifecycle lifecycle = lifecycleOwner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
         }
+        if (registry.register(listener, delivery, state)) {
+            lifecycle.addObserver(new UnregisterOnDestroy<>(registry, listener));
+        }
+    }
+
+    /**
+     * Get the number of registered listeners, to check that none is leaked.
+     *
+     * @return number of listeners of all types
+     */
+    @VisibleForTesting
+    public int getListenerCount() {
+        mOnSpeedRecordingStateChangedListeners.purge();
+        mOnSpeedChangedListeners.purge();
+        mOnAverageSpeedChangedListeners.purge();
+        return mOnSpeedRecordingStateChangedListeners.size() + mOnSpeedChangedListeners.size()
+                + mOnAverageSpeedChangedListeners.size();
     }
 
     /**
      * Call it to invoke {@link OnSpeedRecordingStateChangedListener#onSpeedRecordingStateChanged(boolean)} on all registered listeners.
      */
-    protected void notifyOnStateChanged(boolean enabled) {
-        for (OnSpeedRecordingStateChangedListener onSpeedRecordingStateChangedListener : mOnSpeedRecordingStateChangedListeners) {
-            onSpeedRecordingStateChangedListener.onSpeedRecordingStateChanged(enabled);
+    protected void notifyOnStateChanged(final boolean enabled) {
+        for (final ListenerRegistry.Entry<OnSpeedRecordingStateChangedListener> entry : mOnSpeedRecordingStateChangedListeners.snapshot()) {
+            OnSpeedRecordingStateChangedListener listener = entry.getListener();
+            if (listener == null) {
+                // Weakly referenced listener collected
+                mOnSpeedRecordingStateChangedListeners.purge();
+                continue;
+            }
+            if (entry.getDelivery().isInline()) {
+                listener.onSpeedRecordingStateChanged(enabled);
+                continue;
+            }
+            entry.getDelivery().execute(new Runnable() {
+                @Override
+                public void run() {
+                    OnSpeedRecordingStateChangedListener target = entry.getListener();
+                    if (target != null && entry.isRegistered()) {
+                        target.onSpeedRecordingStateChanged(enabled);
+                    }
+                }
+            });
         }
     }
 
     /**
      * Call it to invoke {@link OnSpeedChangedListener#onSpeedChanged(float, Location)} on all registered listeners.
+     * <p>
+     * Listeners not notified inline get their own copy of the location, so that the caller can
+     * reuse it. Listeners with a conflated delivery only get the latest speed.
      */
-    protected void notifyOnSpeedChanged(float speed, Location location) {
-        for (OnSpeedChangedListener onSpeedChangedListener : mOnSpeedChangedListeners) {
-            onSpeedChangedListener.onSpeedChanged(speed, location);
+    protected void notifyOnSpeedChanged(final float speed, Location location) {
+        for (final ListenerRegistry.Entry<OnSpeedChangedListener> entry : mOnSpeedChangedListeners.snapshot()) {
+            OnSpeedChangedListener listener = entry.getListener();
+            if (listener == null) {
+                // Weakly referenced listener collected
+                mOnSpeedChangedListeners.purge();
+                continue;
+            }
+            if (entry.getDelivery().isInline()) {
+                listener.onSpeedChanged(speed, location);
+                continue;
+            }
+            if (entry.getDelivery().isConflated()) {
+                PendingSpeed pending = (PendingSpeed) entry.getState();
+                if (pending.postSpeed(speed, location)) {
+                    entry.getDelivery().execute(pending);
+                }
+                continue;
+            }
+            final Location copy = location == null ? null : new Location(location);
+            entry.getDelivery().execute(new Runnable() {
+                @Override
+                public void run() {
+                    OnSpeedChangedListener target = entry.getListener();
+                    if (target != null && entry.isRegistered()) {
+                        target.onSpeedChanged(speed, copy);
+                    }
+                }
+            });
         }
     }
 
     /**
      * Call it to invoke {@link OnSpeedChangedListener#onSpeedActivityChanged(boolean)} on all registered listeners.
      */
-    protected void notifyOnSpeedActivityChanged(boolean active) {
-        for (OnSpeedChangedListener onSpeedChangedListener : mOnSpeedChangedListeners) {
-            onSpeedChangedListener.onSpeedActivityChanged(active);
+    protected void notifyOnSpeedActivityChanged(final boolean active) {
+        for (final ListenerRegistry.Entry<OnSpeedChangedListener> entry : mOnSpeedChangedListeners.snapshot()) {
+            OnSpeedChangedListener listener = entry.getListener();
+            if (listener == null) {
+                // Weakly referenced listener collected
+                mOnSpeedChangedListeners.purge();
+                continue;
+            }
+            if (entry.getDelivery().isInline()) {
+                listener.onSpeedActivityChanged(active);
+                continue;
+            }
+            if (entry.getDelivery().isConflated()) {
+                PendingSpeed pending = (PendingSpeed) entry.getState();
+                if (pending.postSpeedActivity(active)) {
+                    entry.getDelivery().execute(pending);
+                }
+                continue;
+            }
+            entry.getDelivery().execute(new Runnable() {
+                @Override
+                public void run() {
+                    OnSpeedChangedListener target = entry.getListener();
+                    if (target != null && entry.isRegistered()) {
+                        target.onSpeedActivityChanged(active);
+                    }
+                }
+            });
         }
     }
 
     /**
      * Call it to invoke {@link OnAverageSpeedChangedListener#onAverageSpeedChanged(float, float, int)} on all registered listeners.
      */
-    protected void notifyOnAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
-        for (OnAverageSpeedChangedListener onAverageSpeedChangedListener : mOnAverageSpeedChangedListeners) {
-            onAverageSpeedChangedListener.onAverageSpeedChanged(averageSpeed, distance, timeElapsed);
+    protected void notifyOnAverageSpeedChanged(final float averageSpeed, final float distance, final int timeElapsed) {
+        for (final ListenerRegistry.Entry<OnAverageSpeedChangedListener> entry : mOnAverageSpeedChangedListeners.snapshot()) {
+            OnAverageSpeedChangedListener listener = entry.getListener();
+            if (listener == null) {
+                // Weakly referenced listener collected
+                mOnAverageSpeedChangedListeners.purge();
+                continue;
+            }
+            if (entry.getDelivery().isInline()) {
+                listener.onAverageSpeedChanged(averageSpeed, distance, timeElapsed);
+                continue;
+            }
+            if (entry.getDelivery().isConflated()) {
+                PendingAverageSpeed pending = (PendingAverageSpeed) entry.getState();
+                if (pending.post(averageSpeed, distance, timeElapsed)) {
+                    entry.getDelivery().execute(pending);
+                }
+                continue;
+            }
+            entry.getDelivery().execute(new Runnable() {
+                @Override
+                public void run() {
+                    OnAverageSpeedChangedListener target = entry.getListener();
+                    if (target != null && entry.isRegistered()) {
+                        target.onAverageSpeedChanged(averageSpeed, distance, timeElapsed);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Latest speed values of a listener with a conflated delivery, waiting for its executor. Values
+     * are posted by the notifying thread and taken by the executor thread.
+     */
+    private final class PendingSpeed implements Runnable {
+
+        /**
+         * Weak so that a weakly registered listener can still be collected
+         */
+        private final WeakReference<OnSpeedChangedListener> mListener;
+        private boolean mScheduled;
+        private boolean mHasSpeedActivity;
+        private boolean mActive;
+        private boolean mHasSpeed;
+        private float mSpeed;
+        private Location mLocation;
+        /**
+         * Location delivered last time, reused for the next one
+         */
+        private Location mSpareLocation;
+
+        PendingSpeed(OnSpeedChangedListener listener) {
+            mListener = new WeakReference<>(listener);
+        }
+
+        /**
+         * @return true if the executor must be given this notification
+         */
+        synchronized boolean postSpeed(float speed, Location location) {
+            mHasSpeed = true;
+            mSpeed = speed;
+            if (location == null) {
+                mLocation = null;
+            } else {
+                if (mLocation == null) {
+                    mLocation = mSpareLocation != null ? mSpareLocation : new Location(location);
+                    mSpareLocation = null;
+                }
+                mLocation.set(location);
+            }
+            return schedule();
+        }
+
+        /**
+         * @return true if the executor must be given this notification
+         */
+        synchronized boolean postSpeedActivity(boolean active) {
+            mHasSpeedActivity = true;
+            mActive = active;
+            return schedule();
+        }
+
+        private boolean schedule() {
+            if (mScheduled) {
+                return false;
+            }
+            mScheduled = true;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            boolean hasSpeedActivity;
+            boolean active;
+            boolean hasSpeed;
+            float speed;
+            Location location;
+            synchronized (this) {
+                hasSpeedActivity = mHasSpeedActivity;
+                active = mActive;
+                hasSpeed = mHasSpeed;
+                speed = mSpeed;
+                location = mLocation;
+                mHasSpeedActivity = false;
+                mHasSpeed = false;
+                mLocation = null;
+                mScheduled = false;
+            }
+            OnSpeedChangedListener listener = mListener.get();
+            if (listener != null && mOnSpeedChangedListeners.isRegistered(listener)) {
+                if (hasSpeedActivity) {
+                    listener.onSpeedActivityChanged(active);
+                }
+                if (hasSpeed) {
+                    listener.onSpeedChanged(speed, location);
+                }
+            }
+            if (location != null) {
+                synchronized (this) {
+                    mSpareLocation = location;
+                }
+            }
+        }
+    }
+
+    /**
+     * Latest section values of a listener with a conflated delivery, waiting for its executor.
+     */
+    private final class PendingAverageSpeed implements Runnable {
+
+        private final WeakReference<OnAverageSpeedChangedListener> mListener;
+        private boolean mScheduled;
+        private float mAverageSpeed;
+        private float mDistance;
+        private int mTimeElapsed;
+
+        PendingAverageSpeed(OnAverageSpeedChangedListener listener) {
+            mListener = new WeakReference<>(listener);
+        }
+
+        /**
+         * @return true if the executor must be given this notification
+         */
+        synchronized boolean post(float averageSpeed, float distance, int timeElapsed) {
+            mAverageSpeed = averageSpeed;
+            mDistance = distance;
+            mTimeElapsed = timeElapsed;
+            if (mScheduled) {
+                return false;
+            }
+            mScheduled = true;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            float averageSpeed;
+            float distance;
+            int timeElapsed;
+            synchronized (this) {
+                averageSpeed = mAverageSpeed;
+                distance = mDistance;
+                timeElapsed = mTimeElapsed;
+                mScheduled = false;
+            }
+            OnAverageSpeedChangedListener listener = mListener.get();
+            if (listener != null && mOnAverageSpeedChangedListeners.isRegistered(listener)) {
+                listener.onAverageSpeedChanged(averageSpeed, distance, timeElapsed);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a listener when its lifecycle owner is destroyed, see
+     * {@link Delivery#boundTo(LifecycleOwner)}. Observers of the same listener are equal, so that
+     * registering it again on each start doesn't add more observers to the lifecycle.
+     */
+    private static final class UnregisterOnDestroy<T> implements LifecycleObserver {
+
+        private final ListenerRegistry<T> mRegistry;
+        private final WeakReference<T> mListener;
+        private final int mHashCode;
+
+        UnregisterOnDestroy(ListenerRegistry<T> registry, T listener) {
+            mRegistry = registry;
+            mListener = new WeakReference<>(listener);
+            mHashCode = 31 * System.identityHashCode(registry) + listener.hashCode();
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        void onDestroy(LifecycleOwner owner) {
+            T listener = mListener.get();
+            if (listener != null) {
+                mRegistry.unregister(listener);
+            } else {
+                mRegistry.purge();
+            }
+            owner.getLifecycle().removeObserver(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UnregisterOnDestroy)) {
+                return false;
+            }
+            UnregisterOnDestroy<?> other = (UnregisterOnDestroy<?>) o;
+            T listener = mListener.get();
+            return mRegistry == other.mRegistry && listener != null && listener.equals(other.mListener.get());
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
         }
     }
 }
@@ -0,0 +1,115 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.bgauthey.speedotracker.engine.DeadReckoning;
+
+/**
+ * Estimates the speed between fixes from the linear acceleration sensor of the device, using
+ * {@link DeadReckoning}.
+ * <p>
+ * Sensor samples and fixes must be given on the same thread, the thread processing fixes. The
+ * estimate can be read from any thread.
+ */
+public class AccelerometerSpeedEstimator implements SensorEventListener {
+
+    @Nullable
+    private final SensorManager mSensorManager;
+    @Nullable
+    private final Sensor mSensor;
+    private final DeadReckoning mDeadReckoning = new DeadReckoning();
+    private volatile float mSpeed;
+
+    public AccelerometerSpeedEstimator(Context context) {
+        this((SensorManager) context.getSystemService(Context.SENSOR_SERVICE));
+    }
+
+    /**
+     * @param sensorManager the system sensor manager, null to only receive samples given by tests
+     */
+    @VisibleForTesting
+    AccelerometerSpeedEstimator(@Nullable SensorManager sensorManager) {
+        mSensorManager = sensorManager;
+        mSensor = sensorManager == null ? null : sensorManager.getDefaultSensor(Sensor.TYPE_LINEAR_ACCELERATION);
+    }
+
+    /**
+     * @return true if the device has a linear acceleration sensor
+     */
+    public boolean isAvailable() {
+        return mSensor != null;
+    }
+
+    /**
+     * Start receiving sensor samples. Nothing happens when the device has no linear acceleration
+     * sensor: the estimate is the speed of the last fix.
+     *
+     * @param handler handler of the thread processing fixes, null for the main thread
+     */
+    public void start(@Nullable Handler handler) {
+        if (mSensorManager != null && mSensor != null) {
+            mSensorManager.registerListener(this, mSensor, SensorManager.SENSOR_DELAY_GAME, handler);
+        }
+    }
+
+    /**
+     * Stop receiving sensor samples.
+     */
+    public void stop() {
+        if (mSensorManager != null) {
+            mSensorManager.unregisterListener(this);
+        }
+    }
+
+    /**
+     * Forget the fixes and samples of the previous tracking session. The learnt orientation of the
+     * device is kept. Must be called on the thread processing fixes.
+     */
+    public void reset() {
+        mDeadReckoning.reset();
+        mSpeed = 0;
+    }
+
+    /**
+     * Correct the estimate with the speed of a fix.
+     *
+     * @param speed speed of the fix, in m/s
+     * @param nanos elapsed realtime of the fix, in nanoseconds
+     */
+    public void onFix(float speed, long nanos) {
+        mDeadReckoning.onFix(speed, nanos);
+        mSpeed = mDeadReckoning.getSpeed();
+    }
+
+    /**
+     * @return estimated speed, in m/s
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    @VisibleForTesting
+    void onAcceleration(float x, float y, float z, long nanos) {
+        mDeadReckoning.onAcceleration(x, y, z, nanos);
+        mSpeed = mDeadReckoning.getSpeed();
+    }
+
+    //region SensorEventListener
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        onAcceleration(event.values[0], event.values[1], event.values[2], event.timestamp);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Samples of any accuracy are corrected by the next fix
+    }
+    //endregion
+}
@@ -0,0 +1,20 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+
+import java.util.List;
+
+/**
+ * A {@link LocationListener} able to process several fixes at once, such as the batches delivered
+ * by the fused location provider.
+ */
+public interface BatchLocationListener extends LocationListener {
+
+    /**
+     * Called with fixes received at once.
+     *
+     * @param locations the fixes, oldest first
+     */
+    void onLocationsChanged(List<Location> locations);
+}
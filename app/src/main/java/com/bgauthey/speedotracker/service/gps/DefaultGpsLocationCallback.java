@@ -2,14 +2,31 @@ package com.bgauthey.speedotracker.service.gps;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.annotation.VisibleForTesting;
 
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.sampling.AdaptiveSamplingPolicy;
+import com.bgauthey.speedotracker.service.sampling.SamplingPolicy;
+import com.bgauthey.speedotracker.service.sampling.SamplingRate;
 import com.bgauthey.speedotracker.util.PermissionUtils;
 
+import java.io.PrintWriter;
+
 /**
  * The default implementation of {@link GpsLocationCallback} that uses the system {@link LocationManager}
  * with the {@link LocationManager#GPS_PROVIDER} provider.
+ * <p>
+ * Location update settings are chosen by a {@link SamplingPolicy}, {@link AdaptiveSamplingPolicy}
+ * by default: fixes go through a listener asking the policy for the rate to use, and location
+ * updates are requested again when it changes. Fixes are received on the looper given when tracking
+ * starts while tracking is started and stopped from the calling thread: requests and removals of
+ * location updates are serialized, so that a rate change can't request updates once tracking is
+ * stopped.
  */
 public class DefaultGpsLocationCallback implements GpsLocationCallback {
 
@@ -17,21 +34,28 @@ public class DefaultGpsLocationCallback implements GpsLocationCallback {
      * Location provider use to track speed: GPS
      */
     static final String LOCATION_PROVIDER = LocationManager.GPS_PROVIDER;
-    /**
-     * Minimum time interval to update the location (in milliseconds)
-     */
-    private static final long MIN_INTERVAL_TIME = 500L;
-    /**
-     * Minimum distance interval to update the location (in meters)
-     */
-    private static final long MIN_INTERVAL_DISTANCE = 0L;
 
     private Context mContext;
     private LocationManager mLocationManager;
+    private final SamplingPolicy mSamplingPolicy;
+    private volatile SamplingListener mSamplingListener;
+    /**
+     * Number of location update requests of the last tracking session
+     */
+    private int mLastRequestCount;
 
     public DefaultGpsLocationCallback(Context context) {
+        this(context, new AdaptiveSamplingPolicy());
+    }
+
+    /**
+     * @param context        the context
+     * @param samplingPolicy policy choosing location update settings
+     */
+    public DefaultGpsLocationCallback(Context context, SamplingPolicy samplingPolicy) {
         mContext = context;
         mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        mSamplingPolicy = samplingPolicy;
     }
 
     @Override
@@ -39,14 +63,99 @@ public class DefaultGpsLocationCallback implements GpsLocationCallback {
         return PermissionUtils.isLocationPermissionGranted(mContext) && mLocationManager.isProviderEnabled(LOCATION_PROVIDER);
     }
 
-    @SuppressLint("MissingPermission")
     @Override
-    public void startTracking(LocationListener listener) {
-        mLocationManager.requestLocationUpdates(LOCATION_PROVIDER, MIN_INTERVAL_TIME, MIN_INTERVAL_DISTANCE, listener);
+    public synchronized void startTracking(LocationListener listener, Looper looper) {
+        stopTracking(listener);
+        mSamplingListener = new SamplingListener(listener, looper);
+        mSamplingListener.requestUpdates(mSamplingPolicy.start());
     }
 
     @Override
-    public void stopTracking(LocationListener listener) {
+    public synchronized void stopTracking(LocationListener listener) {
+        SamplingListener samplingListener = mSamplingListener;
+        if (samplingListener != null && samplingListener.mListener == listener) {
+            mSamplingListener = null;
+            removeUpdates(samplingListener);
+            mLastRequestCount = samplingListener.mRequestCount;
+        }
+    }
+
+    @Override
+    public synchronized void dump(PrintWriter writer) {
+        int requestCount = mSamplingListener != null ? mSamplingListener.mRequestCount : mLastRequestCount;
+        writer.println("Location updates requested " + requestCount + " times");
+    }
+
+    @SuppressLint("MissingPermission")
+    @VisibleForTesting
+    void requestUpdates(SamplingRate rate, LocationListener listener, Looper looper) {
+        // Requesting updates again for the same listener replaces its previous request
+        mLocationManager.requestLocationUpdates(LOCATION_PROVIDER, rate.getMinTimeMillis(),
+                rate.getMinDistanceMeters(), listener, looper);
+    }
+
+    @VisibleForTesting
+    void removeUpdates(LocationListener listener) {
         mLocationManager.removeUpdates(listener);
     }
+
+    /**
+     * Forwards location manager events to the listener of the tracking session, and applies the
+     * sampling policy to each fix.
+     */
+    private class SamplingListener implements LocationListener {
+
+        private final LocationListener mListener;
+        private final Looper mLooper;
+        private SamplingRate mRate;
+        private int mRequestCount;
+
+        SamplingListener(LocationListener listener, Looper looper) {
+            mListener = listener;
+            mLooper = looper;
+        }
+
+        void requestUpdates(SamplingRate rate) {
+            synchronized (DefaultGpsLocationCallback.this) {
+                if (mSamplingListener != this) {
+                    return;
+                }
+                mRate = rate;
+                mRequestCount++;
+                DefaultGpsLocationCallback.this.requestUpdates(rate, this, mLooper);
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mListener.onLocationChanged(location);
+            if (mSamplingListener != this) {
+                // Tracking stopped by the listener
+                return;
+            }
+            // The provider has processed the fix: its section activity includes it
+            boolean sectionActive = mListener instanceof LocationProvider
+                    && ((LocationProvider) mListener).isSpeedActive();
+            SamplingRate rate = mSamplingPolicy.onFix(location.getSpeed(), sectionActive,
+                    location.getElapsedRealtimeNanos());
+            if (!rate.equals(mRate)) {
+                requestUpdates(rate);
+            }
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+            mListener.onStatusChanged(provider, status, extras);
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            mListener.onProviderEnabled(provider);
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            mListener.onProviderDisabled(provider);
+        }
+    }
 }
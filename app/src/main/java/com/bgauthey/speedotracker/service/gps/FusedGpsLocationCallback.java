@@ -0,0 +1,192 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.bgauthey.speedotracker.util.PermissionUtils;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GpsLocationCallback} using the fused location provider of Google Play services, with
+ * high accuracy.
+ * <p>
+ * While the screen is off, nobody looks at the speed: fixes are batched, the fused provider
+ * delivers them at most every {@link #BATCH_MAX_WAIT_MILLIS}, which wakes the application up much
+ * less often than one fix per second. Batches are handed at once to a {@link BatchLocationListener}
+ * such as {@link GpsLocationProvider}. Once the screen is on again, fixes are delivered as soon as
+ * available.
+ */
+public class FusedGpsLocationCallback implements GpsLocationCallback {
+
+    /**
+     * Name of the provider given to listeners with status changes
+     */
+    static final String LOCATION_PROVIDER = "fused";
+    /**
+     * Interval between location updates (in milliseconds)
+     */
+    @VisibleForTesting
+    static final long INTERVAL_MILLIS = 500L;
+    /**
+     * Maximum time fixes are batched while the screen is off (in milliseconds)
+     */
+    @VisibleForTesting
+    static final long BATCH_MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Context mContext;
+    private final LocationManager mLocationManager;
+    private final FusedLocationClient mClient;
+    private Callback mCallback;
+    private Handler mHandler;
+    private boolean mScreenOn = true;
+
+    public FusedGpsLocationCallback(Context context) {
+        this(context, createClient(context));
+    }
+
+    /**
+     * @param context the context
+     * @param client  the client requesting location updates to the fused location provider
+     */
+    @VisibleForTesting
+    FusedGpsLocationCallback(Context context, FusedLocationClient client) {
+        mContext = context;
+        mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        mClient = client;
+    }
+
+    private static FusedLocationClient createClient(Context context) {
+        final FusedLocationProviderClient client = LocationServices.getFusedLocationProviderClient(context);
+        return new FusedLocationClient() {
+            @SuppressLint("MissingPermission")
+            @Override
+            public void requestLocationUpdates(LocationRequest request, LocationCallback callback, @Nullable Looper looper) {
+                client.requestLocationUpdates(request, callback, looper);
+            }
+
+            @Override
+            public void removeLocationUpdates(LocationCallback callback) {
+                client.removeLocationUpdates(callback);
+            }
+        };
+    }
+
+    @Override
+    public boolean isTrackingReady() {
+        return PermissionUtils.isLocationPermissionGranted(mContext)
+                && mLocationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
+    }
+
+    @Override
+    public synchronized void startTracking(LocationListener listener, Looper looper) {
+        stopTracking(listener);
+        Looper callbackLooper = looper != null ? looper : Looper.myLooper();
+        mCallback = new Callback(listener, callbackLooper);
+        mHandler = new Handler(callbackLooper);
+        PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+        mScreenOn = powerManager == null || powerManager.isInteractive();
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        mContext.registerReceiver(mScreenReceiver, filter, null, mHandler);
+        mClient.requestLocationUpdates(createRequest(!mScreenOn), mCallback, callbackLooper);
+    }
+
+    @Override
+    public synchronized void stopTracking(LocationListener listener) {
+        if (mCallback != null && mCallback.mListener == listener) {
+            mContext.unregisterReceiver(mScreenReceiver);
+            mClient.removeLocationUpdates(mCallback);
+            mCallback = null;
+            mHandler = null;
+        }
+    }
+
+    @Override
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Fixes batched: " + (mCallback != null && !mScreenOn));
+    }
+
+    /**
+     * Batch fixes while the screen is off, deliver them at once while it's on.
+     */
+    @VisibleForTesting
+    synchronized void onScreenStateChanged(boolean screenOn) {
+        if (screenOn == mScreenOn) {
+            return;
+        }
+        mScreenOn = screenOn;
+        if (mCallback != null) {
+            // The new request replaces the previous one of the callback
+            mClient.requestLocationUpdates(createRequest(!screenOn), mCallback, mCallback.mLooper);
+        }
+    }
+
+    @VisibleForTesting
+    static LocationRequest createRequest(boolean batched) {
+        return LocationRequest.create()
+                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                .setInterval(INTERVAL_MILLIS)
+                .setFastestInterval(INTERVAL_MILLIS)
+                .setMaxWaitTime(batched ? BATCH_MAX_WAIT_MILLIS : 0L);
+    }
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onScreenStateChanged(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+        }
+    };
+
+    /**
+     * Hands location results to the listener of the tracking session.
+     */
+    private static class Callback extends LocationCallback {
+
+        private final LocationListener mListener;
+        private final Looper mLooper;
+
+        Callback(LocationListener listener, Looper looper) {
+            mListener = listener;
+            mLooper = looper;
+        }
+
+        @Override
+        public void onLocationResult(LocationResult result) {
+            List<Location> locations = result.getLocations();
+            if (mListener instanceof BatchLocationListener) {
+                ((BatchLocationListener) mListener).onLocationsChanged(locations);
+            } else {
+                for (int i = 0, size = locations.size(); i < size; i++) {
+                    mListener.onLocationChanged(locations.get(i));
+                }
+            }
+        }
+
+        @Override
+        public void onLocationAvailability(LocationAvailability availability) {
+            mListener.onStatusChanged(LOCATION_PROVIDER, availability.isLocationAvailable()
+                    ? android.location.LocationProvider.AVAILABLE
+                    : android.location.LocationProvider.TEMPORARILY_UNAVAILABLE, null);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+
+/**
+ * Location update requests of the fused location provider, as done by a
+ * {@link FusedLocationProviderClient}. Used by {@link FusedGpsLocationCallback}, so that it can be
+ * tested without Google Play services.
+ */
+public interface FusedLocationClient {
+
+    /**
+     * Request location updates, replacing the previous request of the callback if any.
+     *
+     * @param request  the request
+     * @param callback the callback receiving location results
+     * @param looper   looper of the thread where the callback has to be called, null for the
+     *                 calling thread
+     */
+    void requestLocationUpdates(LocationRequest request, LocationCallback callback, @Nullable Looper looper);
+
+    void removeLocationUpdates(LocationCallback callback);
+}
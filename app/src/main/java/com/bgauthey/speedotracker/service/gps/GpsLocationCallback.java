@@ -1,6 +1,9 @@
 package com.bgauthey.speedotracker.service.gps;
 
 import android.location.LocationListener;
+import android.os.Looper;
+
+import java.io.PrintWriter;
 
 /**
  * Callback used by {@link GpsLocationProvider} to make action relative to the system location
@@ -10,7 +13,22 @@ public interface GpsLocationCallback {
 
     boolean isTrackingReady();
 
-    void startTracking(LocationListener listener);
+    /**
+     * Start sending fixes and provider events to a listener.
+     *
+     * @param listener the listener
+     * @param looper   looper of the thread where the listener has to be called, null for the
+     *                 calling thread
+     */
+    void startTracking(LocationListener listener, Looper looper);
 
     void stopTracking(LocationListener listener);
+
+    /**
+     * Write the counters of the current tracking session, or of the last one once stopped, for
+     * debugging.
+     *
+     * @param writer writer of the report
+     */
+    void dump(PrintWriter writer);
 }
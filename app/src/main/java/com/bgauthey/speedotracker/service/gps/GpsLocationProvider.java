@@ -1,110 +1,622 @@
 package com.bgauthey.speedotracker.service.gps;
 
 import android.location.Location;
-import android.location.LocationListener;
+import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.util.Log;
+import android.view.Choreographer;
 
 import com.bgauthey.speedotracker.Constants;
+import com.bgauthey.speedotracker.engine.Fix;
+import com.bgauthey.speedotracker.engine.FixSpeedEstimator;
+import com.bgauthey.speedotracker.engine.KalmanSpeedEstimator;
+import com.bgauthey.speedotracker.engine.RawSpeedEstimator;
+import com.bgauthey.speedotracker.engine.SectionTracker;
+import com.bgauthey.speedotracker.engine.pipeline.Pipeline;
+import com.bgauthey.speedotracker.engine.pipeline.SectionStage;
+import com.bgauthey.speedotracker.engine.pipeline.SpeedStage;
+import com.bgauthey.speedotracker.engine.pipeline.Stage;
+import com.bgauthey.speedotracker.engine.pipeline.ValidFixFilter;
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
 import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+import com.bgauthey.speedotracker.util.MainThreadExecutor;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Provides a {@link LocationProvider} that uses GPS to get location and speed.
+ * <p>
+ * Each location is converted to an engine {@link Fix} and goes through a {@link Pipeline} of
+ * stages: filter invalid fixes, estimate their speed with a {@link FixSpeedEstimator}, record,
+ * detect sections with a {@link SectionTracker} and dispatch notifications. Fixes without Doppler
+ * speed get a speed derived from their positions, so that they don't read as a stop. See
+ * {@link #getPipeline()} for the time spent in each stage.
+ * <p>
+ * Fixes are processed on a dedicated thread, listeners are notified on the main thread. The state
+ * of the provider is published as an immutable {@link TrackingSnapshot}: it can be read from any
+ * thread without locking.
+ * <p>
+ * Tracking goes through the states of a {@link TrackingStateMachine}. Listeners are notified about
+ * tracking state only when a transition changes whether tracking is running, so that a location
+ * provider reporting the same status again doesn't notify them.
+ * <p>
+ * A batch of fixes ({@link #onLocationsChanged(List)}) goes through the pipeline in one loop and
+ * listeners get one notification set for the whole batch: the last speed, the average speed of
+ * the last section ended and the last speed activity.
+ * <p>
+ * With an {@link AccelerometerSpeedEstimator} (see {@link #setSpeedEstimator}), fixes correct the
+ * speed estimated from the acceleration of the device and listeners are notified on each frame
+ * about the estimated speed, when its value in km/h changes.
+ * <p>
+ * The time each fix waits before being processed is measured by a {@link FixLatencyMonitor}. See
+ * {@link #dump(PrintWriter)} for a report of the provider.
  */
-public class GpsLocationProvider extends LocationProvider implements LocationListener {
+public class GpsLocationProvider extends LocationProvider implements BatchLocationListener {
 
     private static final String TAG = GpsLocationProvider.class.getSimpleName();
 
     private static final float FACTOR_M_PER_S_TO_KM_PER_H = 3.6f;
 
+    /**
+     * Time one fix out of 16 in the pipeline, enough to spot a slow stage at 1 fix per second
+     */
+    private static final int PIPELINE_TIMING_INTERVAL = 16;
+
+    /**
+     * Number of notifications kept for reuse, more are allocated when the main thread is late
+     */
+    private static final int NOTIFICATION_POOL_SIZE = 8;
+
+    private static final String EVENT_START = "start";
+    private static final String EVENT_STOP = "stop";
+    private static final String EVENT_FIX = "fix";
+    private static final String EVENT_PROVIDER_ENABLED = "provider enabled";
+    private static final String EVENT_PROVIDER_DISABLED = "provider disabled";
+    private static final String EVENT_PROVIDER_AVAILABLE = "provider available";
+    private static final String EVENT_PROVIDER_UNAVAILABLE = "provider unavailable";
+
+    private static final int NOTIFY_AVERAGE_SPEED = 1;
+    private static final int NOTIFY_STATE = 1 << 1;
+    private static final int NOTIFY_SPEED_ACTIVITY = 1 << 2;
+    private static final int NOTIFY_SPEED = 1 << 3;
+
+    /**
+     * Runs notifications on the calling thread
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     /**
      * Minimum speed to consider user is moving (in m/s)
      */
     @VisibleForTesting
     static final float MIN_SPEED_RUNNING = Constants.MINIMUM_SPEED_RUNNING_KM_PER_H / FACTOR_M_PER_S_TO_KM_PER_H; // convert km/h to m/s)
+    /**
+     * Speed under which a moving user is considered stopped (in m/s)
+     */
+    @VisibleForTesting
+    static final float MAX_SPEED_STOPPED = Constants.MAXIMUM_SPEED_STOPPED_KM_PER_H / FACTOR_M_PER_S_TO_KM_PER_H;
+    @VisibleForTesting
+    static final long SECTION_START_DWELL_NANOS = TimeUnit.SECONDS.toNanos(Constants.SECTION_START_DWELL_SECONDS);
+    @VisibleForTesting
+    static final long SECTION_END_DWELL_NANOS = TimeUnit.SECONDS.toNanos(Constants.SECTION_END_DWELL_SECONDS);
 
     private GpsLocationCallback mLocationCallback;
-    private Location mStartLocation;
-    private Location mLastLocation;
-    private boolean mTrackingRunning;
-    private boolean mSpeedActive = false;
     /**
-     * Distance between location where speed was activated and location where speed was deactivated (in meters)
+     * Records every fix of the current tracking session
+     */
+    private final TrackBuffer mTrackBuffer;
+    /**
+     * Detects sections with hysteresis and dwell times, so that a speed jittering around the running
+     * speed doesn't flip speed activity on every fix
+     */
+    private final SectionTracker mSectionTracker = new SectionTracker(MIN_SPEED_RUNNING, MAX_SPEED_STOPPED,
+            SECTION_START_DWELL_NANOS, SECTION_END_DWELL_NANOS);
+    private final SectionStage mSectionStage = new SectionStage(mSectionTracker);
+    /**
+     * Estimates the speed of fixes, see {@link Constants#USE_KALMAN_SPEED_ESTIMATOR}
+     */
+    private final SpeedStage mSpeedStage = new SpeedStage(Constants.USE_KALMAN_SPEED_ESTIMATOR
+            ? new KalmanSpeedEstimator() : new RawSpeedEstimator());
+    private final TrackingStateMachine mStateMachine = new TrackingStateMachine();
+    private final Pipeline mPipeline;
+    /**
+     * Engine fix filled again for every location
+     */
+    private final Fix mFix = new Fix();
+    /**
+     * Location being processed by the pipeline
      */
-    private float mDistance;
+    private Location mLocation;
     /**
-     * Elapsed time between speed activation and speed deactivation (in seconds)
+     * Notification coalescing the fixes of the batch being processed, null out of batches
      */
-    private int mTimeElapsed;
+    private Notification mBatchNotification;
+
+    /**
+     * Estimates the speed between fixes, null to notify the speed of fixes only
+     */
+    private volatile AccelerometerSpeedEstimator mSpeedEstimator;
     /**
-     * Average speed computed between speed activation and speed deactivation (in m/s)
+     * Location of the last speed notified, notified again with the estimated speed. Main thread only
      */
-    private float mAverageSpeed;
+    private final Location mEstimateLocation = new Location(LocationManager.GPS_PROVIDER);
+    private boolean mHasEstimateLocation;
+    private int mLastNotifiedSpeed;
+    private boolean mFrameLoopRunning;
 
-    private static GpsLocationProvider sInstance = null;
+    /**
+     * Looper of the thread processing fixes, null to process them on the thread of the callback
+     */
+    private final Looper mProcessingLooper;
+    private final Handler mProcessingHandler;
+    private final Executor mNotificationExecutor;
+    private final ArrayBlockingQueue<Notification> mNotificationPool = new ArrayBlockingQueue<>(NOTIFICATION_POOL_SIZE);
+    private final AtomicReference<TrackingSnapshot> mSnapshot = new AtomicReference<>(TrackingSnapshot.INITIAL);
+    /**
+     * Measures fix latencies, null not to measure them
+     */
+    @Nullable
+    private final FixLatencyMonitor mLatencyMonitor;
+    /**
+     * File where the report is written when tracking stops, null not to write it
+     */
+    private volatile File mReportFile;
+
+    private static volatile GpsLocationProvider sInstance = null;
 
-    GpsLocationProvider(GpsLocationCallback callback) {
-        initParameters();
+    GpsLocationProvider(GpsLocationCallback callback, TrackBuffer trackBuffer) {
+        this(callback, trackBuffer, null, DIRECT_EXECUTOR);
+    }
+
+    @VisibleForTesting
+    GpsLocationProvider(GpsLocationCallback callback, TrackBuffer trackBuffer,
+                        @Nullable Looper processingLooper, Executor notificationExecutor) {
+        this(callback, trackBuffer, processingLooper, notificationExecutor, null);
+    }
+
+    /**
+     * @param callback             callback doing actions on the system location manager
+     * @param trackBuffer          the buffer where fixes are recorded while tracking
+     * @param processingLooper     looper of the thread processing fixes, null to process them on the
+     *                             thread of the callback
+     * @param notificationExecutor executor running listener notifications
+     * @param latencyMonitor       monitor of fix latencies, null not to measure them
+     */
+    @VisibleForTesting
+    GpsLocationProvider(GpsLocationCallback callback, TrackBuffer trackBuffer,
+                        @Nullable Looper processingLooper, Executor notificationExecutor,
+                        @Nullable FixLatencyMonitor latencyMonitor) {
         mLocationCallback = callback;
+        mLatencyMonitor = latencyMonitor;
+        mTrackBuffer = trackBuffer;
+        mProcessingLooper = processingLooper;
+        mProcessingHandler = processingLooper == null ? null : new Handler(processingLooper);
+        mNotificationExecutor = notificationExecutor;
+        mPipeline = new Pipeline.Builder()
+                .add("filter", new ValidFixFilter())
+                .add("speed", mSpeedStage)
+                .add("record", mRecordStage)
+                .add("section", mSectionStage)
+                .add("estimate", mEstimateStage)
+                .add("dispatch", mDispatchStage)
+                .setTimingInterval(PIPELINE_TIMING_INTERVAL)
+                .build();
+    }
+
+    /**
+     * Creates the dependencies of the {@link GpsLocationProvider} instance, once.
+     */
+    public interface Dependencies {
+
+        GpsLocationCallback createLocationCallback();
+
+        TrackBuffer createTrackBuffer();
+
+        /**
+         * @return monitor of fix latencies, null not to measure them
+         */
+        @Nullable
+        FixLatencyMonitor createLatencyMonitor();
     }
 
     /**
-     * Get instance of {@link GpsLocationProvider}.
+     * Get instance of {@link GpsLocationProvider}, creating its dependencies only when the instance
+     * doesn't exist yet.
      *
-     * @param locationCallback a {@link GpsLocationCallback} responsive of doing action on system when requested
+     * @param dependencies factory of the dependencies of the instance
      * @return instance
      */
-    public static GpsLocationProvider getInstance(GpsLocationCallback locationCallback) {
-        if (sInstance == null) {
-            sInstance = new GpsLocationProvider(locationCallback);
+    public static GpsLocationProvider getInstance(Dependencies dependencies) {
+        GpsLocationProvider instance = sInstance;
+        if (instance == null) {
+            synchronized (GpsLocationProvider.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new GpsLocationProvider(dependencies.createLocationCallback(),
+                            dependencies.createTrackBuffer(), startProcessingThread(),
+                            new MainThreadExecutor(), dependencies.createLatencyMonitor());
+                    sInstance = instance;
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
-    private void initParameters() {
-        mTrackingRunning = false;
-        mDistance = 0f;
-        mTimeElapsed = 0;
-        mAverageSpeed = 0f;
-        mStartLocation = new Location(DefaultGpsLocationCallback.LOCATION_PROVIDER);
-        mLastLocation = new Location(DefaultGpsLocationCallback.LOCATION_PROVIDER);
+    /**
+     * Forget the current instance and stop its processing thread.
+     */
+    @VisibleForTesting
+    static synchronized void destroyInstance() {
+        if (sInstance != null && sInstance.mProcessingLooper != null) {
+            sInstance.mProcessingLooper.quit();
+        }
+        sInstance = null;
+    }
+
+    private static Looper startProcessingThread() {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_DEFAULT);
+        thread.start();
+        return thread.getLooper();
+    }
+
+    /**
+     * Get the current state of the provider. Can be called from any thread.
+     *
+     * @return the current state
+     */
+    public TrackingSnapshot getSnapshot() {
+        return mSnapshot.get();
+    }
+
+    /**
+     * Get the tracking state machine, to read the current state and the last transitions. Can be
+     * called from any thread.
+     *
+     * @return the state machine
+     */
+    public TrackingStateMachine getStateMachine() {
+        return mStateMachine;
+    }
+
+    /**
+     * Set the estimator of the speed between fixes. Must be called on the main thread, before
+     * tracking starts.
+     *
+     * @param estimator the estimator, null to notify the speed of fixes only
+     */
+    public void setSpeedEstimator(@Nullable AccelerometerSpeedEstimator estimator) {
+        mSpeedEstimator = estimator;
+    }
+
+    @Nullable
+    public AccelerometerSpeedEstimator getSpeedEstimator() {
+        return mSpeedEstimator;
+    }
+
+    /**
+     * Select the estimator of the speed of fixes. Must be called before tracking starts.
+     *
+     * @param estimator the estimator, such as a {@link KalmanSpeedEstimator} or a
+     *                  {@link RawSpeedEstimator} trusting Doppler speeds
+     */
+    public void setFixSpeedEstimator(FixSpeedEstimator estimator) {
+        mSpeedStage.setEstimator(estimator);
     }
 
-    private void updateTrackingState(boolean running) {
-        mTrackingRunning = running;
-        notifyOnStateChanged(running);
+    public FixSpeedEstimator getFixSpeedEstimator() {
+        return mSpeedStage.getEstimator();
     }
 
-    private void updateLocationSpeed(float speed, Location location) {
-        notifyOnSpeedChanged(convertMsToKmH(speed), location);
+    /**
+     * Write a report to a file each time tracking stops.
+     *
+     * @param file the file, replaced on each stop, null not to write the report
+     */
+    public void setReportFile(@Nullable File file) {
+        mReportFile = file;
     }
 
-    private void updateSpeedActive(boolean active) {
-        mSpeedActive = active;
-        notifyOnSpeedActivityChanged(active);
+    /**
+     * Write the state of the provider for debugging: the last transitions of the state machine,
+     * the last section, the counters of the pipeline and of the location callback, and the
+     * histograms of fix latencies.
+     *
+     * @param writer writer of the report
+     */
+    public void dump(PrintWriter writer) {
+        writer.println(mStateMachine);
+        TrackingSnapshot snapshot = mSnapshot.get();
+        writer.println(String.format(Locale.US, "Last section: %d km/h, %.0f m, %d s",
+                convertMsToKmH(snapshot.getAverageSpeed()), snapshot.getDistance(), snapshot.getTimeElapsed()));
+        writer.println(mPipeline);
+        mLocationCallback.dump(writer);
+        if (mLatencyMonitor != null) {
+            mLatencyMonitor.dump(writer);
+        }
+        writer.flush();
     }
 
-    private void resetLocations() {
-        mStartLocation.reset();
-        mLastLocation.reset();
+    private void writeReport(File file) {
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new FileWriter(file));
+            dump(writer);
+            if (writer.checkError()) {
+                Log.w(TAG, "Failed to write report " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write report " + file, e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
     }
 
-    private void computeSectionParamsToLocation(Location toLocation) {
-        mDistance = computeDistance(mStartLocation, toLocation);
-        mTimeElapsed = computeTimeElapsed(mStartLocation, toLocation);
-        mAverageSpeed = mDistance / mTimeElapsed;
-        notifyOnAverageSpeedChanged(convertMsToKmH(mAverageSpeed), mDistance, mTimeElapsed);
+    private void runOnProcessingThread(Runnable task) {
+        if (mProcessingHandler == null || Looper.myLooper() == mProcessingLooper) {
+            task.run();
+        } else {
+            mProcessingHandler.post(task);
+        }
     }
 
-    private float computeDistance(Location from, Location to) {
-        return Math.max(0, from.distanceTo(to));
+    //region Snapshot publication
+    private void publishTrackingRunning(boolean running) {
+        TrackingSnapshot snapshot;
+        do {
+            snapshot = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(snapshot, snapshot.withTrackingRunning(running)));
     }
 
-    private int computeTimeElapsed(Location from, Location to) {
-        return (int) Math.max(0, TimeUnit.NANOSECONDS.toSeconds(to.getElapsedRealtimeNanos() - from.getElapsedRealtimeNanos()));
+    private void publishSpeedActive(boolean active) {
+        TrackingSnapshot snapshot;
+        do {
+            snapshot = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(snapshot, snapshot.withSpeedActive(active)));
+    }
+
+    private void publishSection() {
+        TrackingSnapshot snapshot;
+        do {
+            snapshot = mSnapshot.get();
+        } while (!mSnapshot.compareAndSet(snapshot, snapshot.withSection(mSectionTracker.getAverageSpeed(),
+                mSectionTracker.getDistance(), mSectionTracker.getTimeElapsed())));
+    }
+    //endregion
+
+    /**
+     * Move the state machine to a state, and notify listeners if tracking starts or stops running.
+     *
+     * @return true if the state changed
+     */
+    private boolean moveTo(TrackingState state, String event, Notification notification) {
+        TrackingState previous = mStateMachine.moveTo(state, event);
+        if (previous == null) {
+            return false;
+        }
+        onTransition(previous, state, notification);
+        return true;
+    }
+
+    private void onTransition(TrackingState from, TrackingState to, Notification notification) {
+        if (from.isRunning() != to.isRunning()) {
+            publishTrackingRunning(to.isRunning());
+            notification.setTrackingRunning(to.isRunning());
+        }
+    }
+
+    /**
+     * Run a notification, or recycle it if it has nothing to notify.
+     */
+    private void dispatch(Notification notification) {
+        if (notification.isEmpty()) {
+            mNotificationPool.offer(notification);
+        } else {
+            mNotificationExecutor.execute(notification);
+        }
+    }
+
+    private void updateSpeedActive(boolean active, Notification notification) {
+        publishSpeedActive(active);
+        notification.setSpeedActive(active);
+    }
+
+    private void updateAverageSpeed(Notification notification) {
+        publishSection();
+        notification.setAverageSpeed(convertMsToKmH(mSectionTracker.getAverageSpeed()),
+                mSectionTracker.getDistance(), mSectionTracker.getTimeElapsed());
+    }
+
+    @VisibleForTesting
+    void computeSectionParamsToLocation(Location toLocation) {
+        mSectionTracker.computeSectionTo(toFix(toLocation));
+        Notification notification = obtainNotification();
+        updateAverageSpeed(notification);
+        mNotificationExecutor.execute(notification);
+    }
+
+    private Fix toFix(Location location) {
+        return mFix.set(location.getLatitude(), location.getLongitude(), location.getSpeed(),
+                location.getAccuracy(), location.getElapsedRealtimeNanos())
+                .setHasSpeed(location.hasSpeed());
+    }
+
+    /**
+     * Get the fix processing pipeline, to read the counters of its stages.
+     *
+     * @return the pipeline
+     */
+    public Pipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * Append the location to the current track.
+     */
+    private final Stage mRecordStage = new Stage() {
+        @Override
+        public boolean process(Fix fix) {
+            mTrackBuffer.append(mLocation);
+            return true;
+        }
+    };
+
+    /**
+     * Correct the estimated speed with the speed of the fix.
+     */
+    private final Stage mEstimateStage = new Stage() {
+        @Override
+        public boolean process(Fix fix) {
+            AccelerometerSpeedEstimator estimator = mSpeedEstimator;
+            if (estimator != null) {
+                estimator.onFix(fix.getSpeed(), fix.getElapsedRealtimeNanos());
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Notify listeners about section and speed changes.
+     */
+    private final Stage mDispatchStage = new Stage() {
+        @Override
+        public boolean process(Fix fix) {
+            Notification notification = mBatchNotification != null ? mBatchNotification : obtainNotification();
+            switch (mSectionStage.getLastResult()) {
+                case SectionTracker.SECTION_STARTED:
+                    updateSpeedActive(true, notification);
+                    break;
+                case SectionTracker.SECTION_ENDED:
+                    updateAverageSpeed(notification);
+                    // notify about speed activity change
+                    updateSpeedActive(false, notification);
+                    break;
+            }
+            // First fix, or first fix since provider was lost, or section start or end
+            moveTo(mSectionTracker.isSectionActive() ? TrackingState.ACTIVE_SECTION : TrackingState.TRACKING,
+                    EVENT_FIX, notification);
+            notification.setSpeed(convertMsToKmH(fix.getSpeed()), mLocation);
+            if (notification != mBatchNotification) {
+                mNotificationExecutor.execute(notification);
+            }
+            return true;
+        }
+    };
+
+    private final Runnable mStartRecordingTask = new Runnable() {
+        @Override
+        public void run() {
+            mTrackBuffer.start();
+            mSpeedStage.getEstimator().reset();
+            AccelerometerSpeedEstimator estimator = mSpeedEstimator;
+            if (estimator != null) {
+                estimator.reset();
+            }
+        }
+    };
+
+    private final Runnable mStopRecordingTask = new Runnable() {
+        @Override
+        public void run() {
+            mTrackBuffer.stop();
+            File reportFile = mReportFile;
+            if (reportFile != null) {
+                writeReport(reportFile);
+            }
+        }
+    };
+
+    //region Speed estimation
+    /**
+     * Notifies the estimated speed on each frame while tracking
+     */
+    private final Choreographer.FrameCallback mSpeedFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mFrameLoopRunning) {
+                onSpeedFrame();
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    private void startSpeedEstimation() {
+        AccelerometerSpeedEstimator estimator = mSpeedEstimator;
+        if (estimator == null) {
+            return;
+        }
+        estimator.start(mProcessingHandler);
+        mHasEstimateLocation = false;
+        mFrameLoopRunning = true;
+        Choreographer.getInstance().postFrameCallback(mSpeedFrameCallback);
+    }
+
+    private void stopSpeedEstimation() {
+        AccelerometerSpeedEstimator estimator = mSpeedEstimator;
+        if (estimator != null) {
+            estimator.stop();
+        }
+        if (mFrameLoopRunning) {
+            mFrameLoopRunning = false;
+            Choreographer.getInstance().removeFrameCallback(mSpeedFrameCallback);
+        }
+    }
+
+    /**
+     * Notify listeners about the estimated speed if its value in km/h changed since the last speed
+     * notified. Nothing is notified before the first fix.
+     */
+    @VisibleForTesting
+    void onSpeedFrame() {
+        AccelerometerSpeedEstimator estimator = mSpeedEstimator;
+        if (estimator == null || !mHasEstimateLocation) {
+            return;
+        }
+        int speed = convertMsToKmH(estimator.getSpeed());
+        if (speed != mLastNotifiedSpeed) {
+            mLastNotifiedSpeed = speed;
+            notifyOnSpeedChanged(speed, mEstimateLocation);
+        }
+    }
+
+    /**
+     * Remember the speed notified for a fix, the next frames notify the estimated speed from it.
+     */
+    private void onFixSpeedNotified(int speed, Location location) {
+        if (mFrameLoopRunning) {
+            mLastNotifiedSpeed = speed;
+            copyLocation(location, mEstimateLocation);
+            mHasEstimateLocation = true;
+        }
+    }
+    //endregion
+
+    private Notification obtainNotification() {
+        Notification notification = mNotificationPool.poll();
+        return notification != null ? notification : new Notification();
     }
 
     /**
@@ -117,6 +629,93 @@ public class GpsLocationProvider extends LocationProvider implements LocationLis
         return Math.round(value * FACTOR_M_PER_S_TO_KM_PER_H);
     }
 
+    /**
+     * Copy the values of a location used by listeners. Extras are not copied, so that copying
+     * doesn't allocate a {@link Bundle}.
+     */
+    private static void copyLocation(Location from, Location to) {
+        to.reset();
+        to.setProvider(from.getProvider());
+        to.setTime(from.getTime());
+        to.setElapsedRealtimeNanos(from.getElapsedRealtimeNanos());
+        to.setLatitude(from.getLatitude());
+        to.setLongitude(from.getLongitude());
+        if (from.hasAltitude()) {
+            to.setAltitude(from.getAltitude());
+        }
+        if (from.hasSpeed()) {
+            to.setSpeed(from.getSpeed());
+        }
+        if (from.hasBearing()) {
+            to.setBearing(from.getBearing());
+        }
+        if (from.hasAccuracy()) {
+            to.setAccuracy(from.getAccuracy());
+        }
+    }
+
+    /**
+     * Listener notifications for a fix or a provider event, filled on the processing thread and
+     * run by the notification executor. Notifications are recycled once run.
+     */
+    private class Notification implements Runnable {
+
+        private int mFlags;
+        private boolean mTrackingRunning;
+        private boolean mSpeedActive;
+        private int mAverageSpeed;
+        private float mDistance;
+        private int mTimeElapsed;
+        private int mSpeed;
+        private final Location mLocation = new Location(LocationManager.GPS_PROVIDER);
+
+        boolean isEmpty() {
+            return mFlags == 0;
+        }
+
+        void setTrackingRunning(boolean running) {
+            mFlags |= NOTIFY_STATE;
+            mTrackingRunning = running;
+        }
+
+        void setSpeedActive(boolean active) {
+            mFlags |= NOTIFY_SPEED_ACTIVITY;
+            mSpeedActive = active;
+        }
+
+        void setAverageSpeed(int averageSpeed, float distance, int timeElapsed) {
+            mFlags |= NOTIFY_AVERAGE_SPEED;
+            mAverageSpeed = averageSpeed;
+            mDistance = distance;
+            mTimeElapsed = timeElapsed;
+        }
+
+        void setSpeed(int speed, Location location) {
+            mFlags |= NOTIFY_SPEED;
+            mSpeed = speed;
+            copyLocation(location, mLocation);
+        }
+
+        @Override
+        public void run() {
+            if ((mFlags & NOTIFY_AVERAGE_SPEED) != 0) {
+                notifyOnAverageSpeedChanged(mAverageSpeed, mDistance, mTimeElapsed);
+            }
+            if ((mFlags & NOTIFY_STATE) != 0) {
+                notifyOnStateChanged(mTrackingRunning);
+            }
+            if ((mFlags & NOTIFY_SPEED_ACTIVITY) != 0) {
+                notifyOnSpeedActivityChanged(mSpeedActive);
+            }
+            if ((mFlags & NOTIFY_SPEED) != 0) {
+                notifyOnSpeedChanged(mSpeed, mLocation);
+                onFixSpeedNotified(mSpeed, mLocation);
+            }
+            mFlags = 0;
+            mNotificationPool.offer(this);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Interface implementation
     ///////////////////////////////////////////////////////////////////////////
@@ -129,7 +728,7 @@ public class GpsLocationProvider extends LocationProvider implements LocationLis
 
     @Override
     public boolean isTrackingRunning() {
-        return mTrackingRunning;
+        return mSnapshot.get().isTrackingRunning();
     }
 
     @Override
@@ -137,24 +736,39 @@ public class GpsLocationProvider extends LocationProvider implements LocationLis
         if (!isTrackingReady()) {
             return;
         }
-        mLocationCallback.startTracking(this);
-        updateTrackingState(true);
+        Notification notification = obtainNotification();
+        if (mStateMachine.moveFrom(TrackingState.IDLE, TrackingState.WAITING_FOR_FIX, EVENT_START)) {
+            runOnProcessingThread(mStartRecordingTask);
+            mLocationCallback.startTracking(this, mProcessingLooper);
+            startSpeedEstimation();
+            onTransition(TrackingState.IDLE, TrackingState.WAITING_FOR_FIX, notification);
+        } else if (mStateMachine.moveFrom(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, EVENT_START)) {
+            // Tracking goes on in the same record, only location updates are requested again
+            mLocationCallback.startTracking(this, mProcessingLooper);
+            onTransition(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, notification);
+        }
+        dispatch(notification);
     }
 
     @Override
     public void stopTracking() {
         mLocationCallback.stopTracking(this);
-        updateTrackingState(false);
+        stopSpeedEstimation();
+        // Fixes already queued are processed before recording stops
+        runOnProcessingThread(mStopRecordingTask);
+        Notification notification = obtainNotification();
+        moveTo(TrackingState.IDLE, EVENT_STOP, notification);
+        dispatch(notification);
     }
 
     @Override
     public boolean isSpeedActive() {
-        return mSpeedActive;
+        return mSnapshot.get().isSpeedActive();
     }
 
     @Override
     public float getAverageSpeedHistory() {
-        return convertMsToKmH(mAverageSpeed);
+        return convertMsToKmH(mSnapshot.get().getAverageSpeed());
     }
     //endregion
 
@@ -162,40 +776,43 @@ public class GpsLocationProvider extends LocationProvider implements LocationLis
     @Override
     public void onLocationChanged(Location location) {
 //        Log.d(TAG, "onLocationChanged: " + location);
-        mLastLocation.set(location);
-        if (location.getSpeed() >= MIN_SPEED_RUNNING && mStartLocation.getSpeed() == 0) {
-            // Starting point for tracking
-            mStartLocation.set(location);
-            updateSpeedActive(true);
-        } else if (location.getSpeed() < MIN_SPEED_RUNNING && mStartLocation.getSpeed() > 0) {
-            // Ending point for tracking
-            // compute distance and elapsed time
-            computeSectionParamsToLocation(location);
-            // Reset stored location to be ready for next record
-            resetLocations();
-            // notify about speed activity change
-            updateSpeedActive(false);
-        }
-        updateLocationSpeed(location.getSpeed(), location);
+        if (mLatencyMonitor != null) {
+            mLatencyMonitor.onFixProcessed(location.getElapsedRealtimeNanos(), SystemClock.elapsedRealtimeNanos());
+        }
+        mLocation = location;
+        mPipeline.process(toFix(location));
+        mLocation = null;
+    }
+
+    @Override
+    public void onLocationsChanged(List<Location> locations) {
+        mBatchNotification = obtainNotification();
+        for (int i = 0, size = locations.size(); i < size; i++) {
+            onLocationChanged(locations.get(i));
+        }
+        Notification notification = mBatchNotification;
+        mBatchNotification = null;
+        dispatch(notification);
     }
 
     @Override
     public void onProviderDisabled(String provider) {
 //        Log.d(TAG, "onProviderDisabled: " + provider);
-        // When provider is disabled, record stopped
-        // Compute section params according to the last known location
-        computeSectionParamsToLocation(mLastLocation);
-        // Reset locations
-        resetLocations();
-        // Update and notify about state's changes
-        updateTrackingState(false);
-        updateSpeedActive(false);
+        Notification notification = obtainNotification();
+        // When provider is disabled, the active section ends at its last fix
+        if (mSectionTracker.isSectionActive()) {
+            mSectionTracker.endSection();
+            updateAverageSpeed(notification);
+            updateSpeedActive(false, notification);
+        }
+        moveTo(TrackingState.PROVIDER_LOST, EVENT_PROVIDER_DISABLED, notification);
+        dispatch(notification);
     }
 
     @Override
     public void onProviderEnabled(String provider) {
 //        Log.d(TAG, "onProviderEnabled: " + provider);
-        updateTrackingState(true);
+        onProviderAvailable(EVENT_PROVIDER_ENABLED);
     }
 
     @Override
@@ -203,10 +820,24 @@ public class GpsLocationProvider extends LocationProvider implements LocationLis
         Log.d(TAG, "onStatusChanged: " + provider + ", status = " + status);
         switch (status) {
             case android.location.LocationProvider.AVAILABLE:
-                updateTrackingState(true);
+                onProviderAvailable(EVENT_PROVIDER_AVAILABLE);
                 break;
             default:
-                updateTrackingState(false);
+                // The active section goes on, next fixes tell whether it ends
+                Notification notification = obtainNotification();
+                moveTo(TrackingState.PROVIDER_LOST, EVENT_PROVIDER_UNAVAILABLE, notification);
+                dispatch(notification);
+        }
+    }
+
+    /**
+     * Wait for a fix again if the provider was lost. Nothing happens when tracking isn't started.
+     */
+    private void onProviderAvailable(String event) {
+        if (mStateMachine.moveFrom(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, event)) {
+            Notification notification = obtainNotification();
+            onTransition(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, notification);
+            dispatch(notification);
         }
     }
     //endregion
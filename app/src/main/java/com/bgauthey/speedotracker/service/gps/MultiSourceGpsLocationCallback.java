@@ -0,0 +1,199 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.bgauthey.speedotracker.engine.Fix;
+import com.bgauthey.speedotracker.engine.FixFusion;
+import com.bgauthey.speedotracker.util.PermissionUtils;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link GpsLocationCallback} using the GPS, network and passive providers of the system
+ * {@link LocationManager} at the same time, merged into one ordered stream by a {@link FixFusion}.
+ * <p>
+ * Network fixes come faster than the first GPS fix and fill the gaps of GPS fixes in tunnels or
+ * between buildings; accurate GPS fixes are kept as soon as they come back. The passive provider
+ * brings the fixes requested by other applications at no cost.
+ * <p>
+ * Provider events are merged too: the listener is told that the provider is disabled, or
+ * unavailable, only when both GPS and network are, so that losing the GPS alone doesn't end the
+ * active section.
+ */
+public class MultiSourceGpsLocationCallback implements GpsLocationCallback {
+
+    private static final String TAG = MultiSourceGpsLocationCallback.class.getSimpleName();
+
+    /**
+     * Providers requested, the passive one doesn't have a state of its own
+     */
+    private static final String[] PROVIDERS = {LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER,
+            LocationManager.PASSIVE_PROVIDER};
+    /**
+     * Minimum time interval to update the location (in milliseconds)
+     */
+    private static final long MIN_INTERVAL_TIME = 500L;
+    /**
+     * Minimum distance interval to update the location (in meters)
+     */
+    private static final float MIN_INTERVAL_DISTANCE = 0f;
+
+    private final Context mContext;
+    private final LocationManager mLocationManager;
+    private FusingListener mFusingListener;
+    /**
+     * Fusion of the last tracking session, kept for {@link #dump(PrintWriter)}
+     */
+    private FixFusion mLastFusion;
+
+    public MultiSourceGpsLocationCallback(Context context) {
+        mContext = context;
+        mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    @Override
+    public boolean isTrackingReady() {
+        return PermissionUtils.isLocationPermissionGranted(mContext)
+                && (isProviderEnabled(LocationManager.GPS_PROVIDER) || isProviderEnabled(LocationManager.NETWORK_PROVIDER));
+    }
+
+    @Override
+    public synchronized void startTracking(LocationListener listener, Looper looper) {
+        stopTracking(listener);
+        mFusingListener = new FusingListener(listener, isProviderEnabled(LocationManager.GPS_PROVIDER),
+                isProviderEnabled(LocationManager.NETWORK_PROVIDER));
+        for (String provider : PROVIDERS) {
+            try {
+                requestUpdates(provider, mFusingListener, looper);
+            } catch (IllegalArgumentException e) {
+                // Provider not available on this device
+                Log.w(TAG, "Can't use provider " + provider, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stopTracking(LocationListener listener) {
+        if (mFusingListener != null && mFusingListener.mListener == listener) {
+            removeUpdates(mFusingListener);
+            mLastFusion = mFusingListener.mFusion;
+            mFusingListener = null;
+        }
+    }
+
+    @Override
+    public synchronized void dump(PrintWriter writer) {
+        FixFusion fusion = mFusingListener != null ? mFusingListener.mFusion : mLastFusion;
+        if (fusion != null) {
+            writer.println("Fixes kept: " + fusion.getKeptCount() + ", dropped: " + fusion.getDroppedCount());
+        }
+    }
+
+    @VisibleForTesting
+    boolean isProviderEnabled(String provider) {
+        return mLocationManager.isProviderEnabled(provider);
+    }
+
+    @SuppressLint("MissingPermission")
+    @VisibleForTesting
+    void requestUpdates(String provider, LocationListener listener, Looper looper) {
+        mLocationManager.requestLocationUpdates(provider, MIN_INTERVAL_TIME, MIN_INTERVAL_DISTANCE, listener, looper);
+    }
+
+    @VisibleForTesting
+    void removeUpdates(LocationListener listener) {
+        mLocationManager.removeUpdates(listener);
+    }
+
+    /**
+     * Receives the fixes and events of all providers, and forwards the merged ones to the listener
+     * of the tracking session. Called on a single thread.
+     */
+    private static class FusingListener implements LocationListener {
+
+        private final LocationListener mListener;
+        private final FixFusion mFusion = new FixFusion();
+        private final Fix mFix = new Fix();
+        private boolean mGpsEnabled;
+        private boolean mNetworkEnabled;
+        private boolean mGpsAvailable = true;
+        private boolean mNetworkAvailable = true;
+
+        FusingListener(LocationListener listener, boolean gpsEnabled, boolean networkEnabled) {
+            mListener = listener;
+            mGpsEnabled = gpsEnabled;
+            mNetworkEnabled = networkEnabled;
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mFix.set(location.getLatitude(), location.getLongitude(), location.getSpeed(),
+                    location.getAccuracy(), location.getElapsedRealtimeNanos());
+            if (!mFusion.onFix(mFix, location.hasSpeed())) {
+                return;
+            }
+            // A fix without speed is forwarded as is: the speed stage of the provider derives its
+            // speed, rather than taking an estimate for a Doppler measurement
+            mListener.onLocationChanged(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+            boolean wasAvailable = isAvailable();
+            boolean available = status == android.location.LocationProvider.AVAILABLE;
+            if (LocationManager.GPS_PROVIDER.equals(provider)) {
+                mGpsAvailable = available;
+            } else if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+                mNetworkAvailable = available;
+            } else {
+                return;
+            }
+            if (isAvailable() != wasAvailable) {
+                mListener.onStatusChanged(provider, status, extras);
+            }
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+            if (setEnabled(provider, true)) {
+                mListener.onProviderEnabled(provider);
+            }
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            if (setEnabled(provider, false)) {
+                mListener.onProviderDisabled(provider);
+            }
+        }
+
+        /**
+         * @return true if a provider is enabled since, or no more enabled since, this change
+         */
+        private boolean setEnabled(String provider, boolean enabled) {
+            boolean wasEnabled = isEnabled();
+            if (LocationManager.GPS_PROVIDER.equals(provider)) {
+                mGpsEnabled = enabled;
+            } else if (LocationManager.NETWORK_PROVIDER.equals(provider)) {
+                mNetworkEnabled = enabled;
+            }
+            return isEnabled() != wasEnabled;
+        }
+
+        private boolean isEnabled() {
+            return mGpsEnabled || mNetworkEnabled;
+        }
+
+        private boolean isAvailable() {
+            return (mGpsEnabled && mGpsAvailable) || (mNetworkEnabled && mNetworkAvailable);
+        }
+    }
+}
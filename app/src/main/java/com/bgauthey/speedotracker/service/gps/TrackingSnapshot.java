@@ -0,0 +1,74 @@
+package com.bgauthey.speedotracker.service.gps;
+
+/**
+ * Immutable state of a {@link GpsLocationProvider}, published as a whole so that it can be read
+ * from any thread without locking.
+ */
+public final class TrackingSnapshot {
+
+    static final TrackingSnapshot INITIAL = new TrackingSnapshot(false, false, 0f, 0f, 0);
+
+    private final boolean mTrackingRunning;
+    private final boolean mSpeedActive;
+    private final float mAverageSpeed;
+    private final float mDistance;
+    private final int mTimeElapsed;
+
+    private TrackingSnapshot(boolean trackingRunning, boolean speedActive, float averageSpeed, float distance, int timeElapsed) {
+        mTrackingRunning = trackingRunning;
+        mSpeedActive = speedActive;
+        mAverageSpeed = averageSpeed;
+        mDistance = distance;
+        mTimeElapsed = timeElapsed;
+    }
+
+    TrackingSnapshot withTrackingRunning(boolean trackingRunning) {
+        if (trackingRunning == mTrackingRunning) {
+            return this;
+        }
+        return new TrackingSnapshot(trackingRunning, mSpeedActive, mAverageSpeed, mDistance, mTimeElapsed);
+    }
+
+    TrackingSnapshot withSpeedActive(boolean speedActive) {
+        if (speedActive == mSpeedActive) {
+            return this;
+        }
+        return new TrackingSnapshot(mTrackingRunning, speedActive, mAverageSpeed, mDistance, mTimeElapsed);
+    }
+
+    TrackingSnapshot withSection(float averageSpeed, float distance, int timeElapsed) {
+        return new TrackingSnapshot(mTrackingRunning, mSpeedActive, averageSpeed, distance, timeElapsed);
+    }
+
+    public boolean isTrackingRunning() {
+        return mTrackingRunning;
+    }
+
+    /**
+     * @return true while a section is active
+     */
+    public boolean isSpeedActive() {
+        return mSpeedActive;
+    }
+
+    /**
+     * @return average speed of the last section (in m/s)
+     */
+    public float getAverageSpeed() {
+        return mAverageSpeed;
+    }
+
+    /**
+     * @return distance of the last section (in meters)
+     */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * @return elapsed time of the last section (in seconds)
+     */
+    public int getTimeElapsed() {
+        return mTimeElapsed;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bgauthey.speedotracker.service.gps;
+
+/**
+ * States of the tracking of a {@link GpsLocationProvider}, see {@link TrackingStateMachine}.
+ */
+public enum TrackingState {
+
+    /**
+     * Tracking not started, or stopped
+     */
+    IDLE,
+    /**
+     * Tracking started, or the provider is available again, and no fix received yet
+     */
+    WAITING_FOR_FIX,
+    /**
+     * Fixes received, no section active
+     */
+    TRACKING,
+    /**
+     * Fixes received and a section active
+     */
+    ACTIVE_SECTION,
+    /**
+     * Tracking started but the location provider is disabled or unavailable
+     */
+    PROVIDER_LOST;
+
+    /**
+     * @return true if tracking is running in this state, as notified to listeners
+     */
+    public boolean isRunning() {
+        return this == WAITING_FOR_FIX || this == TRACKING || this == ACTIVE_SECTION;
+    }
+
+    /**
+     * @param to a state
+     * @return true if the machine can go from this state to the given one
+     */
+    boolean canMoveTo(TrackingState to) {
+        switch (this) {
+            case IDLE:
+                return to == WAITING_FOR_FIX;
+            case WAITING_FOR_FIX:
+            case PROVIDER_LOST:
+                return to != this;
+            case TRACKING:
+                return to == ACTIVE_SECTION || to == PROVIDER_LOST || to == IDLE;
+            case ACTIVE_SECTION:
+                return to == TRACKING || to == PROVIDER_LOST || to == IDLE;
+            default:
+                return false;
+        }
+    }
+}
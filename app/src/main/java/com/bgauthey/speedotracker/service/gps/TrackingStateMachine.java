@@ -0,0 +1,152 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracking state of a {@link GpsLocationProvider}. Events only lead to the transitions allowed by
+ * {@link TrackingState#canMoveTo(TrackingState)}: an event leaving the state unchanged, such as a
+ * location provider reporting the same status again, isn't a transition and mustn't be notified.
+ * <p>
+ * The last transitions are kept in a bounded log for diagnostics. The state can be read from any
+ * thread, transitions are serialized.
+ */
+public class TrackingStateMachine {
+
+    /**
+     * Default number of transitions kept in the log
+     */
+    public static final int DEFAULT_LOG_CAPACITY = 32;
+
+    private volatile TrackingState mState = TrackingState.IDLE;
+    private final int mLogCapacity;
+    private final ArrayDeque<Transition> mLog;
+    private long mTransitionCount;
+
+    public TrackingStateMachine() {
+        this(DEFAULT_LOG_CAPACITY);
+    }
+
+    /**
+     * @param logCapacity number of transitions kept in the log
+     */
+    public TrackingStateMachine(int logCapacity) {
+        mLogCapacity = logCapacity;
+        mLog = new ArrayDeque<>(logCapacity);
+    }
+
+    public TrackingState getState() {
+        return mState;
+    }
+
+    /**
+     * Move to a state if the transition is allowed.
+     *
+     * @param to    the new state
+     * @param event the event causing the transition, for the log
+     * @return the previous state, null if the state didn't change
+     */
+    @Nullable
+    public synchronized TrackingState moveTo(TrackingState to, String event) {
+        TrackingState from = mState;
+        if (!from.canMoveTo(to)) {
+            return null;
+        }
+        record(from, to, event);
+        return from;
+    }
+
+    /**
+     * Move to a state only from a given state, if the transition is allowed.
+     *
+     * @param from  the state the machine must be in
+     * @param to    the new state
+     * @param event the event causing the transition, for the log
+     * @return true if the state changed
+     */
+    public synchronized boolean moveFrom(TrackingState from, TrackingState to, String event) {
+        if (mState != from || !from.canMoveTo(to)) {
+            return false;
+        }
+        record(from, to, event);
+        return true;
+    }
+
+    private void record(TrackingState from, TrackingState to, String event) {
+        mState = to;
+        mTransitionCount++;
+        if (mLog.size() == mLogCapacity) {
+            mLog.removeFirst();
+        }
+        mLog.addLast(new Transition(from, to, event, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return number of transitions since creation, including the ones no longer logged
+     */
+    public synchronized long getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * @return the last transitions, oldest first
+     */
+    public synchronized List<Transition> getTransitions() {
+        return new ArrayList<>(mLog);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("TrackingStateMachine{state=").append(mState)
+                .append(", transitions=").append(mTransitionCount);
+        for (Transition transition : mLog) {
+            builder.append("\n  ").append(transition);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * A transition of the log.
+     */
+    public static final class Transition {
+
+        private final TrackingState mFrom;
+        private final TrackingState mTo;
+        private final String mEvent;
+        private final long mTimeMillis;
+
+        Transition(TrackingState from, TrackingState to, String event, long timeMillis) {
+            mFrom = from;
+            mTo = to;
+            mEvent = event;
+            mTimeMillis = timeMillis;
+        }
+
+        public TrackingState getFrom() {
+            return mFrom;
+        }
+
+        public TrackingState getTo() {
+            return mTo;
+        }
+
+        public String getEvent() {
+            return mEvent;
+        }
+
+        /**
+         * @return wall clock time of the transition (in milliseconds)
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return mTimeMillis + " " + mFrom + " -> " + mTo + " (" + mEvent + ")";
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.bgauthey.speedotracker.service.replay;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.bgauthey.speedotracker.service.gps.GpsLocationCallback;
+import com.bgauthey.speedotracker.service.gps.GpsLocationProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * A {@link GpsLocationCallback} replaying a recorded trip instead of using the system location
+ * manager. Used with a {@link GpsLocationProvider}, recorded fixes go through the real section and
+ * average speed logic.
+ * <p>
+ * Fixes keep their recorded timestamps whatever the playback speed is, so results only depend on
+ * the trace: a trip replayed {@link #PLAYBACK_AS_FAST_AS_POSSIBLE as fast as possible} gives the
+ * same sections as a trip replayed in {@link #PLAYBACK_REAL_TIME real time}.
+ * <p>
+ * Fixes are replayed on the thread of the looper given when tracking starts, tracking can be
+ * stopped from any thread.
+ */
+public class TraceReplayGpsLocationCallback implements GpsLocationCallback {
+
+    private static final String TAG = TraceReplayGpsLocationCallback.class.getSimpleName();
+
+    /**
+     * Playback speed replaying fixes at the pace they were recorded
+     */
+    public static final float PLAYBACK_REAL_TIME = 1f;
+    /**
+     * Playback speed replaying fixes without waiting between them
+     */
+    public static final float PLAYBACK_AS_FAST_AS_POSSIBLE = Float.POSITIVE_INFINITY;
+
+    /**
+     * Number of fixes replayed per message when playing as fast as possible, to let other messages
+     * (such as UI ones) be handled between them
+     */
+    private static final int FIXES_PER_BATCH = 200;
+
+    private final File mTrace;
+    private final float mPlaybackSpeed;
+    /**
+     * Replay in progress, null when tracking is stopped
+     */
+    private volatile Replay mReplay;
+    /**
+     * Number of fixes replayed by the last replay, once stopped
+     */
+    private volatile long mLastReplayedCount;
+    /**
+     * Whether the last replay reached the end of the trace, once stopped
+     */
+    private volatile boolean mLastReplayEnded;
+
+    /**
+     * Create a callback replaying fixes on the thread given when tracking starts.
+     *
+     * @param trace         the trip file to replay
+     * @param playbackSpeed {@link #PLAYBACK_REAL_TIME}, a factor greater than 1 to replay N times
+     *                      faster, or {@link #PLAYBACK_AS_FAST_AS_POSSIBLE}
+     */
+    public TraceReplayGpsLocationCallback(File trace, float playbackSpeed) {
+        if (!(playbackSpeed > 0)) {
+            throw new IllegalArgumentException("Playback speed must be positive: " + playbackSpeed);
+        }
+        mTrace = trace;
+        mPlaybackSpeed = playbackSpeed;
+    }
+
+    @Override
+    public boolean isTrackingReady() {
+        return mTrace.canRead();
+    }
+
+    @Override
+    public void startTracking(LocationListener listener, Looper looper) {
+        stopTracking(listener);
+        Handler handler = new Handler(looper != null ? looper : Looper.myLooper());
+        TraceReplayer replayer;
+        try {
+            replayer = new TraceReplayer(mTrace);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to replay " + mTrace, e);
+            return;
+        }
+        Replay replay = new Replay(handler, replayer, listener);
+        mReplay = replay;
+        handler.post(replay);
+    }
+
+    /**
+     * Stop the replay. Can be called from any thread: the trace is closed on the replay thread,
+     * once the fix being replayed, if any, is delivered.
+     */
+    @Override
+    public void stopTracking(LocationListener listener) {
+        Replay replay = mReplay;
+        if (replay != null) {
+            mReplay = null;
+            replay.stop();
+            mLastReplayedCount = replay.mReplayedCount;
+            mLastReplayEnded = replay.mEnded;
+        }
+    }
+
+    @Override
+    public void dump(PrintWriter writer) {
+        Replay replay = mReplay;
+        long replayedCount = replay != null ? replay.mReplayedCount : mLastReplayedCount;
+        boolean ended = replay != null ? replay.mEnded : mLastReplayEnded;
+        writer.println("Fixes replayed: " + replayedCount + " from " + mTrace + (ended ? " (end of trace)" : ""));
+    }
+
+    /**
+     * @return number of fixes replayed since tracking started
+     */
+    public long getReplayedCount() {
+        Replay replay = mReplay;
+        return replay == null ? 0 : replay.mReplayedCount;
+    }
+
+    /**
+     * Replays a trace on the thread of its handler, from the time tracking starts until it stops.
+     * Fixes are read and the trace is closed on this thread only.
+     */
+    private final class Replay implements Runnable {
+
+        private final Handler mHandler;
+        private final TraceReplayer mReplayer;
+        private final LocationListener mListener;
+        /**
+         * Uptime (in milliseconds) when the first fix has been replayed
+         */
+        private long mStartUptimeMillis;
+        /**
+         * Elapsed realtime (in nanoseconds) of the first fix of the trace
+         */
+        private long mStartElapsedRealtimeNanos = -1;
+        private volatile boolean mStopped;
+        private volatile long mReplayedCount;
+        private volatile boolean mEnded;
+
+        private final Runnable mCloseTask = new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+
+        Replay(Handler handler, TraceReplayer replayer, LocationListener listener) {
+            mHandler = handler;
+            mReplayer = replayer;
+            mListener = listener;
+        }
+
+        void stop() {
+            mStopped = true;
+            mHandler.removeCallbacks(this);
+            if (!mHandler.post(mCloseTask)) {
+                // Replay thread already stopped
+                close();
+            }
+        }
+
+        /**
+         * Replay all the fixes that are due, then schedule itself for the next one.
+         */
+        @Override
+        public void run() {
+            try {
+                int replayed = 0;
+                long nextTime;
+                while (!mStopped && (nextTime = mReplayer.peekElapsedRealtimeNanos()) >= 0) {
+                    if (mStartElapsedRealtimeNanos < 0) {
+                        mStartElapsedRealtimeNanos = nextTime;
+                        mStartUptimeMillis = SystemClock.uptimeMillis();
+                    }
+                    long dueUptimeMillis = getDueUptimeMillis(nextTime);
+                    if (dueUptimeMillis > SystemClock.uptimeMillis() || replayed == FIXES_PER_BATCH) {
+                        mHandler.postAtTime(this, dueUptimeMillis);
+                        return;
+                    }
+                    Location location = mReplayer.next();
+                    mReplayedCount = mReplayer.getReplayedCount();
+                    mListener.onLocationChanged(location);
+                    replayed++;
+                }
+                mEnded = !mStopped;
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to replay " + mTrace, e);
+            }
+        }
+
+        private long getDueUptimeMillis(long elapsedRealtimeNanos) {
+            if (mPlaybackSpeed == PLAYBACK_AS_FAST_AS_POSSIBLE) {
+                return mStartUptimeMillis;
+            }
+            long traceMillis = (elapsedRealtimeNanos - mStartElapsedRealtimeNanos) / 1_000_000L;
+            return mStartUptimeMillis + (long) (traceMillis / mPlaybackSpeed);
+        }
+
+        private void close() {
+            try {
+                mReplayer.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close " + mTrace, e);
+            }
+        }
+    }
+}
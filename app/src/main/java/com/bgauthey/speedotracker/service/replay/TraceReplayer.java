@@ -0,0 +1,120 @@
+package com.bgauthey.speedotracker.service.replay;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+
+import com.bgauthey.speedotracker.service.track.TrackChunk;
+import com.bgauthey.speedotracker.service.track.TripReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the fixes of a recorded trip (see {@link TripReader}) one after the other as {@link Location}s.
+ * <p>
+ * Fixes keep their recorded timestamps: elapsed realtime as recorded and wall clock time rebuilt
+ * from the trip time anchor. The same {@link Location} instance is filled for every fix, so
+ * reading a trace doesn't allocate once the first block is decoded.
+ */
+public class TraceReplayer implements Closeable {
+
+    private final TripReader mReader;
+    private final TrackChunk mChunk;
+    private final Location mLocation = new Location(LocationManager.GPS_PROVIDER);
+    private int mBlock;
+    private int mIndexInBlock;
+    private long mReplayedCount;
+
+    public TraceReplayer(File trace) throws IOException {
+        mReader = new TripReader(trace);
+        mChunk = new TrackChunk(mReader.getBlockCapacity());
+    }
+
+    /**
+     * @return total number of fixes of the trace
+     */
+    public long getFixCount() {
+        return mReader.getFixCount();
+    }
+
+    /**
+     * @return number of fixes already read
+     */
+    public long getReplayedCount() {
+        return mReplayedCount;
+    }
+
+    public boolean hasNext() {
+        return mIndexInBlock < mChunk.getSize() || mBlock < mReader.getBlockCount();
+    }
+
+    /**
+     * Read the next fix.
+     * <p>
+     * The returned instance is reused by the next call: listeners must copy it to keep it.
+     *
+     * @return the next fix, null at the end of the trace
+     */
+    public Location next() throws IOException {
+        if (mIndexInBlock >= mChunk.getSize()) {
+            if (mBlock >= mReader.getBlockCount()) {
+                return null;
+            }
+            mReader.readBlock(mBlock++, mChunk);
+            mIndexInBlock = 0;
+        }
+        int i = mIndexInBlock++;
+        long elapsedRealtimeNanos = mChunk.getElapsedRealtimeNanos(i);
+        mLocation.reset();
+        mLocation.setProvider(LocationManager.GPS_PROVIDER);
+        mLocation.setLatitude(mChunk.getLatitude(i));
+        mLocation.setLongitude(mChunk.getLongitude(i));
+        if (mChunk.hasSpeed(i)) {
+            mLocation.setSpeed(mChunk.getSpeed(i));
+        }
+        mLocation.setAccuracy(mChunk.getAccuracy(i));
+        mLocation.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+        mLocation.setTime(mReader.toTimeMillis(elapsedRealtimeNanos));
+        mReplayedCount++;
+        return mLocation;
+    }
+
+    /**
+     * Peek the elapsed realtime of the next fix without consuming it.
+     *
+     * @return elapsed realtime of the next fix (in nanoseconds), -1 at the end of the trace
+     */
+    public long peekElapsedRealtimeNanos() throws IOException {
+        if (mIndexInBlock >= mChunk.getSize()) {
+            if (mBlock >= mReader.getBlockCount()) {
+                return -1;
+            }
+            mReader.readBlock(mBlock++, mChunk);
+            mIndexInBlock = 0;
+        }
+        return mChunk.getElapsedRealtimeNanos(mIndexInBlock);
+    }
+
+    /**
+     * Send all remaining fixes to a listener, on the calling thread and without waiting between fixes.
+     *
+     * @param listener the listener receiving fixes
+     * @return number of fixes sent
+     */
+    public long replayAll(LocationListener listener) throws IOException {
+        long count = 0;
+        Location location;
+        while ((location = next()) != null) {
+            listener.onLocationChanged(location);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.bgauthey.speedotracker.service.sampling;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.bgauthey.speedotracker.Constants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link SamplingPolicy} adapting the rate to the speed:
+ * <ul>
+ * <li>{@link #STATIONARY}: once stopped for {@link #STATIONARY_DELAY_NANOS} outside of a section,
+ * one fix every few seconds is enough to see the device moving again. Fixes closer than
+ * {@link #STATIONARY_MIN_DISTANCE_METERS} to the last one aren't delivered either: the position of
+ * a parked device only drifts</li>
+ * <li>{@link #CRUISING}: while moving, or stopped for a short time, or in a section</li>
+ * <li>{@link #FAST}: at highway speed, where a fix every {@link #CRUISING} interval covers tens of
+ * meters</li>
+ * </ul>
+ * Rates change with hysteresis: the fast rate is entered and left at different speeds, and apart
+ * from leaving the stationary rate, which must react at once, the rate changes at most once every
+ * {@link #MIN_CHANGE_INTERVAL_NANOS}. Each change registers for location updates again, it mustn't
+ * happen on every fix of a speed jittering around a threshold.
+ * <p>
+ * Moving rates don't filter fixes by distance: speeds and sections need every fix, even at walking
+ * pace or slowing down for a stop, where a few meters between fixes are meaningful.
+ */
+public class AdaptiveSamplingPolicy implements SamplingPolicy {
+
+    private static final float FACTOR_KM_PER_H_TO_M_PER_S = 1 / 3.6f;
+
+    /**
+     * Larger than the drift of GPS positions of a parked device (in meters)
+     */
+    @VisibleForTesting
+    static final float STATIONARY_MIN_DISTANCE_METERS = 10f;
+
+    @VisibleForTesting
+    static final SamplingRate STATIONARY = new SamplingRate(5000L, STATIONARY_MIN_DISTANCE_METERS);
+    @VisibleForTesting
+    static final SamplingRate CRUISING = new SamplingRate(500L, 0f);
+    @VisibleForTesting
+    static final SamplingRate FAST = new SamplingRate(200L, 0f);
+
+    /**
+     * Speed under which the device is stationary (in m/s)
+     */
+    @VisibleForTesting
+    static final float MAX_SPEED_STATIONARY = Constants.MAXIMUM_SPEED_STOPPED_KM_PER_H * FACTOR_KM_PER_H_TO_M_PER_S;
+    /**
+     * Speed from which the fast rate is requested (in m/s)
+     */
+    @VisibleForTesting
+    static final float FAST_ENTER_SPEED = 80 * FACTOR_KM_PER_H_TO_M_PER_S;
+    /**
+     * Speed under which the fast rate is left (in m/s)
+     */
+    @VisibleForTesting
+    static final float FAST_EXIT_SPEED = 65 * FACTOR_KM_PER_H_TO_M_PER_S;
+    @VisibleForTesting
+    static final long STATIONARY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    @VisibleForTesting
+    static final long MIN_CHANGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    private static final long NONE = -1L;
+
+    private SamplingRate mRate;
+    private long mStationarySinceNanos;
+    private long mLastChangeNanos;
+
+    @Override
+    public SamplingRate start() {
+        mRate = CRUISING;
+        mStationarySinceNanos = NONE;
+        mLastChangeNanos = NONE;
+        return mRate;
+    }
+
+    @Override
+    public SamplingRate onFix(float speed, boolean sectionActive, long elapsedRealtimeNanos) {
+        if (speed >= MAX_SPEED_STATIONARY) {
+            mStationarySinceNanos = NONE;
+        } else if (mStationarySinceNanos == NONE) {
+            mStationarySinceNanos = elapsedRealtimeNanos;
+        }
+
+        SamplingRate target = getTargetRate(speed, sectionActive, elapsedRealtimeNanos);
+        if (target.equals(mRate)) {
+            return mRate;
+        }
+        if (mRate != STATIONARY && mLastChangeNanos != NONE
+                && elapsedRealtimeNanos - mLastChangeNanos < MIN_CHANGE_INTERVAL_NANOS) {
+            return mRate;
+        }
+        mRate = target;
+        mLastChangeNanos = elapsedRealtimeNanos;
+        return mRate;
+    }
+
+    private SamplingRate getTargetRate(float speed, boolean sectionActive, long elapsedRealtimeNanos) {
+        if (mRate == FAST) {
+            return speed < FAST_EXIT_SPEED ? CRUISING : FAST;
+        }
+        if (speed >= FAST_ENTER_SPEED) {
+            return FAST;
+        }
+        if (mStationarySinceNanos == NONE || sectionActive) {
+            return CRUISING;
+        }
+        if (mRate == STATIONARY || elapsedRealtimeNanos - mStationarySinceNanos >= STATIONARY_DELAY_NANOS) {
+            return STATIONARY;
+        }
+        return CRUISING;
+    }
+}
@@ -0,0 +1,23 @@
+package com.bgauthey.speedotracker.service.sampling;
+
+/**
+ * A {@link SamplingPolicy} requesting the same rate whatever the fixes.
+ */
+public class FixedSamplingPolicy implements SamplingPolicy {
+
+    private final SamplingRate mRate;
+
+    public FixedSamplingPolicy(SamplingRate rate) {
+        mRate = rate;
+    }
+
+    @Override
+    public SamplingRate start() {
+        return mRate;
+    }
+
+    @Override
+    public SamplingRate onFix(float speed, boolean sectionActive, long elapsedRealtimeNanos) {
+        return mRate;
+    }
+}
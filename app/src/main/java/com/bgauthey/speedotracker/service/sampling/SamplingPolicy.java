@@ -0,0 +1,26 @@
+package com.bgauthey.speedotracker.service.sampling;
+
+/**
+ * Chooses the location update settings while tracking. A policy is used by a single tracking
+ * session at a time, from the thread receiving fixes.
+ */
+public interface SamplingPolicy {
+
+    /**
+     * Start a tracking session.
+     *
+     * @return rate to request when tracking starts
+     */
+    SamplingRate start();
+
+    /**
+     * Called for each fix received.
+     *
+     * @param speed                speed of the fix (in m/s)
+     * @param sectionActive        true while a section is active
+     * @param elapsedRealtimeNanos time of the fix, as {@code Location.getElapsedRealtimeNanos()}
+     * @return rate to request from now on, location updates are requested again if it differs from
+     * the current one
+     */
+    SamplingRate onFix(float speed, boolean sectionActive, long elapsedRealtimeNanos);
+}
@@ -0,0 +1,58 @@
+package com.bgauthey.speedotracker.service.sampling;
+
+/**
+ * Immutable location update settings requested to the system location manager.
+ */
+public final class SamplingRate {
+
+    private final long mMinTimeMillis;
+    private final float mMinDistanceMeters;
+
+    /**
+     * @param minTimeMillis     minimum time interval between location updates (in milliseconds)
+     * @param minDistanceMeters minimum distance between location updates (in meters)
+     */
+    public SamplingRate(long minTimeMillis, float minDistanceMeters) {
+        mMinTimeMillis = minTimeMillis;
+        mMinDistanceMeters = minDistanceMeters;
+    }
+
+    /**
+     * @return minimum time interval between location updates (in milliseconds)
+     */
+    public long getMinTimeMillis() {
+        return mMinTimeMillis;
+    }
+
+    /**
+     * @return minimum distance between location updates (in meters)
+     */
+    public float getMinDistanceMeters() {
+        return mMinDistanceMeters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SamplingRate that = (SamplingRate) o;
+        return mMinTimeMillis == that.mMinTimeMillis
+                && Float.compare(mMinDistanceMeters, that.mMinDistanceMeters) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mMinTimeMillis ^ (mMinTimeMillis >>> 32));
+        result = 31 * result + Float.floatToIntBits(mMinDistanceMeters);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingRate{" + mMinTimeMillis + " ms, " + mMinDistanceMeters + " m}";
+    }
+}
@@ -0,0 +1,147 @@
+package com.bgauthey.speedotracker.service.track;
+
+import android.location.Location;
+import android.support.annotation.Nullable;
+
+/**
+ * Records every fix of a track (a tracking session) in a single {@link TrackChunk}.
+ * <p>
+ * When the chunk is full, it is handed to a {@link SegmentSink} (to be written to a file segment)
+ * then cleared and reused. The heap used by a track is then bounded by the chunk capacity, whatever
+ * the duration of the track is. Appending a fix doesn't allocate.
+ */
+public class TrackBuffer {
+
+    /**
+     * Default number of fixes kept in memory before flushing them (about 8 minutes at 2 Hz).
+     */
+    public static final int DEFAULT_CHUNK_CAPACITY = 1024;
+
+    /**
+     * Interface definition of the destination of recorded fixes.
+     */
+    public interface SegmentSink {
+        /**
+         * Invoked when a new track is started, before any segment.
+         */
+        void onTrackStarted();
+
+        /**
+         * Invoked when a chunk of fixes has to be saved.
+         * <p>
+         * The chunk is cleared and reused as soon as this method returns: implementation must not
+         * keep a reference on it.
+         *
+         * @param chunk the chunk to save
+         */
+        void onSegment(TrackChunk chunk);
+
+        /**
+         * Invoked when the track is stopped, after the last segment.
+         */
+        void onTrackStopped();
+    }
+
+    private final TrackChunk mChunk;
+    private final SegmentSink mSink;
+    private boolean mStarted;
+    private long mSampleCount;
+    private int mSegmentCount;
+
+    /**
+     * Create a buffer with {@link #DEFAULT_CHUNK_CAPACITY}.
+     *
+     * @param sink destination of the segments, null to simply drop them
+     */
+    public TrackBuffer(@Nullable SegmentSink sink) {
+        this(sink, DEFAULT_CHUNK_CAPACITY);
+    }
+
+    public TrackBuffer(@Nullable SegmentSink sink, int chunkCapacity) {
+        mSink = sink;
+        mChunk = new TrackChunk(chunkCapacity);
+    }
+
+    /**
+     * Start a new track. The current track, if any, is stopped first.
+     */
+    public void start() {
+        if (mStarted) {
+            stop();
+        }
+        mStarted = true;
+        mChunk.clear();
+        mSampleCount = 0;
+        mSegmentCount = 0;
+        if (mSink != null) {
+            mSink.onTrackStarted();
+        }
+    }
+
+    /**
+     * Append a fix to the current track. Ignored if the track is not started.
+     *
+     * @param location the fix to record
+     */
+    public void append(Location location) {
+        if (!mStarted) {
+            return;
+        }
+        mChunk.add(location.getLatitude(), location.getLongitude(), location.getSpeed(), location.hasSpeed(),
+                location.getAccuracy(), location.getElapsedRealtimeNanos());
+        mSampleCount++;
+        if (mChunk.isFull()) {
+            flush();
+        }
+    }
+
+    /**
+     * Stop the current track, flushing remaining fixes. Ignored if the track is not started.
+     */
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        flush();
+        mStarted = false;
+        if (mSink != null) {
+            mSink.onTrackStopped();
+        }
+    }
+
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * @return number of fixes recorded since the track started
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return number of segments flushed since the track started
+     */
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    /**
+     * @return fixes not flushed yet
+     */
+    public TrackChunk getPendingChunk() {
+        return mChunk;
+    }
+
+    private void flush() {
+        if (mChunk.isEmpty()) {
+            return;
+        }
+        if (mSink != null) {
+            mSink.onSegment(mChunk);
+        }
+        mSegmentCount++;
+        mChunk.clear();
+    }
+}
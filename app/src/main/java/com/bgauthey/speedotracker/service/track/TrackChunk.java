@@ -0,0 +1,134 @@
+package com.bgauthey.speedotracker.service.track;
+
+/**
+ * A fixed-capacity chunk of track samples stored as parallel primitive arrays (one array per field).
+ * <p>
+ * Adding a sample never allocates. Once the chunk is full, its owner has to flush it somewhere and
+ * {@link #clear()} it before adding new samples.
+ */
+public class TrackChunk {
+
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+    private final float[] mSpeeds;
+    private final boolean[] mHasSpeeds;
+    private final float[] mAccuracies;
+    private final long[] mElapsedRealtimeNanos;
+    private int mSize;
+
+    public TrackChunk(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mSpeeds = new float[capacity];
+        mHasSpeeds = new boolean[capacity];
+        mAccuracies = new float[capacity];
+        mElapsedRealtimeNanos = new long[capacity];
+    }
+
+    /**
+     * Append a sample with a speed at the end of this chunk.
+     *
+     * @param latitude             latitude in degrees
+     * @param longitude            longitude in degrees
+     * @param speed                speed in m/s
+     * @param accuracy             horizontal accuracy in meters
+     * @param elapsedRealtimeNanos time of the fix since boot (in nanoseconds)
+     * @throws IllegalStateException if the chunk is full
+     */
+    public void add(double latitude, double longitude, float speed, float accuracy, long elapsedRealtimeNanos) {
+        add(latitude, longitude, speed, true, accuracy, elapsedRealtimeNanos);
+    }
+
+    /**
+     * Append a sample at the end of this chunk.
+     *
+     * @param latitude             latitude in degrees
+     * @param longitude            longitude in degrees
+     * @param speed                speed in m/s, 0 if the fix has no speed
+     * @param hasSpeed             false if the fix has no speed (no Doppler measurement)
+     * @param accuracy             horizontal accuracy in meters
+     * @param elapsedRealtimeNanos time of the fix since boot (in nanoseconds)
+     * @throws IllegalStateException if the chunk is full
+     */
+    public void add(double latitude, double longitude, float speed, boolean hasSpeed, float accuracy,
+                    long elapsedRealtimeNanos) {
+        if (isFull()) {
+            throw new IllegalStateException("Chunk is full");
+        }
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mSpeeds[mSize] = speed;
+        mHasSpeeds[mSize] = hasSpeed;
+        mAccuracies[mSize] = accuracy;
+        mElapsedRealtimeNanos[mSize] = elapsedRealtimeNanos;
+        mSize++;
+    }
+
+    /**
+     * Replace the content of this chunk by the content of another one.
+     *
+     * @param other the chunk to copy, its size must fit in the capacity of this chunk
+     */
+    public void copyFrom(TrackChunk other) {
+        if (other.mSize > getCapacity()) {
+            throw new IllegalArgumentException("Chunk too large to be copied: " + other.mSize);
+        }
+        System.arraycopy(other.mLatitudes, 0, mLatitudes, 0, other.mSize);
+        System.arraycopy(other.mLongitudes, 0, mLongitudes, 0, other.mSize);
+        System.arraycopy(other.mSpeeds, 0, mSpeeds, 0, other.mSize);
+        System.arraycopy(other.mHasSpeeds, 0, mHasSpeeds, 0, other.mSize);
+        System.arraycopy(other.mAccuracies, 0, mAccuracies, 0, other.mSize);
+        System.arraycopy(other.mElapsedRealtimeNanos, 0, mElapsedRealtimeNanos, 0, other.mSize);
+        mSize = other.mSize;
+    }
+
+    /**
+     * Remove all samples. Arrays are kept to be reused.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    public int getCapacity() {
+        return mLatitudes.length;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean isFull() {
+        return mSize == mLatitudes.length;
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    public float getSpeed(int index) {
+        return mSpeeds[index];
+    }
+
+    public boolean hasSpeed(int index) {
+        return mHasSpeeds[index];
+    }
+
+    public float getAccuracy(int index) {
+        return mAccuracies[index];
+    }
+
+    public long getElapsedRealtimeNanos(int index) {
+        return mElapsedRealtimeNanos[index];
+    }
+}
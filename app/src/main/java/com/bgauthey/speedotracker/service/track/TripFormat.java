@@ -0,0 +1,167 @@
+package com.bgauthey.speedotracker.service.track;
+
+/**
+ * Description of the trip file format and the encoding helpers shared by {@link TripWriter} and
+ * {@link TripReader}.
+ * <p>
+ * A trip file is made of:
+ * <ul>
+ * <li>a header: {@link #FILE_MAGIC}, format version, number of columns, block capacity and a time
+ * anchor (wall clock time in milliseconds and elapsed realtime in nanoseconds taken at the same
+ * moment) used to rebuild the wall clock time of fixes,</li>
+ * <li>blocks of at most "block capacity" fixes. A block starts with its number of fixes and the
+ * length in bytes of each column, followed by the columns themselves. Each column is quantized,
+ * delta-encoded from the previous fix of the block (the first fix of a block is encoded from 0,
+ * so blocks are independent) and packed with zigzag varints. A fix without speed has
+ * {@link #NO_SPEED} as speed,</li>
+ * <li>a block index written when the trip is closed: for each block its offset in the file, its
+ * number of fixes and the elapsed realtime of its first fix,</li>
+ * <li>a footer: offset of the block index and {@link #INDEX_MAGIC}.</li>
+ * </ul>
+ * A trip which was not closed properly (no footer) can still be read by scanning its blocks.
+ */
+final class TripFormat {
+
+    static final int FILE_MAGIC = 0x53505446; // "SPTF"
+    static final int INDEX_MAGIC = 0x53505449; // "SPTI"
+    static final int VERSION = 1;
+
+    static final int COLUMN_TIME = 0;
+    static final int COLUMN_LATITUDE = 1;
+    static final int COLUMN_LONGITUDE = 2;
+    static final int COLUMN_SPEED = 3;
+    static final int COLUMN_ACCURACY = 4;
+    static final int COLUMN_COUNT = 5;
+
+    /**
+     * Size of the file header (in bytes)
+     */
+    static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 8 + 8;
+    /**
+     * Size of a block header (in bytes): number of fixes and length of each column
+     */
+    static final int BLOCK_HEADER_SIZE = 4 + 4 * COLUMN_COUNT;
+    /**
+     * Size of an entry of the block index (in bytes): offset, number of fixes, first time
+     */
+    static final int INDEX_ENTRY_SIZE = 8 + 4 + 8;
+    /**
+     * Size of the file footer (in bytes): offset of the index and magic
+     */
+    static final int FOOTER_SIZE = 8 + 4;
+
+    /**
+     * Maximum size of a varint encoding a long
+     */
+    static final int MAX_VARINT_SIZE = 10;
+
+    /**
+     * Times are stored in microseconds
+     */
+    private static final long NANOS_PER_TIME_UNIT = 1000L;
+    /**
+     * Coordinates are stored in 1e-7 degrees (about 1 cm)
+     */
+    private static final double COORDINATE_UNITS_PER_DEGREE = 1e7;
+    /**
+     * Speeds are stored in cm/s
+     */
+    private static final float SPEED_UNITS_PER_M_S = 100f;
+    /**
+     * Stored speed of a fix without speed, speeds being never negative
+     */
+    static final long NO_SPEED = -1;
+    /**
+     * Accuracies are stored in decimeters
+     */
+    private static final float ACCURACY_UNITS_PER_M = 10f;
+
+    private TripFormat() {
+    }
+
+    static long quantizeTime(long elapsedRealtimeNanos) {
+        return elapsedRealtimeNanos / NANOS_PER_TIME_UNIT;
+    }
+
+    static long restoreTime(long value) {
+        return value * NANOS_PER_TIME_UNIT;
+    }
+
+    static long quantizeCoordinate(double degrees) {
+        return Math.round(degrees * COORDINATE_UNITS_PER_DEGREE);
+    }
+
+    static double restoreCoordinate(long value) {
+        return value / COORDINATE_UNITS_PER_DEGREE;
+    }
+
+    static long quantizeSpeed(float speed, boolean hasSpeed) {
+        return hasSpeed ? Math.max(0, Math.round(speed * SPEED_UNITS_PER_M_S)) : NO_SPEED;
+    }
+
+    /**
+     * @return the speed, 0 for a fix without speed
+     */
+    static float restoreSpeed(long value) {
+        return value == NO_SPEED ? 0f : value / SPEED_UNITS_PER_M_S;
+    }
+
+    static boolean restoreHasSpeed(long value) {
+        return value != NO_SPEED;
+    }
+
+    static long quantizeAccuracy(float accuracy) {
+        return Math.round(accuracy * ACCURACY_UNITS_PER_M);
+    }
+
+    static float restoreAccuracy(long value) {
+        return value / ACCURACY_UNITS_PER_M;
+    }
+
+    /**
+     * Write a signed value as a zigzag varint.
+     *
+     * @param value  value to write
+     * @param buffer destination, at least {@link #MAX_VARINT_SIZE} bytes must be available
+     * @param offset position where to write in buffer
+     * @return position following the written value
+     */
+    static int writeVarint(long value, byte[] buffer, int offset) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[offset++] = (byte) zigzag;
+        return offset;
+    }
+
+    /**
+     * Decode a column of zigzag varint deltas.
+     *
+     * @param buffer source
+     * @param length number of bytes of the column
+     * @param count  number of values to decode
+     * @param dst    destination of the decoded (absolute) values
+     * @throws IllegalStateException if the column is malformed
+     */
+    static void decodeColumn(byte[] buffer, int length, int count, long[] dst) {
+        int position = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= length || shift > 63) {
+                    throw new IllegalStateException("Malformed column");
+                }
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            dst[i] = previous;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.bgauthey.speedotracker.service.track;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads a trip file written by {@link TripWriter} (see {@link TripFormat}).
+ * <p>
+ * Blocks are located through the block index, so a block can be read without reading the previous
+ * ones, and a single column of a block can be decoded without decoding the other columns.
+ * Decoding buffers are allocated once and reused.
+ */
+public class TripReader implements Closeable {
+
+    private final RandomAccessFile mFile;
+    private final int mBlockCapacity;
+    private final long mAnchorTimeMillis;
+    private final long mAnchorElapsedRealtimeNanos;
+
+    private long[] mBlockOffsets;
+    private int[] mBlockFixCounts;
+    private long[] mBlockStartTimes;
+    private int mBlockCount;
+    private long mFixCount;
+
+    private final int[] mColumnLengths = new int[TripFormat.COLUMN_COUNT];
+    // Block whose header is in mColumnLengths, -1 if none
+    private int mHeaderBlock = -1;
+    private final byte[] mBlockHeader = new byte[TripFormat.BLOCK_HEADER_SIZE];
+    private final byte[] mColumnBuffer;
+    private final long[] mValues;
+    // Buffers used to decode a whole block, allocated on first use
+    private long[] mBlockTimes;
+    private double[] mBlockLatitudes;
+    private double[] mBlockLongitudes;
+    private float[] mBlockSpeeds;
+    private boolean[] mBlockHasSpeeds;
+    private float[] mBlockAccuracies;
+
+    /**
+     * Open a trip file and load its block index.
+     *
+     * @param file the trip file
+     * @throws IOException if the file can't be read or is not a trip file
+     */
+    public TripReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            if (mFile.readInt() != TripFormat.FILE_MAGIC) {
+                throw new IOException("Not a trip file: " + file);
+            }
+            int version = mFile.readShort();
+            if (version != TripFormat.VERSION) {
+                throw new IOException("Unsupported trip file version: " + version);
+            }
+            int columnCount = mFile.readShort();
+            if (columnCount != TripFormat.COLUMN_COUNT) {
+                throw new IOException("Unexpected column count: " + columnCount);
+            }
+            mBlockCapacity = mFile.readInt();
+            mAnchorTimeMillis = mFile.readLong();
+            mAnchorElapsedRealtimeNanos = mFile.readLong();
+            mColumnBuffer = new byte[mBlockCapacity * TripFormat.MAX_VARINT_SIZE];
+            mValues = new long[mBlockCapacity];
+            if (!readIndex()) {
+                scanBlocks();
+            }
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getBlockCount() {
+        return mBlockCount;
+    }
+
+    public long getFixCount() {
+        return mFixCount;
+    }
+
+    public int getBlockCapacity() {
+        return mBlockCapacity;
+    }
+
+    public int getBlockFixCount(int block) {
+        return mBlockFixCounts[block];
+    }
+
+    public long getBlockStartElapsedRealtimeNanos(int block) {
+        return mBlockStartTimes[block];
+    }
+
+    /**
+     * Convert an elapsed realtime of this trip into a wall clock time.
+     *
+     * @param elapsedRealtimeNanos elapsed realtime of a fix (in nanoseconds)
+     * @return wall clock time in milliseconds
+     */
+    public long toTimeMillis(long elapsedRealtimeNanos) {
+        return mAnchorTimeMillis + (elapsedRealtimeNanos - mAnchorElapsedRealtimeNanos) / 1_000_000L;
+    }
+
+    /**
+     * Find the block containing a given time.
+     *
+     * @param elapsedRealtimeNanos the time to seek to
+     * @return index of the last block starting at or before this time, 0 if all blocks start after
+     */
+    public int findBlock(long elapsedRealtimeNanos) {
+        int low = 0;
+        int high = mBlockCount - 1;
+        int result = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (mBlockStartTimes[middle] <= elapsedRealtimeNanos) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decode all columns of a block.
+     *
+     * @param block index of the block
+     * @param dst   chunk receiving the fixes, previous content is replaced. Its capacity must be
+     *              at least {@link #getBlockCapacity()}
+     */
+    public void readBlock(int block, TrackChunk dst) throws IOException {
+        if (mBlockTimes == null) {
+            mBlockTimes = new long[mBlockCapacity];
+            mBlockLatitudes = new double[mBlockCapacity];
+            mBlockLongitudes = new double[mBlockCapacity];
+            mBlockSpeeds = new float[mBlockCapacity];
+            mBlockHasSpeeds = new boolean[mBlockCapacity];
+            mBlockAccuracies = new float[mBlockCapacity];
+        }
+        int count = readElapsedRealtimeNanos(block, mBlockTimes);
+        readLatitudes(block, mBlockLatitudes);
+        readLongitudes(block, mBlockLongitudes);
+        readColumn(block, TripFormat.COLUMN_SPEED);
+        for (int i = 0; i < count; i++) {
+            mBlockSpeeds[i] = TripFormat.restoreSpeed(mValues[i]);
+            mBlockHasSpeeds[i] = TripFormat.restoreHasSpeed(mValues[i]);
+        }
+        readAccuracies(block, mBlockAccuracies);
+        dst.clear();
+        for (int i = 0; i < count; i++) {
+            dst.add(mBlockLatitudes[i], mBlockLongitudes[i], mBlockSpeeds[i], mBlockHasSpeeds[i],
+                    mBlockAccuracies[i], mBlockTimes[i]);
+        }
+    }
+
+    /**
+     * @return number of values read
+     */
+    public int readElapsedRealtimeNanos(int block, long[] dst) throws IOException {
+        int count = readColumn(block, TripFormat.COLUMN_TIME);
+        for (int i = 0; i < count; i++) {
+            dst[i] = TripFormat.restoreTime(mValues[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of values read
+     */
+    public int readLatitudes(int block, double[] dst) throws IOException {
+        int count = readColumn(block, TripFormat.COLUMN_LATITUDE);
+        for (int i = 0; i < count; i++) {
+            dst[i] = TripFormat.restoreCoordinate(mValues[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of values read
+     */
+    public int readLongitudes(int block, double[] dst) throws IOException {
+        int count = readColumn(block, TripFormat.COLUMN_LONGITUDE);
+        for (int i = 0; i < count; i++) {
+            dst[i] = TripFormat.restoreCoordinate(mValues[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of values read. The speed of a fix without speed is 0
+     */
+    public int readSpeeds(int block, float[] dst) throws IOException {
+        int count = readColumn(block, TripFormat.COLUMN_SPEED);
+        for (int i = 0; i < count; i++) {
+            dst[i] = TripFormat.restoreSpeed(mValues[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of values read
+     */
+    public int readAccuracies(int block, float[] dst) throws IOException {
+        int count = readColumn(block, TripFormat.COLUMN_ACCURACY);
+        for (int i = 0; i < count; i++) {
+            dst[i] = TripFormat.restoreAccuracy(mValues[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * Decode a single column of a block in {@link #mValues}. Other columns are skipped.
+     *
+     * @return number of values decoded
+     */
+    private int readColumn(int block, int column) throws IOException {
+        if (block != mHeaderBlock) {
+            readBlockHeader(mBlockOffsets[block]);
+            mHeaderBlock = block;
+        }
+        long offset = mBlockOffsets[block] + TripFormat.BLOCK_HEADER_SIZE;
+        for (int i = 0; i < column; i++) {
+            offset += mColumnLengths[i];
+        }
+        int length = mColumnLengths[column];
+        mFile.seek(offset);
+        mFile.readFully(mColumnBuffer, 0, length);
+        int count = mBlockFixCounts[block];
+        try {
+            TripFormat.decodeColumn(mColumnBuffer, length, count, mValues);
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed column " + column + " of block " + block, e);
+        }
+        return count;
+    }
+
+    /**
+     * Read the header of the block at the given offset and fill {@link #mColumnLengths}.
+     *
+     * @return number of fixes of the block
+     */
+    private int readBlockHeader(long offset) throws IOException {
+        mHeaderBlock = -1;
+        mFile.seek(offset);
+        mFile.readFully(mBlockHeader);
+        int count = readInt(mBlockHeader, 0);
+        if (count <= 0 || count > mBlockCapacity) {
+            throw new IOException("Malformed block at " + offset);
+        }
+        for (int i = 0; i < TripFormat.COLUMN_COUNT; i++) {
+            int length = readInt(mBlockHeader, 4 + 4 * i);
+            if (length < 0 || length > mColumnBuffer.length) {
+                throw new IOException("Malformed block at " + offset);
+            }
+            mColumnLengths[i] = length;
+        }
+        return count;
+    }
+
+    /**
+     * Load the block index written at the end of the file.
+     *
+     * @return false if the file has no index (trip not closed properly)
+     */
+    private boolean readIndex() throws IOException {
+        long length = mFile.length();
+        if (length < TripFormat.HEADER_SIZE + TripFormat.FOOTER_SIZE) {
+            return false;
+        }
+        mFile.seek(length - TripFormat.FOOTER_SIZE);
+        long indexOffset = mFile.readLong();
+        if (mFile.readInt() != TripFormat.INDEX_MAGIC
+                || indexOffset < TripFormat.HEADER_SIZE || indexOffset > length - TripFormat.FOOTER_SIZE - 4) {
+            return false;
+        }
+        mFile.seek(indexOffset);
+        int blockCount = mFile.readInt();
+        if (blockCount < 0 || indexOffset + 4 + (long) blockCount * TripFormat.INDEX_ENTRY_SIZE
+                != length - TripFormat.FOOTER_SIZE) {
+            return false;
+        }
+        allocateIndex(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            mBlockOffsets[i] = mFile.readLong();
+            mBlockFixCounts[i] = mFile.readInt();
+            mBlockStartTimes[i] = mFile.readLong();
+            mFixCount += mBlockFixCounts[i];
+        }
+        mBlockCount = blockCount;
+        return true;
+    }
+
+    /**
+     * Rebuild the block index by walking through the blocks. Scanning stops at the first truncated or
+     * malformed block.
+     */
+    private void scanBlocks() throws IOException {
+        long length = mFile.length();
+        long offset = TripFormat.HEADER_SIZE;
+        allocateIndex(16);
+        mBlockCount = 0;
+        mFixCount = 0;
+        while (offset + TripFormat.BLOCK_HEADER_SIZE <= length) {
+            int count;
+            try {
+                count = readBlockHeader(offset);
+            } catch (IOException e) {
+                break;
+            }
+            long blockLength = TripFormat.BLOCK_HEADER_SIZE;
+            for (int i = 0; i < TripFormat.COLUMN_COUNT; i++) {
+                blockLength += mColumnLengths[i];
+            }
+            if (offset + blockLength > length) {
+                break;
+            }
+            // First time of the block is needed for seeking
+            int timeLength = mColumnLengths[TripFormat.COLUMN_TIME];
+            mFile.seek(offset + TripFormat.BLOCK_HEADER_SIZE);
+            mFile.readFully(mColumnBuffer, 0, timeLength);
+            try {
+                TripFormat.decodeColumn(mColumnBuffer, timeLength, 1, mValues);
+            } catch (IllegalStateException e) {
+                break;
+            }
+
+            if (mBlockCount == mBlockOffsets.length) {
+                growIndex();
+            }
+            mBlockOffsets[mBlockCount] = offset;
+            mBlockFixCounts[mBlockCount] = count;
+            mBlockStartTimes[mBlockCount] = TripFormat.restoreTime(mValues[0]);
+            mBlockCount++;
+            mFixCount += count;
+            offset += blockLength;
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        mBlockOffsets = new long[capacity];
+        mBlockFixCounts = new int[capacity];
+        mBlockStartTimes = new long[capacity];
+    }
+
+    private void growIndex() {
+        int capacity = mBlockOffsets.length * 2;
+        long[] offsets = new long[capacity];
+        int[] fixCounts = new int[capacity];
+        long[] startTimes = new long[capacity];
+        System.arraycopy(mBlockOffsets, 0, offsets, 0, mBlockCount);
+        System.arraycopy(mBlockFixCounts, 0, fixCounts, 0, mBlockCount);
+        System.arraycopy(mBlockStartTimes, 0, startTimes, 0, mBlockCount);
+        mBlockOffsets = offsets;
+        mBlockFixCounts = fixCounts;
+        mBlockStartTimes = startTimes;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24)
+                | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8)
+                | (buffer[offset + 3] & 0xFF);
+    }
+}
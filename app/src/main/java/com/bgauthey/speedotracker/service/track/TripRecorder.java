@@ -0,0 +1,200 @@
+package com.bgauthey.speedotracker.service.track;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link TrackBuffer.SegmentSink} recording each track in its own trip file (see {@link TripFormat}).
+ * <p>
+ * Segments are copied in a small pool of reusable chunks and encoded then written by a background
+ * thread, so the thread providing fixes never does any I/O. The caller only blocks if all the
+ * chunks of the pool are waiting to be written.
+ */
+public class TripRecorder implements TrackBuffer.SegmentSink {
+
+    private static final String TAG = TripRecorder.class.getSimpleName();
+
+    static final String FILE_EXTENSION = ".trip";
+
+    /**
+     * Number of chunks that can wait to be written
+     */
+    private static final int CHUNK_POOL_SIZE = 3;
+
+    /**
+     * Chunk queued to request the end of the current trip
+     */
+    private static final TrackChunk END_OF_TRIP = new TrackChunk(1);
+
+    private final File mDirectory;
+    private final BlockingQueue<TrackChunk> mFreeChunks = new ArrayBlockingQueue<>(CHUNK_POOL_SIZE);
+    /**
+     * Number of chunks queued and not written yet, whatever the trip
+     */
+    private final AtomicInteger mQueuedChunks = new AtomicInteger();
+    private int mAllocatedChunks;
+    private WriterThread mWriterThread;
+
+    /**
+     * @param directory directory where trip files are created
+     */
+    public TripRecorder(File directory) {
+        mDirectory = directory;
+    }
+
+    @Override
+    public void onTrackStarted() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(TAG, "Unable to create trip directory " + mDirectory);
+        }
+        File file = new File(mDirectory, "trip-" + System.currentTimeMillis() + FILE_EXTENSION);
+        mWriterThread = new WriterThread(file, System.currentTimeMillis(), SystemClock.elapsedRealtimeNanos());
+        mWriterThread.start();
+    }
+
+    @Override
+    public void onSegment(TrackChunk chunk) {
+        if (mWriterThread == null) {
+            return;
+        }
+        TrackChunk copy = mFreeChunks.poll();
+        if (copy == null) {
+            if (mAllocatedChunks < CHUNK_POOL_SIZE) {
+                copy = new TrackChunk(chunk.getCapacity());
+                mAllocatedChunks++;
+            } else {
+                copy = takeUninterruptibly(mFreeChunks);
+            }
+        }
+        copy.copyFrom(chunk);
+        mWriterThread.enqueue(copy);
+    }
+
+    @Override
+    public void onTrackStopped() {
+        if (mWriterThread == null) {
+            return;
+        }
+        mWriterThread.enqueue(END_OF_TRIP);
+        mWriterThread = null;
+    }
+
+    /**
+     * Wait for the current trip to be fully written.
+     *
+     * @return true if everything queued has been written before the timeout
+     */
+    @VisibleForTesting
+    boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (mQueuedChunks.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private static TrackChunk takeUninterruptibly(BlockingQueue<TrackChunk> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<TrackChunk> queue, TrackChunk chunk) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(chunk);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks of one trip until {@link #END_OF_TRIP} is received.
+     */
+    private class WriterThread extends Thread {
+
+        private final File mFile;
+        private final long mAnchorTimeMillis;
+        private final long mAnchorElapsedRealtimeNanos;
+        private final BlockingQueue<TrackChunk> mPendingChunks = new ArrayBlockingQueue<>(CHUNK_POOL_SIZE + 1);
+
+        WriterThread(File file, long anchorTimeMillis, long anchorElapsedRealtimeNanos) {
+            super("TripRecorder");
+            mFile = file;
+            mAnchorTimeMillis = anchorTimeMillis;
+            mAnchorElapsedRealtimeNanos = anchorElapsedRealtimeNanos;
+        }
+
+        void enqueue(TrackChunk chunk) {
+            mQueuedChunks.incrementAndGet();
+            putUninterruptibly(mPendingChunks, chunk);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            TripWriter writer = null;
+            while (true) {
+                TrackChunk chunk = takeUninterruptibly(mPendingChunks);
+                if (chunk == END_OF_TRIP) {
+                    close(writer);
+                    mQueuedChunks.decrementAndGet();
+                    return;
+                }
+                try {
+                    if (writer == null) {
+                        writer = new TripWriter(mFile, chunk.getCapacity(), mAnchorTimeMillis, mAnchorElapsedRealtimeNanos);
+                    }
+                    writer.writeBlock(chunk);
+                } catch (IOException e) {
+                    // Losing a block must not stop tracking
+                    Log.e(TAG, "Unable to write block in " + mFile, e);
+                }
+                mFreeChunks.offer(chunk);
+                mQueuedChunks.decrementAndGet();
+            }
+        }
+
+        private void close(TripWriter writer) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close " + mFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.bgauthey.speedotracker.service.track;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a trip file block after block (see {@link TripFormat}).
+ * <p>
+ * Encoding buffers are allocated once and reused for every block. The block index is kept in
+ * primitive arrays and written by {@link #close()}.
+ * <p>
+ * Once a block fails to be written, the file holds a part of it: no more blocks are written and
+ * the index isn't either, readers rebuild it from the complete blocks.
+ */
+public class TripWriter implements Closeable {
+
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+
+    private final DataOutputStream mOutput;
+    private final int mBlockCapacity;
+    private final byte[][] mColumnBuffers = new byte[TripFormat.COLUMN_COUNT][];
+    private final int[] mColumnLengths = new int[TripFormat.COLUMN_COUNT];
+    private long mPosition;
+
+    private long[] mBlockOffsets = new long[INITIAL_INDEX_CAPACITY];
+    private int[] mBlockFixCounts = new int[INITIAL_INDEX_CAPACITY];
+    private long[] mBlockStartTimes = new long[INITIAL_INDEX_CAPACITY];
+    private int mBlockCount;
+    private long mFixCount;
+    private boolean mClosed;
+    private boolean mFailed;
+
+    /**
+     * Create a trip file and write its header.
+     *
+     * @param file                       the file to create
+     * @param blockCapacity              maximum number of fixes in a block
+     * @param anchorTimeMillis           wall clock time (in milliseconds) taken at the same moment as
+     *                                   anchorElapsedRealtimeNanos
+     * @param anchorElapsedRealtimeNanos elapsed realtime since boot (in nanoseconds)
+     * @throws IOException if the file can't be created
+     */
+    public TripWriter(File file, int blockCapacity, long anchorTimeMillis, long anchorElapsedRealtimeNanos) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)), blockCapacity, anchorTimeMillis,
+                anchorElapsedRealtimeNanos);
+    }
+
+    @VisibleForTesting
+    TripWriter(OutputStream output, int blockCapacity, long anchorTimeMillis, long anchorElapsedRealtimeNanos) throws IOException {
+        mBlockCapacity = blockCapacity;
+        for (int i = 0; i < TripFormat.COLUMN_COUNT; i++) {
+            mColumnBuffers[i] = new byte[blockCapacity * TripFormat.MAX_VARINT_SIZE];
+        }
+        mOutput = new DataOutputStream(output);
+        mOutput.writeInt(TripFormat.FILE_MAGIC);
+        mOutput.writeShort(TripFormat.VERSION);
+        mOutput.writeShort(TripFormat.COLUMN_COUNT);
+        mOutput.writeInt(blockCapacity);
+        mOutput.writeLong(anchorTimeMillis);
+        mOutput.writeLong(anchorElapsedRealtimeNanos);
+        mPosition = TripFormat.HEADER_SIZE;
+    }
+
+    /**
+     * Encode the fixes of a chunk and append them as a new block.
+     *
+     * @param chunk fixes to write, must not contain more fixes than the block capacity
+     * @throws IOException if the block can't be written, or a previous block couldn't
+     */
+    public void writeBlock(TrackChunk chunk) throws IOException {
+        if (mClosed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        if (mFailed) {
+            throw new IOException("A previous block failed to be written");
+        }
+        int size = chunk.getSize();
+        if (size == 0) {
+            return;
+        }
+        if (size > mBlockCapacity) {
+            throw new IllegalArgumentException("Chunk larger than block capacity: " + size);
+        }
+        encodeColumns(chunk);
+
+        int blockLength = TripFormat.BLOCK_HEADER_SIZE;
+        try {
+            mOutput.writeInt(size);
+            for (int column = 0; column < TripFormat.COLUMN_COUNT; column++) {
+                mOutput.writeInt(mColumnLengths[column]);
+            }
+            for (int column = 0; column < TripFormat.COLUMN_COUNT; column++) {
+                mOutput.write(mColumnBuffers[column], 0, mColumnLengths[column]);
+                blockLength += mColumnLengths[column];
+            }
+        } catch (IOException e) {
+            mFailed = true;
+            throw e;
+        }
+        addIndexEntry(size, chunk.getElapsedRealtimeNanos(0));
+        mPosition += blockLength;
+        mFixCount += size;
+    }
+
+    /**
+     * Write the block index and the footer, then close the file. The index isn't written after a
+     * block failed to be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mFailed) {
+            mOutput.close();
+            return;
+        }
+        try {
+            long indexOffset = mPosition;
+            mOutput.writeInt(mBlockCount);
+            for (int i = 0; i < mBlockCount; i++) {
+                mOutput.writeLong(mBlockOffsets[i]);
+                mOutput.writeInt(mBlockFixCounts[i]);
+                mOutput.writeLong(mBlockStartTimes[i]);
+            }
+            mOutput.writeLong(indexOffset);
+            mOutput.writeInt(TripFormat.INDEX_MAGIC);
+        } finally {
+            mOutput.close();
+        }
+    }
+
+    public int getBlockCount() {
+        return mBlockCount;
+    }
+
+    public long getFixCount() {
+        return mFixCount;
+    }
+
+    /**
+     * @return number of bytes written so far (index and footer excluded)
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    private void encodeColumns(TrackChunk chunk) {
+        int size = chunk.getSize();
+        int time = 0, latitude = 0, longitude = 0, speed = 0, accuracy = 0;
+        long previousTime = 0, previousLatitude = 0, previousLongitude = 0, previousSpeed = 0, previousAccuracy = 0;
+        for (int i = 0; i < size; i++) {
+            long value = TripFormat.quantizeTime(chunk.getElapsedRealtimeNanos(i));
+            time = TripFormat.writeVarint(value - previousTime, mColumnBuffers[TripFormat.COLUMN_TIME], time);
+            previousTime = value;
+
+            value = TripFormat.quantizeCoordinate(chunk.getLatitude(i));
+            latitude = TripFormat.writeVarint(value - previousLatitude, mColumnBuffers[TripFormat.COLUMN_LATITUDE], latitude);
+            previousLatitude = value;
+
+            value = TripFormat.quantizeCoordinate(chunk.getLongitude(i));
+            longitude = TripFormat.writeVarint(value - previousLongitude, mColumnBuffers[TripFormat.COLUMN_LONGITUDE], longitude);
+            previousLongitude = value;
+
+            value = TripFormat.quantizeSpeed(chunk.getSpeed(i), chunk.hasSpeed(i));
+            speed = TripFormat.writeVarint(value - previousSpeed, mColumnBuffers[TripFormat.COLUMN_SPEED], speed);
+            previousSpeed = value;
+
+            value = TripFormat.quantizeAccuracy(chunk.getAccuracy(i));
+            accuracy = TripFormat.writeVarint(value - previousAccuracy, mColumnBuffers[TripFormat.COLUMN_ACCURACY], accuracy);
+            previousAccuracy = value;
+        }
+        mColumnLengths[TripFormat.COLUMN_TIME] = time;
+        mColumnLengths[TripFormat.COLUMN_LATITUDE] = latitude;
+        mColumnLengths[TripFormat.COLUMN_LONGITUDE] = longitude;
+        mColumnLengths[TripFormat.COLUMN_SPEED] = speed;
+        mColumnLengths[TripFormat.COLUMN_ACCURACY] = accuracy;
+    }
+
+    private void addIndexEntry(int fixCount, long startTime) {
+        if (mBlockCount == mBlockOffsets.length) {
+            int capacity = mBlockCount * 2;
+            long[] offsets = new long[capacity];
+            int[] fixCounts = new int[capacity];
+            long[] startTimes = new long[capacity];
+            System.arraycopy(mBlockOffsets, 0, offsets, 0, mBlockCount);
+            System.arraycopy(mBlockFixCounts, 0, fixCounts, 0, mBlockCount);
+            System.arraycopy(mBlockStartTimes, 0, startTimes, 0, mBlockCount);
+            mBlockOffsets = offsets;
+            mBlockFixCounts = fixCounts;
+            mBlockStartTimes = startTimes;
+        }
+        mBlockOffsets[mBlockCount] = mPosition;
+        mBlockFixCounts[mBlockCount] = fixCount;
+        mBlockStartTimes[mBlockCount] = startTime;
+        mBlockCount++;
+    }
+}
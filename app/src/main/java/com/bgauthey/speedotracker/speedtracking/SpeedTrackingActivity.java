@@ -21,8 +21,15 @@ import android.view.View;
 
 import com.bgauthey.speedotracker.Injection;
 import com.bgauthey.speedotracker.R;
+import com.bgauthey.speedotracker.service.Delivery;
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.gps.GpsLocationProvider;
 import com.bgauthey.speedotracker.util.PermissionUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Main activity displaying a {@link Toolbar} with a {@link FloatingActionButton} to enable/disable speed tracking.
  * Activity displays instant speed on a screen and feedback on average speed on another screen (a Bottom Sheet).
@@ -36,8 +43,11 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
     private BottomSheetBehavior mBottomSheetBehavior;
 
     private SpeedTrackingContract.Presenter mPresenter;
+    private FixLatencyMonitor mLatencyMonitor;
 
     private boolean mIsToolbarCollapsed = false;
+    @DrawableRes
+    private int mTrackingButtonIcon = android.R.drawable.ic_media_play;
 
     ///////////////////////////////////////////////////////////////////////////
     // Lifecycle
@@ -66,8 +76,10 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
             }
         });
 
-        // Attach a global presenter to this activity
-        mPresenter = new SpeedTrackingPresenter(this, Injection.provideLocationProvider(getApplicationContext()));
+        // Attach a global presenter to this activity, its listeners can't outlive the activity
+        mPresenter = new SpeedTrackingPresenter(this, Injection.provideLocationProvider(getApplicationContext()),
+                Delivery.inline().boundTo(this));
+        mLatencyMonitor = Injection.provideFixLatencyMonitor();
         // Create speed tracking screens (Instant speed and feedback) through this controller
         SpeedTrackingController.createSpeedTrackingScreens(this);
     }
@@ -84,6 +96,7 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.menu_speed_tracking, menu);
         mTrackingMenuItem = menu.findItem(R.id.action_toggle_tracking);
+        mTrackingMenuItem.setIcon(mTrackingButtonIcon);
 
         //Make toggle tracking anchored button disappear when toolbar is collapsed
         mAppBarLayout.addOnOffsetChangedListener(new AppBarLayout.OnOffsetChangedListener() {
@@ -133,6 +146,21 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
         }
     }
 
+    /**
+     * Debug report of the location provider and fix latencies, printed by
+     * {@code adb shell dumpsys activity top}.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        LocationProvider provider = Injection.provideLocationProvider(getApplicationContext());
+        if (provider instanceof GpsLocationProvider) {
+            ((GpsLocationProvider) provider).dump(writer);
+        } else {
+            mLatencyMonitor.dump(writer);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Interface implementation
     ///////////////////////////////////////////////////////////////////////////
@@ -142,6 +170,11 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
         updateFloatingButtonState(start);
     }
 
+    @Override
+    public void setAppBarExpanded(boolean expanded) {
+        mAppBarLayout.setExpanded(expanded, true);
+    }
+
     @Override
     public void showTrackingNotReady() {
         if (!PermissionUtils.isLocationPermissionGranted(SpeedTrackingActivity.this)) {
@@ -191,10 +224,12 @@ public class SpeedTrackingActivity extends AppCompatActivity implements SpeedTra
     }
 
     private void updateFloatingButtonState(boolean start) {
-        @DrawableRes int res = start ? android.R.drawable.ic_media_play : android.R.drawable.ic_media_pause;
-        mTrackingButton.setImageResource(res);
-        mTrackingMenuItem.setIcon(res);
-        mAppBarLayout.setExpanded(start, true);
+        mTrackingButtonIcon = start ? android.R.drawable.ic_media_play : android.R.drawable.ic_media_pause;
+        mTrackingButton.setImageResource(mTrackingButtonIcon);
+        // The menu may not be created yet, its icon is then set on creation
+        if (mTrackingMenuItem != null) {
+            mTrackingMenuItem.setIcon(mTrackingButtonIcon);
+        }
     }
 
     private void toggleTracking() {
@@ -10,6 +10,8 @@ public interface SpeedTrackingContract {
     interface View {
         void updateButtonState(boolean start);
 
+        void setAppBarExpanded(boolean expanded);
+
         void showTrackingNotReady();
 
         void showInstantSpeedScreen();
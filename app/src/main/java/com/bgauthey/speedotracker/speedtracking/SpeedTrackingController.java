@@ -5,8 +5,10 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 
+import com.bgauthey.speedotracker.Constants;
 import com.bgauthey.speedotracker.Injection;
 import com.bgauthey.speedotracker.R;
+import com.bgauthey.speedotracker.service.Delivery;
 import com.bgauthey.speedotracker.speedtracking.feedback.FeedbackFragment;
 import com.bgauthey.speedotracker.speedtracking.feedback.FeedbackPresenter;
 import com.bgauthey.speedotracker.speedtracking.instantspeed.InstantSpeedFragment;
@@ -35,6 +37,7 @@ public class SpeedTrackingController {
         InstantSpeedFragment instantSpeedFragment = findOrCreateInstantSpeedFragment();
         InstantSpeedPresenter instantSpeedPresenter = createInstantSpeedPresenter(instantSpeedFragment);
         instantSpeedFragment.setPresenter(instantSpeedPresenter);
+        instantSpeedFragment.setLatencyMonitor(Injection.provideFixLatencyMonitor());
 
         // Feedback screen
         FeedbackFragment feedbackFragment = findOrCreateFeedbackFragment();
@@ -69,12 +72,13 @@ public class SpeedTrackingController {
 
     private InstantSpeedPresenter createInstantSpeedPresenter(InstantSpeedFragment fragment) {
         return new InstantSpeedPresenter(fragment,
-                Injection.provideLocationProvider(mFragmentActivity.getApplicationContext()));
+                Injection.provideLocationProvider(mFragmentActivity.getApplicationContext()), Delivery.frame().boundTo(fragment),
+                Constants.INTERPOLATE_SPEED);
     }
 
     private FeedbackPresenter createFeedbackPresenter(FeedbackFragment fragment) {
         return new FeedbackPresenter(fragment,
-                Injection.provideLocationProvider(mFragmentActivity.getApplicationContext()));
+                Injection.provideLocationProvider(mFragmentActivity.getApplicationContext()), Delivery.frame().boundTo(fragment));
     }
 
     private Fragment getFragmentById(int container) {
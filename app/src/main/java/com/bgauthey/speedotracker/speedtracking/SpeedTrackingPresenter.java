@@ -2,6 +2,7 @@ package com.bgauthey.speedotracker.speedtracking;
 
 import android.location.Location;
 
+import com.bgauthey.speedotracker.service.Delivery;
 import com.bgauthey.speedotracker.service.LocationProvider;
 
 /**
@@ -12,16 +13,38 @@ public class SpeedTrackingPresenter implements SpeedTrackingContract.Presenter {
 
     private SpeedTrackingContract.View mView;
     private LocationProvider mLocationProvider;
+    private Delivery mDelivery;
+
+    /**
+     * State to display
+     */
+    private SpeedTrackingViewState mState;
+    /**
+     * State displayed by the view, null if unknown
+     */
+    private SpeedTrackingViewState mRenderedState;
 
     public SpeedTrackingPresenter(SpeedTrackingContract.View view, LocationProvider locationProvider) {
+        this(view, locationProvider, Delivery.inline());
+    }
+
+    /**
+     * @param delivery how updates are delivered to this presenter, typically bound to the lifecycle
+     *                 of the view
+     */
+    public SpeedTrackingPresenter(SpeedTrackingContract.View view, LocationProvider locationProvider, Delivery delivery) {
         mView = view;
         mLocationProvider = locationProvider;
+        mDelivery = delivery;
     }
 
     @Override
     public void start() {
         registerListeners();
-        showInstantSpeedScreen(mLocationProvider.isSpeedActive());
+        // The view may have been recreated since last rendering
+        mRenderedState = null;
+        mState = getProviderState();
+        render();
     }
 
     @Override
@@ -46,8 +69,8 @@ public class SpeedTrackingPresenter implements SpeedTrackingContract.Presenter {
     }
 
     void registerListeners() {
-        mLocationProvider.registerOnLocationServiceStateChangedListener(mLocationServiceStateChangedListener);
-        mLocationProvider.registerOnLocationServiceSpeedChangedListener(mOnSpeedChangedListener);
+        mLocationProvider.registerOnLocationServiceStateChangedListener(mLocationServiceStateChangedListener, mDelivery);
+        mLocationProvider.registerOnLocationServiceSpeedChangedListener(mOnSpeedChangedListener, mDelivery);
     }
 
     void unregisterListeners() {
@@ -55,24 +78,56 @@ public class SpeedTrackingPresenter implements SpeedTrackingContract.Presenter {
         mLocationProvider.unregisterOnLocationServiceSpeedChangedListener(mOnSpeedChangedListener);
     }
 
-    private void showInstantSpeedScreen(boolean show) {
-//        if (mInstantSpeedScreenDisplayed == show) {
-//            return;
-//        }
-//        mInstantSpeedScreenDisplayed = show;
-        if (show) {
-            mView.showInstantSpeedScreen();
-        } else {
-            mView.showFeedbackScreen();
+    private SpeedTrackingViewState getState() {
+        if (mState == null) {
+            mState = getProviderState();
+        }
+        return mState;
+    }
+
+    /**
+     * @return the state of the view matching the location provider
+     */
+    private SpeedTrackingViewState getProviderState() {
+        boolean running = mLocationProvider.isTrackingRunning();
+        return new SpeedTrackingViewState(getScreen(mLocationProvider.isSpeedActive()), !running, !running);
+    }
+
+    private static SpeedTrackingViewState.Screen getScreen(boolean speedActive) {
+        return speedActive ? SpeedTrackingViewState.Screen.INSTANT_SPEED : SpeedTrackingViewState.Screen.FEEDBACK;
+    }
+
+    /**
+     * Update the view with the fields of {@link #mState} differing from the rendered state.
+     */
+    private void render() {
+        SpeedTrackingViewState state = mState;
+        SpeedTrackingViewState rendered = mRenderedState;
+        if (state.equals(rendered)) {
+            return;
+        }
+        if (rendered == null || rendered.getScreen() != state.getScreen()) {
+            if (state.getScreen() == SpeedTrackingViewState.Screen.INSTANT_SPEED) {
+                mView.showInstantSpeedScreen();
+            } else {
+                mView.showFeedbackScreen();
+            }
+        }
+        if (rendered == null || rendered.isStartButton() != state.isStartButton()) {
+            mView.updateButtonState(state.isStartButton());
+        }
+        if (rendered == null || rendered.isAppBarExpanded() != state.isAppBarExpanded()) {
+            mView.setAppBarExpanded(state.isAppBarExpanded());
         }
+        mRenderedState = state;
     }
 
     private final LocationProvider.OnSpeedRecordingStateChangedListener mLocationServiceStateChangedListener
             = new LocationProvider.OnSpeedRecordingStateChangedListener() {
         @Override
         public void onSpeedRecordingStateChanged(boolean enabled) {
-            showInstantSpeedScreen(enabled);
-            mView.updateButtonState(!enabled);
+            mState = getState().withScreen(getScreen(enabled)).withTrackingRunning(enabled);
+            render();
         }
     };
 
@@ -81,7 +136,8 @@ public class SpeedTrackingPresenter implements SpeedTrackingContract.Presenter {
 
         @Override
         public void onSpeedActivityChanged(boolean active) {
-            showInstantSpeedScreen(active);
+            mState = getState().withScreen(getScreen(active));
+            render();
         }
 
         @Override
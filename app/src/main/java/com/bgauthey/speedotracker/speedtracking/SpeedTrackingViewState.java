@@ -0,0 +1,85 @@
+package com.bgauthey.speedotracker.speedtracking;
+
+/**
+ * Immutable state of the views of {@link SpeedTrackingActivity}: the screen shown by the bottom
+ * sheet, the action of the tracking button and whether the app bar is expanded.
+ * <p>
+ * {@link SpeedTrackingPresenter} renders only the fields differing from the last rendered state.
+ */
+final class SpeedTrackingViewState {
+
+    enum Screen {
+        INSTANT_SPEED,
+        FEEDBACK
+    }
+
+    private final Screen mScreen;
+    private final boolean mStartButton;
+    private final boolean mAppBarExpanded;
+
+    SpeedTrackingViewState(Screen screen, boolean startButton, boolean appBarExpanded) {
+        mScreen = screen;
+        mStartButton = startButton;
+        mAppBarExpanded = appBarExpanded;
+    }
+
+    /**
+     * @return screen shown by the bottom sheet
+     */
+    Screen getScreen() {
+        return mScreen;
+    }
+
+    /**
+     * @return true if the tracking button starts tracking, false if it stops it
+     */
+    boolean isStartButton() {
+        return mStartButton;
+    }
+
+    boolean isAppBarExpanded() {
+        return mAppBarExpanded;
+    }
+
+    SpeedTrackingViewState withScreen(Screen screen) {
+        return screen == mScreen ? this : new SpeedTrackingViewState(screen, mStartButton, mAppBarExpanded);
+    }
+
+    /**
+     * @param running true if tracking is running: the button stops it and the app bar is collapsed
+     */
+    SpeedTrackingViewState withTrackingRunning(boolean running) {
+        if (mStartButton == !running && mAppBarExpanded == !running) {
+            return this;
+        }
+        return new SpeedTrackingViewState(mScreen, !running, !running);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SpeedTrackingViewState that = (SpeedTrackingViewState) o;
+        return mScreen == that.mScreen
+                && mStartButton == that.mStartButton
+                && mAppBarExpanded == that.mAppBarExpanded;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mScreen.hashCode();
+        result = 31 * result + (mStartButton ? 1 : 0);
+        result = 31 * result + (mAppBarExpanded ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SpeedTrackingViewState{screen=" + mScreen + ", startButton=" + mStartButton
+                + ", appBarExpanded=" + mAppBarExpanded + '}';
+    }
+}
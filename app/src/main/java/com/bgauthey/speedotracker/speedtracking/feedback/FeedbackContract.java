@@ -10,8 +10,6 @@ public interface FeedbackContract {
 
     interface View extends BaseView<Presenter> {
         void showAverageSpeed(String averageSpeed);
-
-        void showDebugInfo(float averageSpeed, float distance, int timeElapsed);
     }
 
     interface Presenter extends BasePresenter {
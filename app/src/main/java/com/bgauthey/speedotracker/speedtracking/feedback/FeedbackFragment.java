@@ -7,12 +7,12 @@ import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
 import com.bgauthey.speedotracker.R;
+import com.bgauthey.speedotracker.widget.SpeedometerTextView;
 
 /**
- * Displays average speed on last section in a {@link TextView}.
+ * Displays average speed on last section in a {@link SpeedometerTextView}.
  */
 public class FeedbackFragment extends Fragment implements FeedbackContract.View {
 
@@ -20,8 +20,7 @@ public class FeedbackFragment extends Fragment implements FeedbackContract.View
 
     private FeedbackContract.Presenter mPresenter;
 
-    private TextView mTvAverageSpeed;
-    private TextView mTvDebug;
+    private SpeedometerTextView mTvAverageSpeed;
 
     public static FeedbackFragment newInstance() {
 
@@ -42,7 +41,6 @@ public class FeedbackFragment extends Fragment implements FeedbackContract.View
         View v = inflater.inflate(R.layout.fragment_feedback_speed, container, false);
 
         mTvAverageSpeed = v.findViewById(R.id.tv_ff_speed_value);
-        mTvDebug = v.findViewById(R.id.tv_ff_debug);
 
         return v;
     }
@@ -66,14 +64,7 @@ public class FeedbackFragment extends Fragment implements FeedbackContract.View
     //region FeedbackContract.View
     @Override
     public void showAverageSpeed(String averageSpeed) {
-        mTvAverageSpeed.setText(getString(R.string.speed_label, averageSpeed));
-    }
-
-    @Override
-    public void showDebugInfo(float averageSpeed, float distance, int timeElapsed) {
-        mTvDebug.setVisibility(View.VISIBLE);
-        mTvDebug.setText("AS=" + averageSpeed + "\nDistance=" + distance
-                + "\nTime=" + timeElapsed);
+        mTvAverageSpeed.setValue(averageSpeed);
     }
 
     @Override
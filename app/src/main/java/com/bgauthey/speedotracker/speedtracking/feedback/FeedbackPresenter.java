@@ -1,25 +1,39 @@
 package com.bgauthey.speedotracker.speedtracking.feedback;
 
-import com.bgauthey.speedotracker.Constants;
+import com.bgauthey.speedotracker.service.Delivery;
 import com.bgauthey.speedotracker.service.LocationProvider;
-
-import java.text.DecimalFormat;
+import com.bgauthey.speedotracker.util.SpeedFormatter;
 
 /**
  * Gets information from the model layer and updates UI as required.
  */
 public class FeedbackPresenter implements FeedbackContract.Presenter {
 
+    /**
+     * Shared by presenters, which all run on the main thread
+     */
+    private static final SpeedFormatter SPEED_FORMATTER = new SpeedFormatter(1);
+
     private FeedbackContract.View mView;
     private LocationProvider mLocationProvider;
+    private Delivery mDelivery;
 
     public FeedbackPresenter(FeedbackContract.View view, LocationProvider locationProvider) {
+        this(view, locationProvider, Delivery.inline());
+    }
+
+    /**
+     * @param delivery how average speed updates are delivered to this presenter,
+     *                 {@link Delivery#frame()} to update the view at most once per frame
+     */
+    public FeedbackPresenter(FeedbackContract.View view, LocationProvider locationProvider, Delivery delivery) {
         mView = view;
         mLocationProvider = locationProvider;
+        mDelivery = delivery;
     }
 
     void registerListener() {
-        mLocationProvider.registerOnLocationServiceAverageSpeedChangedListener(mAverageSpeedChangedListener);
+        mLocationProvider.registerOnLocationServiceAverageSpeedChangedListener(mAverageSpeedChangedListener, mDelivery);
     }
 
     void unregisterListener() {
@@ -27,7 +41,7 @@ public class FeedbackPresenter implements FeedbackContract.Presenter {
     }
 
     static String formatSpeed(float speed) {
-        return new DecimalFormat("0.0").format(speed);
+        return SPEED_FORMATTER.format(speed);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -55,9 +69,6 @@ public class FeedbackPresenter implements FeedbackContract.Presenter {
                 @Override
                 public void onAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
                     mView.showAverageSpeed(formatSpeed(averageSpeed));
-                    if (Constants.SHOW_DEBUG_INFO) {
-                        mView.showDebugInfo(averageSpeed, distance, timeElapsed);
-                    }
                 }
             };
 }
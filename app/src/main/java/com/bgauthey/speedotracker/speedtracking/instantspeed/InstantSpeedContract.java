@@ -11,12 +11,30 @@ import com.bgauthey.speedotracker.BaseView;
 public interface InstantSpeedContract {
 
     interface View extends BaseView<Presenter> {
-        void showSpeed(String speedValue);
+        void showSpeed(float speed, String speedValue);
 
-        void showLocationDebug(Location location);
+        /**
+         * The speed of a new fix is displayed, for the first time.
+         *
+         * @param fixNanos time of the fix, {@link Location#getElapsedRealtimeNanos()}
+         */
+        void onFixDisplayed(long fixNanos);
+
+        /**
+         * Call {@link Presenter#onFrame(long)} at the next display frame. Requests made before that
+         * frame are merged.
+         */
+        void requestFrame();
     }
 
     interface Presenter extends BasePresenter {
 
+        /**
+         * Render a display frame requested by {@link View#requestFrame()}.
+         *
+         * @param frameNanos time of the frame, in the time base of
+         *                   {@link Location#getElapsedRealtimeNanos()}
+         */
+        void onFrame(long frameNanos);
     }
 }
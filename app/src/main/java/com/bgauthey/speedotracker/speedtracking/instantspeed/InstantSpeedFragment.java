@@ -1,27 +1,37 @@
 package com.bgauthey.speedotracker.speedtracking.instantspeed;
 
-import android.annotation.SuppressLint;
-import android.location.Location;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
+import com.bgauthey.speedotracker.Constants;
 import com.bgauthey.speedotracker.R;
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
+import com.bgauthey.speedotracker.widget.SpeedGaugeView;
+import com.bgauthey.speedotracker.widget.SpeedometerTextView;
 
 /**
- * Displays instant speed in a {@link TextView}
+ * Displays instant speed in a {@link SpeedometerTextView}, or a {@link SpeedGaugeView} if
+ * {@link Constants#USE_SPEED_GAUGE} is set
  */
 public class InstantSpeedFragment extends Fragment implements InstantSpeedContract.View {
 
     private InstantSpeedContract.Presenter mPresenter;
+    /**
+     * Measures the latency of displayed fixes, null not to measure it
+     */
+    @Nullable
+    private FixLatencyMonitor mLatencyMonitor;
 
-    private TextView mTvSpeed;
-    private TextView mTvDebug;
+    private SpeedometerTextView mTvSpeed;
+    private SpeedGaugeView mGaugeSpeed;
+    private boolean mFrameRequested;
 
     public static InstantSpeedFragment newInstance() {
 
@@ -32,6 +42,10 @@ public class InstantSpeedFragment extends Fragment implements InstantSpeedContra
         return fragment;
     }
 
+    public void setLatencyMonitor(@Nullable FixLatencyMonitor latencyMonitor) {
+        mLatencyMonitor = latencyMonitor;
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Fragment lifecycle
     ///////////////////////////////////////////////////////////////////////////
@@ -39,10 +53,14 @@ public class InstantSpeedFragment extends Fragment implements InstantSpeedContra
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
-        View v = inflater.inflate(R.layout.fragment_instant_speed, container, false);
-
-        mTvSpeed = v.findViewById(R.id.tv_fis_speed);
-        mTvDebug = v.findViewById(R.id.tv_location_debug);
+        View v;
+        if (Constants.USE_SPEED_GAUGE) {
+            v = inflater.inflate(R.layout.fragment_instant_speed_gauge, container, false);
+            mGaugeSpeed = v.findViewById(R.id.gv_fis_speed);
+        } else {
+            v = inflater.inflate(R.layout.fragment_instant_speed, container, false);
+            mTvSpeed = v.findViewById(R.id.tv_fis_speed);
+        }
 
         return v;
     }
@@ -57,8 +75,21 @@ public class InstantSpeedFragment extends Fragment implements InstantSpeedContra
     public void onPause() {
         super.onPause();
         mPresenter.stop();
+        if (mFrameRequested) {
+            mFrameRequested = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
     }
 
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameRequested = false;
+            // Frame times don't count deep sleep, unlike times of fixes
+            mPresenter.onFrame(SystemClock.elapsedRealtimeNanos());
+        }
+    };
+
     ///////////////////////////////////////////////////////////////////////////
     // Interface implementation
     ///////////////////////////////////////////////////////////////////////////
@@ -69,16 +100,26 @@ public class InstantSpeedFragment extends Fragment implements InstantSpeedContra
     }
 
     @Override
-    public void showSpeed(String speedValue) {
-        mTvSpeed.setText(getString(R.string.speed_label, speedValue));
+    public void showSpeed(float speed, String speedValue) {
+        if (mGaugeSpeed != null) {
+            mGaugeSpeed.setSpeed(speed, speedValue);
+        } else {
+            mTvSpeed.setValue(speedValue);
+        }
+    }
+
+    @Override
+    public void onFixDisplayed(long fixNanos) {
+        if (mLatencyMonitor != null) {
+            mLatencyMonitor.onSpeedRendered(fixNanos, SystemClock.elapsedRealtimeNanos());
+        }
     }
 
-    @SuppressLint("SetTextI18n")
     @Override
-    public void showLocationDebug(Location location) {
-        mTvDebug.setVisibility(View.VISIBLE);
-        mTvDebug.setText("Location: speed=" + location.getSpeed() + ", long=" + location.getLongitude()
-                + ", lat=" + location.getLatitude() + ", accuracy=" + location.getAccuracy()
-                + ", time=" + location.getTime());
+    public void requestFrame() {
+        if (!mFrameRequested) {
+            mFrameRequested = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
     }
 }
@@ -1,33 +1,92 @@
 package com.bgauthey.speedotracker.speedtracking.instantspeed;
 
 import android.location.Location;
+import android.support.annotation.Nullable;
 
-import com.bgauthey.speedotracker.Constants;
+import com.bgauthey.speedotracker.service.Delivery;
 import com.bgauthey.speedotracker.service.LocationProvider;
-
-import java.text.DecimalFormat;
+import com.bgauthey.speedotracker.util.SpeedFormatter;
 
 /**
  * Listens to {@link LocationProvider} updates and updates the UI as required.
+ * <p>
+ * When interpolating, speeds are displayed at display rate: a {@link SpeedInterpolator} computes
+ * the speed of each frame from the times of fixes, so that the speed doesn't jump on each fix.
  */
 public class InstantSpeedPresenter implements InstantSpeedContract.Presenter {
 
     private InstantSpeedContract.View mView;
     private LocationProvider mLocationProvider;
+    private Delivery mDelivery;
+    private final SpeedFormatter mSpeedFormatter = new SpeedFormatter(0);
+    /**
+     * Interpolates speeds between fixes, null to display the speed of each fix
+     */
+    @Nullable
+    private final SpeedInterpolator mInterpolator;
+    private float mShownSpeed = Float.NaN;
+    /**
+     * Time of the last fix given to the interpolator, not displayed yet
+     */
+    private boolean mHasUndisplayedFix;
+    private long mUndisplayedFixNanos;
 
     public InstantSpeedPresenter(InstantSpeedContract.View view, LocationProvider locationProvider) {
+        this(view, locationProvider, Delivery.inline());
+    }
+
+    public InstantSpeedPresenter(InstantSpeedContract.View view, LocationProvider locationProvider, Delivery delivery) {
+        this(view, locationProvider, delivery, false);
+    }
+
+    /**
+     * @param delivery    how speed updates are delivered to this presenter, {@link Delivery#frame()}
+     *                    to update the view at most once per frame
+     * @param interpolate true to display speeds at display rate, interpolated between fixes
+     */
+    public InstantSpeedPresenter(InstantSpeedContract.View view, LocationProvider locationProvider, Delivery delivery,
+                                 boolean interpolate) {
         mView = view;
         mLocationProvider = locationProvider;
+        mDelivery = delivery;
+        mInterpolator = interpolate ? new SpeedInterpolator() : null;
     }
 
     @Override
     public void start() {
-        mLocationProvider.registerOnLocationServiceSpeedChangedListener(mSpeedChangedListener);
+        mLocationProvider.registerOnLocationServiceSpeedChangedListener(mSpeedChangedListener, mDelivery);
     }
 
     @Override
     public void stop() {
         mLocationProvider.unregisterOnLocationServiceSpeedChangedListener(mSpeedChangedListener);
+        if (mInterpolator != null) {
+            mInterpolator.reset();
+        }
+        mHasUndisplayedFix = false;
+    }
+
+    @Override
+    public void onFrame(long frameNanos) {
+        if (mInterpolator == null) {
+            return;
+        }
+        showSpeed(mInterpolator.getSpeed(frameNanos));
+        if (mHasUndisplayedFix) {
+            // This frame applies the new fix
+            mHasUndisplayedFix = false;
+            mView.onFixDisplayed(mUndisplayedFixNanos);
+        }
+        if (mInterpolator.isAnimating(frameNanos)) {
+            mView.requestFrame();
+        }
+    }
+
+    private void showSpeed(float speed) {
+        if (speed != mShownSpeed) {
+            mShownSpeed = speed;
+            mView.showSpeed(speed, mSpeedFormatter.format(speed));
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -37,9 +96,16 @@ public class InstantSpeedPresenter implements InstantSpeedContract.Presenter {
     private final LocationProvider.OnSpeedChangedListener mSpeedChangedListener = new LocationProvider.OnSpeedChangedListener() {
         @Override
         public void onSpeedChanged(float speed, Location location) {
-            mView.showSpeed(new DecimalFormat("#").format(speed));
-            if (Constants.SHOW_DEBUG_INFO) {
-                mView.showLocationDebug(location);
+            if (mInterpolator != null && location != null) {
+                mInterpolator.onSpeed(speed, location.getElapsedRealtimeNanos());
+                mHasUndisplayedFix = true;
+                mUndisplayedFixNanos = location.getElapsedRealtimeNanos();
+                mView.requestFrame();
+            } else {
+                mView.showSpeed(speed, mSpeedFormatter.format(speed));
+                if (location != null) {
+                    mView.onFixDisplayed(location.getElapsedRealtimeNanos());
+                }
             }
         }
 
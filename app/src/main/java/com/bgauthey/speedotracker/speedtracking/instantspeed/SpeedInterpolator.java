@@ -0,0 +1,135 @@
+package com.bgauthey.speedotracker.speedtracking.instantspeed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the speed to display on each frame between fixes, from timestamps only: times of fixes
+ * ({@code Location.getElapsedRealtimeNanos()}) and times of frames, in the same time base.
+ * <p>
+ * The displayed speed follows the trend of the last two speeds: it's extrapolated from the last
+ * fix, which also hides the time the fix took to reach the display. Extrapolation lasts up to one
+ * and a half fix interval, at most {@link #MAX_EXTRAPOLATION_NANOS}, then the speed holds until
+ * the next fix. When the next fix arrives, the displayed speed snaps back to its trend within
+ * {@link #SNAP_NANOS}, instead of jumping.
+ * <p>
+ * Speeds given between two frames are applied at the next frame. Not thread-safe.
+ */
+final class SpeedInterpolator {
+
+    static final long MAX_EXTRAPOLATION_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long SNAP_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    /**
+     * Fixes further apart don't give a trend, after the provider was lost for instance
+     */
+    static final long MAX_TREND_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private boolean mHasFix;
+    private float mSpeed;
+    private long mFixNanos;
+    /**
+     * Trend of the speed, in speed unit per nanosecond
+     */
+    private float mSlope;
+    private long mMaxExtrapolationNanos;
+
+    private boolean mHasPendingFix;
+    private float mPendingSpeed;
+    private long mPendingFixNanos;
+
+    /**
+     * Difference between the displayed speed and the trend when the last fix was applied, faded
+     * out during {@link #SNAP_NANOS}
+     */
+    private float mCorrection;
+    private long mSnapStartNanos;
+
+    /**
+     * Give the speed of a new fix, applied at the next frame.
+     *
+     * @param speed    the speed
+     * @param fixNanos time of the fix. A time already given replaces the speed of that fix, an
+     *                 older time is ignored
+     */
+    void onSpeed(float speed, long fixNanos) {
+        mHasPendingFix = true;
+        mPendingSpeed = speed;
+        mPendingFixNanos = fixNanos;
+    }
+
+    /**
+     * @param frameNanos time of the frame
+     * @return speed to display at this frame, 0 before the first fix
+     */
+    float getSpeed(long frameNanos) {
+        if (mHasPendingFix) {
+            mHasPendingFix = false;
+            applyFix(mPendingSpeed, mPendingFixNanos, frameNanos);
+        }
+        if (!mHasFix) {
+            return 0f;
+        }
+        return getTrendSpeed(frameNanos) + getCorrection(frameNanos);
+    }
+
+    /**
+     * @param frameNanos time of the last frame
+     * @return true if the displayed speed changes after this frame, without any new fix
+     */
+    boolean isAnimating(long frameNanos) {
+        if (mHasPendingFix) {
+            return true;
+        }
+        if (!mHasFix) {
+            return false;
+        }
+        return (mSlope != 0f && frameNanos - mFixNanos < mMaxExtrapolationNanos)
+                || (mCorrection != 0f && frameNanos - mSnapStartNanos < SNAP_NANOS);
+    }
+
+    /**
+     * Forget all fixes.
+     */
+    void reset() {
+        mHasFix = false;
+        mHasPendingFix = false;
+        mCorrection = 0f;
+    }
+
+    private void applyFix(float speed, long fixNanos, long frameNanos) {
+        if (!mHasFix) {
+            mHasFix = true;
+            mSpeed = speed;
+            mFixNanos = fixNanos;
+            mSlope = 0f;
+            mMaxExtrapolationNanos = 0;
+            mCorrection = 0f;
+            return;
+        }
+        long intervalNanos = fixNanos - mFixNanos;
+        if (intervalNanos < 0) {
+            return;
+        }
+        float displayedSpeed = getSpeed(frameNanos);
+        if (intervalNanos > 0) {
+            mSlope = intervalNanos <= MAX_TREND_INTERVAL_NANOS ? (speed - mSpeed) / intervalNanos : 0f;
+            mMaxExtrapolationNanos = Math.min(MAX_EXTRAPOLATION_NANOS, intervalNanos + intervalNanos / 2);
+            mFixNanos = fixNanos;
+        }
+        mSpeed = speed;
+        mCorrection = displayedSpeed - getTrendSpeed(frameNanos);
+        mSnapStartNanos = frameNanos;
+    }
+
+    private float getTrendSpeed(long frameNanos) {
+        long elapsedNanos = Math.max(0, Math.min(frameNanos - mFixNanos, mMaxExtrapolationNanos));
+        return Math.max(0f, mSpeed + mSlope * elapsedNanos);
+    }
+
+    private float getCorrection(long frameNanos) {
+        long elapsedNanos = frameNanos - mSnapStartNanos;
+        if (mCorrection == 0f || elapsedNanos >= SNAP_NANOS) {
+            return 0f;
+        }
+        return mCorrection * (1f - (float) elapsedNanos / SNAP_NANOS);
+    }
+}
@@ -0,0 +1,65 @@
+package com.bgauthey.speedotracker.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} running tasks on the main thread at the next display frame, through
+ * {@link Choreographer}. All the tasks submitted before a frame run together, in order.
+ */
+public class FrameExecutor implements Executor {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Tasks waiting for the next frame, guarded by itself
+     */
+    private final ArrayList<Runnable> mPendingTasks = new ArrayList<>();
+    /**
+     * Tasks of the current frame, only used on the main thread
+     */
+    private final ArrayList<Runnable> mFrameTasks = new ArrayList<>();
+    private boolean mFrameScheduled;
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (mPendingTasks) {
+            mPendingTasks.add(command);
+            if (mFrameScheduled) {
+                return;
+            }
+            mFrameScheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mScheduleFrameTask.run();
+        } else {
+            // Choreographer instances are bound to the thread, use the main thread one
+            mHandler.post(mScheduleFrameTask);
+        }
+    }
+
+    private final Runnable mScheduleFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            synchronized (mPendingTasks) {
+                mFrameTasks.addAll(mPendingTasks);
+                mPendingTasks.clear();
+                mFrameScheduled = false;
+            }
+            for (int i = 0; i < mFrameTasks.size(); i++) {
+                mFrameTasks.get(i).run();
+            }
+            mFrameTasks.clear();
+        }
+    };
+}
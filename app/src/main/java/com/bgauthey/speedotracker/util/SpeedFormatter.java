@@ -0,0 +1,125 @@
+package com.bgauthey.speedotracker.util;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats speeds without allocating once warmed up, as {@code new DecimalFormat("#")} (no fraction
+ * digit) or {@code new DecimalFormat("0.0")} (one fraction digit) would: values are rounded half
+ * to even and use the decimal separator of the locale.
+ * <p>
+ * Speeds are bounded, so the string of each rounded value below {@link #MAX_CACHED_SPEED} is
+ * rendered once in a reusable char buffer and kept in a table. Other values are formatted with a
+ * {@link DecimalFormat}.
+ * <p>
+ * Not thread-safe: use one formatter per thread, typically one per presenter.
+ */
+public final class SpeedFormatter {
+
+    /**
+     * Speeds from 0 (included) to this speed (excluded) are cached
+     */
+    public static final int MAX_CACHED_SPEED = 1000;
+
+    private static final int MAX_FRACTION_DIGITS = 1;
+
+    private final int mFractionDigits;
+    private final int mScale;
+    /**
+     * Locale given to the constructor, null to follow the default locale
+     */
+    private final Locale mFixedLocale;
+    private Locale mLocale;
+    private char mDecimalSeparator;
+    private DecimalFormat mFallbackFormat;
+    /**
+     * Formatted strings indexed by rounded speed multiplied by {@link #mScale}
+     */
+    private final String[] mCache;
+    private final char[] mBuffer = new char[8];
+
+    /**
+     * Create a formatter following the default locale, even if it changes.
+     *
+     * @param fractionDigits number of fraction digits, 0 or 1
+     */
+    public SpeedFormatter(int fractionDigits) {
+        this(fractionDigits, null);
+    }
+
+    /**
+     * @param fractionDigits number of fraction digits, 0 or 1
+     * @param locale         locale giving the decimal separator, null to follow the default locale
+     */
+    public SpeedFormatter(int fractionDigits, Locale locale) {
+        if (fractionDigits < 0 || fractionDigits > MAX_FRACTION_DIGITS) {
+            throw new IllegalArgumentException("Unsupported number of fraction digits: " + fractionDigits);
+        }
+        mFractionDigits = fractionDigits;
+        mScale = fractionDigits == 0 ? 1 : 10;
+        mFixedLocale = locale;
+        mCache = new String[MAX_CACHED_SPEED * mScale];
+        setLocale(locale != null ? locale : Locale.getDefault());
+    }
+
+    /**
+     * Format a speed.
+     *
+     * @param speed the speed, in any unit
+     * @return the formatted speed, the same instance for the same rounded value
+     */
+    public String format(float speed) {
+        if (mFixedLocale == null && !mLocale.equals(Locale.getDefault())) {
+            setLocale(Locale.getDefault());
+        }
+        // Math.rint rounds half to even, like DecimalFormat
+        double scaled = Math.rint((double) speed * mScale);
+        if (scaled >= 0 && scaled < mCache.length) {
+            int index = (int) scaled;
+            String formatted = mCache[index];
+            if (formatted == null) {
+                formatted = render(index);
+                mCache[index] = formatted;
+            }
+            return formatted;
+        }
+        return getFallbackFormat().format(speed);
+    }
+
+    private void setLocale(Locale locale) {
+        mLocale = locale;
+        mDecimalSeparator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+        mFallbackFormat = null;
+        for (int i = 0; i < mCache.length; i++) {
+            mCache[i] = null;
+        }
+    }
+
+    /**
+     * Write a scaled positive value in the buffer, from its end.
+     */
+    private String render(int scaled) {
+        int position = mBuffer.length;
+        int value = scaled;
+        for (int i = 0; i < mFractionDigits; i++) {
+            mBuffer[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (mFractionDigits > 0) {
+            mBuffer[--position] = mDecimalSeparator;
+        }
+        do {
+            mBuffer[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return new String(mBuffer, position, mBuffer.length - position);
+    }
+
+    private DecimalFormat getFallbackFormat() {
+        if (mFallbackFormat == null) {
+            mFallbackFormat = new DecimalFormat(mFractionDigits == 0 ? "#" : "0.0", DecimalFormatSymbols.getInstance(mLocale));
+        }
+        return mFallbackFormat;
+    }
+}
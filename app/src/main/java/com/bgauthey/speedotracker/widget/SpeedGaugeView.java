@@ -0,0 +1,325 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.bgauthey.speedotracker.R;
+
+/**
+ * Analog speedometer: a dial graduated from 0 to {@code app:maxSpeed}, a needle and the speed value.
+ * <p>
+ * The dial, its ticks, labels and the unit never change with the speed: they are rendered once in
+ * a bitmap, rendered again only when the size of the view, its style or the configuration (theme,
+ * density) changes. Each speed update only draws this bitmap, the needle and the value, without
+ * allocating.
+ */
+public class SpeedGaugeView extends View {
+
+    private static final float DEFAULT_SIZE_DP = 200;
+    private static final int DEFAULT_MAX_SPEED = 200;
+    private static final int DEFAULT_MAJOR_TICK_STEP = 20;
+    private static final int DEFAULT_MINOR_TICK_COUNT = 1;
+    private static final int MAX_VALUE_LENGTH = 8;
+
+    /**
+     * Angle of speed 0, in degrees clockwise from 3 o'clock
+     */
+    private static final float START_ANGLE = 150;
+    private static final float SWEEP_ANGLE = 240;
+
+    // Proportions of the dial radius
+    private static final float DIAL_STROKE_RATIO = 0.02f;
+    private static final float MAJOR_TICK_RATIO = 0.15f;
+    private static final float MINOR_TICK_RATIO = 0.08f;
+    private static final float LABEL_RADIUS_RATIO = 0.70f;
+    private static final float LABEL_SIZE_RATIO = 0.12f;
+    private static final float NEEDLE_RATIO = 0.85f;
+    private static final float NEEDLE_STROKE_RATIO = 0.03f;
+    private static final float HUB_RATIO = 0.07f;
+    private static final float VALUE_SIZE_RATIO = 0.28f;
+    private static final float VALUE_BASELINE_RATIO = 0.55f;
+    private static final float UNIT_SIZE_RATIO = 0.10f;
+    private static final float UNIT_BASELINE_RATIO = 0.72f;
+
+    private final Paint mDialPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mNeedlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mHubPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mValuePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mDialBounds = new RectF();
+
+    private int mMaxSpeed;
+    private int mMajorTickStep;
+    private int mMinorTickCount;
+    private String mUnit;
+
+    private float mCenterX;
+    private float mCenterY;
+    private float mRadius;
+
+    /**
+     * Static layer: dial, ticks, labels and unit
+     */
+    private Bitmap mDialBitmap;
+    private Canvas mDialCanvas;
+    private boolean mDialDirty = true;
+    private int mDialRenderCount;
+
+    private float mSpeed;
+    private final char[] mValue = new char[MAX_VALUE_LENGTH];
+    private int mValueLength;
+
+    public SpeedGaugeView(Context context) {
+        this(context, null);
+    }
+
+    public SpeedGaugeView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SpeedGaugeView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SpeedGaugeView, defStyleAttr, 0);
+        int dialColor = Themes.getColor(context, a.getColorStateList(R.styleable.SpeedGaugeView_android_textColor),
+                android.R.attr.textColorPrimary, Color.BLACK);
+        int needleColor = Themes.getColor(context, a.getColorStateList(R.styleable.SpeedGaugeView_needleColor),
+                R.attr.colorAccent, Color.RED);
+        mMaxSpeed = Math.max(1, a.getInt(R.styleable.SpeedGaugeView_maxSpeed, DEFAULT_MAX_SPEED));
+        mMajorTickStep = Math.max(1, a.getInt(R.styleable.SpeedGaugeView_majorTickStep, DEFAULT_MAJOR_TICK_STEP));
+        mMinorTickCount = Math.max(0, a.getInt(R.styleable.SpeedGaugeView_minorTickCount, DEFAULT_MINOR_TICK_COUNT));
+        mUnit = a.getString(R.styleable.SpeedGaugeView_unit);
+        a.recycle();
+
+        mDialPaint.setStyle(Paint.Style.STROKE);
+        mDialPaint.setColor(dialColor);
+        mLabelPaint.setColor(dialColor);
+        mLabelPaint.setTextAlign(Paint.Align.CENTER);
+        mNeedlePaint.setStyle(Paint.Style.STROKE);
+        mNeedlePaint.setStrokeCap(Paint.Cap.ROUND);
+        mNeedlePaint.setColor(needleColor);
+        mHubPaint.setColor(needleColor);
+        mValuePaint.setColor(dialColor);
+        mValuePaint.setTextAlign(Paint.Align.CENTER);
+        mValuePaint.setTypeface(Typeface.DEFAULT_BOLD);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Speed
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Display a speed. Only the needle and the value are drawn again.
+     *
+     * @param speed the speed, giving the needle position
+     * @param value the speed value, as displayed
+     */
+    public void setSpeed(float speed, CharSequence value) {
+        int length = Math.min(value.length(), MAX_VALUE_LENGTH);
+        if (speed == mSpeed && length == mValueLength && contentEquals(value)) {
+            return;
+        }
+        mSpeed = speed;
+        for (int i = 0; i < length; i++) {
+            mValue[i] = value.charAt(i);
+        }
+        mValueLength = length;
+        invalidate();
+    }
+
+    private boolean contentEquals(CharSequence value) {
+        for (int i = 0; i < mValueLength; i++) {
+            if (mValue[i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @param maxSpeed speed at the end of the dial
+     */
+    public void setMaxSpeed(int maxSpeed) {
+        mMaxSpeed = Math.max(1, maxSpeed);
+        invalidateDial();
+    }
+
+    /**
+     * @param unit unit displayed under the value, null for none
+     */
+    public void setUnit(@Nullable String unit) {
+        mUnit = unit;
+        invalidateDial();
+    }
+
+    /**
+     * Render the static layer again on next draw.
+     */
+    private void invalidateDial() {
+        mDialDirty = true;
+        invalidate();
+    }
+
+    @VisibleForTesting
+    int getDialRenderCount() {
+        return mDialRenderCount;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // View
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int size = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_SIZE_DP,
+                getResources().getDisplayMetrics());
+        setMeasuredDimension(resolveSize(Math.max(size, getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(size, getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int contentWidth = w - getPaddingLeft() - getPaddingRight();
+        int contentHeight = h - getPaddingTop() - getPaddingBottom();
+        mRadius = Math.max(0, Math.min(contentWidth, contentHeight) / 2f);
+        mCenterX = getPaddingLeft() + contentWidth / 2f;
+        mCenterY = getPaddingTop() + contentHeight / 2f;
+
+        float dialStroke = mRadius * DIAL_STROKE_RATIO;
+        float dialRadius = mRadius - dialStroke / 2;
+        mDialBounds.set(mCenterX - dialRadius, mCenterY - dialRadius, mCenterX + dialRadius, mCenterY + dialRadius);
+        mDialPaint.setStrokeWidth(dialStroke);
+        mLabelPaint.setTextSize(mRadius * LABEL_SIZE_RATIO);
+        mNeedlePaint.setStrokeWidth(mRadius * NEEDLE_STROKE_RATIO);
+        mValuePaint.setTextSize(mRadius * VALUE_SIZE_RATIO);
+        invalidateDial();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        invalidateDial();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mDialBitmap != null) {
+            mDialBitmap.recycle();
+            mDialBitmap = null;
+            mDialCanvas = null;
+        }
+        mDialDirty = true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mDialDirty) {
+            renderDialLayer();
+        }
+        if (mDialBitmap != null) {
+            canvas.drawBitmap(mDialBitmap, 0, 0, null);
+        }
+        drawNeedle(canvas);
+    }
+
+    /**
+     * Draw the dynamic layer: needle, hub and value.
+     */
+    @VisibleForTesting
+    void drawNeedle(Canvas canvas) {
+        canvas.save();
+        canvas.rotate(getAngle(mSpeed), mCenterX, mCenterY);
+        canvas.drawLine(mCenterX, mCenterY, mCenterX + mRadius * NEEDLE_RATIO, mCenterY, mNeedlePaint);
+        canvas.restore();
+        canvas.drawCircle(mCenterX, mCenterY, mRadius * HUB_RATIO, mHubPaint);
+        canvas.drawText(mValue, 0, mValueLength, mCenterX, mCenterY + mRadius * VALUE_BASELINE_RATIO, mValuePaint);
+    }
+
+    private void renderDialLayer() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || height == 0) {
+            return;
+        }
+        if (mDialBitmap == null || mDialBitmap.getWidth() != width || mDialBitmap.getHeight() != height) {
+            if (mDialBitmap != null) {
+                mDialBitmap.recycle();
+            }
+            mDialBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mDialCanvas = new Canvas(mDialBitmap);
+        } else {
+            mDialBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        drawDial(mDialCanvas);
+        mDialDirty = false;
+        mDialRenderCount++;
+    }
+
+    /**
+     * Draw the static layer: dial, ticks, labels and unit.
+     */
+    @VisibleForTesting
+    void drawDial(Canvas canvas) {
+        canvas.drawArc(mDialBounds, START_ANGLE, SWEEP_ANGLE, false, mDialPaint);
+
+        float tickStep = (float) mMajorTickStep / (mMinorTickCount + 1);
+        int tickCount = (int) (mMaxSpeed / tickStep);
+        float labelOffset = (mLabelPaint.descent() + mLabelPaint.ascent()) / 2;
+        for (int i = 0; i <= tickCount; i++) {
+            boolean major = i % (mMinorTickCount + 1) == 0;
+            double angle = Math.toRadians(getAngle(i * tickStep));
+            float cos = (float) Math.cos(angle);
+            float sin = (float) Math.sin(angle);
+            float innerRadius = mRadius * (1 - (major ? MAJOR_TICK_RATIO : MINOR_TICK_RATIO));
+            canvas.drawLine(mCenterX + cos * innerRadius, mCenterY + sin * innerRadius,
+                    mCenterX + cos * mRadius, mCenterY + sin * mRadius, mDialPaint);
+            if (major) {
+                float labelRadius = mRadius * LABEL_RADIUS_RATIO;
+                canvas.drawText(String.valueOf(Math.round(i * tickStep)), mCenterX + cos * labelRadius,
+                        mCenterY + sin * labelRadius - labelOffset, mLabelPaint);
+            }
+        }
+
+        if (mUnit != null) {
+            float labelSize = mLabelPaint.getTextSize();
+            mLabelPaint.setTextSize(mRadius * UNIT_SIZE_RATIO);
+            canvas.drawText(mUnit, mCenterX, mCenterY + mRadius * UNIT_BASELINE_RATIO, mLabelPaint);
+            mLabelPaint.setTextSize(labelSize);
+        }
+    }
+
+    /**
+     * @return angle of the needle for a speed, in degrees clockwise from 3 o'clock
+     */
+    private float getAngle(float speed) {
+        float ratio = Math.max(0, Math.min(1, speed / mMaxSpeed));
+        return START_ANGLE + SWEEP_ANGLE * ratio;
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        String value = new String(mValue, 0, mValueLength);
+        info.setText(mUnit != null ? value + " " + mUnit : value);
+    }
+}
@@ -0,0 +1,181 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.bgauthey.speedotracker.R;
+
+/**
+ * Displays a speed value followed by its unit, for values updated several times per second.
+ * <p>
+ * Unlike a {@link android.widget.TextView}, its size doesn't depend on its value: every character
+ * of the value is drawn in a cell as wide as the widest digit and room is reserved for
+ * {@code app:maxChars} characters. Updating the value copies it in a char buffer and only
+ * invalidates the drawing, never the layout. Only a value longer than {@code app:maxChars}
+ * characters requests a layout, to grow the view.
+ */
+public class SpeedometerTextView extends View {
+
+    private static final int DEFAULT_MAX_CHARS = 5;
+    private static final float DEFAULT_TEXT_SIZE_SP = 14;
+    private static final int TEXT_STYLE_BOLD = 1;
+    private static final String DIGITS = "0123456789";
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+
+    private char[] mValue;
+    private int mValueLength;
+    private String mUnit;
+
+    private int mMaxChars;
+    private float mCellWidth;
+    private float mUnitOffset;
+    private float mUnitWidth;
+
+    public SpeedometerTextView(Context context) {
+        this(context, null);
+    }
+
+    public SpeedometerTextView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SpeedometerTextView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SpeedometerTextView, defStyleAttr, 0);
+        float defaultTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE_SP,
+                getResources().getDisplayMetrics());
+        mPaint.setTextSize(a.getDimension(R.styleable.SpeedometerTextView_android_textSize, defaultTextSize));
+        mPaint.setColor(Themes.getColor(context, a.getColorStateList(R.styleable.SpeedometerTextView_android_textColor),
+                android.R.attr.textColorPrimary, Color.BLACK));
+        if ((a.getInt(R.styleable.SpeedometerTextView_android_textStyle, 0) & TEXT_STYLE_BOLD) != 0) {
+            mPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        }
+        mMaxChars = a.getInt(R.styleable.SpeedometerTextView_maxChars, DEFAULT_MAX_CHARS);
+        mUnit = a.getString(R.styleable.SpeedometerTextView_unit);
+        String value = a.getString(R.styleable.SpeedometerTextView_value);
+        a.recycle();
+
+        mValue = new char[mMaxChars];
+        if (value != null) {
+            setValue(value);
+        }
+        updateMetrics();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Value
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Display a value. Only the drawing is invalidated, and only if the value changes.
+     *
+     * @param value the value, typically a formatted speed
+     */
+    public void setValue(CharSequence value) {
+        int length = value.length();
+        if (length == mValueLength && contentEquals(value)) {
+            return;
+        }
+        if (length > mValue.length) {
+            mValue = new char[length];
+        }
+        for (int i = 0; i < length; i++) {
+            mValue[i] = value.charAt(i);
+        }
+        mValueLength = length;
+        if (length > mMaxChars) {
+            mMaxChars = length;
+            updateMetrics();
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private boolean contentEquals(CharSequence value) {
+        for (int i = 0; i < mValueLength; i++) {
+            if (mValue[i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the displayed value, allocated on each call
+     */
+    public String getValue() {
+        return new String(mValue, 0, mValueLength);
+    }
+
+    /**
+     * @param unit unit displayed after the value, null for none
+     */
+    public void setUnit(@Nullable String unit) {
+        mUnit = unit;
+        updateMetrics();
+        requestLayout();
+        invalidate();
+    }
+
+    private void updateMetrics() {
+        mCellWidth = 0;
+        for (int i = 0; i < DIGITS.length(); i++) {
+            mCellWidth = Math.max(mCellWidth, mPaint.measureText(DIGITS, i, i + 1));
+        }
+        mUnitOffset = mUnit != null ? mPaint.measureText(" ") : 0;
+        mUnitWidth = mUnit != null ? mPaint.measureText(mUnit) : 0;
+        mPaint.getFontMetricsInt(mFontMetrics);
+    }
+
+    @VisibleForTesting
+    float getCellWidth() {
+        return mCellWidth;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // View
+    ///////////////////////////////////////////////////////////////////////////
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(getPaddingLeft() + mMaxChars * mCellWidth + mUnitOffset + mUnitWidth + getPaddingRight());
+        int height = getPaddingTop() + mFontMetrics.bottom - mFontMetrics.top + getPaddingBottom();
+        setMeasuredDimension(resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float baseline = getPaddingTop() - mFontMetrics.top;
+        // The value is right aligned in its cells, so that digits don't move when it gets shorter
+        float x = getPaddingLeft() + (mMaxChars - mValueLength) * mCellWidth;
+        for (int i = 0; i < mValueLength; i++) {
+            float glyphWidth = mPaint.measureText(mValue, i, 1);
+            canvas.drawText(mValue, i, 1, x + (mCellWidth - glyphWidth) / 2, baseline, mPaint);
+            x += mCellWidth;
+        }
+        if (mUnit != null) {
+            canvas.drawText(mUnit, x + mUnitOffset, baseline, mPaint);
+        }
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        info.setText(mUnit != null ? getValue() + " " + mUnit : getValue());
+    }
+}
@@ -0,0 +1,36 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.support.annotation.AttrRes;
+import android.support.annotation.ColorInt;
+import android.support.annotation.Nullable;
+
+/**
+ * Theme helpers shared by the widgets of this package.
+ */
+final class Themes {
+
+    private Themes() {
+    }
+
+    /**
+     * Get a color set on a view, or else the color of a theme attribute.
+     *
+     * @param context   context of the view, holding its theme
+     * @param color     color set on the view, null if not set
+     * @param themeAttr theme attribute giving the default color
+     * @param fallback  color used if the theme doesn't define the attribute
+     * @return the default color of the color state list
+     */
+    @ColorInt
+    static int getColor(Context context, @Nullable ColorStateList color, @AttrRes int themeAttr, @ColorInt int fallback) {
+        if (color == null) {
+            TypedArray theme = context.obtainStyledAttributes(new int[]{themeAttr});
+            color = theme.getColorStateList(0);
+            theme.recycle();
+        }
+        return color != null ? color.getDefaultColor() : fallback;
+    }
+}
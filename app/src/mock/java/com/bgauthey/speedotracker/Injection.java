@@ -4,7 +4,14 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import com.bgauthey.speedotracker.service.FakeLocationService;
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
 import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.gps.GpsLocationCallback;
+import com.bgauthey.speedotracker.service.gps.GpsLocationProvider;
+import com.bgauthey.speedotracker.service.replay.TraceReplayGpsLocationCallback;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+
+import java.io.File;
 
 
 /**
@@ -12,7 +19,42 @@ import com.bgauthey.speedotracker.service.LocationProvider;
  */
 public class Injection {
 
+    /**
+     * Name of the trip file replayed when present in the app external files directory
+     * (e.g. pushed with adb). {@link FakeLocationService} is used otherwise.
+     */
+    private static final String REPLAY_TRACE_FILE = "replay.trip";
+
+    /**
+     * Playback speed of the replayed trip: {@link TraceReplayGpsLocationCallback#PLAYBACK_REAL_TIME},
+     * a factor to replay N times faster or {@link TraceReplayGpsLocationCallback#PLAYBACK_AS_FAST_AS_POSSIBLE}
+     */
+    private static final float REPLAY_PLAYBACK_SPEED = TraceReplayGpsLocationCallback.PLAYBACK_REAL_TIME;
+
     public static LocationProvider provideLocationProvider(@NonNull Context context) {
+        final File trace = new File(context.getExternalFilesDir(null), REPLAY_TRACE_FILE);
+        if (trace.isFile()) {
+            return GpsLocationProvider.getInstance(new GpsLocationProvider.Dependencies() {
+                @Override
+                public GpsLocationCallback createLocationCallback() {
+                    return new TraceReplayGpsLocationCallback(trace, REPLAY_PLAYBACK_SPEED);
+                }
+
+                @Override
+                public TrackBuffer createTrackBuffer() {
+                    return new TrackBuffer(null);
+                }
+
+                @Override
+                public FixLatencyMonitor createLatencyMonitor() {
+                    return provideFixLatencyMonitor();
+                }
+            });
+        }
         return FakeLocationService.getInstance();
     }
+
+    public static FixLatencyMonitor provideFixLatencyMonitor() {
+        return FixLatencyMonitor.getInstance();
+    }
 }
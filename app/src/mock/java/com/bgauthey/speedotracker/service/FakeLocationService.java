@@ -2,6 +2,8 @@ package com.bgauthey.speedotracker.service;
 
 import android.location.Location;
 import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.VisibleForTesting;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -15,7 +17,7 @@ public class FakeLocationService extends LocationProvider {
     private static final float[] FAKE_SPEEDS = {8, 12, 28, 45, 60, 72, 90, 120, 70, 60, 20, 12, 0, 0};
     private static final float FAKE_AVERAGE_SPEED = 55.2f;
 
-    private static FakeLocationService sInstance = null;
+    private static volatile FakeLocationService sInstance = null;
 
     private AtomicInteger mSpeedSelector = new AtomicInteger(0);
     private Handler mHandler;
@@ -23,14 +25,29 @@ public class FakeLocationService extends LocationProvider {
     private boolean mSpeedRunning = false;
 
     private FakeLocationService() {
-        mHandler = new Handler();
+        mHandler = new Handler(Looper.getMainLooper());
     }
 
     public static FakeLocationService getInstance() {
-        if (sInstance == null) {
-            sInstance = new FakeLocationService();
+        FakeLocationService instance = sInstance;
+        if (instance == null) {
+            synchronized (FakeLocationService.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new FakeLocationService();
+                    sInstance = instance;
+                }
+            }
         }
-        return sInstance;
+        return instance;
+    }
+
+    @VisibleForTesting
+    static synchronized void destroyInstance() {
+        if (sInstance != null) {
+            sInstance.stopTracking();
+        }
+        sInstance = null;
     }
 
     @Override
@@ -3,21 +3,66 @@ package com.bgauthey.speedotracker;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
 import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.gps.AccelerometerSpeedEstimator;
 import com.bgauthey.speedotracker.service.gps.DefaultGpsLocationCallback;
+import com.bgauthey.speedotracker.service.gps.FusedGpsLocationCallback;
 import com.bgauthey.speedotracker.service.gps.GpsLocationCallback;
 import com.bgauthey.speedotracker.service.gps.GpsLocationProvider;
+import com.bgauthey.speedotracker.service.gps.MultiSourceGpsLocationCallback;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+import com.bgauthey.speedotracker.service.track.TripRecorder;
+
+import java.io.File;
 
 /**
  * Enables injection of production implementations for {@link LocationProvider}
  */
 public class Injection {
 
-    public static LocationProvider provideLocationProvider(@NonNull Context context) {
-        return GpsLocationProvider.getInstance(provideLocationCallback(context));
+    private static final String TRIPS_DIRECTORY = "trips";
+    private static final String REPORT_FILE = "tracking_report.txt";
+
+    public static LocationProvider provideLocationProvider(@NonNull final Context context) {
+        GpsLocationProvider provider = GpsLocationProvider.getInstance(new GpsLocationProvider.Dependencies() {
+            @Override
+            public GpsLocationCallback createLocationCallback() {
+                return provideLocationCallback(context);
+            }
+
+            @Override
+            public TrackBuffer createTrackBuffer() {
+                return provideTrackBuffer(context);
+            }
+
+            @Override
+            public FixLatencyMonitor createLatencyMonitor() {
+                return provideFixLatencyMonitor();
+            }
+        });
+        if (Constants.USE_DEAD_RECKONING && provider.getSpeedEstimator() == null) {
+            provider.setSpeedEstimator(new AccelerometerSpeedEstimator(context));
+        }
+        provider.setReportFile(new File(context.getFilesDir(), REPORT_FILE));
+        return provider;
+    }
+
+    public static FixLatencyMonitor provideFixLatencyMonitor() {
+        return FixLatencyMonitor.getInstance();
     }
 
     private static GpsLocationCallback provideLocationCallback(Context context) {
+        if (Constants.USE_FUSED_LOCATION) {
+            return new FusedGpsLocationCallback(context);
+        }
+        if (Constants.USE_MULTI_SOURCE_LOCATION) {
+            return new MultiSourceGpsLocationCallback(context);
+        }
         return new DefaultGpsLocationCallback(context);
     }
+
+    private static TrackBuffer provideTrackBuffer(Context context) {
+        return new TrackBuffer(new TripRecorder(new File(context.getFilesDir(), TRIPS_DIRECTORY)));
+    }
 }
@@ -0,0 +1,82 @@
+package com.bgauthey.speedotracker.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FixLatencyMonitor}
+ */
+public class FixLatencyMonitorTest {
+
+    private static final long MILLIS_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private FixLatencyMonitor mMonitor;
+
+    @Before
+    public void setUp() {
+        mMonitor = new FixLatencyMonitor();
+    }
+
+    @Test
+    public void shouldMeasureFixToProcess() {
+        mMonitor.onFixProcessed(1000 * MILLIS_NANOS, 1040 * MILLIS_NANOS);
+
+        assertEquals(1, mMonitor.getFixToProcess().getCount());
+        assertEquals(40 * MILLIS_NANOS, mMonitor.getFixToProcess().getMaxNanos());
+    }
+
+    @Test
+    public void shouldMatchRenderWithLastProcessedFixOnce() {
+        // Nothing processed yet
+        mMonitor.onSpeedRendered(400 * MILLIS_NANOS, 500 * MILLIS_NANOS);
+        assertEquals(0, mMonitor.getProcessToRender().getCount());
+
+        mMonitor.onFixProcessed(1000 * MILLIS_NANOS, 1040 * MILLIS_NANOS);
+        mMonitor.onFixProcessed(1100 * MILLIS_NANOS, 1140 * MILLIS_NANOS);
+        mMonitor.onSpeedRendered(1100 * MILLIS_NANOS, 1150 * MILLIS_NANOS);
+        mMonitor.onSpeedRendered(1100 * MILLIS_NANOS, 1160 * MILLIS_NANOS);
+
+        assertEquals(1, mMonitor.getProcessToRender().getCount());
+        assertEquals(10 * MILLIS_NANOS, mMonitor.getProcessToRender().getMaxNanos());
+    }
+
+    @Test
+    public void shouldNotMatchRenderOfAnotherFix() {
+        mMonitor.onFixProcessed(1000 * MILLIS_NANOS, 1040 * MILLIS_NANOS);
+        mMonitor.onFixProcessed(1100 * MILLIS_NANOS, 1140 * MILLIS_NANOS);
+        // Frame still displaying the previous fix
+        mMonitor.onSpeedRendered(1000 * MILLIS_NANOS, 1145 * MILLIS_NANOS);
+        assertEquals(0, mMonitor.getProcessToRender().getCount());
+
+        mMonitor.onSpeedRendered(1100 * MILLIS_NANOS, 1160 * MILLIS_NANOS);
+        assertEquals(1, mMonitor.getProcessToRender().getCount());
+        assertEquals(20 * MILLIS_NANOS, mMonitor.getProcessToRender().getMaxNanos());
+    }
+
+    @Test
+    public void shouldForgetLatenciesOnReset() {
+        mMonitor.onFixProcessed(1000 * MILLIS_NANOS, 1040 * MILLIS_NANOS);
+        mMonitor.reset();
+        mMonitor.onSpeedRendered(1000 * MILLIS_NANOS, 1050 * MILLIS_NANOS);
+
+        assertEquals(0, mMonitor.getFixToProcess().getCount());
+        assertEquals(0, mMonitor.getProcessToRender().getCount());
+    }
+
+    @Test
+    public void shouldDumpBothLatencies() {
+        mMonitor.onFixProcessed(1000 * MILLIS_NANOS, 1040 * MILLIS_NANOS);
+        StringWriter writer = new StringWriter();
+        mMonitor.dump(new PrintWriter(writer));
+
+        assertTrue(writer.toString(), writer.toString().contains("fix->process: count=1"));
+        assertTrue(writer.toString(), writer.toString().contains("process->render: count=0"));
+    }
+}
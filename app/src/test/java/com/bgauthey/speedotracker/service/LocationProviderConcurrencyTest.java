@@ -0,0 +1,227 @@
+package com.bgauthey.speedotracker.service;
+
+import android.location.Location;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Stress tests of {@link LocationProvider} listener registration from several threads, see
+ * {@link StressHarness}.
+ */
+public class LocationProviderConcurrencyTest {
+
+    private static final int RUN_COUNT = 2000;
+    private static final int ACTOR_COUNT = 4;
+    private static final int NOTIFICATION_COUNT = 100;
+
+    private static final String DUPLICATE_REGISTRATION = "DUPLICATE_REGISTRATION";
+    private static final String LOST_LISTENER = "LOST_LISTENER";
+    private static final String ZOMBIE_LISTENER = "ZOMBIE_LISTENER";
+
+    @Test
+    public void shouldRegisterSameListenerOnce() throws InterruptedException {
+        StressHarness.Result result = StressHarness.run(new StressHarness.TrialFactory() {
+            @Override
+            public StressHarness.Trial newTrial() {
+                final LocationProviderForTest provider = new LocationProviderForTest();
+                final CountingListener listener = new CountingListener();
+                return new StressHarness.Trial() {
+                    @Override
+                    public Runnable[] getActors() {
+                        Runnable[] actors = new Runnable[ACTOR_COUNT];
+                        for (int i = 0; i < ACTOR_COUNT; i++) {
+                            actors[i] = new Runnable() {
+                                @Override
+                                public void run() {
+                                    provider.registerOnLocationServiceSpeedChangedListener(listener);
+                                }
+                            };
+                        }
+                        return actors;
+                    }
+
+                    @Override
+                    public String arbiter() {
+                        provider.triggerSpeedChanged(1f);
+                        return checkCount(listener, 1);
+                    }
+                };
+            }
+        }, RUN_COUNT, ACTOR_COUNT);
+
+        assertTrue(result.toString(), result.isOk());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentRegistrations() throws InterruptedException {
+        StressHarness.Result result = StressHarness.run(new StressHarness.TrialFactory() {
+            @Override
+            public StressHarness.Trial newTrial() {
+                final LocationProviderForTest provider = new LocationProviderForTest();
+                final CountingListener[] listeners = newListeners(ACTOR_COUNT);
+                return new StressHarness.Trial() {
+                    @Override
+                    public Runnable[] getActors() {
+                        Runnable[] actors = new Runnable[ACTOR_COUNT];
+                        for (int i = 0; i < ACTOR_COUNT; i++) {
+                            final CountingListener listener = listeners[i];
+                            actors[i] = new Runnable() {
+                                @Override
+                                public void run() {
+                                    provider.registerOnLocationServiceSpeedChangedListener(listener);
+                                }
+                            };
+                        }
+                        return actors;
+                    }
+
+                    @Override
+                    public String arbiter() {
+                        provider.triggerSpeedChanged(1f);
+                        return checkCounts(listeners, 1);
+                    }
+                };
+            }
+        }, RUN_COUNT, ACTOR_COUNT);
+
+        assertTrue(result.toString(), result.isOk());
+    }
+
+    @Test
+    public void shouldReplaceListenersConcurrently() throws InterruptedException {
+        StressHarness.Result result = StressHarness.run(new StressHarness.TrialFactory() {
+            @Override
+            public StressHarness.Trial newTrial() {
+                final LocationProviderForTest provider = new LocationProviderForTest();
+                final CountingListener[] oldListeners = newListeners(ACTOR_COUNT);
+                final CountingListener[] newListeners = newListeners(ACTOR_COUNT);
+                for (CountingListener listener : oldListeners) {
+                    provider.registerOnLocationServiceSpeedChangedListener(listener);
+                }
+                return new StressHarness.Trial() {
+                    @Override
+                    public Runnable[] getActors() {
+                        Runnable[] actors = new Runnable[ACTOR_COUNT];
+                        for (int i = 0; i < ACTOR_COUNT; i++) {
+                            final CountingListener oldListener = oldListeners[i];
+                            final CountingListener newListener = newListeners[i];
+                            actors[i] = new Runnable() {
+                                @Override
+                                public void run() {
+                                    provider.unregisterOnLocationServiceSpeedChangedListener(oldListener);
+                                    provider.registerOnLocationServiceSpeedChangedListener(newListener);
+                                }
+                            };
+                        }
+                        return actors;
+                    }
+
+                    @Override
+                    public String arbiter() {
+                        provider.triggerSpeedChanged(1f);
+                        String outcome = checkCounts(oldListeners, 0);
+                        return StressHarness.OK.equals(outcome) ? checkCounts(newListeners, 1) : outcome;
+                    }
+                };
+            }
+        }, RUN_COUNT, ACTOR_COUNT);
+
+        assertTrue(result.toString(), result.isOk());
+    }
+
+    @Test
+    public void shouldNotifyWhileListenersChange() throws InterruptedException {
+        StressHarness.Result result = StressHarness.run(new StressHarness.TrialFactory() {
+            @Override
+            public StressHarness.Trial newTrial() {
+                final LocationProviderForTest provider = new LocationProviderForTest();
+                final CountingListener[] listeners = newListeners(ACTOR_COUNT - 1);
+                return new StressHarness.Trial() {
+                    @Override
+                    public Runnable[] getActors() {
+                        Runnable[] actors = new Runnable[ACTOR_COUNT];
+                        actors[0] = new Runnable() {
+                            @Override
+                            public void run() {
+                                for (int i = 0; i < NOTIFICATION_COUNT; i++) {
+                                    provider.triggerSpeedChanged(i);
+                                }
+                            }
+                        };
+                        for (int i = 1; i < ACTOR_COUNT; i++) {
+                            final CountingListener listener = listeners[i - 1];
+                            actors[i] = new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (int j = 0; j < NOTIFICATION_COUNT; j++) {
+                                        provider.registerOnLocationServiceSpeedChangedListener(listener);
+                                        provider.unregisterOnLocationServiceSpeedChangedListener(listener);
+                                    }
+                                }
+                            };
+                        }
+                        return actors;
+                    }
+
+                    @Override
+                    public String arbiter() {
+                        for (CountingListener listener : listeners) {
+                            listener.mCount.set(0);
+                        }
+                        provider.triggerSpeedChanged(1f);
+                        return checkCounts(listeners, 0);
+                    }
+                };
+            }
+        }, RUN_COUNT / 10, ACTOR_COUNT);
+
+        assertTrue(result.toString(), result.isOk());
+    }
+
+    private static CountingListener[] newListeners(int count) {
+        CountingListener[] listeners = new CountingListener[count];
+        for (int i = 0; i < count; i++) {
+            listeners[i] = new CountingListener();
+        }
+        return listeners;
+    }
+
+    private static String checkCounts(CountingListener[] listeners, int expected) {
+        for (CountingListener listener : listeners) {
+            String outcome = checkCount(listener, expected);
+            if (!StressHarness.OK.equals(outcome)) {
+                return outcome;
+            }
+        }
+        return StressHarness.OK;
+    }
+
+    private static String checkCount(CountingListener listener, int expected) {
+        int count = listener.mCount.get();
+        if (count == expected) {
+            return StressHarness.OK;
+        }
+        if (count > 1) {
+            return DUPLICATE_REGISTRATION;
+        }
+        return count < expected ? LOST_LISTENER : ZOMBIE_LISTENER;
+    }
+
+    private static class CountingListener implements LocationProvider.OnSpeedChangedListener {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public void onSpeedChanged(float speed, Location location) {
+            mCount.incrementAndGet();
+        }
+
+        @Override
+        public void onSpeedActivityChanged(boolean active) {
+        }
+    }
+}
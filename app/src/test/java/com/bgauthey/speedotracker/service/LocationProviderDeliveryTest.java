@@ -0,0 +1,207 @@
+package com.bgauthey.speedotracker.service;
+
+import android.location.Location;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests of listener {@link Delivery} in {@link LocationProvider}.
+ */
+public class LocationProviderDeliveryTest {
+
+    private LocationProviderForTest mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = new LocationProviderForTest();
+    }
+
+    @Test
+    public void shouldNotifyByDecreasingPriority() {
+        List<String> calls = new ArrayList<>();
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("low", calls),
+                Delivery.inline().withPriority(Delivery.PRIORITY_LOW));
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("default", calls));
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("high", calls),
+                Delivery.inline().withPriority(Delivery.PRIORITY_HIGH));
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("default2", calls));
+
+        mProvider.triggerSpeedChanged(10f);
+
+        assertEquals("[high 10.0, default 10.0, default2 10.0, low 10.0]", calls.toString());
+    }
+
+    @Test
+    public void shouldHandNotificationsToExecutor() {
+        List<String> calls = new ArrayList<>();
+        QueueExecutor executor = new QueueExecutor();
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("queued", calls),
+                Delivery.on(executor));
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("inline", calls));
+
+        mProvider.triggerSpeedChanged(10f);
+        assertEquals("[inline 10.0]", calls.toString());
+
+        executor.runAll();
+        assertEquals("[inline 10.0, queued 10.0]", calls.toString());
+    }
+
+    @Test
+    public void shouldDropNotificationsOfUnregisteredListener() {
+        List<String> calls = new ArrayList<>();
+        QueueExecutor executor = new QueueExecutor();
+        RecordingListener listener = new RecordingListener("queued", calls);
+        mProvider.registerOnLocationServiceSpeedChangedListener(listener, Delivery.on(executor));
+
+        mProvider.triggerSpeedChanged(10f);
+        mProvider.unregisterOnLocationServiceSpeedChangedListener(listener);
+        executor.runAll();
+
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void shouldDeliverLatestSpeedOnlyWhenConflated() {
+        List<String> calls = new ArrayList<>();
+        QueueExecutor executor = new QueueExecutor();
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("conflated", calls),
+                Delivery.conflated(executor));
+
+        mProvider.triggerSpeedChanged(10f);
+        mProvider.triggerSpeedChanged(11f);
+        mProvider.triggerSpeedChanged(12f);
+        assertEquals(1, executor.size());
+        executor.runAll();
+        assertEquals("[conflated 12.0]", calls.toString());
+
+        mProvider.triggerSpeedChanged(13f);
+        executor.runAll();
+        assertEquals("[conflated 12.0, conflated 13.0]", calls.toString());
+    }
+
+    @Test
+    public void shouldDeliverSpeedActivityBeforeSpeedWhenConflated() {
+        List<String> calls = new ArrayList<>();
+        QueueExecutor executor = new QueueExecutor();
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("conflated", calls),
+                Delivery.conflated(executor));
+
+        mProvider.triggerSpeedChanged(10f);
+        mProvider.triggerSpeedActivityChanged(true);
+        mProvider.triggerSpeedChanged(11f);
+        executor.runAll();
+
+        assertEquals("[conflated active true, conflated 11.0]", calls.toString());
+    }
+
+    @Test
+    public void shouldDeliverLatestAverageSpeedOnlyWhenConflated() {
+        final List<Float> averageSpeeds = new ArrayList<>();
+        QueueExecutor executor = new QueueExecutor();
+        mProvider.registerOnLocationServiceAverageSpeedChangedListener(new LocationProvider.OnAverageSpeedChangedListener() {
+            @Override
+            public void onAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
+                averageSpeeds.add(averageSpeed);
+            }
+        }, Delivery.conflated(executor));
+
+        mProvider.triggerAverageSpeedChanged(20f);
+        mProvider.triggerAverageSpeedChanged(30f);
+        executor.runAll();
+
+        assertEquals("[30.0]", averageSpeeds.toString());
+    }
+
+    @Test
+    public void shouldNotWaitForLateBackgroundListener() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Float> speeds = new CopyOnWriteArrayList<>();
+        Delivery delivery = Delivery.background("slow-listener", 2);
+        mProvider.registerOnLocationServiceSpeedChangedListener(new RecordingListener("slow", new ArrayList<String>()) {
+            @Override
+            public void onSpeedChanged(float speed, Location location) {
+                awaitQuietly(release);
+                speeds.add(speed);
+            }
+        }, delivery);
+
+        for (int i = 1; i <= 10; i++) {
+            mProvider.triggerSpeedChanged(i);
+        }
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (speeds.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // The first notification is being delivered, only the 2 latest ones are kept
+        assertEquals("[1.0, 9.0, 10.0]", speeds.toString());
+        assertEquals(7, delivery.getDropCount());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingListener implements LocationProvider.OnSpeedChangedListener {
+
+        private final String mName;
+        private final List<String> mCalls;
+
+        RecordingListener(String name, List<String> calls) {
+            mName = name;
+            mCalls = calls;
+        }
+
+        @Override
+        public void onSpeedChanged(float speed, Location location) {
+            mCalls.add(mName + " " + speed);
+        }
+
+        @Override
+        public void onSpeedActivityChanged(boolean active) {
+            mCalls.add(mName + " active " + active);
+        }
+    }
+
+    /**
+     * An {@link Executor} keeping tasks until {@link #runAll()} is called.
+     */
+    private static class QueueExecutor implements Executor {
+
+        private final Queue<Runnable> mTasks = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        int size() {
+            return mTasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.bgauthey.speedotracker.service;
 
+import android.location.Location;
+
 /**
  * A {@link LocationProvider} for unit tests. Easy way to trigger events.
  */
@@ -66,6 +68,10 @@ public class LocationProviderForTest extends LocationProvider {
         notifyOnSpeedChanged(newSpeed, null);
     }
 
+    public void triggerSpeedChanged(float newSpeed, Location location) {
+        notifyOnSpeedChanged(newSpeed, location);
+    }
+
     public void triggerAverageSpeedChanged(float newAverageSpeed) {
         mAverageSpeed = newAverageSpeed;
         notifyOnAverageSpeedChanged(mAverageSpeed, 0, 0);
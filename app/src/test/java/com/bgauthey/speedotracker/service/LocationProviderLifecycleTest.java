@@ -0,0 +1,120 @@
+package com.bgauthey.speedotracker.service;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LifecycleRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests of weak and lifecycle bound listener registrations in {@link LocationProvider}.
+ */
+public class LocationProviderLifecycleTest {
+
+    private static final int GC_ATTEMPT_COUNT = 20;
+
+    private LocationProviderForTest mProvider;
+    private LifecycleRegistry mLifecycle;
+    private LifecycleOwner mLifecycleOwner;
+
+    @Before
+    public void setUp() {
+        mProvider = new LocationProviderForTest();
+        mLifecycleOwner = new LifecycleOwner() {
+            @Override
+            public Lifecycle getLifecycle() {
+                return mLifecycle;
+            }
+        };
+        mLifecycle = new LifecycleRegistry(mLifecycleOwner);
+        mLifecycle.markState(Lifecycle.State.RESUMED);
+    }
+
+    @Test
+    public void shouldUnregisterBoundListenersOnDestroy() {
+        mProvider.registerOnLocationServiceStateChangedListener(new StateListener(),
+                Delivery.inline().boundTo(mLifecycleOwner));
+        mProvider.registerOnLocationServiceAverageSpeedChangedListener(new AverageSpeedListener(),
+                Delivery.inline().boundTo(mLifecycleOwner));
+        assertEquals(2, mProvider.getListenerCount());
+
+        mLifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+
+        assertEquals(0, mProvider.getListenerCount());
+        assertEquals(0, mLifecycle.getObserverCount());
+    }
+
+    @Test
+    public void shouldNotRegisterListenerOfDestroyedOwner() {
+        mLifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+
+        mProvider.registerOnLocationServiceStateChangedListener(new StateListener(),
+                Delivery.inline().boundTo(mLifecycleOwner));
+
+        assertEquals(0, mProvider.getListenerCount());
+    }
+
+    @Test
+    public void shouldObserveLifecycleOncePerListener() {
+        StateListener listener = new StateListener();
+        for (int i = 0; i < 10; i++) {
+            mProvider.registerOnLocationServiceStateChangedListener(listener, Delivery.inline().boundTo(mLifecycleOwner));
+            mProvider.unregisterOnLocationServiceStateChangedListener(listener);
+        }
+        mProvider.registerOnLocationServiceStateChangedListener(listener, Delivery.inline().boundTo(mLifecycleOwner));
+
+        assertEquals(1, mLifecycle.getObserverCount());
+    }
+
+    @Test
+    public void shouldForgetCollectedWeakListener() throws InterruptedException {
+        registerUnreachableWeakListener();
+
+        int listenerCount = mProvider.getListenerCount();
+        for (int i = 0; i < GC_ATTEMPT_COUNT && listenerCount > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            listenerCount = mProvider.getListenerCount();
+        }
+
+        assertEquals(0, listenerCount);
+        // Notifying doesn't fail once the listener is collected
+        mProvider.triggerAverageSpeedChanged(10f);
+    }
+
+    @Test
+    public void shouldNotifyWeakListenerWhileReachable() {
+        AverageSpeedListener listener = new AverageSpeedListener();
+        mProvider.registerOnLocationServiceAverageSpeedChangedListener(listener, Delivery.inline().withWeakReference());
+
+        System.gc();
+        mProvider.triggerAverageSpeedChanged(10f);
+
+        assertEquals(10f, listener.mAverageSpeed);
+    }
+
+    private void registerUnreachableWeakListener() {
+        mProvider.registerOnLocationServiceAverageSpeedChangedListener(new AverageSpeedListener(),
+                Delivery.inline().withWeakReference());
+    }
+
+    private static class StateListener implements LocationProvider.OnSpeedRecordingStateChangedListener {
+
+        @Override
+        public void onSpeedRecordingStateChanged(boolean enabled) {
+        }
+    }
+
+    private static class AverageSpeedListener implements LocationProvider.OnAverageSpeedChangedListener {
+
+        private float mAverageSpeed;
+
+        @Override
+        public void onAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
+            mAverageSpeed = averageSpeed;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.bgauthey.speedotracker.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs concurrency trials many times and collects their outcomes.
+ * <p>
+ * A trial is a set of actors started at the same time on different threads, then an arbiter
+ * checking the resulting state once all the actors are done. Each run of a trial gives an outcome:
+ * {@link #OK} or the name of the failure seen by the arbiter, or the exception thrown by an actor.
+ */
+public final class StressHarness {
+
+    public static final String OK = "OK";
+
+    private static final long ACTOR_TIMEOUT_SECONDS = 10;
+
+    /**
+     * One run of a concurrency trial.
+     */
+    public interface Trial {
+
+        /**
+         * @return actors, each one is run on its own thread
+         */
+        Runnable[] getActors();
+
+        /**
+         * Called once all the actors are done.
+         *
+         * @return {@link #OK} or the name of the failure
+         */
+        String arbiter();
+    }
+
+    /**
+     * Creates a new {@link Trial} for each run, with its own state.
+     */
+    public interface TrialFactory {
+        Trial newTrial();
+    }
+
+    private StressHarness() {
+    }
+
+    /**
+     * Run a trial many times.
+     *
+     * @param factory    creates a new trial for each run
+     * @param runCount   number of runs
+     * @param actorCount number of actors of each trial
+     * @return outcomes of the runs
+     */
+    public static Result run(TrialFactory factory, int runCount, int actorCount) throws InterruptedException {
+        Result result = new Result();
+        ExecutorService executor = Executors.newFixedThreadPool(actorCount);
+        try {
+            for (int i = 0; i < runCount; i++) {
+                result.add(runOnce(executor, factory.newTrial(), actorCount));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static String runOnce(ExecutorService executor, Trial trial, int actorCount) throws InterruptedException {
+        Runnable[] actors = trial.getActors();
+        if (actors.length != actorCount) {
+            throw new IllegalArgumentException("Expected " + actorCount + " actors, got " + actors.length);
+        }
+        final CyclicBarrier barrier = new CyclicBarrier(actors.length);
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = new ArrayList<>(actors.length);
+        for (final Runnable actor : actors) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await(); // Start all actors together to maximize contention
+                        actor.run();
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get(ACTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                errors.add(e.getCause());
+            } catch (TimeoutException e) {
+                return "TIMEOUT";
+            }
+        }
+        if (!errors.isEmpty()) {
+            return errors.get(0).getClass().getSimpleName();
+        }
+        return trial.arbiter();
+    }
+
+    /**
+     * Number of runs per outcome.
+     */
+    public static final class Result {
+
+        private final Map<String, Integer> mOutcomes = new TreeMap<>();
+        private int mRunCount;
+
+        private void add(String outcome) {
+            Integer count = mOutcomes.get(outcome);
+            mOutcomes.put(outcome, count == null ? 1 : count + 1);
+            mRunCount++;
+        }
+
+        public int getCount(String outcome) {
+            Integer count = mOutcomes.get(outcome);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * @return true if all the runs were {@link #OK}
+         */
+        public boolean isOk() {
+            return getCount(OK) == mRunCount;
+        }
+
+        @Override
+        public String toString() {
+            return mRunCount + " runs " + mOutcomes;
+        }
+    }
+}
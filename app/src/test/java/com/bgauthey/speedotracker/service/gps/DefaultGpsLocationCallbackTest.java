@@ -0,0 +1,232 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Looper;
+
+import com.bgauthey.speedotracker.service.sampling.AdaptiveSamplingPolicy;
+import com.bgauthey.speedotracker.service.sampling.FixedSamplingPolicy;
+import com.bgauthey.speedotracker.service.sampling.SamplingPolicy;
+import com.bgauthey.speedotracker.service.sampling.SamplingRate;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DefaultGpsLocationCallback} sampling policies: a simulated location manager
+ * delivers the fixes of a one hour drive according to the requested settings, and compares fixes
+ * and location update requests per hour of each policy.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DefaultGpsLocationCallbackTest {
+
+    /**
+     * Rate of the simulated GPS receiver: 10 Hz
+     */
+    private static final long GPS_INTERVAL_MILLIS = 100L;
+    private static final int HOUR_SECONDS = 3600;
+    private static final float FACTOR_KM_PER_H_TO_M_PER_S = 1 / 3.6f;
+    private static final double METERS_PER_DEGREE_OF_LATITUDE = 111_320d;
+
+    /**
+     * Rate requested before sampling policies
+     */
+    private static final SamplingRate LEGACY_RATE = new SamplingRate(500L, 0f);
+
+    @Test
+    public void shouldReportFixesAndRequestsPerHour() {
+        DriveResult fixed = drive("fixed 500 ms", new FixedSamplingPolicy(LEGACY_RATE), false);
+        DriveResult adaptive = drive("adaptive", new AdaptiveSamplingPolicy(), false);
+
+        assertEquals(fixed.toString(), 1, fixed.mRequestCount);
+        // Parked, a fix every few seconds is enough
+        assertTrue(adaptive + " vs " + fixed, adaptive.mParkedFixCount * 4 < fixed.mParkedFixCount);
+        // On the highway, fixes are closer
+        assertTrue(adaptive + " vs " + fixed, adaptive.mHighwayFixCount > fixed.mHighwayFixCount);
+        assertTrue("Too many requests: " + adaptive, adaptive.mRequestCount <= 10);
+    }
+
+    @Test
+    public void shouldNotThrashWithJitteringSpeed() {
+        DriveResult adaptive = drive("adaptive, jittering speed", new AdaptiveSamplingPolicy(), true);
+
+        // Tracking start, then the fast rate once
+        assertEquals(adaptive.toString(), 2, adaptive.mRequestCount);
+    }
+
+    @Test
+    public void shouldNotDeliverDriftingPositionsOnceParked() {
+        SimulatedGpsLocationCallback callback = new SimulatedGpsLocationCallback(new AdaptiveSamplingPolicy());
+        GpsLocationProvider provider = new GpsLocationProvider(callback, new TrackBuffer(null));
+        provider.startTracking();
+
+        int parkedFixCount = 0;
+        for (long time = 0; time < TimeUnit.MINUTES.toMillis(10); time += GPS_INTERVAL_MILLIS) {
+            // Positions drift by a few meters around the parking place
+            double latitude = 45d + (time / 1000L % 3) * 2d / METERS_PER_DEGREE_OF_LATITUDE;
+            if (callback.tick(createLocation(time, 0f, latitude)) && time >= TimeUnit.MINUTES.toMillis(1)) {
+                parkedFixCount++;
+            }
+        }
+        provider.stopTracking();
+
+        assertEquals(0, parkedFixCount);
+    }
+
+    @Test
+    public void shouldStopRequestingUpdatesOnceStopped() {
+        SimulatedGpsLocationCallback callback = new SimulatedGpsLocationCallback(new AdaptiveSamplingPolicy());
+        GpsLocationProvider provider = new GpsLocationProvider(callback, new TrackBuffer(null));
+        provider.startTracking();
+        provider.stopTracking();
+
+        assertNull(callback.mListener);
+        callback.tick(createLocation(0, 30f, 0d));
+        assertEquals(1, callback.mRequestCount);
+    }
+
+    /**
+     * Track a one hour drive: parked, city, highway, city and parked again.
+     *
+     * @param jitter true to drive at a speed jittering around the fast rate enter speed instead
+     */
+    private static DriveResult drive(String name, SamplingPolicy policy, boolean jitter) {
+        SimulatedGpsLocationCallback callback = new SimulatedGpsLocationCallback(policy);
+        GpsLocationProvider provider = new GpsLocationProvider(callback, new TrackBuffer(null));
+        DriveResult result = new DriveResult(name);
+        provider.startTracking();
+
+        double latitude = 45d;
+        for (long time = 0; time < HOUR_SECONDS * 1000L; time += GPS_INTERVAL_MILLIS) {
+            int second = (int) (time / 1000L);
+            float speed = jitter ? getJitteringSpeed(second) : getSpeed(second);
+            latitude += speed * GPS_INTERVAL_MILLIS / 1000d / METERS_PER_DEGREE_OF_LATITUDE;
+            if (callback.tick(createLocation(time, speed, latitude))) {
+                if (jitter) {
+                    result.mHighwayFixCount++;
+                } else if (second < 600 || second >= 3000) {
+                    result.mParkedFixCount++;
+                } else if (second >= 1500 && second < 2700) {
+                    result.mHighwayFixCount++;
+                }
+                result.mFixCount++;
+            }
+        }
+        provider.stopTracking();
+        result.mRequestCount = callback.mRequestCount;
+        return result;
+    }
+
+    /**
+     * @return speed (in m/s): parked for 10 minutes, in the city with a stop every 90 seconds for
+     * 15 minutes, on the highway for 20 minutes, in the city for 5 minutes and parked for 10 minutes
+     */
+    private static float getSpeed(int second) {
+        if (second < 600 || second >= 3000) {
+            return 0f;
+        }
+        if (second >= 1500 && second < 2700) {
+            return (110 + (second % 7) - 3) * FACTOR_KM_PER_H_TO_M_PER_S;
+        }
+        return second % 90 < 20 ? 0f : 50 * FACTOR_KM_PER_H_TO_M_PER_S;
+    }
+
+    /**
+     * @return speed (in m/s) jittering around the fast rate enter speed
+     */
+    private static float getJitteringSpeed(int second) {
+        return (80 + (second % 2 == 0 ? 3 : -3)) * FACTOR_KM_PER_H_TO_M_PER_S;
+    }
+
+    private static Location createLocation(long time, float speed, double latitude) {
+        Location location = new Location(DefaultGpsLocationCallback.LOCATION_PROVIDER);
+        location.setTime(time);
+        location.setElapsedRealtimeNanos(TimeUnit.MILLISECONDS.toNanos(time));
+        location.setSpeed(speed);
+        location.setAccuracy(5f);
+        location.setLatitude(latitude);
+        location.setLongitude(5d);
+        return location;
+    }
+
+    private static class DriveResult {
+        private final String mName;
+        private int mFixCount;
+        private int mParkedFixCount;
+        private int mHighwayFixCount;
+        private int mRequestCount;
+
+        DriveResult(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + mFixCount + " fixes/h (" + mParkedFixCount + " parked, " + mHighwayFixCount
+                    + " on highway), " + mRequestCount + " location update requests/h";
+        }
+    }
+
+    /**
+     * {@link DefaultGpsLocationCallback} with a simulated location manager: fixes of the GPS
+     * receiver are delivered to the registered listener when they match the requested minimum time
+     * and distance.
+     */
+    private static class SimulatedGpsLocationCallback extends DefaultGpsLocationCallback {
+
+        private LocationListener mListener;
+        private SamplingRate mRate;
+        private Location mLastDelivered;
+        private int mRequestCount;
+
+        SimulatedGpsLocationCallback(SamplingPolicy policy) {
+            super(RuntimeEnvironment.application, policy);
+        }
+
+        @Override
+        public boolean isTrackingReady() {
+            return true;
+        }
+
+        @Override
+        void requestUpdates(SamplingRate rate, LocationListener listener, Looper looper) {
+            mListener = listener;
+            mRate = rate;
+            mRequestCount++;
+        }
+
+        @Override
+        void removeUpdates(LocationListener listener) {
+            if (listener == mListener) {
+                mListener = null;
+            }
+        }
+
+        /**
+         * @param location a fix of the GPS receiver
+         * @return true if the fix has been delivered
+         */
+        boolean tick(Location location) {
+            if (mListener == null) {
+                return false;
+            }
+            if (mLastDelivered != null
+                    && (location.getTime() - mLastDelivered.getTime() < mRate.getMinTimeMillis()
+                    || location.distanceTo(mLastDelivered) < mRate.getMinDistanceMeters())) {
+                return false;
+            }
+            mLastDelivered = location;
+            mListener.onLocationChanged(location);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+
+import java.util.List;
+
+/**
+ * A fake {@link FusedLocationClient} used for testing: it keeps the last request and delivers
+ * batches of fixes on the calling thread.
+ */
+public class FakeFusedLocationClient implements FusedLocationClient {
+
+    private LocationRequest mRequest;
+    private LocationCallback mCallback;
+    private int mRequestCount;
+
+    @Override
+    public void requestLocationUpdates(LocationRequest request, LocationCallback callback, @Nullable Looper looper) {
+        mRequest = request;
+        mCallback = callback;
+        mRequestCount++;
+    }
+
+    @Override
+    public void removeLocationUpdates(LocationCallback callback) {
+        if (callback == mCallback) {
+            mRequest = null;
+            mCallback = null;
+        }
+    }
+
+    /**
+     * @return the current request, null if no callback is registered
+     */
+    public LocationRequest getRequest() {
+        return mRequest;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * Deliver a batch of fixes to the registered callback, if any.
+     */
+    public void deliver(List<Location> locations) {
+        if (mCallback != null) {
+            mCallback.onLocationResult(LocationResult.create(locations));
+        }
+    }
+}
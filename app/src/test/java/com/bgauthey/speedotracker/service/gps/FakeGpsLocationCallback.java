@@ -3,10 +3,13 @@ package com.bgauthey.speedotracker.service.gps;
 import android.content.Context;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.os.Looper;
 
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadows.ShadowLocationManager;
 
+import java.io.PrintWriter;
+
 import static org.robolectric.Shadows.shadowOf;
 
 /**
@@ -19,6 +22,7 @@ public class FakeGpsLocationCallback implements GpsLocationCallback {
 
     private ShadowLocationManager mShadowLocationManager;
     private LocationManager mLocationManager;
+    private Looper mLooper;
 
     public FakeGpsLocationCallback() {
         mLocationManager = (LocationManager) RuntimeEnvironment.application.getSystemService(Context.LOCATION_SERVICE);
@@ -35,7 +39,9 @@ public class FakeGpsLocationCallback implements GpsLocationCallback {
     }
 
     @Override
-    public void startTracking(LocationListener listener) {
+    public void startTracking(LocationListener listener, Looper looper) {
+        // Simulated locations are sent on the calling thread
+        mLooper = looper;
         mShadowLocationManager.requestLocationUpdates(LOCATION_PROVIDER, 0, 0, listener);
     }
 
@@ -44,6 +50,18 @@ public class FakeGpsLocationCallback implements GpsLocationCallback {
         mShadowLocationManager.removeUpdates(listener);
     }
 
+    @Override
+    public void dump(PrintWriter writer) {
+        // Nothing to do
+    }
+
+    /**
+     * @return looper given when tracking started
+     */
+    public Looper getLooper() {
+        return mLooper;
+    }
+
     public void setProviderEnabled(boolean enable) {
         mShadowLocationManager.setProviderEnabled(LOCATION_PROVIDER, enable);
     }
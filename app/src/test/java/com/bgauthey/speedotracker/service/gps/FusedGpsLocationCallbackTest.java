@@ -0,0 +1,193 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+
+import com.bgauthey.speedotracker.engine.pipeline.Pipeline;
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FusedGpsLocationCallback}, with a {@link FakeFusedLocationClient}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FusedGpsLocationCallbackTest {
+
+    private static final int BATCH_SIZE = 120;
+
+    private FakeFusedLocationClient mClient;
+    private FusedGpsLocationCallback mCallback;
+
+    @Before
+    public void setUp() {
+        mClient = new FakeFusedLocationClient();
+        mCallback = new FusedGpsLocationCallback(RuntimeEnvironment.application, mClient) {
+            @Override
+            public boolean isTrackingReady() {
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void shouldBatchFixesWhileScreenIsOff() {
+        mCallback.startTracking(new CountingListener(), null);
+        mCallback.onScreenStateChanged(true);
+        assertEquals(LocationRequest.PRIORITY_HIGH_ACCURACY, mClient.getRequest().getPriority());
+        assertEquals(FusedGpsLocationCallback.INTERVAL_MILLIS, mClient.getRequest().getInterval());
+        assertEquals(0L, mClient.getRequest().getMaxWaitTime());
+
+        mCallback.onScreenStateChanged(false);
+        assertEquals(FusedGpsLocationCallback.BATCH_MAX_WAIT_MILLIS, mClient.getRequest().getMaxWaitTime());
+
+        mCallback.onScreenStateChanged(true);
+        assertEquals(0L, mClient.getRequest().getMaxWaitTime());
+    }
+
+    @Test
+    public void shouldNotRequestAgainForSameScreenState() {
+        mCallback.startTracking(new CountingListener(), null);
+        mCallback.onScreenStateChanged(false);
+        int requestCount = mClient.getRequestCount();
+
+        mCallback.onScreenStateChanged(false);
+
+        assertEquals(requestCount, mClient.getRequestCount());
+    }
+
+    @Test
+    public void shouldRemoveUpdatesWhenStopped() {
+        CountingListener listener = new CountingListener();
+        mCallback.startTracking(listener, null);
+        mCallback.stopTracking(listener);
+
+        assertNull(mClient.getRequest());
+        mCallback.onScreenStateChanged(false);
+        assertNull(mClient.getRequest());
+    }
+
+    @Test
+    public void shouldDeliverFixesOneByOneToListener() {
+        CountingListener listener = new CountingListener();
+        mCallback.startTracking(listener, null);
+
+        mClient.deliver(createBatch(0f));
+
+        assertEquals(BATCH_SIZE, listener.mLocationCount);
+    }
+
+    @Test
+    public void shouldNotifyOnceForABatch() {
+        CountingExecutor executor = new CountingExecutor();
+        TrackBuffer trackBuffer = new TrackBuffer(null);
+        GpsLocationProvider provider = new GpsLocationProvider(mCallback, trackBuffer, null, executor);
+        SpeedListener listener = new SpeedListener();
+        provider.registerOnLocationServiceSpeedChangedListener(listener);
+        provider.startTracking();
+        int notificationCount = executor.mCount;
+
+        mClient.deliver(createBatch(20f));
+
+        // Each fix went through the pipeline, listeners got one notification set
+        Pipeline pipeline = provider.getPipeline();
+        assertEquals(BATCH_SIZE, pipeline.getInvocationCount(pipeline.getStageCount() - 1));
+        assertEquals(BATCH_SIZE, trackBuffer.getSampleCount());
+        assertEquals(notificationCount + 1, executor.mCount);
+        assertEquals(1, listener.mSpeeds.size());
+        assertEquals(72, (int) (float) listener.mSpeeds.get(0));
+        assertEquals(1, listener.mActivities.size());
+        assertTrue(listener.mActivities.get(0));
+        assertTrue(provider.isSpeedActive());
+        assertEquals(TrackingState.ACTIVE_SECTION, provider.getStateMachine().getState());
+    }
+
+    /**
+     * @return a batch of a fix per second at a constant speed
+     */
+    private static List<Location> createBatch(float speed) {
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Location location = new Location(FusedGpsLocationCallback.LOCATION_PROVIDER);
+            location.setTime(i * 1000L);
+            location.setElapsedRealtimeNanos(TimeUnit.SECONDS.toNanos(i));
+            location.setLatitude(45d + i * speed / 111_320d);
+            location.setLongitude(5d);
+            location.setSpeed(speed);
+            location.setAccuracy(5f);
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    /**
+     * Counts fixes, without batch support.
+     */
+    private static class CountingListener implements LocationListener {
+
+        private int mLocationCount;
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mLocationCount++;
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    }
+
+    /**
+     * Runs notifications at once and counts them.
+     */
+    private static class CountingExecutor implements Executor {
+
+        private int mCount;
+
+        @Override
+        public void execute(Runnable command) {
+            mCount++;
+            command.run();
+        }
+    }
+
+    private static class SpeedListener implements LocationProvider.OnSpeedChangedListener {
+
+        private final List<Float> mSpeeds = new ArrayList<>();
+        private final List<Boolean> mActivities = new ArrayList<>();
+
+        @Override
+        public void onSpeedChanged(float speed, Location location) {
+            mSpeeds.add(speed);
+        }
+
+        @Override
+        public void onSpeedActivityChanged(boolean active) {
+            mActivities.add(active);
+        }
+    }
+}
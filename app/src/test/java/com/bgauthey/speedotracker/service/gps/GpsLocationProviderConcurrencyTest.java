@@ -0,0 +1,95 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
+import com.bgauthey.speedotracker.service.StressHarness;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Stress tests of {@link GpsLocationProvider#getInstance(GpsLocationProvider.Dependencies)} from
+ * several threads, see {@link StressHarness}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GpsLocationProviderConcurrencyTest {
+
+    private static final int RUN_COUNT = 200;
+    private static final int ACTOR_COUNT = 4;
+
+    private static final String DOUBLE_INSTANCE = "DOUBLE_INSTANCE";
+    private static final String DOUBLE_DEPENDENCIES = "DOUBLE_DEPENDENCIES";
+
+    @After
+    public void tearDown() {
+        GpsLocationProvider.destroyInstance();
+    }
+
+    @Test
+    public void shouldCreateSingleInstance() throws InterruptedException {
+        final FakeGpsLocationCallback callback = new FakeGpsLocationCallback();
+        StressHarness.Result result = StressHarness.run(new StressHarness.TrialFactory() {
+            @Override
+            public StressHarness.Trial newTrial() {
+                GpsLocationProvider.destroyInstance();
+                final AtomicReferenceArray<GpsLocationProvider> instances = new AtomicReferenceArray<>(ACTOR_COUNT);
+                final AtomicInteger creationCount = new AtomicInteger();
+                final GpsLocationProvider.Dependencies dependencies = new GpsLocationProvider.Dependencies() {
+                    @Override
+                    public GpsLocationCallback createLocationCallback() {
+                        creationCount.incrementAndGet();
+                        return callback;
+                    }
+
+                    @Override
+                    public TrackBuffer createTrackBuffer() {
+                        return new TrackBuffer(null);
+                    }
+
+                    @Override
+                    public FixLatencyMonitor createLatencyMonitor() {
+                        return null;
+                    }
+                };
+                return new StressHarness.Trial() {
+                    @Override
+                    public Runnable[] getActors() {
+                        Runnable[] actors = new Runnable[ACTOR_COUNT];
+                        for (int i = 0; i < ACTOR_COUNT; i++) {
+                            final int actor = i;
+                            actors[i] = new Runnable() {
+                                @Override
+                                public void run() {
+                                    instances.set(actor, GpsLocationProvider.getInstance(dependencies));
+                                }
+                            };
+                        }
+                        return actors;
+                    }
+
+                    @Override
+                    public String arbiter() {
+                        for (int i = 1; i < ACTOR_COUNT; i++) {
+                            if (instances.get(i) != instances.get(0)) {
+                                return DOUBLE_INSTANCE;
+                            }
+                        }
+                        if (creationCount.get() != 1) {
+                            return DOUBLE_DEPENDENCIES;
+                        }
+                        return StressHarness.OK;
+                    }
+                };
+            }
+        }, RUN_COUNT, ACTOR_COUNT);
+
+        assertTrue(result.toString(), result.isOk());
+    }
+}
@@ -1,6 +1,16 @@
 package com.bgauthey.speedotracker.service.gps;
 
+import android.hardware.SensorManager;
 import android.location.Location;
+import android.os.HandlerThread;
+
+import com.bgauthey.speedotracker.engine.FixSpeedEstimator;
+import com.bgauthey.speedotracker.engine.KalmanSpeedEstimator;
+import com.bgauthey.speedotracker.engine.RawSpeedEstimator;
+import com.bgauthey.speedotracker.engine.pipeline.Pipeline;
+import com.bgauthey.speedotracker.service.FixLatencyMonitor;
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -9,8 +19,17 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.shadows.ShadowLocationManager;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 /**
@@ -19,6 +38,8 @@ import static junit.framework.Assert.assertTrue;
 @RunWith(RobolectricTestRunner.class)
 public class GpsLocationProviderTest {
 
+    private static final long SECOND_MILLIS = 1000L;
+
     private GpsLocationProvider mProvider;
 
     private FakeGpsLocationCallback mFakeLocationCallback;
@@ -29,7 +50,7 @@ public class GpsLocationProviderTest {
 
         mFakeLocationCallback = new FakeGpsLocationCallback();
 
-        mProvider = new GpsLocationProvider(mFakeLocationCallback);
+        mProvider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null));
 
         mFakeLocationCallback.setProviderEnabled(true); // Enable provider by default
     }
@@ -73,33 +94,387 @@ public class GpsLocationProviderTest {
         getLocationManager().simulateLocation(createLocation(0f, time));
         assertFalse(mProvider.isSpeedActive());
 
-        time += 1; // add a second for next location simulation
+        time += SECOND_MILLIS; // add a second for next location simulation
         getLocationManager().simulateLocation(createLocation(5f, time));
-        assertTrue(mProvider.isSpeedActive());
+        assertFalse(mProvider.isSpeedActive());
 
-        time += 1;
+        // Speed stays above running speed long enough to start a section
+        time += GpsLocationProvider.SECTION_START_DWELL_NANOS / 1_000_000L;
         getLocationManager().simulateLocation(createLocation(20f, time));
         assertTrue(mProvider.isSpeedActive());
 
-        time += 1;
+        time += SECOND_MILLIS;
         getLocationManager().simulateLocation(createLocation(3f, time));
         assertTrue(mProvider.isSpeedActive());
 
-        time += 1;
-        getLocationManager().simulateLocation(createLocation(GpsLocationProvider.MIN_SPEED_RUNNING, time));
+        // Between stopped and running speeds, the section goes on
+        time += SECOND_MILLIS;
+        getLocationManager().simulateLocation(createLocation(GpsLocationProvider.MAX_SPEED_STOPPED, time));
         assertTrue(mProvider.isSpeedActive());
 
-        time += 1;
-        getLocationManager().simulateLocation(createLocation(GpsLocationProvider.MIN_SPEED_RUNNING - 0.01f, time));
+        time += SECOND_MILLIS;
+        getLocationManager().simulateLocation(createLocation(GpsLocationProvider.MAX_SPEED_STOPPED - 0.01f, time));
+        assertTrue(mProvider.isSpeedActive());
+
+        // Speed stays under stopped speed long enough to end the section
+        time += GpsLocationProvider.SECTION_END_DWELL_NANOS / 1_000_000L;
+        getLocationManager().simulateLocation(createLocation(0f, time));
         assertFalse(mProvider.isSpeedActive());
 
         mProvider.stopTracking();
     }
 
+    @Test
+    public void shouldDropInvalidFixes() {
+        mProvider.startTracking();
+
+        long time = System.currentTimeMillis();
+        getLocationManager().simulateLocation(createLocation(20f, time));
+        time += GpsLocationProvider.SECTION_START_DWELL_NANOS / 1_000_000L;
+        getLocationManager().simulateLocation(createLocation(20f, time));
+        assertTrue(mProvider.isSpeedActive());
+
+        time += 1;
+        getLocationManager().simulateLocation(createLocation(Float.NaN, time));
+        assertTrue(mProvider.isSpeedActive());
+
+        Pipeline pipeline = mProvider.getPipeline();
+        assertEquals("filter", pipeline.getStageName(0));
+        assertEquals(3, pipeline.getInvocationCount(0));
+        assertEquals(1, pipeline.getDropCount(0));
+        assertEquals(2, pipeline.getInvocationCount(pipeline.getStageCount() - 1));
+
+        mProvider.stopTracking();
+    }
+
+    @Test
+    public void shouldProcessFixesOnProcessingThread() {
+        HandlerThread thread = new HandlerThread("processing");
+        thread.start();
+        GpsLocationProvider provider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null),
+                thread.getLooper(), new QueueExecutor());
+
+        provider.startTracking();
+
+        assertEquals(thread.getLooper(), mFakeLocationCallback.getLooper());
+        provider.stopTracking();
+        thread.quit();
+    }
+
+    @Test
+    public void shouldPublishSnapshotBeforeNotifying() {
+        QueueExecutor executor = new QueueExecutor();
+        GpsLocationProvider provider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null), null, executor);
+        RecordingListener listener = new RecordingListener();
+        provider.registerOnLocationServiceSpeedChangedListener(listener);
+        provider.startTracking();
+
+        provider.onLocationChanged(createLocation(20f, 0));
+        Location location = createLocation(20f, GpsLocationProvider.SECTION_START_DWELL_NANOS / 1_000_000L);
+        provider.onLocationChanged(location);
+
+        // State is readable at once, listeners are notified when the executor runs notifications
+        assertTrue(provider.isTrackingRunning());
+        assertTrue(provider.isSpeedActive());
+        assertTrue(provider.getSnapshot().isSpeedActive());
+        assertEquals(0, listener.mSpeeds.size());
+
+        executor.runAll();
+
+        assertEquals(2, listener.mSpeeds.size());
+        assertEquals(72, (int) listener.mSpeeds.get(1));
+        assertEquals(1, listener.mActivities.size());
+        assertTrue(listener.mActivities.get(0));
+        // Listeners get a copy of the fix, which may be processed later than the notification
+        assertNotSame(location, listener.mLocations.get(1));
+        assertEquals(20f, listener.mLocations.get(1).getSpeed());
+    }
+
+    @Test
+    public void shouldPublishSectionValues() {
+        GpsLocationProvider provider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null), null, new QueueExecutor());
+        provider.startTracking();
+
+        provider.onLocationChanged(createLocation(45d, 10f, 0));
+        provider.onLocationChanged(createLocation(45d, 10f, 2));
+        provider.onLocationChanged(createLocation(45.01, 0f, 100));
+        provider.onLocationChanged(createLocation(45.01, 0f, 103));
+
+        TrackingSnapshot snapshot = provider.getSnapshot();
+        assertFalse(snapshot.isSpeedActive());
+        assertEquals(100, snapshot.getTimeElapsed());
+        assertEquals(1111.5f, snapshot.getDistance(), 1f);
+        assertEquals(Math.round(snapshot.getAverageSpeed() * 3.6f), (int) provider.getAverageSpeedHistory());
+    }
+
+    @Test
+    public void shouldNotifyStatusOnlyWhenRunningChanges() {
+        StateListener listener = new StateListener();
+        mProvider.registerOnLocationServiceStateChangedListener(listener);
+        mProvider.startTracking();
+
+        // A GPS status reported again and again while the signal is lost
+        for (int i = 0; i < 10; i++) {
+            mProvider.onStatusChanged(DefaultGpsLocationCallback.LOCATION_PROVIDER,
+                    android.location.LocationProvider.TEMPORARILY_UNAVAILABLE, null);
+            mProvider.onStatusChanged(DefaultGpsLocationCallback.LOCATION_PROVIDER,
+                    android.location.LocationProvider.OUT_OF_SERVICE, null);
+        }
+        mProvider.onStatusChanged(DefaultGpsLocationCallback.LOCATION_PROVIDER,
+                android.location.LocationProvider.AVAILABLE, null);
+        mProvider.onStatusChanged(DefaultGpsLocationCallback.LOCATION_PROVIDER,
+                android.location.LocationProvider.AVAILABLE, null);
+
+        assertEquals(3, listener.mStates.size());
+        assertTrue(listener.mStates.get(0));
+        assertFalse(listener.mStates.get(1));
+        assertTrue(listener.mStates.get(2));
+        assertEquals(TrackingState.WAITING_FOR_FIX, mProvider.getStateMachine().getState());
+    }
+
+    @Test
+    public void shouldNotNotifyProviderEventsWhenIdle() {
+        StateListener listener = new StateListener();
+        mProvider.registerOnLocationServiceStateChangedListener(listener);
+
+        mProvider.onProviderEnabled(DefaultGpsLocationCallback.LOCATION_PROVIDER);
+        mProvider.onStatusChanged(DefaultGpsLocationCallback.LOCATION_PROVIDER,
+                android.location.LocationProvider.AVAILABLE, null);
+        mProvider.onProviderDisabled(DefaultGpsLocationCallback.LOCATION_PROVIDER);
+
+        assertEquals(0, listener.mStates.size());
+        assertFalse(mProvider.isTrackingRunning());
+        assertEquals(TrackingState.IDLE, mProvider.getStateMachine().getState());
+    }
+
+    @Test
+    public void shouldNotComputeSectionWhenDisabledWithoutSection() {
+        StateListener listener = new StateListener();
+        mProvider.registerOnLocationServiceStateChangedListener(listener);
+        mProvider.registerOnLocationServiceAverageSpeedChangedListener(listener);
+        mProvider.startTracking();
+        mProvider.onLocationChanged(createLocation(1f, 0));
+
+        mProvider.onProviderDisabled(DefaultGpsLocationCallback.LOCATION_PROVIDER);
+
+        assertEquals(0, listener.mAverageSpeedCount);
+        assertFalse(listener.mStates.get(listener.mStates.size() - 1));
+        assertEquals(TrackingState.PROVIDER_LOST, mProvider.getStateMachine().getState());
+    }
+
+    @Test
+    public void shouldTrackSectionStates() {
+        mProvider.startTracking();
+        assertEquals(TrackingState.WAITING_FOR_FIX, mProvider.getStateMachine().getState());
+
+        mProvider.onLocationChanged(createLocation(20f, 0));
+        assertEquals(TrackingState.TRACKING, mProvider.getStateMachine().getState());
+
+        mProvider.onLocationChanged(createLocation(20f, GpsLocationProvider.SECTION_START_DWELL_NANOS / 1_000_000L));
+        assertEquals(TrackingState.ACTIVE_SECTION, mProvider.getStateMachine().getState());
+
+        mProvider.stopTracking();
+        assertEquals(TrackingState.IDLE, mProvider.getStateMachine().getState());
+    }
+
+    @Test
+    public void shouldCoalesceNotificationsOfABatch() {
+        QueueExecutor executor = new QueueExecutor();
+        GpsLocationProvider provider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null), null, executor);
+        RecordingListener listener = new RecordingListener();
+        StateListener averageListener = new StateListener();
+        provider.registerOnLocationServiceSpeedChangedListener(listener);
+        provider.registerOnLocationServiceAverageSpeedChangedListener(averageListener);
+        provider.startTracking();
+        executor.runAll();
+
+        // A section starts and ends within the batch
+        List<Location> batch = new ArrayList<>();
+        batch.add(createLocation(45d, 10f, 0));
+        batch.add(createLocation(45d, 10f, 2));
+        batch.add(createLocation(45.01, 0f, 100));
+        batch.add(createLocation(45.01, 0f, 103));
+        batch.add(createLocation(45.01, 0f, 104));
+        provider.onLocationsChanged(batch);
+
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        assertEquals(1, listener.mSpeeds.size());
+        assertEquals(0, (int) listener.mSpeeds.get(0));
+        assertEquals(1, listener.mActivities.size());
+        assertFalse(listener.mActivities.get(0));
+        assertEquals(1, averageListener.mAverageSpeedCount);
+        assertEquals(100, provider.getSnapshot().getTimeElapsed());
+    }
+
+    @Test
+    public void shouldNotEndSectionOnFixesWithoutSpeed() {
+        assertSectionGoesOnWithoutSpeed(new RawSpeedEstimator());
+        mProvider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null));
+        assertSectionGoesOnWithoutSpeed(new KalmanSpeedEstimator());
+    }
+
+    private void assertSectionGoesOnWithoutSpeed(FixSpeedEstimator estimator) {
+        mProvider.setFixSpeedEstimator(estimator);
+        RecordingListener listener = new RecordingListener();
+        mProvider.registerOnLocationServiceSpeedChangedListener(listener);
+        mProvider.startTracking();
+
+        // 20 m/s northwards, about 0.00018 degree of latitude per second
+        int second = 0;
+        for (; second <= GpsLocationProvider.SECTION_START_DWELL_NANOS / 1_000_000_000L + 5; second++) {
+            mProvider.onLocationChanged(createLocation(45d + second * 0.00018, 20f, second));
+        }
+        assertTrue(mProvider.isSpeedActive());
+
+        // Fixes without Doppler speed, for longer than the section end dwell time
+        for (int i = 0; i <= GpsLocationProvider.SECTION_END_DWELL_NANOS / 1_000_000_000L + 5; i++, second++) {
+            Location location = createLocation(45d + second * 0.00018, 0f, second);
+            location.removeSpeed();
+            mProvider.onLocationChanged(location);
+        }
+        assertTrue(mProvider.isSpeedActive());
+        assertEquals(72f, listener.mSpeeds.get(listener.mSpeeds.size() - 1), 5f);
+        assertSame(estimator, mProvider.getFixSpeedEstimator());
+
+        mProvider.stopTracking();
+    }
+
+    @Test
+    public void shouldNotifyEstimatedSpeedBetweenFixes() {
+        AccelerometerSpeedEstimator estimator = new AccelerometerSpeedEstimator((SensorManager) null);
+        mProvider.setSpeedEstimator(estimator);
+        RecordingListener listener = new RecordingListener();
+        mProvider.registerOnLocationServiceSpeedChangedListener(listener);
+        mProvider.startTracking();
+
+        // Nothing to notify before the first fix
+        mProvider.onSpeedFrame();
+        assertEquals(0, listener.mSpeeds.size());
+
+        // Accelerate at 2 m/s^2 along x, the estimator learns its forward axis from the fixes
+        long time = 0;
+        for (int second = 0; second <= 3; second++) {
+            mProvider.onLocationChanged(createLocation(2f * second, second * SECOND_MILLIS));
+            for (int i = 0; i < 50 && second < 3; i++) {
+                time = second * SECOND_MILLIS + i * 20;
+                estimator.onAcceleration(2f, 0f, 0f, TimeUnit.MILLISECONDS.toNanos(time));
+            }
+        }
+        assertEquals(22, (int) listener.mSpeeds.get(listener.mSpeeds.size() - 1));
+
+        // Same speed in km/h as the last fix: nothing to notify
+        int count = listener.mSpeeds.size();
+        mProvider.onSpeedFrame();
+        assertEquals(count, listener.mSpeeds.size());
+
+        // Half a second after the last fix, the estimate is 7 m/s
+        for (time = 3 * SECOND_MILLIS; time <= 3500; time += 20) {
+            estimator.onAcceleration(2f, 0f, 0f, TimeUnit.MILLISECONDS.toNanos(time));
+        }
+        mProvider.onSpeedFrame();
+        mProvider.onSpeedFrame();
+        assertEquals(count + 1, listener.mSpeeds.size());
+        assertEquals(25, (int) listener.mSpeeds.get(count));
+        assertEquals(3 * SECOND_MILLIS, listener.mLocations.get(count).getTime());
+
+        mProvider.stopTracking();
+        assertEquals(count + 1, listener.mSpeeds.size());
+    }
+
+    @Test
+    public void shouldMeasureFixLatencies() {
+        FixLatencyMonitor monitor = new FixLatencyMonitor();
+        GpsLocationProvider provider = new GpsLocationProvider(mFakeLocationCallback, new TrackBuffer(null),
+                null, new QueueExecutor(), monitor);
+        provider.startTracking();
+
+        for (int second = 0; second < 5; second++) {
+            provider.onLocationChanged(createLocation(45d + second * 0.00018, 20f, second));
+        }
+        provider.stopTracking();
+        assertEquals(5, monitor.getFixToProcess().getCount());
+
+        StringWriter writer = new StringWriter();
+        provider.dump(new PrintWriter(writer));
+        assertTrue(writer.toString(), writer.toString().contains("fix->process: count=5"));
+        assertTrue(writer.toString(), writer.toString().contains("Last section: "));
+    }
+
     private static Location createLocation(float speed, long time) {
         Location location = new Location(DefaultGpsLocationCallback.LOCATION_PROVIDER);
         location.setSpeed(speed);
         location.setTime(time);
+        location.setElapsedRealtimeNanos(TimeUnit.MILLISECONDS.toNanos(time));
         return location;
     }
+
+    private static Location createLocation(double latitude, float speed, int second) {
+        Location location = createLocation(speed, second * 1000L);
+        location.setLatitude(latitude);
+        location.setLongitude(5d);
+        location.setElapsedRealtimeNanos(second * 1_000_000_000L);
+        return location;
+    }
+
+    /**
+     * Executor keeping tasks until {@link #runAll()} is called.
+     */
+    private static class QueueExecutor implements Executor {
+
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : mTasks) {
+                task.run();
+            }
+            mTasks.clear();
+        }
+    }
+
+    /**
+     * Keeps tracking state notifications and counts average speed notifications.
+     */
+    private static class StateListener implements LocationProvider.OnSpeedRecordingStateChangedListener,
+            LocationProvider.OnAverageSpeedChangedListener {
+
+        private final List<Boolean> mStates = new ArrayList<>();
+        private int mAverageSpeedCount;
+
+        @Override
+        public void onSpeedRecordingStateChanged(boolean enabled) {
+            mStates.add(enabled);
+        }
+
+        @Override
+        public void onAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
+            mAverageSpeedCount++;
+        }
+    }
+
+    /**
+     * Keeps speed notifications.
+     */
+    private static class RecordingListener implements LocationProvider.OnSpeedChangedListener {
+
+        private final List<Integer> mSpeeds = new ArrayList<>();
+        private final List<Location> mLocations = new ArrayList<>();
+        private final List<Boolean> mActivities = new ArrayList<>();
+
+        @Override
+        public void onSpeedChanged(float speed, Location location) {
+            mSpeeds.add((int) speed);
+            mLocations.add(location);
+        }
+
+        @Override
+        public void onSpeedActivityChanged(boolean active) {
+            mActivities.add(active);
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link MultiSourceGpsLocationCallback}, feeding a {@link GpsLocationProvider}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MultiSourceGpsLocationCallbackTest {
+
+    private static final float GPS_ACCURACY = 5f;
+    private static final float NETWORK_ACCURACY = 40f;
+    private static final float SPEED = 20f;
+
+    private SimulatedCallback mCallback;
+    private GpsLocationProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mCallback = new SimulatedCallback();
+        mProvider = new GpsLocationProvider(mCallback, new TrackBuffer(null));
+    }
+
+    @Test
+    public void shouldRequestAllProviders() {
+        mProvider.startTracking();
+
+        assertEquals(3, mCallback.mProviders.size());
+        assertTrue(mCallback.mProviders.contains(LocationManager.PASSIVE_PROVIDER));
+
+        mProvider.stopTracking();
+        assertNull(mCallback.mListener);
+    }
+
+    @Test
+    public void shouldTrackFromFirstNetworkFix() {
+        mProvider.startTracking();
+
+        deliver(LocationManager.NETWORK_PROVIDER, 0, NETWORK_ACCURACY, false);
+
+        assertEquals(TrackingState.TRACKING, mProvider.getStateMachine().getState());
+    }
+
+    @Test
+    public void shouldFillGpsGapsWithNetworkFixes() {
+        mProvider.startTracking();
+        for (int second = 0; second < 10; second++) {
+            deliver(LocationManager.GPS_PROVIDER, second, GPS_ACCURACY, true);
+            // Network fixes are dropped while GPS fixes come
+            deliver(LocationManager.NETWORK_PROVIDER, second, NETWORK_ACCURACY, false);
+        }
+        assertTrue(mProvider.isSpeedActive());
+        long fixCount = getFixCount();
+
+        // In a tunnel: no GPS fix for 30 seconds, a network fix every 5 seconds
+        mCallback.mListener.onStatusChanged(LocationManager.GPS_PROVIDER,
+                android.location.LocationProvider.TEMPORARILY_UNAVAILABLE, null);
+        for (int second = 10; second < 40; second += 5) {
+            deliver(LocationManager.NETWORK_PROVIDER, second, NETWORK_ACCURACY, false);
+        }
+
+        assertEquals(fixCount + 6, getFixCount());
+        assertEquals(TrackingState.ACTIVE_SECTION, mProvider.getStateMachine().getState());
+        assertTrue(mProvider.isSpeedActive());
+    }
+
+    @Test
+    public void shouldDeriveSpeedOfNetworkFixesInProvider() {
+        final List<Location> locations = new ArrayList<>();
+        final List<Float> speeds = new ArrayList<>();
+        mProvider.registerOnLocationServiceSpeedChangedListener(new LocationProvider.OnSpeedChangedListener() {
+            @Override
+            public void onSpeedChanged(float speed, Location location) {
+                speeds.add(speed);
+                locations.add(location);
+            }
+
+            @Override
+            public void onSpeedActivityChanged(boolean active) {
+            }
+        });
+        mProvider.startTracking();
+
+        deliver(LocationManager.NETWORK_PROVIDER, 0, NETWORK_ACCURACY, false);
+        deliver(LocationManager.NETWORK_PROVIDER, 5, NETWORK_ACCURACY, false);
+
+        // Forwarded without speed, derived from the distance between both fixes
+        assertFalse(locations.get(locations.size() - 1).hasSpeed());
+        assertEquals(SPEED * 3.6f, speeds.get(speeds.size() - 1), 1f);
+    }
+
+    @Test
+    public void shouldDropPassiveDuplicates() {
+        mProvider.startTracking();
+
+        deliver(LocationManager.GPS_PROVIDER, 0, GPS_ACCURACY, true);
+        mCallback.mListener.onLocationChanged(createLocation(LocationManager.PASSIVE_PROVIDER, 0, GPS_ACCURACY, true));
+
+        assertEquals(1, getFixCount());
+    }
+
+    @Test
+    public void shouldReportFusionCountersOnceStopped() {
+        mProvider.startTracking();
+        deliver(LocationManager.GPS_PROVIDER, 0, GPS_ACCURACY, true);
+        mCallback.mListener.onLocationChanged(createLocation(LocationManager.PASSIVE_PROVIDER, 0, GPS_ACCURACY, true));
+        mProvider.stopTracking();
+
+        StringWriter writer = new StringWriter();
+        mProvider.dump(new PrintWriter(writer));
+        assertTrue(writer.toString(), writer.toString().contains("Fixes kept: 1, dropped: 1"));
+    }
+
+    @Test
+    public void shouldDisableOnlyWhenAllProvidersAreDisabled() {
+        mProvider.startTracking();
+        for (int second = 0; second < 5; second++) {
+            deliver(LocationManager.GPS_PROVIDER, second, GPS_ACCURACY, true);
+        }
+
+        mCallback.mListener.onProviderDisabled(LocationManager.GPS_PROVIDER);
+        assertTrue(mProvider.isSpeedActive());
+        assertTrue(mProvider.isTrackingRunning());
+
+        mCallback.mListener.onProviderDisabled(LocationManager.NETWORK_PROVIDER);
+        assertFalse(mProvider.isSpeedActive());
+        assertEquals(TrackingState.PROVIDER_LOST, mProvider.getStateMachine().getState());
+
+        mCallback.mListener.onProviderEnabled(LocationManager.NETWORK_PROVIDER);
+        assertEquals(TrackingState.WAITING_FOR_FIX, mProvider.getStateMachine().getState());
+    }
+
+    /**
+     * @return number of fixes received by the provider
+     */
+    private long getFixCount() {
+        return mProvider.getPipeline().getInvocationCount(0);
+    }
+
+    private void deliver(String provider, int second, float accuracy, boolean hasSpeed) {
+        mCallback.mListener.onLocationChanged(createLocation(provider, second, accuracy, hasSpeed));
+    }
+
+    private Location createLocation(String provider, int second, float accuracy, boolean hasSpeed) {
+        Location location = new Location(provider);
+        location.setTime(second * 1000L);
+        location.setElapsedRealtimeNanos(TimeUnit.SECONDS.toNanos(second));
+        location.setLatitude(45d + second * SPEED / 111_133d);
+        location.setLongitude(5d);
+        location.setAccuracy(accuracy);
+        if (hasSpeed) {
+            location.setSpeed(SPEED);
+        }
+        return location;
+    }
+
+    /**
+     * {@link MultiSourceGpsLocationCallback} with all providers enabled, keeping the listener
+     * registered.
+     */
+    private static class SimulatedCallback extends MultiSourceGpsLocationCallback {
+
+        private final List<String> mProviders = new ArrayList<>();
+        private LocationListener mListener;
+
+        SimulatedCallback() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public boolean isTrackingReady() {
+            return true;
+        }
+
+        @Override
+        boolean isProviderEnabled(String provider) {
+            return true;
+        }
+
+        @Override
+        void requestUpdates(String provider, LocationListener listener, Looper looper) {
+            mProviders.add(provider);
+            mListener = listener;
+        }
+
+        @Override
+        void removeUpdates(LocationListener listener) {
+            mListener = null;
+        }
+    }
+}
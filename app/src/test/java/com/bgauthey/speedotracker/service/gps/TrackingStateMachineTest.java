@@ -0,0 +1,97 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TrackingStateMachine}
+ */
+public class TrackingStateMachineTest {
+
+    private TrackingStateMachine mStateMachine;
+
+    @Before
+    public void setUp() {
+        mStateMachine = new TrackingStateMachine(4);
+    }
+
+    @Test
+    public void shouldStartIdle() {
+        assertEquals(TrackingState.IDLE, mStateMachine.getState());
+        assertFalse(mStateMachine.getState().isRunning());
+        assertEquals(0, mStateMachine.getTransitions().size());
+    }
+
+    @Test
+    public void shouldMoveThroughTrackingStates() {
+        assertEquals(TrackingState.IDLE, mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "start"));
+        assertEquals(TrackingState.WAITING_FOR_FIX, mStateMachine.moveTo(TrackingState.TRACKING, "fix"));
+        assertEquals(TrackingState.TRACKING, mStateMachine.moveTo(TrackingState.ACTIVE_SECTION, "fix"));
+        assertEquals(TrackingState.ACTIVE_SECTION, mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "lost"));
+        assertEquals(TrackingState.PROVIDER_LOST, mStateMachine.moveTo(TrackingState.IDLE, "stop"));
+
+        assertEquals(TrackingState.IDLE, mStateMachine.getState());
+        assertEquals(5, mStateMachine.getTransitionCount());
+    }
+
+    @Test
+    public void shouldIgnoreEventsNotChangingState() {
+        mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "start");
+        mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "unavailable");
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "unavailable"));
+        }
+
+        assertEquals(2, mStateMachine.getTransitionCount());
+    }
+
+    @Test
+    public void shouldRejectTransitionsNotAllowed() {
+        // Tracking doesn't run before it's started
+        assertNull(mStateMachine.moveTo(TrackingState.TRACKING, "fix"));
+        assertNull(mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "disabled"));
+        mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "start");
+        mStateMachine.moveTo(TrackingState.TRACKING, "fix");
+        // A fix doesn't wait for another one
+        assertNull(mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "enabled"));
+
+        assertEquals(TrackingState.TRACKING, mStateMachine.getState());
+    }
+
+    @Test
+    public void shouldMoveOnlyFromGivenState() {
+        assertFalse(mStateMachine.moveFrom(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, "enabled"));
+        assertEquals(TrackingState.IDLE, mStateMachine.getState());
+
+        mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "start");
+        mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "disabled");
+
+        assertTrue(mStateMachine.moveFrom(TrackingState.PROVIDER_LOST, TrackingState.WAITING_FOR_FIX, "enabled"));
+        assertEquals(TrackingState.WAITING_FOR_FIX, mStateMachine.getState());
+    }
+
+    @Test
+    public void shouldKeepLastTransitions() {
+        mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "start");
+        for (int i = 0; i < 10; i++) {
+            mStateMachine.moveTo(TrackingState.PROVIDER_LOST, "unavailable");
+            mStateMachine.moveTo(TrackingState.WAITING_FOR_FIX, "available");
+        }
+
+        List<TrackingStateMachine.Transition> transitions = mStateMachine.getTransitions();
+        assertEquals(4, transitions.size());
+        assertEquals(21, mStateMachine.getTransitionCount());
+        TrackingStateMachine.Transition last = transitions.get(3);
+        assertEquals(TrackingState.PROVIDER_LOST, last.getFrom());
+        assertEquals(TrackingState.WAITING_FOR_FIX, last.getTo());
+        assertEquals("available", last.getEvent());
+    }
+}
@@ -0,0 +1,267 @@
+package com.bgauthey.speedotracker.service.replay;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.os.Bundle;
+import android.os.Looper;
+
+import com.bgauthey.speedotracker.service.track.TrackChunk;
+import com.bgauthey.speedotracker.service.track.TripWriter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TraceReplayGpsLocationCallback}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TraceReplayGpsLocationCallbackTest {
+
+    private static final int FIX_COUNT = 1000;
+    private static final long INTERVAL_NANOS = 500_000_000L;
+    private static final long START_ELAPSED_REALTIME_NANOS = 7_200_000_000_000L;
+    private static final long START_TIME_MILLIS = 1_525_000_000_000L;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mTrace;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() throws IOException {
+        mTrace = mTemporaryFolder.newFile("replay.trip");
+        TripWriter writer = new TripWriter(mTrace, 64, START_TIME_MILLIS, START_ELAPSED_REALTIME_NANOS);
+        TrackChunk chunk = new TrackChunk(64);
+        for (int i = 0; i < FIX_COUNT; i++) {
+            chunk.add(45d + i * 0.0001, 5d, i % 40, 5f, START_ELAPSED_REALTIME_NANOS + i * INTERVAL_NANOS);
+            if (chunk.isFull()) {
+                writer.writeBlock(chunk);
+                chunk.clear();
+            }
+        }
+        writer.writeBlock(chunk);
+        writer.close();
+
+        mListener = new RecordingListener();
+    }
+
+    @Test
+    public void shouldReplayAllFixesAsFastAsPossible() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_AS_FAST_AS_POSSIBLE);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(FIX_COUNT, mListener.mElapsedRealtimeNanos.size());
+        assertEquals(FIX_COUNT, callback.getReplayedCount());
+    }
+
+    @Test
+    public void shouldReportEndOfTrace() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_REAL_TIME);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        ShadowLooper.runUiThreadTasks();
+        assertEquals("Fixes replayed: 1 from " + mTrace, dump(callback));
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(FIX_COUNT, TimeUnit.SECONDS);
+        callback.stopTracking(mListener);
+        assertEquals("Fixes replayed: " + FIX_COUNT + " from " + mTrace + " (end of trace)", dump(callback));
+    }
+
+    @Test
+    public void shouldKeepRecordedTimestamps() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_AS_FAST_AS_POSSIBLE);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        ShadowLooper.runUiThreadTasks();
+
+        for (int i = 0; i < FIX_COUNT; i++) {
+            assertEquals(START_ELAPSED_REALTIME_NANOS + i * INTERVAL_NANOS, (long) mListener.mElapsedRealtimeNanos.get(i));
+            assertEquals(START_TIME_MILLIS + i * 500L, (long) mListener.mTimes.get(i));
+        }
+    }
+
+    @Test
+    public void shouldReplayInRealTime() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_REAL_TIME);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(1, mListener.mElapsedRealtimeNanos.size());
+
+        Robolectric.getForegroundThreadScheduler().advanceBy(10, TimeUnit.SECONDS);
+        assertEquals(21, mListener.mElapsedRealtimeNanos.size());
+    }
+
+    @Test
+    public void shouldReplayFaster() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace, 4f);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        Robolectric.getForegroundThreadScheduler().advanceBy(10, TimeUnit.SECONDS);
+
+        assertEquals(81, mListener.mElapsedRealtimeNanos.size());
+    }
+
+    @Test
+    public void shouldStopReplay() {
+        TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_REAL_TIME);
+
+        callback.startTracking(mListener, Looper.getMainLooper());
+        Robolectric.getForegroundThreadScheduler().advanceBy(1, TimeUnit.SECONDS);
+        callback.stopTracking(mListener);
+        Robolectric.getForegroundThreadScheduler().advanceBy(10, TimeUnit.SECONDS);
+
+        assertEquals(3, mListener.mElapsedRealtimeNanos.size());
+    }
+
+    @Test
+    public void shouldStopReplayFromAnotherThread() {
+        final TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                TraceReplayGpsLocationCallback.PLAYBACK_AS_FAST_AS_POSSIBLE);
+        final RecordingListener restartListener = new RecordingListener();
+        // Stop and restart from another thread while the 10th fix is being replayed
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                super.onLocationChanged(location);
+                if (mElapsedRealtimeNanos.size() == 10) {
+                    final LocationListener listener = this;
+                    runOnOtherThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.stopTracking(listener);
+                            callback.startTracking(restartListener, Looper.getMainLooper());
+                        }
+                    });
+                }
+            }
+        };
+
+        callback.startTracking(listener, Looper.getMainLooper());
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals(10, listener.mElapsedRealtimeNanos.size());
+        assertEquals(FIX_COUNT, restartListener.mElapsedRealtimeNanos.size());
+        assertEquals(START_ELAPSED_REALTIME_NANOS, (long) restartListener.mElapsedRealtimeNanos.get(0));
+        assertEquals(FIX_COUNT, callback.getReplayedCount());
+
+        runOnOtherThread(new Runnable() {
+            @Override
+            public void run() {
+                callback.stopTracking(restartListener);
+            }
+        });
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(0, callback.getReplayedCount());
+    }
+
+    @Test
+    public void shouldNotReplayOnceStoppedFromAnotherThread() throws InterruptedException {
+        for (int run = 0; run < 20; run++) {
+            final TraceReplayGpsLocationCallback callback = new TraceReplayGpsLocationCallback(mTrace,
+                    TraceReplayGpsLocationCallback.PLAYBACK_AS_FAST_AS_POSSIBLE);
+            final AtomicBoolean stopped = new AtomicBoolean();
+            final AtomicInteger lateFixCount = new AtomicInteger();
+            final Thread stopper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    callback.stopTracking(null);
+                    stopped.set(true);
+                }
+            });
+            // Stop at any point of the replay, while fixes are read
+            RecordingListener listener = new RecordingListener() {
+                @Override
+                public void onLocationChanged(Location location) {
+                    super.onLocationChanged(location);
+                    if (stopped.get()) {
+                        lateFixCount.incrementAndGet();
+                    }
+                    if (mElapsedRealtimeNanos.size() == 10) {
+                        stopper.start();
+                    }
+                }
+            };
+
+            callback.startTracking(listener, Looper.getMainLooper());
+            ShadowLooper.runUiThreadTasks();
+            stopper.join();
+            ShadowLooper.runUiThreadTasks();
+
+            // The fix being replayed when tracking stops can still be delivered
+            assertTrue("Fixes replayed once stopped: " + lateFixCount.get(), lateFixCount.get() <= 1);
+        }
+    }
+
+    private static void runOnOtherThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String dump(TraceReplayGpsLocationCallback callback) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(writer);
+        callback.dump(printWriter);
+        printWriter.flush();
+        return writer.toString().trim();
+    }
+
+    /**
+     * Keeps timestamps of received fixes.
+     */
+    private static class RecordingListener implements LocationListener {
+
+        final List<Long> mElapsedRealtimeNanos = new ArrayList<>();
+        private final List<Long> mTimes = new ArrayList<>();
+
+        @Override
+        public void onLocationChanged(Location location) {
+            mElapsedRealtimeNanos.add(location.getElapsedRealtimeNanos());
+            mTimes.add(location.getTime());
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.bgauthey.speedotracker.service.sampling;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Unit tests for {@link AdaptiveSamplingPolicy}
+ */
+public class AdaptiveSamplingPolicyTest {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final float HIGHWAY_SPEED = 30f;
+    private static final float CITY_SPEED = 12f;
+
+    private AdaptiveSamplingPolicy mPolicy;
+    private long mTime;
+
+    @Before
+    public void setUp() {
+        mPolicy = new AdaptiveSamplingPolicy();
+    }
+
+    @Test
+    public void shouldStartCruising() {
+        assertSame(AdaptiveSamplingPolicy.CRUISING, mPolicy.start());
+    }
+
+    @Test
+    public void shouldSampleLessOnceStationary() {
+        mPolicy.start();
+        runFor(AdaptiveSamplingPolicy.STATIONARY_DELAY_NANOS - SECOND_NANOS, 0f, false);
+        assertSame(AdaptiveSamplingPolicy.CRUISING, onFix(0f, false));
+
+        runFor(SECOND_NANOS, 0f, false);
+        assertSame(AdaptiveSamplingPolicy.STATIONARY, onFix(0f, false));
+    }
+
+    @Test
+    public void shouldNotSampleLessInSection() {
+        mPolicy.start();
+        runFor(2 * AdaptiveSamplingPolicy.STATIONARY_DELAY_NANOS, 0f, true);
+
+        assertSame(AdaptiveSamplingPolicy.CRUISING, onFix(0f, true));
+    }
+
+    @Test
+    public void shouldLeaveStationaryAtOnce() {
+        mPolicy.start();
+        runFor(AdaptiveSamplingPolicy.STATIONARY_DELAY_NANOS + SECOND_NANOS, 0f, false);
+        assertSame(AdaptiveSamplingPolicy.STATIONARY, onFix(0f, false));
+
+        assertSame(AdaptiveSamplingPolicy.CRUISING, onFix(CITY_SPEED, false));
+    }
+
+    @Test
+    public void shouldSampleMoreAtHighwaySpeed() {
+        mPolicy.start();
+
+        assertSame(AdaptiveSamplingPolicy.FAST, onFix(HIGHWAY_SPEED, false));
+    }
+
+    @Test
+    public void shouldLeaveFastRateUnderExitSpeed() {
+        mPolicy.start();
+        onFix(HIGHWAY_SPEED, false);
+        runFor(AdaptiveSamplingPolicy.MIN_CHANGE_INTERVAL_NANOS, HIGHWAY_SPEED, false);
+
+        // Between exit and enter speeds, the fast rate is kept
+        assertSame(AdaptiveSamplingPolicy.FAST, onFix(AdaptiveSamplingPolicy.FAST_EXIT_SPEED, false));
+        assertSame(AdaptiveSamplingPolicy.CRUISING, onFix(AdaptiveSamplingPolicy.FAST_EXIT_SPEED - 0.1f, false));
+    }
+
+    @Test
+    public void shouldNotChangeRateBeforeMinInterval() {
+        mPolicy.start();
+        onFix(HIGHWAY_SPEED, false);
+
+        assertSame(AdaptiveSamplingPolicy.FAST, onFix(CITY_SPEED, false));
+        runFor(AdaptiveSamplingPolicy.MIN_CHANGE_INTERVAL_NANOS - SECOND_NANOS, CITY_SPEED, false);
+        assertSame(AdaptiveSamplingPolicy.CRUISING, onFix(CITY_SPEED, false));
+    }
+
+    @Test
+    public void shouldNotThrashAroundThresholds() {
+        mPolicy.start();
+        SamplingRate rate = AdaptiveSamplingPolicy.CRUISING;
+        int changeCount = 0;
+        // One hour at 1 fix per second, speed jittering around the fast enter speed
+        for (int i = 0; i < 3600; i++) {
+            SamplingRate newRate = onFix(AdaptiveSamplingPolicy.FAST_ENTER_SPEED + (i % 2 == 0 ? 1f : -1f), false);
+            if (!newRate.equals(rate)) {
+                changeCount++;
+                rate = newRate;
+            }
+        }
+
+        assertEquals(1, changeCount);
+    }
+
+    private SamplingRate onFix(float speed, boolean sectionActive) {
+        SamplingRate rate = mPolicy.onFix(speed, sectionActive, mTime);
+        mTime += SECOND_NANOS;
+        return rate;
+    }
+
+    /**
+     * Send a fix per second for a duration.
+     */
+    private void runFor(long durationNanos, float speed, boolean sectionActive) {
+        long end = mTime + durationNanos;
+        while (mTime < end) {
+            onFix(speed, sectionActive);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.bgauthey.speedotracker.service.track;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TrackBuffer}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TrackBufferTest {
+
+    private static final int CHUNK_CAPACITY = 4;
+
+    private RecordingSink mSink;
+    private TrackBuffer mTrackBuffer;
+
+    @Before
+    public void setUp() {
+        mSink = new RecordingSink();
+        mTrackBuffer = new TrackBuffer(mSink, CHUNK_CAPACITY);
+    }
+
+    @Test
+    public void shouldIgnoreFixesWhenNotStarted() {
+        mTrackBuffer.append(createLocation(0));
+
+        assertEquals(0, mTrackBuffer.getSampleCount());
+        assertEquals(0, mSink.mSegments.size());
+    }
+
+    @Test
+    public void shouldFlushSegmentWhenChunkIsFull() {
+        mTrackBuffer.start();
+        for (int i = 0; i < CHUNK_CAPACITY + 1; i++) {
+            mTrackBuffer.append(createLocation(i));
+        }
+
+        assertEquals(1, mSink.mSegments.size());
+        assertEquals(CHUNK_CAPACITY, mSink.mSegments.get(0).getSize());
+        assertEquals(1, mTrackBuffer.getPendingChunk().getSize());
+        assertEquals(CHUNK_CAPACITY + 1, mTrackBuffer.getSampleCount());
+    }
+
+    @Test
+    public void shouldKeepFixValuesInSegment() {
+        mTrackBuffer.start();
+        for (int i = 0; i < CHUNK_CAPACITY; i++) {
+            mTrackBuffer.append(createLocation(i));
+        }
+
+        TrackChunk segment = mSink.mSegments.get(0);
+        for (int i = 0; i < CHUNK_CAPACITY; i++) {
+            assertEquals(45d + i, segment.getLatitude(i));
+            assertEquals(5d + i, segment.getLongitude(i));
+            assertEquals((float) i, segment.getSpeed(i));
+            assertEquals(3f, segment.getAccuracy(i));
+            assertEquals(i * 500_000_000L, segment.getElapsedRealtimeNanos(i));
+        }
+    }
+
+    @Test
+    public void shouldFlushRemainingFixesWhenStopped() {
+        mTrackBuffer.start();
+        mTrackBuffer.append(createLocation(0));
+        mTrackBuffer.append(createLocation(1));
+        mTrackBuffer.stop();
+
+        assertTrue(mSink.mStarted);
+        assertTrue(mSink.mStopped);
+        assertEquals(1, mSink.mSegments.size());
+        assertEquals(2, mSink.mSegments.get(0).getSize());
+        assertFalse(mTrackBuffer.isStarted());
+    }
+
+    @Test
+    public void shouldResetCountersWhenRestarted() {
+        mTrackBuffer.start();
+        mTrackBuffer.append(createLocation(0));
+        mTrackBuffer.start();
+
+        assertEquals(0, mTrackBuffer.getSampleCount());
+        assertEquals(0, mTrackBuffer.getSegmentCount());
+        assertTrue(mTrackBuffer.getPendingChunk().isEmpty());
+    }
+
+    private static Location createLocation(int index) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(45d + index);
+        location.setLongitude(5d + index);
+        location.setSpeed(index);
+        location.setAccuracy(3f);
+        location.setElapsedRealtimeNanos(index * 500_000_000L);
+        return location;
+    }
+
+    /**
+     * Keeps a copy of every segment received.
+     */
+    private static class RecordingSink implements TrackBuffer.SegmentSink {
+
+        private final List<TrackChunk> mSegments = new ArrayList<>();
+        private boolean mStarted;
+        private boolean mStopped;
+
+        @Override
+        public void onTrackStarted() {
+            mStarted = true;
+        }
+
+        @Override
+        public void onSegment(TrackChunk chunk) {
+            TrackChunk copy = new TrackChunk(chunk.getCapacity());
+            copy.copyFrom(chunk);
+            mSegments.add(copy);
+        }
+
+        @Override
+        public void onTrackStopped() {
+            mStopped = true;
+        }
+    }
+}
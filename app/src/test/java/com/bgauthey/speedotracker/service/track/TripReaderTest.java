@@ -0,0 +1,277 @@
+package com.bgauthey.speedotracker.service.track;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TripWriter} and {@link TripReader}.
+ */
+public class TripReaderTest {
+
+    private static final int BLOCK_CAPACITY = 256;
+    private static final int FIX_COUNT = BLOCK_CAPACITY * 3 + 17;
+    private static final long ANCHOR_TIME_MILLIS = 1_525_000_000_000L;
+    private static final long ANCHOR_ELAPSED_REALTIME_NANOS = 3_600_000_000_000L;
+    private static final long INTERVAL_NANOS = 500_000_000L;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = mTemporaryFolder.newFile("test.trip");
+    }
+
+    @Test
+    public void shouldReadWrittenFixes() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+
+        TripReader reader = new TripReader(mFile);
+        assertEquals(4, reader.getBlockCount());
+        assertEquals(FIX_COUNT, reader.getFixCount());
+
+        TrackChunk chunk = new TrackChunk(reader.getBlockCapacity());
+        int index = 0;
+        for (int block = 0; block < reader.getBlockCount(); block++) {
+            reader.readBlock(block, chunk);
+            for (int i = 0; i < chunk.getSize(); i++, index++) {
+                assertEquals(latitude(index), chunk.getLatitude(i), 1e-7);
+                assertEquals(longitude(index), chunk.getLongitude(i), 1e-7);
+                assertEquals(speed(index), chunk.getSpeed(i), 0.01f);
+                assertEquals(accuracy(index), chunk.getAccuracy(i), 0.1f);
+                assertEquals(time(index), chunk.getElapsedRealtimeNanos(i));
+            }
+        }
+        assertEquals(FIX_COUNT, index);
+        reader.close();
+    }
+
+    @Test
+    public void shouldReadSingleColumn() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+
+        TripReader reader = new TripReader(mFile);
+        float[] speeds = new float[reader.getBlockCapacity()];
+        int count = reader.readSpeeds(2, speeds);
+
+        assertEquals(BLOCK_CAPACITY, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(speed(BLOCK_CAPACITY * 2 + i), speeds[i], 0.01f);
+        }
+        reader.close();
+    }
+
+    @Test
+    public void shouldSeekToBlockContainingTime() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+
+        TripReader reader = new TripReader(mFile);
+
+        assertEquals(0, reader.findBlock(0));
+        assertEquals(0, reader.findBlock(time(BLOCK_CAPACITY - 1)));
+        assertEquals(1, reader.findBlock(time(BLOCK_CAPACITY)));
+        assertEquals(3, reader.findBlock(time(FIX_COUNT - 1)));
+        assertEquals(ANCHOR_TIME_MILLIS + 1000, reader.toTimeMillis(time(2)));
+        reader.close();
+    }
+
+    @Test
+    public void shouldReadTripNotClosed() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+        // Remove the index and a part of the last block, as if the recording was interrupted
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - TripFormat.FOOTER_SIZE - 4 - 4 * TripFormat.INDEX_ENTRY_SIZE - 10);
+        file.close();
+
+        TripReader reader = new TripReader(mFile);
+
+        assertEquals(3, reader.getBlockCount());
+        assertEquals(BLOCK_CAPACITY * 3, reader.getFixCount());
+        assertEquals(time(BLOCK_CAPACITY * 2), reader.getBlockStartElapsedRealtimeNanos(2));
+        reader.close();
+    }
+
+    @Test
+    public void shouldStopScanningAtMalformedBlock() throws IOException {
+        writeTrip(mFile, BLOCK_CAPACITY * 3);
+        long lastBlockOffset = mFile.length() - TripFormat.FOOTER_SIZE - 4 - 3 * TripFormat.INDEX_ENTRY_SIZE;
+        writeTrip(mFile, FIX_COUNT);
+        // Remove the index and corrupt the last block
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - TripFormat.FOOTER_SIZE - 4 - 4 * TripFormat.INDEX_ENTRY_SIZE);
+        corruptTimeColumn(file, lastBlockOffset);
+        file.close();
+
+        TripReader reader = new TripReader(mFile);
+
+        assertEquals(3, reader.getBlockCount());
+        assertEquals(BLOCK_CAPACITY * 3, reader.getFixCount());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailToReadMalformedColumn() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        corruptTimeColumn(file, TripFormat.HEADER_SIZE);
+        file.close();
+
+        TripReader reader = new TripReader(mFile);
+        try {
+            reader.readBlock(0, new TrackChunk(BLOCK_CAPACITY));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void shouldKeepFixesWithoutSpeed() throws IOException {
+        TripWriter writer = new TripWriter(mFile, BLOCK_CAPACITY, ANCHOR_TIME_MILLIS, ANCHOR_ELAPSED_REALTIME_NANOS);
+        TrackChunk chunk = new TrackChunk(BLOCK_CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            // Every other fix without Doppler speed
+            boolean hasSpeed = i % 2 == 0;
+            chunk.add(latitude(i), longitude(i), hasSpeed ? speed(i) : 0f, hasSpeed, accuracy(i), time(i));
+        }
+        writer.writeBlock(chunk);
+        writer.close();
+
+        TripReader reader = new TripReader(mFile);
+        reader.readBlock(0, chunk);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i % 2 == 0, chunk.hasSpeed(i));
+            assertEquals(i % 2 == 0 ? speed(i) : 0f, chunk.getSpeed(i), 0.01f);
+        }
+        float[] speeds = new float[BLOCK_CAPACITY];
+        reader.readSpeeds(0, speeds);
+        assertEquals(0f, speeds[1]);
+        reader.close();
+    }
+
+    @Test
+    public void shouldNotIndexBlockFailingToBeWritten() throws IOException {
+        writeTrip(mFile, BLOCK_CAPACITY * 2);
+        long twoBlocksLength = mFile.length();
+        mFile.delete();
+        // Fails in the middle of the third block
+        FailingOutputStream output = new FailingOutputStream(new FileOutputStream(mFile), twoBlocksLength + 100);
+        TripWriter writer = new TripWriter(output, BLOCK_CAPACITY, ANCHOR_TIME_MILLIS, ANCHOR_ELAPSED_REALTIME_NANOS);
+        TrackChunk chunk = new TrackChunk(BLOCK_CAPACITY);
+        int failures = 0;
+        for (int i = 0; i < BLOCK_CAPACITY * 4; i++) {
+            chunk.add(latitude(i), longitude(i), speed(i), accuracy(i), time(i));
+            if (chunk.isFull()) {
+                try {
+                    writer.writeBlock(chunk);
+                } catch (IOException e) {
+                    failures++;
+                }
+                chunk.clear();
+            }
+        }
+        writer.close();
+
+        assertEquals(2, failures);
+        assertEquals(2, writer.getBlockCount());
+        assertEquals(BLOCK_CAPACITY * 2, writer.getFixCount());
+        TripReader reader = new TripReader(mFile);
+        assertEquals(2, reader.getBlockCount());
+        assertEquals(time(BLOCK_CAPACITY), reader.getBlockStartElapsedRealtimeNanos(1));
+        reader.close();
+    }
+
+    @Test
+    public void shouldBeMuchSmallerThanRawValues() throws IOException {
+        writeTrip(mFile, FIX_COUNT);
+
+        // 2 doubles, 2 floats and a long per fix
+        long rawSize = FIX_COUNT * (8 + 8 + 4 + 4 + 8);
+        assertTrue("Trip file is " + mFile.length() + " bytes", mFile.length() * 3 < rawSize);
+    }
+
+    private static void writeTrip(File file, int fixCount) throws IOException {
+        TripWriter writer = new TripWriter(file, BLOCK_CAPACITY, ANCHOR_TIME_MILLIS, ANCHOR_ELAPSED_REALTIME_NANOS);
+        TrackChunk chunk = new TrackChunk(BLOCK_CAPACITY);
+        for (int i = 0; i < fixCount; i++) {
+            chunk.add(latitude(i), longitude(i), speed(i), accuracy(i), time(i));
+            if (chunk.isFull()) {
+                writer.writeBlock(chunk);
+                chunk.clear();
+            }
+        }
+        writer.writeBlock(chunk);
+        writer.close();
+    }
+
+    /**
+     * Overwrite the start of the time column of a block with varint continuation bytes only.
+     */
+    private static void corruptTimeColumn(RandomAccessFile file, long blockOffset) throws IOException {
+        byte[] bytes = new byte[TripFormat.MAX_VARINT_SIZE + 1];
+        Arrays.fill(bytes, (byte) 0xFF);
+        file.seek(blockOffset + TripFormat.BLOCK_HEADER_SIZE);
+        file.write(bytes);
+    }
+
+    /**
+     * Output stream failing once a number of bytes was written.
+     */
+    private static class FailingOutputStream extends OutputStream {
+
+        private final OutputStream mOutput;
+        private long mRemaining;
+
+        FailingOutputStream(OutputStream output, long length) {
+            mOutput = output;
+            mRemaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (mRemaining == 0) {
+                throw new IOException("No space left");
+            }
+            mOutput.write(b);
+            mRemaining--;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOutput.close();
+        }
+    }
+
+    private static double latitude(int index) {
+        return 45.1885 + index * 0.00012;
+    }
+
+    private static double longitude(int index) {
+        return 5.7245 - index * 0.00007;
+    }
+
+    private static float speed(int index) {
+        return 10f + (index % 40) * 0.25f;
+    }
+
+    private static float accuracy(int index) {
+        return 4f + (index % 3);
+    }
+
+    private static long time(int index) {
+        return ANCHOR_ELAPSED_REALTIME_NANOS + index * INTERVAL_NANOS;
+    }
+}
@@ -0,0 +1,88 @@
+package com.bgauthey.speedotracker.service.track;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TripRecorder}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TripRecorderTest {
+
+    private static final int CHUNK_CAPACITY = 16;
+    private static final long AWAIT_TIMEOUT_MILLIS = 5000L;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TripRecorder mRecorder;
+    private TrackBuffer mTrackBuffer;
+
+    @Before
+    public void setUp() {
+        mRecorder = new TripRecorder(mTemporaryFolder.getRoot());
+        mTrackBuffer = new TrackBuffer(mRecorder, CHUNK_CAPACITY);
+    }
+
+    @Test
+    public void shouldRecordEachTrackInItsOwnTrip() throws Exception {
+        recordTrack(CHUNK_CAPACITY * 10 + 3);
+        recordTrack(CHUNK_CAPACITY);
+        assertTrue(mRecorder.awaitIdle(AWAIT_TIMEOUT_MILLIS));
+
+        File[] trips = mTemporaryFolder.getRoot().listFiles();
+        assertNotNull(trips);
+        assertEquals(2, trips.length);
+        long fixCount = readFixCount(trips[0]) + readFixCount(trips[1]);
+        assertEquals(CHUNK_CAPACITY * 11 + 3, fixCount);
+    }
+
+    @Test
+    public void shouldNotCreateTripWithoutFix() throws Exception {
+        mTrackBuffer.start();
+        mTrackBuffer.stop();
+        assertTrue(mRecorder.awaitIdle(AWAIT_TIMEOUT_MILLIS));
+
+        File[] trips = mTemporaryFolder.getRoot().listFiles();
+        assertNotNull(trips);
+        assertEquals(0, trips.length);
+    }
+
+    private void recordTrack(int fixCount) throws InterruptedException {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        mTrackBuffer.start();
+        for (int i = 0; i < fixCount; i++) {
+            location.setLatitude(45d + i * 0.0001);
+            location.setLongitude(5d);
+            location.setSpeed(i % 30);
+            location.setElapsedRealtimeNanos(i * 500_000_000L);
+            mTrackBuffer.append(location);
+        }
+        mTrackBuffer.stop();
+        // Trip files are named after their start time
+        Thread.sleep(2);
+    }
+
+    private static long readFixCount(File trip) throws IOException {
+        TripReader reader = new TripReader(trip);
+        try {
+            return reader.getFixCount();
+        } finally {
+            reader.close();
+        }
+    }
+}
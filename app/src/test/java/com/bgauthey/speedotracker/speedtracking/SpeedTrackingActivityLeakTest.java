@@ -0,0 +1,87 @@
+package com.bgauthey.speedotracker.speedtracking;
+
+import com.bgauthey.speedotracker.Injection;
+import com.bgauthey.speedotracker.service.LocationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Recreates {@link SpeedTrackingActivity} many times, destroying it without pausing it first (as
+ * after a crash in {@code onPause}), and checks that the location provider singleton doesn't keep
+ * destroyed activities reachable.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SpeedTrackingActivityLeakTest {
+
+    private static final int RECREATION_COUNT = 20;
+    private static final int GC_ATTEMPT_COUNT = 20;
+    /**
+     * Heap allowed to be retained per recreation, far below the size of an activity with its views
+     */
+    private static final long MAX_RETAINED_BYTES_PER_RECREATION = 64 * 1024;
+
+    @Test
+    public void shouldNotRetainDestroyedActivities() throws InterruptedException {
+        LocationProvider provider = Injection.provideLocationProvider(RuntimeEnvironment.application);
+        // Warm up caches (resources, styles) which would otherwise count as retained heap
+        createAndDestroyActivity();
+        collectGarbage();
+        int initialListenerCount = provider.getListenerCount();
+        long initialUsedHeap = getUsedHeap();
+
+        List<WeakReference<SpeedTrackingActivity>> activities = new ArrayList<>();
+        for (int i = 0; i < RECREATION_COUNT; i++) {
+            activities.add(new WeakReference<>(createAndDestroyActivity()));
+        }
+
+        assertEquals(initialListenerCount, provider.getListenerCount());
+        int retainedCount = activities.size();
+        for (int i = 0; i < GC_ATTEMPT_COUNT && retainedCount > 0; i++) {
+            collectGarbage();
+            retainedCount = 0;
+            for (WeakReference<SpeedTrackingActivity> activity : activities) {
+                if (activity.get() != null) {
+                    retainedCount++;
+                }
+            }
+        }
+        assertEquals("Destroyed activities still reachable", 0, retainedCount);
+        long retainedHeap = getUsedHeap() - initialUsedHeap;
+        assertTrue("Retained " + retainedHeap + " bytes after " + RECREATION_COUNT + " recreations",
+                retainedHeap < RECREATION_COUNT * MAX_RETAINED_BYTES_PER_RECREATION);
+    }
+
+    private static SpeedTrackingActivity createAndDestroyActivity() {
+        ActivityController<SpeedTrackingActivity> controller =
+                Robolectric.buildActivity(SpeedTrackingActivity.class).setup();
+        SpeedTrackingActivity activity = controller.get();
+        // Skip pause: the presenters are never stopped and never unregister their listeners
+        controller.destroy();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        return activity;
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        System.runFinalization();
+        Thread.sleep(10);
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
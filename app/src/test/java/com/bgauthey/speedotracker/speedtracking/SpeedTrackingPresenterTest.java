@@ -11,8 +11,11 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static junit.framework.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mockingDetails;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -60,8 +63,8 @@ public class SpeedTrackingPresenterTest {
 
         mMockedLocationProvider.triggerStateChanged(false);
 
-        // Feedback screen requested to be shown 2 times. One at start, one after trigger
-        verify(mMockedView, times(2)).showFeedbackScreen();
+        // Feedback screen requested to be shown once, at start: the trigger doesn't change it
+        verify(mMockedView, times(1)).showFeedbackScreen();
     }
 
     @Test
@@ -115,4 +118,61 @@ public class SpeedTrackingPresenterTest {
         orderVerify.verify(mMockedView).showFeedbackScreen();
         orderVerify.verify(mMockedView).showInstantSpeedScreen();
     }
+
+    @Test
+    public void start_rendersWholeState() {
+        mMockedLocationProvider.setTrackingRunning(true);
+
+        mPresenter.start();
+
+        verify(mMockedView).showFeedbackScreen();
+        verify(mMockedView).updateButtonState(false);
+        verify(mMockedView).setAppBarExpanded(false);
+        assertEquals(3, getViewCallCount());
+    }
+
+    @Test
+    public void start_afterStop_rendersWholeStateAgain() {
+        mPresenter.start();
+        mPresenter.stop();
+        clearInvocations(mMockedView);
+
+        mPresenter.start();
+
+        assertEquals(3, getViewCallCount());
+    }
+
+    @Test
+    public void stateChanged_rendersOnlyChanges() {
+        mPresenter.start();
+        clearInvocations(mMockedView);
+
+        mMockedLocationProvider.triggerStateChanged(true);
+        // Screen, button and app bar change
+        assertEquals(3, getViewCallCount());
+
+        clearInvocations(mMockedView);
+        mMockedLocationProvider.triggerStateChanged(true);
+        assertEquals(0, getViewCallCount());
+    }
+
+    @Test
+    public void activityChanged_rendersOnlyScreen() {
+        mMockedLocationProvider.setTrackingRunning(true);
+        mPresenter.start();
+        clearInvocations(mMockedView);
+
+        mMockedLocationProvider.triggerSpeedActivityChanged(true);
+        verify(mMockedView).showInstantSpeedScreen();
+        assertEquals(1, getViewCallCount());
+
+        clearInvocations(mMockedView);
+        mMockedLocationProvider.triggerSpeedActivityChanged(true);
+        mMockedLocationProvider.triggerStateChanged(true);
+        assertEquals(0, getViewCallCount());
+    }
+
+    private int getViewCallCount() {
+        return mockingDetails(mMockedView).getInvocations().size();
+    }
 }
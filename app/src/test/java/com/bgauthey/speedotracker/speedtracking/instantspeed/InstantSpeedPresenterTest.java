@@ -1,5 +1,8 @@
 package com.bgauthey.speedotracker.speedtracking.instantspeed;
 
+import android.location.Location;
+
+import com.bgauthey.speedotracker.service.Delivery;
 import com.bgauthey.speedotracker.service.LocationProviderForTest;
 
 import org.junit.After;
@@ -9,10 +12,15 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link InstantSpeedPresenter}.
@@ -47,18 +55,73 @@ public class InstantSpeedPresenterTest {
         mLocationProvider.triggerSpeedChanged(30f);
         mLocationProvider.triggerSpeedChanged(0f);
 
-        verify(mMockedView, times(4)).showSpeed(anyString());
+        verify(mMockedView, times(4)).showSpeed(anyFloat(), anyString());
     }
 
     @Test
     public void shouldShowSpeedWithoutPrecisionAbove() {
         mLocationProvider.triggerSpeedChanged(5.8965f);
-        verify(mMockedView).showSpeed(eq("6"));
+        verify(mMockedView).showSpeed(eq(5.8965f), eq("6"));
     }
 
     @Test
     public void shouldShowSpeedWithoutPrecisionBelow() {
         mLocationProvider.triggerSpeedChanged(12.4532f);
-        verify(mMockedView).showSpeed(eq("12"));
+        verify(mMockedView).showSpeed(eq(12.4532f), eq("12"));
+    }
+
+    @Test
+    public void shouldShowInterpolatedSpeedOnFrames() {
+        mPresenter.stop();
+        mPresenter = new InstantSpeedPresenter(mMockedView, mLocationProvider, Delivery.inline(), true);
+        mPresenter.start();
+        Location location = mock(Location.class);
+        when(location.getElapsedRealtimeNanos()).thenReturn(0L, 500_000_000L);
+
+        mLocationProvider.triggerSpeedChanged(50f, location);
+        verify(mMockedView).requestFrame();
+        verify(mMockedView, never()).showSpeed(anyFloat(), anyString());
+        mPresenter.onFrame(100_000_000L);
+        verify(mMockedView).showSpeed(eq(50f), eq("50"));
+
+        // Next fix arrives 100 ms late: the speed snaps from 50 to its trend, 10 km/h per 500 ms
+        mLocationProvider.triggerSpeedChanged(60f, location);
+        verify(mMockedView, times(2)).requestFrame();
+        mPresenter.onFrame(600_000_000L);
+        verify(mMockedView, times(1)).showSpeed(anyFloat(), anyString());
+        mPresenter.onFrame(600_000_000L + SpeedInterpolator.SNAP_NANOS);
+        verify(mMockedView).showSpeed(eq(65f), eq("65"));
+        verify(mMockedView, times(4)).requestFrame();
+    }
+
+    @Test
+    public void shouldNotifyFixDisplayedOnceOnFrameApplyingIt() {
+        mPresenter.stop();
+        mPresenter = new InstantSpeedPresenter(mMockedView, mLocationProvider, Delivery.inline(), true);
+        mPresenter.start();
+        Location location = mock(Location.class);
+        when(location.getElapsedRealtimeNanos()).thenReturn(0L, 500_000_000L);
+
+        mLocationProvider.triggerSpeedChanged(50f, location);
+        verify(mMockedView, never()).onFixDisplayed(anyLong());
+        mPresenter.onFrame(100_000_000L);
+        verify(mMockedView).onFixDisplayed(0L);
+
+        // Interpolated frames display the same fix
+        mLocationProvider.triggerSpeedChanged(60f, location);
+        mPresenter.onFrame(600_000_000L);
+        mPresenter.onFrame(600_000_000L + SpeedInterpolator.SNAP_NANOS);
+        verify(mMockedView).onFixDisplayed(500_000_000L);
+        verify(mMockedView, times(2)).onFixDisplayed(anyLong());
+    }
+
+    @Test
+    public void shouldNotifyFixDisplayedWithoutInterpolation() {
+        Location location = mock(Location.class);
+        when(location.getElapsedRealtimeNanos()).thenReturn(1_000_000L);
+
+        mLocationProvider.triggerSpeedChanged(50f, location);
+
+        verify(mMockedView).onFixDisplayed(1_000_000L);
     }
 }
@@ -0,0 +1,128 @@
+package com.bgauthey.speedotracker.speedtracking.instantspeed;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpeedInterpolator}
+ */
+public class SpeedInterpolatorTest {
+
+    private static final long MILLIS_NANOS = 1_000_000L;
+    private static final long FIX_INTERVAL_NANOS = 500 * MILLIS_NANOS;
+    private static final long FRAME_INTERVAL_NANOS = 16_666_667L;
+    /**
+     * Time a fix takes to reach the display
+     */
+    private static final long LATENCY_NANOS = 100 * MILLIS_NANOS;
+
+    private SpeedInterpolator mInterpolator;
+
+    @Before
+    public void setUp() {
+        mInterpolator = new SpeedInterpolator();
+    }
+
+    @Test
+    public void shouldShowFirstSpeedAsIs() {
+        assertEquals(0f, mInterpolator.getSpeed(0));
+        assertFalse(mInterpolator.isAnimating(0));
+
+        mInterpolator.onSpeed(50f, 0);
+        assertTrue(mInterpolator.isAnimating(0));
+        assertEquals(50f, mInterpolator.getSpeed(LATENCY_NANOS));
+        assertFalse(mInterpolator.isAnimating(LATENCY_NANOS));
+    }
+
+    @Test
+    public void shouldExtrapolateTrendOfLastTwoSpeeds() {
+        mInterpolator.onSpeed(50f, 0);
+        mInterpolator.getSpeed(LATENCY_NANOS);
+        mInterpolator.onSpeed(60f, FIX_INTERVAL_NANOS);
+        long arrival = FIX_INTERVAL_NANOS + LATENCY_NANOS;
+
+        // Snapping from 50 to the trend, 62 at arrival time
+        assertEquals(50f, mInterpolator.getSpeed(arrival), 0.01f);
+        long afterSnap = arrival + SpeedInterpolator.SNAP_NANOS;
+        assertEquals(60f + 10f * (LATENCY_NANOS + SpeedInterpolator.SNAP_NANOS) / FIX_INTERVAL_NANOS,
+                mInterpolator.getSpeed(afterSnap), 0.01f);
+        assertTrue(mInterpolator.isAnimating(afterSnap));
+    }
+
+    @Test
+    public void shouldHoldSpeedWhenFixIsLate() {
+        mInterpolator.onSpeed(50f, 0);
+        mInterpolator.getSpeed(0);
+        mInterpolator.onSpeed(60f, FIX_INTERVAL_NANOS);
+        mInterpolator.getSpeed(FIX_INTERVAL_NANOS);
+
+        // Extrapolation stops after one and a half fix interval
+        long late = FIX_INTERVAL_NANOS + FIX_INTERVAL_NANOS * 3 / 2;
+        assertEquals(75f, mInterpolator.getSpeed(late), 0.01f);
+        assertFalse(mInterpolator.isAnimating(late));
+        assertEquals(75f, mInterpolator.getSpeed(late + 10 * FIX_INTERVAL_NANOS), 0.01f);
+    }
+
+    @Test
+    public void shouldNotExtrapolateUnderZero() {
+        mInterpolator.onSpeed(10f, 0);
+        mInterpolator.getSpeed(0);
+        mInterpolator.onSpeed(2f, FIX_INTERVAL_NANOS);
+        mInterpolator.getSpeed(FIX_INTERVAL_NANOS);
+
+        assertEquals(0f, mInterpolator.getSpeed(2 * FIX_INTERVAL_NANOS));
+    }
+
+    @Test
+    public void shouldNotExtrapolateAfterLongGap() {
+        mInterpolator.onSpeed(10f, 0);
+        mInterpolator.getSpeed(0);
+        long fix = SpeedInterpolator.MAX_TREND_INTERVAL_NANOS + 1;
+        mInterpolator.onSpeed(50f, fix);
+        mInterpolator.getSpeed(fix);
+        long time = fix + SpeedInterpolator.SNAP_NANOS;
+
+        assertEquals(50f, mInterpolator.getSpeed(time), 0.01f);
+        assertFalse(mInterpolator.isAnimating(time));
+    }
+
+    @Test
+    public void shouldIgnoreOlderFixes() {
+        mInterpolator.onSpeed(50f, FIX_INTERVAL_NANOS);
+        mInterpolator.getSpeed(FIX_INTERVAL_NANOS);
+        mInterpolator.onSpeed(10f, 0);
+
+        assertEquals(50f, mInterpolator.getSpeed(2 * FIX_INTERVAL_NANOS));
+    }
+
+    @Test
+    public void shouldDisplayCloserToTrueSpeedThanFixes() {
+        // Accelerating from 0 to 100 km/h in 10 seconds
+        float slope = 100f / 10_000_000_000L;
+        float interpolatedError = 0f;
+        float stepError = 0f;
+        float lastFixSpeed = 0f;
+        int frameCount = 0;
+        long nextFix = 0;
+        for (long time = 0; time < 10_000_000_000L; time += FRAME_INTERVAL_NANOS) {
+            if (time >= nextFix + LATENCY_NANOS) {
+                lastFixSpeed = slope * nextFix;
+                mInterpolator.onSpeed(lastFixSpeed, nextFix);
+                nextFix += FIX_INTERVAL_NANOS;
+            }
+            float trueSpeed = slope * time;
+            interpolatedError += Math.abs(mInterpolator.getSpeed(time) - trueSpeed);
+            stepError += Math.abs(lastFixSpeed - trueSpeed);
+            frameCount++;
+        }
+        interpolatedError /= frameCount;
+        stepError /= frameCount;
+
+        assertTrue("Interpolated error " + interpolatedError + ", step error " + stepError,
+                interpolatedError < stepError / 4);
+    }
+}
@@ -0,0 +1,129 @@
+package com.bgauthey.speedotracker.util;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpeedFormatter}.
+ */
+public class SpeedFormatterTest {
+
+    private static final int ALLOCATION_RUN_COUNT = 100;
+    private static final int SPEED_COUNT = 2500;
+
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void shouldFormatLikeDecimalFormatWithoutFraction() {
+        checkLikeDecimalFormat(new SpeedFormatter(0, Locale.FRANCE), new DecimalFormat("#", DecimalFormatSymbols.getInstance(Locale.FRANCE)));
+    }
+
+    @Test
+    public void shouldFormatLikeDecimalFormatWithOneFractionDigit() {
+        checkLikeDecimalFormat(new SpeedFormatter(1, Locale.FRANCE), new DecimalFormat("0.0", DecimalFormatSymbols.getInstance(Locale.FRANCE)));
+        checkLikeDecimalFormat(new SpeedFormatter(1, Locale.US), new DecimalFormat("0.0", DecimalFormatSymbols.getInstance(Locale.US)));
+    }
+
+    @Test
+    public void shouldRoundHalfToEven() {
+        SpeedFormatter formatter = new SpeedFormatter(0, Locale.US);
+        assertEquals("2", formatter.format(2.5f));
+        assertEquals("4", formatter.format(3.5f));
+        assertEquals("6", formatter.format(5.8965f));
+        assertEquals("12", formatter.format(12.4532f));
+    }
+
+    @Test
+    public void shouldUseLocaleDecimalSeparator() {
+        assertEquals("8,5", new SpeedFormatter(1, Locale.FRANCE).format(8.50927f));
+        assertEquals("24.6", new SpeedFormatter(1, Locale.US).format(24.55012f));
+    }
+
+    @Test
+    public void shouldFollowDefaultLocale() {
+        Locale.setDefault(Locale.US);
+        SpeedFormatter formatter = new SpeedFormatter(1);
+        assertEquals("90.0", formatter.format(90f));
+
+        Locale.setDefault(Locale.FRANCE);
+        assertEquals("90,0", formatter.format(90f));
+    }
+
+    @Test
+    public void shouldFormatSpeedsOutOfCache() {
+        SpeedFormatter formatter = new SpeedFormatter(1, Locale.US);
+        assertEquals("1234.5", formatter.format(1234.5f));
+        assertEquals("-3.0", formatter.format(-3f));
+    }
+
+    @Test
+    public void shouldReturnCachedInstance() {
+        SpeedFormatter formatter = new SpeedFormatter(1, Locale.US);
+        assertSame(formatter.format(42.04f), formatter.format(41.96f));
+    }
+
+    @Test
+    public void shouldNotAllocateOnceWarmedUp() {
+        Assume.assumeTrue(isAllocationMeasurementSupported());
+        SpeedFormatter formatter = new SpeedFormatter(1);
+        formatAllSpeeds(formatter);
+
+        long startAllocatedBytes = getAllocatedBytes();
+        for (int i = 0; i < ALLOCATION_RUN_COUNT; i++) {
+            formatAllSpeeds(formatter);
+        }
+        long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+
+        // Allow some noise from the measurement and the JIT, far below one object per format
+        long formatCount = (long) ALLOCATION_RUN_COUNT * SPEED_COUNT;
+        assertTrue("Allocated " + allocatedBytes + " bytes for " + formatCount + " formats",
+                allocatedBytes < formatCount);
+    }
+
+    private static void formatAllSpeeds(SpeedFormatter formatter) {
+        for (int tenths = 0; tenths < SPEED_COUNT; tenths++) {
+            formatter.format(tenths / 10f);
+        }
+    }
+
+    private static void checkLikeDecimalFormat(SpeedFormatter formatter, DecimalFormat format) {
+        for (int hundredths = 0; hundredths < 30000; hundredths++) {
+            float speed = hundredths / 100f;
+            assertEquals("Speed " + speed, format.format(speed), formatter.format(speed));
+        }
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
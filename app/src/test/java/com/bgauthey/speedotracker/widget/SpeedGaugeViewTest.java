@@ -0,0 +1,71 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link SpeedGaugeView}: the static layer is rendered only when needed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SpeedGaugeViewTest {
+
+    private static final int SIZE = 400;
+    private static final int UPDATE_COUNT = 100;
+
+    private SpeedGaugeView mView;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mView = new SpeedGaugeView(RuntimeEnvironment.application);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        layout(SIZE);
+    }
+
+    @Test
+    public void shouldRenderDialOnceForSpeedUpdates() {
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            mView.setSpeed(i, String.valueOf(i));
+            mView.draw(mCanvas);
+        }
+
+        assertEquals(1, mView.getDialRenderCount());
+        assertEquals(UPDATE_COUNT - 1f, mView.getSpeed());
+    }
+
+    @Test
+    public void shouldRenderDialAgainOnSizeChange() {
+        mView.draw(mCanvas);
+        layout(SIZE / 2);
+        mView.draw(mCanvas);
+        mView.draw(mCanvas);
+
+        assertEquals(2, mView.getDialRenderCount());
+    }
+
+    @Test
+    public void shouldRenderDialAgainOnStyleChange() {
+        mView.draw(mCanvas);
+        mView.setMaxSpeed(300);
+        mView.draw(mCanvas);
+        mView.setUnit("mph");
+        mView.draw(mCanvas);
+
+        assertEquals(3, mView.getDialRenderCount());
+    }
+
+    private void layout(int size) {
+        mView.measure(View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, size, size);
+    }
+}
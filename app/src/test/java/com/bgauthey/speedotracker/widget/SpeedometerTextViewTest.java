@@ -0,0 +1,130 @@
+package com.bgauthey.speedotracker.widget;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import com.bgauthey.speedotracker.R;
+import com.bgauthey.speedotracker.speedtracking.SpeedTrackingActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SpeedometerTextView}: updating the value must not trigger layout passes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SpeedometerTextViewTest {
+
+    private static final int UPDATE_COUNT = 500;
+    private static final int SIZE = 1000;
+
+    private LayoutCountingFrameLayout mParent;
+    private SpeedometerTextView mView;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        mParent = new LayoutCountingFrameLayout(context);
+        mView = new SpeedometerTextView(context);
+        mView.setUnit("km/h");
+        mParent.addView(mView);
+        mParent.runFrame();
+        mParent.resetCounts();
+    }
+
+    @Test
+    public void shouldNotLayoutWhenValueChanges() {
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            mView.setValue(String.valueOf(i % 300));
+            mParent.runFrame();
+        }
+
+        assertEquals(0, mParent.mRequestLayoutCount);
+        assertEquals(0, mParent.mLayoutPassCount);
+        assertFalse(mView.isLayoutRequested());
+    }
+
+    @Test
+    public void shouldKeepSizeWhateverTheValue() {
+        mView.setValue("8");
+        int width = measureWidth();
+        mView.setValue("888,8");
+
+        assertEquals(width, measureWidth());
+        assertTrue(width >= 5 * mView.getCellWidth());
+    }
+
+    @Test
+    public void shouldLayoutWhenValueExceedsMaxChars() {
+        mView.setValue("888888");
+        mParent.runFrame();
+
+        assertEquals(1, mParent.mLayoutPassCount);
+        assertEquals("888888", mView.getValue());
+    }
+
+    @Test
+    public void shouldNotLayoutSpeedScreenWhenSpeedChanges() {
+        SpeedTrackingActivity activity = Robolectric.setupActivity(SpeedTrackingActivity.class);
+        SpeedometerTextView speed = activity.findViewById(R.id.tv_fis_speed);
+        View root = activity.getWindow().getDecorView();
+        // Lay out the screen once, as the first frame would
+        root.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, SIZE, SIZE);
+
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            speed.setValue(String.valueOf(i % 300));
+            assertFalse("Layout requested by update " + i, root.isLayoutRequested());
+        }
+    }
+
+    private int measureWidth() {
+        int spec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.AT_MOST);
+        mView.measure(spec, spec);
+        return mView.getMeasuredWidth();
+    }
+
+    /**
+     * Parent counting layout requests, and running a layout pass on each frame only when one is
+     * requested, as the view hierarchy does.
+     */
+    private static class LayoutCountingFrameLayout extends FrameLayout {
+
+        private int mRequestLayoutCount;
+        private int mLayoutPassCount;
+
+        LayoutCountingFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            super.requestLayout();
+            mRequestLayoutCount++;
+        }
+
+        void runFrame() {
+            if (isLayoutRequested()) {
+                mLayoutPassCount++;
+                measure(MeasureSpec.makeMeasureSpec(SIZE, MeasureSpec.EXACTLY),
+                        MeasureSpec.makeMeasureSpec(SIZE, MeasureSpec.EXACTLY));
+                layout(0, 0, SIZE, SIZE);
+            }
+        }
+
+        void resetCounts() {
+            mRequestLayoutCount = 0;
+            mLayoutPassCount = 0;
+        }
+    }
+}
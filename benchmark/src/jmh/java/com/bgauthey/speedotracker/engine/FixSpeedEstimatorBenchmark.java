@@ -0,0 +1,78 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of the estimators of the speed of fixes: the raw path trusting Doppler speeds
+ * against the Kalman filter, for fixes with and without Doppler speed. Allocations per fix are
+ * reported by the GC profiler.
+ */
+public class FixSpeedEstimatorBenchmark {
+
+    private static final int FIX_COUNT = 1024;
+    private static final long INTERVAL_NANOS = 1_000_000_000L;
+    private static final double METERS_PER_DEGREE = 6_371_000d * Math.PI / 180d;
+
+    /**
+     * A drive northwards at 20 m/s with noisy positions, replayed in a loop.
+     */
+    @State(Scope.Thread)
+    public static class Drive {
+
+        @Param({"true", "false"})
+        boolean mHasSpeed;
+
+        FixSpeedEstimator mRaw;
+        FixSpeedEstimator mKalman;
+        Fix[] mFixes;
+        Fix mFix;
+        int mIndex;
+        double mLapLatitude;
+        long mLapNanos;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            mRaw = new RawSpeedEstimator();
+            mKalman = new KalmanSpeedEstimator();
+            Random random = new Random(42);
+            mFixes = new Fix[FIX_COUNT];
+            for (int i = 0; i < FIX_COUNT; i++) {
+                double latitude = 45.1885 + (i * 20 + random.nextGaussian() * 5) / METERS_PER_DEGREE;
+                mFixes[i] = new Fix().set(latitude, 5.7245, 20f, 5f, i * INTERVAL_NANOS).setHasSpeed(mHasSpeed);
+            }
+            mFix = new Fix();
+        }
+
+        /**
+         * @return the next fix of the drive, further and later on each lap
+         */
+        Fix next() {
+            Fix fix = mFixes[mIndex];
+            mFix.set(fix.getLatitude() + mLapLatitude, fix.getLongitude(), fix.getSpeed(), fix.getAccuracy(),
+                    fix.getElapsedRealtimeNanos() + mLapNanos).setHasSpeed(fix.hasSpeed());
+            if (++mIndex == FIX_COUNT) {
+                mIndex = 0;
+                mLapLatitude += FIX_COUNT * 20 / METERS_PER_DEGREE;
+                mLapNanos += FIX_COUNT * INTERVAL_NANOS;
+            }
+            return mFix;
+        }
+    }
+
+    @Benchmark
+    public float raw(Drive drive) {
+        return drive.mRaw.estimate(drive.next());
+    }
+
+    @Benchmark
+    public float kalman(Drive drive) {
+        return drive.mKalman.estimate(drive.next());
+    }
+}
@@ -0,0 +1,53 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the tracking engine alone, without any Android class: compare with
+ * {@code GpsLocationProviderBenchmark} to get the cost of the adapter.
+ */
+public class SectionTrackerBenchmark {
+
+    private static final float MIN_SPEED_RUNNING = 5f / 3.6f;
+    private static final float RUNNING_SPEED = 15f; // m/s
+    private static final long INTERVAL_NANOS = 500_000_000L;
+
+    /**
+     * A tracker with an active section and fixes describing it.
+     */
+    @State(Scope.Thread)
+    public static class RunningSection {
+
+        SectionTracker mTracker;
+        Fix mMiddleFix;
+        Fix mEndFix;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            mTracker = new SectionTracker(MIN_SPEED_RUNNING);
+            mTracker.onFix(new Fix().set(45.1885, 5.7245, RUNNING_SPEED, 5f, 0));
+            mMiddleFix = new Fix().set(45.1985, 5.7245, RUNNING_SPEED, 5f, 120 * INTERVAL_NANOS);
+            mEndFix = new Fix().set(45.2085, 5.7245, 0f, 5f, 240 * INTERVAL_NANOS);
+        }
+    }
+
+    @Benchmark
+    public int onFixMiddleOfSection(RunningSection section) {
+        return section.mTracker.onFix(section.mMiddleFix);
+    }
+
+    @Benchmark
+    public float computeSectionTo(RunningSection section) {
+        section.mTracker.computeSectionTo(section.mEndFix);
+        return section.mTracker.getAverageSpeed();
+    }
+
+    @Benchmark
+    public float distanceBetween(RunningSection section) {
+        return Geodesy.distanceBetween(45.1885, 5.7245, section.mEndFix.getLatitude(), section.mEndFix.getLongitude());
+    }
+}
@@ -0,0 +1,47 @@
+package com.bgauthey.speedotracker.service;
+
+import android.location.Location;
+
+/**
+ * A {@link LocationProvider} for benchmarks. Exposes notifications to trigger them from any package.
+ */
+public class BenchmarkLocationProvider extends LocationProvider {
+
+    @Override
+    public boolean isTrackingReady() {
+        return true;
+    }
+
+    @Override
+    public boolean isTrackingRunning() {
+        return true;
+    }
+
+    @Override
+    public void startTracking() {
+        notifyOnStateChanged(true);
+    }
+
+    @Override
+    public void stopTracking() {
+        notifyOnStateChanged(false);
+    }
+
+    @Override
+    public boolean isSpeedActive() {
+        return true;
+    }
+
+    @Override
+    public float getAverageSpeedHistory() {
+        return 0;
+    }
+
+    public void triggerSpeedChanged(float speed, Location location) {
+        notifyOnSpeedChanged(speed, location);
+    }
+
+    public void triggerAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
+        notifyOnAverageSpeedChanged(averageSpeed, distance, timeElapsed);
+    }
+}
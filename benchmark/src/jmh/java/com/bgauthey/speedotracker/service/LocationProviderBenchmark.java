@@ -0,0 +1,61 @@
+package com.bgauthey.speedotracker.service;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of {@link LocationProvider} listener notification.
+ */
+@State(Scope.Thread)
+public class LocationProviderBenchmark {
+
+    @Param({"1", "5", "50"})
+    public int listenerCount;
+
+    private BenchmarkLocationProvider mProvider;
+    private Location mLocation;
+    private float mSpeed;
+
+    @Setup
+    public void setUp() {
+        mProvider = new BenchmarkLocationProvider();
+        for (int i = 0; i < listenerCount; i++) {
+            mProvider.registerOnLocationServiceSpeedChangedListener(new ConsumingSpeedListener());
+        }
+        mLocation = new Location(LocationManager.GPS_PROVIDER);
+    }
+
+    @Benchmark
+    public void notifyOnSpeedChanged() {
+        // Change speed on every call so that the value can't be hoisted
+        mSpeed = (mSpeed + 1) % 200;
+        mProvider.notifyOnSpeedChanged(mSpeed, mLocation);
+    }
+
+    /**
+     * Listener keeping the last notified values so that notifications can't be eliminated.
+     */
+    private static class ConsumingSpeedListener implements LocationProvider.OnSpeedChangedListener {
+
+        float mLastSpeed;
+        Location mLastLocation;
+        boolean mActive;
+
+        @Override
+        public void onSpeedChanged(float speed, Location location) {
+            mLastSpeed = speed;
+            mLastLocation = location;
+        }
+
+        @Override
+        public void onSpeedActivityChanged(boolean active) {
+            mActive = active;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of the fix processing of {@link GpsLocationProvider}.
+ * <p>
+ * Start and end of section benchmarks need the provider to be put back in the right state before
+ * each call (with a {@link Level#Invocation} setup): their results include a small timing overhead
+ * and must be compared with each other rather than with the middle of section benchmark. Sections
+ * only start and end after a dwell time, so this state is reached by driving the provider with
+ * fixes of increasing times, for the dwell time minus one fix interval: the benchmarked fix is the
+ * one completing the dwell time. Each setup checks that the previous call did start or end the
+ * section, a benchmark measuring the no change path instead fails.
+ * <p>
+ * Middle of section and batch benchmarks hand the same fixes again and again: they only take the
+ * no change path, which doesn't depend on fix times.
+ */
+public class GpsLocationProviderBenchmark {
+
+    private static final float RUNNING_SPEED = 15f; // m/s
+    private static final long INTERVAL_NANOS = 500_000_000L;
+    private static final int BATCH_SIZE = 120;
+    private static final double START_LATITUDE = 45.1885;
+    private static final double LONGITUDE = 5.7245;
+    private static final double METERS_PER_DEGREE_OF_LATITUDE = 111_320d;
+
+    /**
+     * A tracking provider, driven northwards with fixes of increasing times.
+     */
+    @State(Scope.Thread)
+    public static class Section {
+
+        GpsLocationProvider mProvider;
+        /**
+         * Fix handed by the benchmark
+         */
+        final Location mFix = new Location(LocationManager.GPS_PROVIDER);
+        private final Location mSetupFix = new Location(LocationManager.GPS_PROVIDER);
+        private long mElapsedRealtimeNanos;
+        private double mLatitude = START_LATITUDE;
+
+        @Setup(Level.Trial)
+        public void setUpProvider() {
+            mProvider = new GpsLocationProvider(new NoOpGpsLocationCallback(), new TrackBuffer(null));
+            mProvider.startTracking();
+        }
+
+        /**
+         * Set the next fix of the drive, one interval after the last one.
+         *
+         * @param location the location to set
+         * @param speed    speed since the last fix (in m/s)
+         * @return the location
+         */
+        Location nextFix(Location location, float speed) {
+            mElapsedRealtimeNanos += INTERVAL_NANOS;
+            mLatitude += speed * (INTERVAL_NANOS / 1e9) / METERS_PER_DEGREE_OF_LATITUDE;
+            setFix(location, mLatitude, speed, mElapsedRealtimeNanos);
+            return location;
+        }
+
+        /**
+         * Hand fixes at a constant speed to the provider, until the given time has elapsed.
+         */
+        void drive(float speed, long durationNanos) {
+            long endNanos = mElapsedRealtimeNanos + durationNanos;
+            while (mElapsedRealtimeNanos < endNanos) {
+                mProvider.onLocationChanged(nextFix(mSetupFix, speed));
+            }
+        }
+
+        void startSection() {
+            drive(RUNNING_SPEED, GpsLocationProvider.SECTION_START_DWELL_NANOS + INTERVAL_NANOS);
+            checkSpeedActive(true, "Section not started");
+        }
+
+        void endSection() {
+            drive(0f, GpsLocationProvider.SECTION_END_DWELL_NANOS + INTERVAL_NANOS);
+            checkSpeedActive(false, "Section not ended");
+        }
+
+        void checkSpeedActive(boolean expected, String message) {
+            if (mProvider.isSpeedActive() != expected) {
+                throw new IllegalStateException(message);
+            }
+        }
+    }
+
+    /**
+     * Provider with no active section before each call, the next running fix starting one.
+     */
+    @State(Scope.Thread)
+    public static class InactiveSection extends Section {
+
+        private boolean mPrepared;
+
+        @Setup(Level.Invocation)
+        public void prepareStart() {
+            if (mPrepared) {
+                checkSpeedActive(true, "Start fix didn't start a section");
+            }
+            endSection();
+            drive(RUNNING_SPEED, GpsLocationProvider.SECTION_START_DWELL_NANOS);
+            checkSpeedActive(false, "Section started before the start fix");
+            nextFix(mFix, RUNNING_SPEED);
+            mPrepared = true;
+        }
+    }
+
+    /**
+     * Provider with an active section before each call, the next stopped fix ending it.
+     */
+    @State(Scope.Thread)
+    public static class ActiveSection extends Section {
+
+        private boolean mPrepared;
+
+        @Setup(Level.Invocation)
+        public void prepareEnd() {
+            if (mPrepared) {
+                checkSpeedActive(false, "End fix didn't end the section");
+            }
+            startSection();
+            drive(0f, GpsLocationProvider.SECTION_END_DWELL_NANOS);
+            checkSpeedActive(true, "Section ended before the end fix");
+            nextFix(mFix, 0f);
+            mPrepared = true;
+        }
+    }
+
+    /**
+     * Provider with an active section started once for all calls.
+     */
+    @State(Scope.Thread)
+    public static class RunningSection extends Section {
+
+        Location mEndFix;
+
+        @Setup(Level.Trial)
+        public void startRunningSection() {
+            startSection();
+            nextFix(mFix, RUNNING_SPEED);
+            mEndFix = nextFix(new Location(LocationManager.GPS_PROVIDER), 0f);
+        }
+    }
+
+    /**
+     * Provider with an active section, and a batch of fixes in the middle of the section.
+     */
+    @State(Scope.Thread)
+    public static class Batch extends RunningSection {
+
+        List<Location> mFixes;
+
+        @Setup(Level.Trial)
+        public void createBatch() {
+            mFixes = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                mFixes.add(nextFix(new Location(LocationManager.GPS_PROVIDER), RUNNING_SPEED));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean onLocationChangedStartOfSection(InactiveSection section) {
+        section.mProvider.onLocationChanged(section.mFix);
+        return section.mProvider.isSpeedActive();
+    }
+
+    @Benchmark
+    public boolean onLocationChangedMiddleOfSection(RunningSection section) {
+        section.mProvider.onLocationChanged(section.mFix);
+        return section.mProvider.isSpeedActive();
+    }
+
+    @Benchmark
+    public boolean onLocationChangedEndOfSection(ActiveSection section) {
+        section.mProvider.onLocationChanged(section.mFix);
+        return section.mProvider.isSpeedActive();
+    }
+
+    /**
+     * Fixes of a batch handed one by one, each one notified.
+     */
+    @Benchmark
+    public boolean onLocationChangedForEachFixOfBatch(Batch batch) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.mProvider.onLocationChanged(batch.mFixes.get(i));
+        }
+        return batch.mProvider.isSpeedActive();
+    }
+
+    /**
+     * Fixes of a batch handed at once, notified once.
+     */
+    @Benchmark
+    public boolean onLocationsChangedBatch(Batch batch) {
+        batch.mProvider.onLocationsChanged(batch.mFixes);
+        return batch.mProvider.isSpeedActive();
+    }
+
+    @Benchmark
+    public float computeSectionParamsToLocation(RunningSection section) {
+        section.mProvider.computeSectionParamsToLocation(section.mEndFix);
+        return section.mProvider.getAverageSpeedHistory();
+    }
+
+    private static void setFix(Location location, double latitude, float speed, long elapsedRealtimeNanos) {
+        location.setLatitude(latitude);
+        location.setLongitude(LONGITUDE);
+        location.setSpeed(speed);
+        location.setAccuracy(5f);
+        location.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+    }
+
+    /**
+     * A {@link GpsLocationCallback} always ready and not connected to any system service.
+     */
+    private static class NoOpGpsLocationCallback implements GpsLocationCallback {
+
+        @Override
+        public boolean isTrackingReady() {
+            return true;
+        }
+
+        @Override
+        public void startTracking(LocationListener listener, Looper looper) {
+        }
+
+        @Override
+        public void stopTracking(LocationListener listener) {
+        }
+
+        @Override
+        public void dump(PrintWriter writer) {
+        }
+    }
+}
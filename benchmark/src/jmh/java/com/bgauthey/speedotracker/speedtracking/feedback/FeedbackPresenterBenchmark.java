@@ -0,0 +1,58 @@
+package com.bgauthey.speedotracker.speedtracking.feedback;
+
+import com.bgauthey.speedotracker.service.BenchmarkLocationProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of average speed formatting in {@link FeedbackPresenter}.
+ */
+@State(Scope.Thread)
+public class FeedbackPresenterBenchmark {
+
+    private BenchmarkLocationProvider mProvider;
+    private ConsumingView mView;
+    private float mAverageSpeed;
+
+    @Setup
+    public void setUp() {
+        mProvider = new BenchmarkLocationProvider();
+        mView = new ConsumingView();
+        FeedbackPresenter presenter = new FeedbackPresenter(mView, mProvider);
+        mView.setPresenter(presenter);
+        presenter.registerListener();
+    }
+
+    @Benchmark
+    public String formatSpeed() {
+        mAverageSpeed = (mAverageSpeed + 1.37f) % 200;
+        return FeedbackPresenter.formatSpeed(mAverageSpeed);
+    }
+
+    @Benchmark
+    public String onAverageSpeedChanged() {
+        mAverageSpeed = (mAverageSpeed + 1.37f) % 200;
+        mProvider.triggerAverageSpeedChanged(mAverageSpeed, 1500f, 120);
+        return mView.mAverageSpeed;
+    }
+
+    /**
+     * View keeping the last displayed value.
+     */
+    private static class ConsumingView implements FeedbackContract.View {
+
+        String mAverageSpeed;
+
+        @Override
+        public void showAverageSpeed(String averageSpeed) {
+            mAverageSpeed = averageSpeed;
+        }
+
+        @Override
+        public void setPresenter(FeedbackContract.Presenter presenter) {
+        }
+    }
+}
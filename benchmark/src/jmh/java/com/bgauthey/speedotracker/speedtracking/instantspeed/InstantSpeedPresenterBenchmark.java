@@ -0,0 +1,65 @@
+package com.bgauthey.speedotracker.speedtracking.instantspeed;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import com.bgauthey.speedotracker.service.BenchmarkLocationProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of instant speed formatting in {@link InstantSpeedPresenter}.
+ */
+@State(Scope.Thread)
+public class InstantSpeedPresenterBenchmark {
+
+    private BenchmarkLocationProvider mProvider;
+    private ConsumingView mView;
+    private Location mLocation;
+    private float mSpeed;
+
+    @Setup
+    public void setUp() {
+        mProvider = new BenchmarkLocationProvider();
+        mView = new ConsumingView();
+        InstantSpeedPresenter presenter = new InstantSpeedPresenter(mView, mProvider);
+        mView.setPresenter(presenter);
+        presenter.start();
+        mLocation = new Location(LocationManager.GPS_PROVIDER);
+    }
+
+    @Benchmark
+    public String onSpeedChanged() {
+        mSpeed = (mSpeed + 1) % 200;
+        mProvider.triggerSpeedChanged(mSpeed, mLocation);
+        return mView.mSpeed;
+    }
+
+    /**
+     * View keeping the last displayed value.
+     */
+    private static class ConsumingView implements InstantSpeedContract.View {
+
+        String mSpeed;
+
+        @Override
+        public void showSpeed(float speed, String speedValue) {
+            mSpeed = speedValue;
+        }
+
+        @Override
+        public void onFixDisplayed(long fixNanos) {
+        }
+
+        @Override
+        public void requestFrame() {
+        }
+
+        @Override
+        public void setPresenter(InstantSpeedContract.Presenter presenter) {
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+import com.bgauthey.speedotracker.service.LocationProvider;
+import com.bgauthey.speedotracker.service.track.TrackBuffer;
+import com.bgauthey.speedotracker.service.track.TrackChunk;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Regression gate streaming millions of synthetic fixes (see {@link SyntheticDrive}) through
+ * {@link GpsLocationProvider}.
+ * <p>
+ * For each drive, every section average notified by the provider is checked against a reference
+ * computed independently from the generated fixes, then the per-fix allocation and, if requested,
+ * throughput are checked against budgets. Budgets and corpus size can be set with system
+ * properties:
+ * <ul>
+ * <li>{@code gate.fixesPerDrive}: number of fixes of each drive</li>
+ * <li>{@code gate.minFixesPerSecond}: minimum number of fixes processed per second, not checked
+ * by default since it depends on the machine. The {@code regressionGate} task sets it</li>
+ * <li>{@code gate.maxBytesPerFix}: maximum number of bytes allocated per fix</li>
+ * </ul>
+ * Only the calls to {@link GpsLocationProvider#onLocationChanged(Location)} are measured, fixes are
+ * generated beforehand chunk by chunk.
+ */
+public class GpsLocationProviderRegressionGateTest {
+
+    private static final long SEED = 20180521L;
+    private static final int CHUNK_CAPACITY = 64 * 1024;
+    private static final long WARM_UP_FIX_COUNT = 500_000L;
+
+    private static final long FIXES_PER_DRIVE = Long.getLong("gate.fixesPerDrive", 200_000L);
+    /**
+     * 0 not to check throughput
+     */
+    private static final double MIN_FIXES_PER_SECOND = Double.parseDouble(System.getProperty("gate.minFixesPerSecond", "0"));
+    private static final double MAX_BYTES_PER_FIX = Double.parseDouble(System.getProperty("gate.maxBytesPerFix", "64"));
+
+    /**
+     * Expected and notified averages may differ because the reference distance is computed on a
+     * sphere instead of the WGS84 ellipsoid
+     */
+    private static final float AVERAGE_TOLERANCE_RATIO = 0.01f;
+    private static final double EARTH_RADIUS_M = 6_371_008.8;
+
+    @BeforeClass
+    public static void warmUp() {
+        // Let the JIT compile the per-fix path before measuring
+        for (SyntheticDrive.Profile profile : SyntheticDrive.Profile.values()) {
+            runDrive(profile, WARM_UP_FIX_COUNT);
+        }
+    }
+
+    @Test
+    public void cityStopAndGo() {
+        checkGate(runDrive(SyntheticDrive.Profile.CITY_STOP_AND_GO, FIXES_PER_DRIVE));
+    }
+
+    @Test
+    public void highwayCruising() {
+        checkGate(runDrive(SyntheticDrive.Profile.HIGHWAY_CRUISING, FIXES_PER_DRIVE));
+    }
+
+    @Test
+    public void signalLoss() {
+        checkGate(runDrive(SyntheticDrive.Profile.SIGNAL_LOSS, FIXES_PER_DRIVE));
+    }
+
+    @Test
+    public void jitterAroundThreshold() {
+        checkGate(runDrive(SyntheticDrive.Profile.JITTER_AROUND_THRESHOLD, FIXES_PER_DRIVE));
+    }
+
+    private static void checkGate(DriveResult result) {
+        assertTrue(result + ": no section detected", result.mExpectedSectionCount > 0);
+        assertEquals(result + ": section count", result.mExpectedSectionCount, result.mSectionCount);
+        assertEquals(result + ": wrong section averages, first one " + result.mFirstMismatch,
+                0, result.mMismatchCount);
+        if (MIN_FIXES_PER_SECOND > 0) {
+            assertTrue(result + ": throughput too low", result.getFixesPerSecond() >= MIN_FIXES_PER_SECOND);
+        }
+        if (result.mAllocatedBytes >= 0) {
+            assertTrue(result + ": too many allocations", result.getBytesPerFix() <= MAX_BYTES_PER_FIX);
+        }
+    }
+
+    private static DriveResult runDrive(SyntheticDrive.Profile profile, long fixCount) {
+        SyntheticDrive drive = new SyntheticDrive(profile, SEED, fixCount);
+        GpsLocationProvider provider = new GpsLocationProvider(new NoOpGpsLocationCallback(), new TrackBuffer(null));
+        ReferenceSections reference = new ReferenceSections(CHUNK_CAPACITY);
+        provider.registerOnLocationServiceAverageSpeedChangedListener(reference);
+        provider.startTracking();
+
+        DriveResult result = new DriveResult(profile);
+        TrackChunk chunk = new TrackChunk(CHUNK_CAPACITY);
+        Location fix = new Location(LocationManager.GPS_PROVIDER);
+        boolean allocationSupported = isAllocationMeasurementSupported();
+        long allocatedBytes = 0;
+        long elapsedNanos = 0;
+        int size;
+        while ((size = drive.fill(chunk)) > 0) {
+            reference.expect(chunk);
+
+            long startAllocatedBytes = allocationSupported ? getAllocatedBytes() : 0;
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                fix.setLatitude(chunk.getLatitude(i));
+                fix.setLongitude(chunk.getLongitude(i));
+                fix.setSpeed(chunk.getSpeed(i));
+                fix.setAccuracy(chunk.getAccuracy(i));
+                fix.setElapsedRealtimeNanos(chunk.getElapsedRealtimeNanos(i));
+                provider.onLocationChanged(fix);
+            }
+            elapsedNanos += System.nanoTime() - startNanos;
+            if (allocationSupported) {
+                allocatedBytes += getAllocatedBytes() - startAllocatedBytes;
+            }
+            result.mFixCount += size;
+        }
+        provider.stopTracking();
+
+        result.mElapsedNanos = elapsedNanos;
+        result.mAllocatedBytes = allocationSupported ? allocatedBytes : -1;
+        result.mExpectedSectionCount = reference.mExpectedSectionCount;
+        result.mSectionCount = reference.mNotifiedSectionCount;
+        result.mMismatchCount = reference.mMismatchCount;
+        result.mFirstMismatch = reference.mFirstMismatch;
+        return result;
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Computes sections of a chunk of fixes on its own, then checks the averages notified while
+     * the provider processes the same chunk.
+     * <p>
+     * A section starts once the speed stays at least {@link GpsLocationProvider#MIN_SPEED_RUNNING}
+     * for {@link GpsLocationProvider#SECTION_START_DWELL_NANOS}, from the first of these fixes. It
+     * ends once the speed stays under {@link GpsLocationProvider#MAX_SPEED_STOPPED} for
+     * {@link GpsLocationProvider#SECTION_END_DWELL_NANOS}, at the first of these fixes.
+     */
+    private static class ReferenceSections implements LocationProvider.OnAverageSpeedChangedListener {
+
+        private final int[] mExpectedAverages;
+        private int mExpectedCount;
+        private int mNextExpected;
+        private boolean mActive;
+        private double mStartLatitude;
+        private double mStartLongitude;
+        private long mStartElapsedRealtimeNanos;
+        /**
+         * First fix past the threshold of the next transition, if any
+         */
+        private boolean mCrossing;
+        private double mCrossingLatitude;
+        private double mCrossingLongitude;
+        private long mCrossingElapsedRealtimeNanos;
+
+        private int mExpectedSectionCount;
+        private int mNotifiedSectionCount;
+        private int mMismatchCount;
+        private String mFirstMismatch;
+
+        ReferenceSections(int chunkCapacity) {
+            mExpectedAverages = new int[chunkCapacity];
+        }
+
+        void expect(TrackChunk chunk) {
+            mExpectedCount = 0;
+            mNextExpected = 0;
+            for (int i = 0; i < chunk.getSize(); i++) {
+                float speed = chunk.getSpeed(i);
+                long elapsedRealtimeNanos = chunk.getElapsedRealtimeNanos(i);
+                boolean crossing = mActive
+                        ? speed < GpsLocationProvider.MAX_SPEED_STOPPED
+                        : speed >= GpsLocationProvider.MIN_SPEED_RUNNING;
+                if (!crossing) {
+                    mCrossing = false;
+                    continue;
+                }
+                if (!mCrossing) {
+                    mCrossing = true;
+                    mCrossingLatitude = chunk.getLatitude(i);
+                    mCrossingLongitude = chunk.getLongitude(i);
+                    mCrossingElapsedRealtimeNanos = elapsedRealtimeNanos;
+                }
+                long dwellNanos = mActive
+                        ? GpsLocationProvider.SECTION_END_DWELL_NANOS
+                        : GpsLocationProvider.SECTION_START_DWELL_NANOS;
+                if (elapsedRealtimeNanos - mCrossingElapsedRealtimeNanos < dwellNanos) {
+                    continue;
+                }
+                mCrossing = false;
+                if (!mActive) {
+                    mActive = true;
+                    mStartLatitude = mCrossingLatitude;
+                    mStartLongitude = mCrossingLongitude;
+                    mStartElapsedRealtimeNanos = mCrossingElapsedRealtimeNanos;
+                } else {
+                    mActive = false;
+                    double distance = haversine(mStartLatitude, mStartLongitude, mCrossingLatitude, mCrossingLongitude);
+                    long seconds = (mCrossingElapsedRealtimeNanos - mStartElapsedRealtimeNanos) / 1_000_000_000L;
+                    // A section shorter than a second has a null average
+                    mExpectedAverages[mExpectedCount++] = seconds == 0
+                            ? 0
+                            : Math.round((float) (distance / seconds) * 3.6f);
+                    mExpectedSectionCount++;
+                }
+            }
+        }
+
+        @Override
+        public void onAverageSpeedChanged(float averageSpeed, float distance, int timeElapsed) {
+            mNotifiedSectionCount++;
+            if (mNextExpected >= mExpectedCount) {
+                recordMismatch("unexpected section of " + averageSpeed + " km/h");
+                return;
+            }
+            int expected = mExpectedAverages[mNextExpected++];
+            if (Math.abs(averageSpeed - expected) > 1 + expected * AVERAGE_TOLERANCE_RATIO) {
+                recordMismatch(averageSpeed + " km/h instead of " + expected + " km/h");
+            }
+        }
+
+        private void recordMismatch(String mismatch) {
+            if (mMismatchCount++ == 0) {
+                mFirstMismatch = "section #" + mNotifiedSectionCount + ": " + mismatch;
+            }
+        }
+
+        private static double haversine(double fromLatitude, double fromLongitude, double toLatitude, double toLongitude) {
+            double dLatitude = Math.toRadians(toLatitude - fromLatitude);
+            double dLongitude = Math.toRadians(toLongitude - fromLongitude);
+            double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                    + Math.cos(Math.toRadians(fromLatitude)) * Math.cos(Math.toRadians(toLatitude))
+                    * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+            return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+
+    /**
+     * Results of a drive.
+     */
+    private static class DriveResult {
+
+        private final SyntheticDrive.Profile mProfile;
+        private long mFixCount;
+        private long mElapsedNanos;
+        /**
+         * Bytes allocated while processing fixes, -1 when the JVM can't measure it
+         */
+        private long mAllocatedBytes;
+        private int mExpectedSectionCount;
+        private int mSectionCount;
+        private int mMismatchCount;
+        private String mFirstMismatch;
+
+        DriveResult(SyntheticDrive.Profile profile) {
+            mProfile = profile;
+        }
+
+        double getFixesPerSecond() {
+            return mFixCount * 1e9 / Math.max(1, mElapsedNanos);
+        }
+
+        double getBytesPerFix() {
+            return (double) mAllocatedBytes / mFixCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %d fixes, %d sections, %.0f fixes/s, %.1f bytes/fix",
+                    mProfile, mFixCount, mSectionCount, getFixesPerSecond(), getBytesPerFix());
+        }
+    }
+
+    /**
+     * A {@link GpsLocationCallback} always ready and not connected to any system service.
+     */
+    private static class NoOpGpsLocationCallback implements GpsLocationCallback {
+
+        @Override
+        public boolean isTrackingReady() {
+            return true;
+        }
+
+        @Override
+        public void startTracking(LocationListener listener, Looper looper) {
+        }
+
+        @Override
+        public void stopTracking(LocationListener listener) {
+        }
+
+        @Override
+        public void dump(PrintWriter writer) {
+        }
+    }
+}
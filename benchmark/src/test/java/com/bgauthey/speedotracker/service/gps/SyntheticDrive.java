@@ -0,0 +1,196 @@
+package com.bgauthey.speedotracker.service.gps;
+
+import com.bgauthey.speedotracker.service.track.TrackChunk;
+
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic drives.
+ * <p>
+ * A drive is a sequence of manoeuvres (accelerate or brake to a target speed, then hold it for a
+ * while) chosen by a seeded {@link Random}: the same profile, seed and fix count always give the
+ * same fixes. Fixes are sampled every {@link #INTERVAL_NANOS} and written to {@link TrackChunk}s
+ * so that generating them doesn't allocate.
+ */
+final class SyntheticDrive {
+
+    enum Profile {
+        /**
+         * Short runs between 30 and 55 km/h separated by stops at lights
+         */
+        CITY_STOP_AND_GO,
+        /**
+         * Long runs between 100 and 130 km/h with a few traffic jams
+         */
+        HIGHWAY_CRUISING,
+        /**
+         * City driving with periods without any fix (tunnels, urban canyons)
+         */
+        SIGNAL_LOSS,
+        /**
+         * Speed staying around {@link GpsLocationProvider#MIN_SPEED_RUNNING}, such as walking
+         * next to the car or crawling in a queue, with a few stops
+         */
+        JITTER_AROUND_THRESHOLD
+    }
+
+    /**
+     * Interval between two fixes (in nanoseconds)
+     */
+    static final long INTERVAL_NANOS = 500_000_000L;
+
+    private static final double INTERVAL_S = INTERVAL_NANOS / 1e9;
+    private static final double METERS_PER_DEGREE = 111_195d;
+    private static final double MAX_LATITUDE = 60d;
+
+    private final Profile mProfile;
+    private final Random mRandom;
+    private final long mFixCount;
+    private long mGeneratedCount;
+
+    private double mLatitude = 45.1885;
+    private double mLongitude = 5.7245;
+    private double mHeading;
+    /**
+     * Actual speed of the vehicle (in m/s), reported speeds are noisy
+     */
+    private double mSpeed;
+    private long mElapsedRealtimeNanos = 3_600_000_000_000L;
+
+    private double mTargetSpeed;
+    private double mAcceleration;
+    private double mDeceleration;
+    /**
+     * Number of fixes left at target speed before the next manoeuvre
+     */
+    private int mHoldCount;
+    /**
+     * Number of fixes left without signal
+     */
+    private int mLostCount;
+    private boolean mSignalRecovered;
+
+    /**
+     * @param profile  kind of drive
+     * @param seed     seed of the random generator
+     * @param fixCount number of fixes of the drive (fixes lost with the signal are not counted)
+     */
+    SyntheticDrive(Profile profile, long seed, long fixCount) {
+        mProfile = profile;
+        mRandom = new Random(seed);
+        mFixCount = fixCount;
+        mHeading = mRandom.nextDouble() * 2 * Math.PI;
+        nextManoeuvre();
+    }
+
+    /**
+     * Clear a chunk then fill it with the next fixes of the drive.
+     *
+     * @param chunk the chunk to fill
+     * @return number of fixes written, 0 at the end of the drive
+     */
+    int fill(TrackChunk chunk) {
+        chunk.clear();
+        while (!chunk.isFull() && mGeneratedCount < mFixCount) {
+            step();
+            if (mLostCount > 0) {
+                mLostCount--;
+                mSignalRecovered = mLostCount == 0;
+                continue;
+            }
+            float accuracy = mSignalRecovered ? 30f : 3f + mRandom.nextFloat() * 5f;
+            mSignalRecovered = false;
+            chunk.add(mLatitude, mLongitude, reportedSpeed(), accuracy, mElapsedRealtimeNanos);
+            mGeneratedCount++;
+        }
+        return chunk.getSize();
+    }
+
+    private void step() {
+        if (mSpeed < mTargetSpeed) {
+            mSpeed = Math.min(mTargetSpeed, mSpeed + mAcceleration * INTERVAL_S);
+        } else if (mSpeed > mTargetSpeed) {
+            mSpeed = Math.max(mTargetSpeed, mSpeed - mDeceleration * INTERVAL_S);
+        } else if (--mHoldCount <= 0) {
+            nextManoeuvre();
+        }
+        move();
+        mElapsedRealtimeNanos += INTERVAL_NANOS;
+    }
+
+    private void move() {
+        mHeading += (mRandom.nextDouble() - 0.5) * 0.1;
+        double distance = mSpeed * INTERVAL_S;
+        mLatitude += distance * Math.cos(mHeading) / METERS_PER_DEGREE;
+        mLongitude += distance * Math.sin(mHeading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(mLatitude)));
+        if (Math.abs(mLatitude) > MAX_LATITUDE) {
+            // Turn back rather than driving to the pole
+            mHeading = Math.PI - mHeading;
+        }
+        if (mLongitude > 180d) {
+            mLongitude -= 360d;
+        } else if (mLongitude < -180d) {
+            mLongitude += 360d;
+        }
+    }
+
+    private float reportedSpeed() {
+        if (mSpeed == 0) {
+            return 0f;
+        }
+        double noise = mProfile == Profile.JITTER_AROUND_THRESHOLD ? 0.4 : 0.3;
+        return (float) Math.max(0d, mSpeed + mRandom.nextGaussian() * noise);
+    }
+
+    private void nextManoeuvre() {
+        switch (mProfile) {
+            case CITY_STOP_AND_GO:
+                nextCityManoeuvre();
+                break;
+            case HIGHWAY_CRUISING:
+                mAcceleration = 1d;
+                mDeceleration = 2d;
+                if (mTargetSpeed > 0 && mRandom.nextInt(20) == 0) {
+                    // Traffic jam
+                    hold(0d, 20, 100);
+                } else {
+                    hold(uniform(28d, 36d), 120, 1200);
+                }
+                break;
+            case SIGNAL_LOSS:
+                nextCityManoeuvre();
+                if (mRandom.nextInt(3) == 0) {
+                    mLostCount = 20 + mRandom.nextInt(220);
+                }
+                break;
+            case JITTER_AROUND_THRESHOLD:
+                mAcceleration = 0.5d;
+                mDeceleration = 0.5d;
+                if (mTargetSpeed > 0 && mRandom.nextInt(3) == 0) {
+                    hold(0d, 20, 200);
+                } else {
+                    hold(GpsLocationProvider.MIN_SPEED_RUNNING, 200, 2000);
+                }
+                break;
+        }
+    }
+
+    private void nextCityManoeuvre() {
+        mAcceleration = 2d;
+        mDeceleration = 3d;
+        if (mTargetSpeed > 0) {
+            hold(0d, 10, 80);
+        } else {
+            hold(uniform(8d, 15d), 20, 120);
+        }
+    }
+
+    private void hold(double targetSpeed, int minCount, int maxCount) {
+        mTargetSpeed = targetSpeed;
+        mHoldCount = minCount + mRandom.nextInt(maxCount - minCount);
+    }
+
+    private double uniform(double min, double max) {
+        return min + mRandom.nextDouble() * (max - min);
+    }
+}
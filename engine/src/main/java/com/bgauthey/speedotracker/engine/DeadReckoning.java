@@ -0,0 +1,188 @@
+package com.bgauthey.speedotracker.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the speed between fixes by integrating the linear acceleration of the device (without
+ * gravity, in the coordinates of the device).
+ * <p>
+ * The orientation of the device in the vehicle is unknown: the forward axis is learnt from the
+ * fixes, as the direction of the acceleration integrated between two fixes whose speeds differ.
+ * Until it's learnt, the estimate is the speed of the last fix. Each fix corrects the estimate to
+ * its speed, and the acceleration is integrated for at most {@link #getMaxHorizonNanos()} after a
+ * fix, so that errors don't add up when fixes stop.
+ * <p>
+ * Fixes and sensor samples must be given in time order and with the same time base, as
+ * {@code elapsedRealtimeNanos} of locations and {@code timestamp} of sensor events. Processing
+ * them doesn't allocate.
+ */
+public class DeadReckoning {
+
+    /**
+     * Default maximum time the acceleration is integrated after a fix (in nanoseconds)
+     */
+    public static final long DEFAULT_MAX_HORIZON_NANOS = TimeUnit.SECONDS.toNanos(3);
+    /**
+     * Minimum speed difference between two fixes to learn the forward axis from them (in m/s)
+     */
+    private static final float MIN_LEARNING_SPEED_DELTA = 1f;
+    /**
+     * Weight of a new measure of the forward axis
+     */
+    private static final float LEARNING_RATE = 0.2f;
+    /**
+     * Number of measures of the forward axis needed before using it
+     */
+    private static final int MIN_LEARNING_COUNT = 3;
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final long mMaxHorizonNanos;
+
+    private boolean mHasFix;
+    private float mFixSpeed;
+    private long mFixNanos;
+
+    private boolean mHasSample;
+    private float mLastX;
+    private float mLastY;
+    private float mLastZ;
+    private long mLastSampleNanos;
+
+    /**
+     * Acceleration integrated since the last fix (in m/s)
+     */
+    private float mDeltaX;
+    private float mDeltaY;
+    private float mDeltaZ;
+
+    /**
+     * Forward axis, a unit vector
+     */
+    private float mForwardX;
+    private float mForwardY;
+    private float mForwardZ;
+    private int mLearningCount;
+
+    public DeadReckoning() {
+        this(DEFAULT_MAX_HORIZON_NANOS);
+    }
+
+    /**
+     * @param maxHorizonNanos maximum time the acceleration is integrated after a fix (in
+     *                        nanoseconds)
+     */
+    public DeadReckoning(long maxHorizonNanos) {
+        mMaxHorizonNanos = maxHorizonNanos;
+    }
+
+    /**
+     * Integrate a linear acceleration sample.
+     *
+     * @param x     acceleration along the x axis of the device (in m/s^2)
+     * @param y     acceleration along the y axis of the device (in m/s^2)
+     * @param z     acceleration along the z axis of the device (in m/s^2)
+     * @param nanos time of the sample (in nanoseconds)
+     */
+    public void onAcceleration(float x, float y, float z, long nanos) {
+        if (mHasFix && mHasSample) {
+            long from = Math.max(mLastSampleNanos, mFixNanos);
+            long to = Math.min(nanos, mFixNanos + mMaxHorizonNanos);
+            if (to > from) {
+                // Trapezoidal rule
+                float seconds = (to - from) / NANOS_PER_SECOND;
+                mDeltaX += (mLastX + x) * 0.5f * seconds;
+                mDeltaY += (mLastY + y) * 0.5f * seconds;
+                mDeltaZ += (mLastZ + z) * 0.5f * seconds;
+            }
+        }
+        mLastX = x;
+        mLastY = y;
+        mLastZ = z;
+        mLastSampleNanos = nanos;
+        mHasSample = true;
+    }
+
+    /**
+     * Correct the estimate with the speed of a fix.
+     *
+     * @param speed speed of the fix (in m/s)
+     * @param nanos time of the fix (in nanoseconds)
+     */
+    public void onFix(float speed, long nanos) {
+        if (mHasFix && nanos <= mFixNanos + mMaxHorizonNanos) {
+            learnForwardAxis(speed - mFixSpeed);
+        }
+        mFixSpeed = speed;
+        mFixNanos = nanos;
+        mHasFix = true;
+        mDeltaX = 0f;
+        mDeltaY = 0f;
+        mDeltaZ = 0f;
+    }
+
+    private void learnForwardAxis(float speedDelta) {
+        if (Math.abs(speedDelta) < MIN_LEARNING_SPEED_DELTA) {
+            return;
+        }
+        float norm = (float) Math.sqrt(mDeltaX * mDeltaX + mDeltaY * mDeltaY + mDeltaZ * mDeltaZ);
+        if (norm == 0f) {
+            return;
+        }
+        // Direction of the integrated acceleration, reversed when braking
+        float sign = Math.signum(speedDelta) / norm;
+        float x = mDeltaX * sign;
+        float y = mDeltaY * sign;
+        float z = mDeltaZ * sign;
+        if (mLearningCount > 0) {
+            x = mForwardX + (x - mForwardX) * LEARNING_RATE;
+            y = mForwardY + (y - mForwardY) * LEARNING_RATE;
+            z = mForwardZ + (z - mForwardZ) * LEARNING_RATE;
+            norm = (float) Math.sqrt(x * x + y * y + z * z);
+            if (norm == 0f) {
+                return;
+            }
+            x /= norm;
+            y /= norm;
+            z /= norm;
+        }
+        mForwardX = x;
+        mForwardY = y;
+        mForwardZ = z;
+        mLearningCount++;
+    }
+
+    /**
+     * @return the estimated speed (in m/s), the speed of the last fix until the forward axis is
+     * learnt
+     */
+    public float getSpeed() {
+        if (!isCalibrated()) {
+            return mFixSpeed;
+        }
+        float speed = mFixSpeed + mDeltaX * mForwardX + mDeltaY * mForwardY + mDeltaZ * mForwardZ;
+        return Math.max(0f, speed);
+    }
+
+    /**
+     * @return true once the forward axis is learnt
+     */
+    public boolean isCalibrated() {
+        return mLearningCount >= MIN_LEARNING_COUNT;
+    }
+
+    public long getMaxHorizonNanos() {
+        return mMaxHorizonNanos;
+    }
+
+    /**
+     * Forget fixes and samples, but keep the forward axis: the device usually stays in place.
+     */
+    public void reset() {
+        mHasFix = false;
+        mHasSample = false;
+        mFixSpeed = 0f;
+        mDeltaX = 0f;
+        mDeltaY = 0f;
+        mDeltaZ = 0f;
+    }
+}
@@ -0,0 +1,106 @@
+package com.bgauthey.speedotracker.engine;
+
+/**
+ * A location fix made of primitive values only.
+ * <p>
+ * Fixes are mutable so that a single instance can be filled again for every new fix: feeding the
+ * engine doesn't allocate.
+ */
+public final class Fix {
+
+    private double mLatitude;
+    private double mLongitude;
+    private float mSpeed;
+    private boolean mHasSpeed;
+    private float mAccuracy;
+    private long mElapsedRealtimeNanos;
+
+    /**
+     * Replace all the values of this fix. The fix has a speed, see {@link #setHasSpeed(boolean)}.
+     *
+     * @param latitude             latitude in degrees
+     * @param longitude            longitude in degrees
+     * @param speed                speed in m/s
+     * @param accuracy             horizontal accuracy in meters
+     * @param elapsedRealtimeNanos time of the fix since boot (in nanoseconds)
+     * @return this fix
+     */
+    public Fix set(double latitude, double longitude, float speed, float accuracy, long elapsedRealtimeNanos) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mSpeed = speed;
+        mHasSpeed = true;
+        mAccuracy = accuracy;
+        mElapsedRealtimeNanos = elapsedRealtimeNanos;
+        return this;
+    }
+
+    /**
+     * Replace all the values of this fix by the values of another one.
+     *
+     * @param other the fix to copy
+     */
+    public void set(Fix other) {
+        set(other.mLatitude, other.mLongitude, other.mSpeed, other.mAccuracy, other.mElapsedRealtimeNanos);
+        mHasSpeed = other.mHasSpeed;
+    }
+
+    /**
+     * @param hasSpeed false if the source of the fix didn't measure its speed, such as a location
+     *                 without Doppler speed: its speed is then meaningless
+     * @return this fix
+     */
+    public Fix setHasSpeed(boolean hasSpeed) {
+        mHasSpeed = hasSpeed;
+        return this;
+    }
+
+    /**
+     * Set all the values of this fix to zero.
+     */
+    public void reset() {
+        set(0d, 0d, 0f, 0f, 0L);
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return speed in m/s
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return false if the source of the fix didn't measure its speed
+     */
+    public boolean hasSpeed() {
+        return mHasSpeed;
+    }
+
+    /**
+     * @return horizontal accuracy in meters
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    /**
+     * @return time of the fix since boot (in nanoseconds)
+     */
+    public long getElapsedRealtimeNanos() {
+        return mElapsedRealtimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Fix[" + mLatitude + "," + mLongitude + " speed=" + (mHasSpeed ? String.valueOf(mSpeed) : "none") + " acc=" + mAccuracy
+                + " et=" + mElapsedRealtimeNanos + "]";
+    }
+}
@@ -0,0 +1,130 @@
+package com.bgauthey.speedotracker.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the fixes of several location sources (GPS, network...) into one stream ordered by time.
+ * <p>
+ * A fix is kept if it's newer than the last kept fix and at least as accurate as this fix is now:
+ * the accuracy of the last fix degrades over time by {@link #getAccuracyDecay()} meters per second,
+ * the distance the device may have travelled since. While accurate GPS fixes come, less accurate
+ * network fixes are dropped; once GPS fixes stop, in a tunnel for instance, network fixes fill the
+ * gap within a few seconds. Fixes with an unknown accuracy (zero) are kept if they're newer.
+ * <p>
+ * Sources such as the network don't provide speeds: the speed of such a fix is computed from the
+ * distance to the last kept fix, if it was kept long enough before for the distance to be greater
+ * than the errors, otherwise the last speed is kept.
+ * <p>
+ * Each fix is processed in constant time and its values copied: callers can reuse the same
+ * {@link Fix} instance for every call.
+ */
+public class FixFusion {
+
+    /**
+     * Default accuracy decay: highway speed (in m/s)
+     */
+    public static final float DEFAULT_ACCURACY_DECAY = 35f;
+    /**
+     * Default minimum time between two kept fixes to compute a speed from them (in nanoseconds)
+     */
+    public static final long DEFAULT_MIN_SPEED_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final float mAccuracyDecay;
+    private final long mMinSpeedIntervalNanos;
+    private final Fix mLastFix = new Fix();
+    private boolean mHasLastFix;
+    private long mKeptCount;
+    private long mDroppedCount;
+
+    public FixFusion() {
+        this(DEFAULT_ACCURACY_DECAY, DEFAULT_MIN_SPEED_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param accuracyDecay         how fast the accuracy of the last kept fix degrades (in m/s)
+     * @param minSpeedIntervalNanos minimum time between two kept fixes to compute a speed from
+     *                              them (in nanoseconds)
+     */
+    public FixFusion(float accuracyDecay, long minSpeedIntervalNanos) {
+        mAccuracyDecay = accuracyDecay;
+        mMinSpeedIntervalNanos = minSpeedIntervalNanos;
+    }
+
+    /**
+     * Process a fix of any source.
+     *
+     * @param fix      the fix, its speed is replaced if it has none and the fix is kept
+     * @param hasSpeed false if the source doesn't provide a speed
+     * @return true if the fix is kept in the stream
+     */
+    public boolean onFix(Fix fix, boolean hasSpeed) {
+        if (mHasLastFix && !isBetter(fix)) {
+            mDroppedCount++;
+            return false;
+        }
+        if (!hasSpeed) {
+            fix.set(fix.getLatitude(), fix.getLongitude(), estimateSpeed(fix), fix.getAccuracy(),
+                    fix.getElapsedRealtimeNanos());
+        }
+        mLastFix.set(fix);
+        mHasLastFix = true;
+        mKeptCount++;
+        return true;
+    }
+
+    private boolean isBetter(Fix fix) {
+        long ageNanos = fix.getElapsedRealtimeNanos() - mLastFix.getElapsedRealtimeNanos();
+        if (ageNanos <= 0) {
+            // Older fix, or the same fix from another source such as the passive provider
+            return false;
+        }
+        if (fix.getAccuracy() <= 0f || mLastFix.getAccuracy() <= 0f) {
+            return true;
+        }
+        return fix.getAccuracy() <= mLastFix.getAccuracy() + mAccuracyDecay * ageNanos / NANOS_PER_SECOND;
+    }
+
+    private float estimateSpeed(Fix fix) {
+        if (!mHasLastFix) {
+            return 0f;
+        }
+        long intervalNanos = fix.getElapsedRealtimeNanos() - mLastFix.getElapsedRealtimeNanos();
+        if (intervalNanos < mMinSpeedIntervalNanos) {
+            return mLastFix.getSpeed();
+        }
+        float distance = Geodesy.distanceBetween(mLastFix.getLatitude(), mLastFix.getLongitude(),
+                fix.getLatitude(), fix.getLongitude());
+        return distance * NANOS_PER_SECOND / intervalNanos;
+    }
+
+    /**
+     * Forget the last kept fix, to start a new stream.
+     */
+    public void reset() {
+        mLastFix.reset();
+        mHasLastFix = false;
+    }
+
+    /**
+     * @return how fast the accuracy of the last kept fix degrades (in m/s)
+     */
+    public float getAccuracyDecay() {
+        return mAccuracyDecay;
+    }
+
+    /**
+     * @return number of fixes kept since creation
+     */
+    public long getKeptCount() {
+        return mKeptCount;
+    }
+
+    /**
+     * @return number of fixes dropped since creation
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+}
@@ -0,0 +1,24 @@
+package com.bgauthey.speedotracker.engine;
+
+/**
+ * Estimates the speed of the device at each fix, from fixes given in time order. Fixes may have
+ * no speed ({@link Fix#hasSpeed()}): their speed is then estimated from their positions.
+ * <p>
+ * Estimators keep their state in preallocated fields: estimating the speed of a fix doesn't
+ * allocate.
+ */
+public interface FixSpeedEstimator {
+
+    /**
+     * Process the next fix.
+     *
+     * @param fix the fix, not modified
+     * @return estimated speed at the time of the fix (in m/s)
+     */
+    float estimate(Fix fix);
+
+    /**
+     * Forget previous fixes, to start a new track.
+     */
+    void reset();
+}
@@ -0,0 +1,83 @@
+package com.bgauthey.speedotracker.engine;
+
+/**
+ * Distance computations on the WGS84 ellipsoid.
+ */
+public final class Geodesy {
+
+    private static final int MAX_ITERATIONS = 20;
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180.0;
+    /**
+     * Semi-major axis of the WGS84 ellipsoid (in meters)
+     */
+    private static final double SEMI_MAJOR_AXIS = 6378137.0;
+    /**
+     * Semi-minor axis of the WGS84 ellipsoid (in meters)
+     */
+    private static final double SEMI_MINOR_AXIS = 6356752.3142;
+    private static final double FLATTENING = (SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS) / SEMI_MAJOR_AXIS;
+    private static final double A_SQ_MINUS_B_SQ_OVER_B_SQ = (SEMI_MAJOR_AXIS * SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS * SEMI_MINOR_AXIS)
+            / (SEMI_MINOR_AXIS * SEMI_MINOR_AXIS);
+
+    private Geodesy() {
+    }
+
+    /**
+     * Compute the distance between two points using the inverse formula of Vincenty, the same way
+     * as {@code android.location.Location#distanceTo}.
+     *
+     * @param fromLatitude  latitude of the first point (in degrees)
+     * @param fromLongitude longitude of the first point (in degrees)
+     * @param toLatitude    latitude of the second point (in degrees)
+     * @param toLongitude   longitude of the second point (in degrees)
+     * @return distance in meters
+     */
+    public static float distanceBetween(double fromLatitude, double fromLongitude, double toLatitude, double toLongitude) {
+        // Same operations as the framework, to get the very same results
+        double lat1 = fromLatitude * DEGREES_TO_RADIANS;
+        double lat2 = toLatitude * DEGREES_TO_RADIANS;
+        double l = toLongitude * DEGREES_TO_RADIANS - fromLongitude * DEGREES_TO_RADIANS;
+
+        double u1 = Math.atan((1.0 - FLATTENING) * Math.tan(lat1));
+        double u2 = Math.atan((1.0 - FLATTENING) * Math.tan(lat2));
+        double cosU1 = Math.cos(u1);
+        double cosU2 = Math.cos(u2);
+        double sinU1 = Math.sin(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU1cosU2 = cosU1 * cosU2;
+        double sinU1sinU2 = sinU1 * sinU2;
+
+        double a = 0.0;
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double lambda = l;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double lambdaOrig = lambda;
+            double cosLambda = Math.cos(lambda);
+            double sinLambda = Math.sin(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            double cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = sinSigma == 0 ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            double cos2SM = cosSqAlpha == 0 ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+
+            double uSquared = cosSqAlpha * A_SQ_MINUS_B_SQ_OVER_B_SQ;
+            a = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+            double b = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+            double c = (FLATTENING / 16.0) * cosSqAlpha * (4.0 + FLATTENING * (4.0 - 3.0 * cosSqAlpha));
+            double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = b * sinSigma * (cos2SM + (b / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SMSq)
+                    - (b / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SMSq)));
+            lambda = l + (1.0 - c) * FLATTENING * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SM + c * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            if (Math.abs((lambda - lambdaOrig) / lambda) < 1.0e-12) {
+                break;
+            }
+        }
+        return (float) (SEMI_MINOR_AXIS * a * (sigma - deltaSigma));
+    }
+}
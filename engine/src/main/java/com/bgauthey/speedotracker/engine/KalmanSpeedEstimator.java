@@ -0,0 +1,289 @@
+package com.bgauthey.speedotracker.engine;
+
+/**
+ * Estimates the speed with a Kalman filter over the position and the velocity of the device, in
+ * meters on a plane tangent to the earth near the fixes.
+ * <p>
+ * The model is a constant velocity disturbed by random accelerations of
+ * {@link #getAccelerationNoise()}. Each fix corrects the position, weighted by its accuracy, and
+ * the speed when the fix has one. Without Doppler speed, the speed comes from consecutive
+ * positions only, smoothed by the filter instead of jumping with the error of each position.
+ * <p>
+ * The state and its covariance are preallocated arrays of constant size, and measurements are
+ * applied one value at a time so that no matrix is inverted: processing a fix doesn't allocate.
+ */
+public class KalmanSpeedEstimator implements FixSpeedEstimator {
+
+    /**
+     * Default standard deviation of the acceleration of the device: a car accelerating or braking
+     * briskly (in m/s^2)
+     */
+    public static final float DEFAULT_ACCELERATION_NOISE = 2f;
+    /**
+     * Default standard deviation of Doppler speeds (in m/s)
+     */
+    public static final float DEFAULT_SPEED_ERROR = 0.5f;
+
+    /**
+     * Accuracy of fixes without one (in meters)
+     */
+    private static final double UNKNOWN_ACCURACY = 30d;
+    /**
+     * Initial standard deviation of each component of the velocity, up to highway speed (in m/s)
+     */
+    private static final double INITIAL_VELOCITY_ERROR = 40d;
+    /**
+     * Speed under which the heading is too uncertain to correct the velocity with a speed (in m/s)
+     */
+    private static final double MIN_HEADING_SPEED = 1d;
+    /**
+     * Distance of the fixes from the origin of the plane over which it's moved, so that the
+     * projection stays accurate (in meters)
+     */
+    private static final double MAX_ORIGIN_DISTANCE = 10_000d;
+    private static final double METERS_PER_DEGREE = 6_371_000d * Math.PI / 180d;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    // Indexes in the state
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int VX = 2;
+    private static final int VY = 3;
+    private static final int SIZE = 4;
+
+    private final float mAccelerationNoise;
+    private final double mAccelerationVariance;
+    private final double mSpeedVariance;
+
+    /**
+     * Position (in meters) and velocity (in m/s) along the east and north axes
+     */
+    private final double[] mState = new double[SIZE];
+    /**
+     * Covariance of the state, row by row
+     */
+    private final double[] mCovariance = new double[SIZE * SIZE];
+    /**
+     * Observation vector of the measurement being applied
+     */
+    private final double[] mObservation = new double[SIZE];
+    /**
+     * Covariance times the observation vector, of the measurement being applied
+     */
+    private final double[] mCovarianceObservation = new double[SIZE];
+
+    private boolean mInitialized;
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLongitude;
+    private long mLastNanos;
+    private float mSpeed;
+
+    public KalmanSpeedEstimator() {
+        this(DEFAULT_ACCELERATION_NOISE, DEFAULT_SPEED_ERROR);
+    }
+
+    /**
+     * @param accelerationNoise standard deviation of the acceleration of the device (in m/s^2)
+     * @param speedError        standard deviation of Doppler speeds (in m/s)
+     */
+    public KalmanSpeedEstimator(float accelerationNoise, float speedError) {
+        mAccelerationNoise = accelerationNoise;
+        mAccelerationVariance = (double) accelerationNoise * accelerationNoise;
+        mSpeedVariance = (double) speedError * speedError;
+    }
+
+    @Override
+    public float estimate(Fix fix) {
+        if (!mInitialized) {
+            initialize(fix);
+            mSpeed = fix.hasSpeed() ? fix.getSpeed() : 0f;
+            return mSpeed;
+        }
+        long intervalNanos = fix.getElapsedRealtimeNanos() - mLastNanos;
+        if (intervalNanos > 0) {
+            predict(intervalNanos / NANOS_PER_SECOND);
+            mLastNanos = fix.getElapsedRealtimeNanos();
+        }
+        double x = toX(fix.getLongitude());
+        double y = toY(fix.getLatitude());
+        if (Math.abs(x) > MAX_ORIGIN_DISTANCE || Math.abs(y) > MAX_ORIGIN_DISTANCE) {
+            moveOrigin(fix, x, y);
+            x = 0d;
+            y = 0d;
+        }
+
+        double positionVariance = getPositionVariance(fix);
+        updateComponent(X, x, positionVariance);
+        updateComponent(Y, y, positionVariance);
+        if (fix.hasSpeed()) {
+            updateSpeed(fix.getSpeed());
+        }
+        mSpeed = (float) getFilterSpeed();
+        return mSpeed;
+    }
+
+    @Override
+    public void reset() {
+        mInitialized = false;
+        mSpeed = 0f;
+    }
+
+    /**
+     * @return speed estimated at the last fix (in m/s)
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * @return standard deviation of the acceleration of the device (in m/s^2)
+     */
+    public float getAccelerationNoise() {
+        return mAccelerationNoise;
+    }
+
+    //region Filter
+    private void initialize(Fix fix) {
+        mOriginLatitude = fix.getLatitude();
+        mOriginLongitude = fix.getLongitude();
+        mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(mOriginLatitude));
+        mLastNanos = fix.getElapsedRealtimeNanos();
+        // The heading is unknown, even when the fix has a speed
+        for (int i = 0; i < SIZE; i++) {
+            mState[i] = 0d;
+        }
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            mCovariance[i] = 0d;
+        }
+        double positionVariance = getPositionVariance(fix);
+        mCovariance[X * SIZE + X] = positionVariance;
+        mCovariance[Y * SIZE + Y] = positionVariance;
+        mCovariance[VX * SIZE + VX] = INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR;
+        mCovariance[VY * SIZE + VY] = INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR;
+        mInitialized = true;
+    }
+
+    /**
+     * Move the state forward in time: P = F P F' + Q, with F the constant velocity model and Q the
+     * covariance of random accelerations.
+     */
+    private void predict(double dt) {
+        mState[X] += mState[VX] * dt;
+        mState[Y] += mState[VY] * dt;
+
+        double[] p = mCovariance;
+        // F P: rows of positions get the rows of velocities
+        for (int j = 0; j < SIZE; j++) {
+            p[X * SIZE + j] += dt * p[VX * SIZE + j];
+            p[Y * SIZE + j] += dt * p[VY * SIZE + j];
+        }
+        // (F P) F': columns of positions get the columns of velocities
+        for (int i = 0; i < SIZE; i++) {
+            p[i * SIZE + X] += dt * p[i * SIZE + VX];
+            p[i * SIZE + Y] += dt * p[i * SIZE + VY];
+        }
+
+        double dt2 = dt * dt;
+        double positionNoise = dt2 * dt2 / 4d * mAccelerationVariance;
+        double crossNoise = dt2 * dt / 2d * mAccelerationVariance;
+        double velocityNoise = dt2 * mAccelerationVariance;
+        p[X * SIZE + X] += positionNoise;
+        p[Y * SIZE + Y] += positionNoise;
+        p[X * SIZE + VX] += crossNoise;
+        p[VX * SIZE + X] += crossNoise;
+        p[Y * SIZE + VY] += crossNoise;
+        p[VY * SIZE + Y] += crossNoise;
+        p[VX * SIZE + VX] += velocityNoise;
+        p[VY * SIZE + VY] += velocityNoise;
+    }
+
+    /**
+     * Correct the state with a measurement of one of its components.
+     */
+    private void updateComponent(int index, double value, double variance) {
+        for (int i = 0; i < SIZE; i++) {
+            mObservation[i] = 0d;
+        }
+        mObservation[index] = 1d;
+        update(value - mState[index], variance);
+    }
+
+    /**
+     * Correct the velocity with a measured speed, linearizing the speed along the current heading.
+     * At low speed, where the heading is unknown, only a low measured speed is applied, to both
+     * components of the velocity.
+     */
+    private void updateSpeed(float speed) {
+        double filterSpeed = getFilterSpeed();
+        if (filterSpeed >= MIN_HEADING_SPEED) {
+            mObservation[X] = 0d;
+            mObservation[Y] = 0d;
+            mObservation[VX] = mState[VX] / filterSpeed;
+            mObservation[VY] = mState[VY] / filterSpeed;
+            update(speed - filterSpeed, mSpeedVariance);
+        } else if (speed < MIN_HEADING_SPEED) {
+            updateComponent(VX, 0d, mSpeedVariance);
+            updateComponent(VY, 0d, mSpeedVariance);
+        }
+    }
+
+    /**
+     * Correct the state with a scalar measurement along {@link #mObservation}:
+     * K = P h / (h' P h + r), x = x + K innovation, P = P - K h' P.
+     */
+    private void update(double innovation, double variance) {
+        double[] p = mCovariance;
+        double[] ph = mCovarianceObservation;
+        double innovationVariance = variance;
+        for (int i = 0; i < SIZE; i++) {
+            double sum = 0d;
+            for (int j = 0; j < SIZE; j++) {
+                sum += p[i * SIZE + j] * mObservation[j];
+            }
+            ph[i] = sum;
+            innovationVariance += mObservation[i] * sum;
+        }
+        for (int i = 0; i < SIZE; i++) {
+            mState[i] += ph[i] / innovationVariance * innovation;
+        }
+        // P is symmetric: h' P is the transpose of P h
+        for (int i = 0; i < SIZE; i++) {
+            double gain = ph[i] / innovationVariance;
+            for (int j = 0; j < SIZE; j++) {
+                p[i * SIZE + j] -= gain * ph[j];
+            }
+        }
+    }
+    //endregion
+
+    //region Projection
+    private double toX(double longitude) {
+        return (longitude - mOriginLongitude) * mMetersPerDegreeLongitude;
+    }
+
+    private double toY(double latitude) {
+        return (latitude - mOriginLatitude) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Move the origin of the plane to a fix, at (x, y) on the current plane.
+     */
+    private void moveOrigin(Fix fix, double x, double y) {
+        mState[X] -= x;
+        mState[Y] -= y;
+        mOriginLatitude = fix.getLatitude();
+        mOriginLongitude = fix.getLongitude();
+        mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(mOriginLatitude));
+    }
+    //endregion
+
+    private double getFilterSpeed() {
+        return Math.sqrt(mState[VX] * mState[VX] + mState[VY] * mState[VY]);
+    }
+
+    private static double getPositionVariance(Fix fix) {
+        double accuracy = fix.getAccuracy() > 0f ? fix.getAccuracy() : UNKNOWN_ACCURACY;
+        return accuracy * accuracy;
+    }
+}
@@ -0,0 +1,171 @@
+package com.bgauthey.speedotracker.engine;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets of logarithmic width, in a fixed amount of memory.
+ * <p>
+ * Latencies are counted in microseconds: each power of two is split in {@link #SUB_BUCKET_COUNT}
+ * buckets, so a bucket is at most 12.5% wide and percentiles are reported within 12.5% of the
+ * true value. Latencies from 0 to {@link #MAX_LATENCY_NANOS} get their own bucket, greater ones
+ * are counted in the last bucket and negative ones, from clocks out of sync, in the first one.
+ * <p>
+ * Recording is lock-free and doesn't allocate: a latency can be recorded on any thread while
+ * another one reads the histogram. Reads aren't atomic across buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Number of buckets per power of two
+     */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * Greatest power of two of latencies with their own bucket (in microseconds)
+     */
+    private static final int MAX_EXPONENT = 35;
+    /**
+     * Greatest latency with its own bucket, about 19 hours (in nanoseconds)
+     */
+    public static final long MAX_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos((1L << (MAX_EXPONENT + 1)) - 1);
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    private final String mName;
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * @param name name of the latency, reported by {@link #dump(PrintWriter)}
+     */
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    /**
+     * Count a latency.
+     *
+     * @param nanos the latency (in nanoseconds)
+     */
+    public void record(long nanos) {
+        mCounts.incrementAndGet(getBucket(nanos));
+        mTotalCount.incrementAndGet();
+        long max;
+        do {
+            max = mMaxNanos.get();
+        } while (nanos > max && !mMaxNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Forget all latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mMaxNanos.set(0);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return greatest latency recorded (in nanoseconds), 0 if none
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    /**
+     * @param percentile percentile, from 0 to 100
+     * @return upper bound of the bucket holding the latency at this percentile (in nanoseconds),
+     * 0 if no latency was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(getBucketUpperNanos(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Write the percentiles and the non empty buckets.
+     *
+     * @param writer writer of the report
+     */
+    public void dump(PrintWriter writer) {
+        writer.println(toString());
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = mCounts.get(i);
+            if (count != 0) {
+                writer.println(String.format(Locale.US, "  %10.3f - %10.3f ms: %d",
+                        getBucketLowerNanos(i) / 1e6, getBucketUpperNanos(i) / 1e6, count));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: count=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                mName, getCount(), getPercentileNanos(50) / 1e6, getPercentileNanos(90) / 1e6,
+                getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+    }
+
+    //region Buckets
+    static int getBucket(long nanos) {
+        long micros = nanos / NANOS_PER_MICRO;
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketLowerNanos(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket * NANOS_PER_MICRO;
+        }
+        int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS)) * NANOS_PER_MICRO;
+    }
+
+    static long getBucketUpperNanos(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return getBucketLowerNanos(bucket + 1) - 1;
+    }
+    //endregion
+}
@@ -0,0 +1,93 @@
+package com.bgauthey.speedotracker.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Replays a motion log through a {@link DeadReckoning}, to evaluate it on a JVM with recorded
+ * sensor samples and fixes.
+ * <p>
+ * A log is a text file with one event per line, in time order, times in nanoseconds:
+ * <pre>
+ * a,&lt;time&gt;,&lt;x&gt;,&lt;y&gt;,&lt;z&gt;   linear acceleration sample (in m/s^2)
+ * f,&lt;time&gt;,&lt;speed&gt;           fix (speed in m/s)
+ * </pre>
+ * Empty lines and lines starting with {@code #} are ignored. The estimate is read at a constant
+ * frame rate, as the display does.
+ */
+public class MotionLogReplayer {
+
+    /**
+     * Receives the estimate at each frame.
+     */
+    public interface FrameListener {
+
+        /**
+         * @param nanos         time of the frame (in nanoseconds)
+         * @param speed         estimated speed at this time (in m/s)
+         * @param lastFixSpeed  speed of the last fix (in m/s)
+         */
+        void onFrame(long nanos, float speed, float lastFixSpeed);
+    }
+
+    private final DeadReckoning mDeadReckoning;
+    private final long mFrameIntervalNanos;
+
+    /**
+     * @param deadReckoning      the dead reckoning fed with the log
+     * @param frameIntervalNanos time between two frames (in nanoseconds)
+     */
+    public MotionLogReplayer(DeadReckoning deadReckoning, long frameIntervalNanos) {
+        mDeadReckoning = deadReckoning;
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Replay a log.
+     *
+     * @param reader   reader of the log
+     * @param listener listener receiving the estimate at each frame
+     * @return number of events replayed
+     * @throws IOException if the log can't be read or is malformed
+     */
+    public int replay(BufferedReader reader, FrameListener listener) throws IOException {
+        int eventCount = 0;
+        long nextFrameNanos = -1L;
+        float lastFixSpeed = 0f;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] values = line.split(",");
+            long nanos;
+            try {
+                nanos = Long.parseLong(values[1]);
+                if (nextFrameNanos < 0) {
+                    nextFrameNanos = nanos;
+                }
+                // Frames before this event see the estimate of the previous events
+                while (nextFrameNanos < nanos) {
+                    listener.onFrame(nextFrameNanos, mDeadReckoning.getSpeed(), lastFixSpeed);
+                    nextFrameNanos += mFrameIntervalNanos;
+                }
+                switch (values[0]) {
+                    case "a":
+                        mDeadReckoning.onAcceleration(Float.parseFloat(values[2]), Float.parseFloat(values[3]),
+                                Float.parseFloat(values[4]), nanos);
+                        break;
+                    case "f":
+                        lastFixSpeed = Float.parseFloat(values[2]);
+                        mDeadReckoning.onFix(lastFixSpeed, nanos);
+                        break;
+                    default:
+                        throw new IOException("Unknown event: " + line);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Malformed event: " + line, e);
+            }
+            eventCount++;
+        }
+        return eventCount;
+    }
+}
@@ -0,0 +1,41 @@
+package com.bgauthey.speedotracker.engine;
+
+/**
+ * Trusts the speed of each fix, measured by Doppler effect. For a fix without speed, the speed
+ * is the distance to the previous fix divided by the time between them, or the last speed if both
+ * fixes have the same time.
+ */
+public class RawSpeedEstimator implements FixSpeedEstimator {
+
+    private static final float NANOS_PER_SECOND = 1e9f;
+
+    private final Fix mLastFix = new Fix();
+    private boolean mHasLastFix;
+    private float mSpeed;
+
+    @Override
+    public float estimate(Fix fix) {
+        if (fix.hasSpeed()) {
+            mSpeed = fix.getSpeed();
+        } else if (!mHasLastFix) {
+            mSpeed = 0f;
+        } else {
+            long intervalNanos = fix.getElapsedRealtimeNanos() - mLastFix.getElapsedRealtimeNanos();
+            if (intervalNanos > 0) {
+                float distance = Geodesy.distanceBetween(mLastFix.getLatitude(), mLastFix.getLongitude(),
+                        fix.getLatitude(), fix.getLongitude());
+                mSpeed = distance * NANOS_PER_SECOND / intervalNanos;
+            }
+        }
+        mLastFix.set(fix);
+        mHasLastFix = true;
+        return mSpeed;
+    }
+
+    @Override
+    public void reset() {
+        mLastFix.reset();
+        mHasLastFix = false;
+        mSpeed = 0f;
+    }
+}
@@ -0,0 +1,220 @@
+package com.bgauthey.speedotracker.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects sections (periods while the device is moving) in a stream of fixes and computes their
+ * distance, elapsed time and average speed.
+ * <p>
+ * Sections are detected with hysteresis and debounce, so that a speed jittering around a single
+ * threshold doesn't start and end sections on every fix:
+ * <ul>
+ * <li>a section starts once the speed stays at least the enter speed for the minimum enter dwell
+ * time; the section starts with the first of these fixes</li>
+ * <li>it ends once the speed stays lower than the exit speed, itself at most the enter speed, for
+ * the minimum exit dwell time; the section ends with the first of these fixes</li>
+ * </ul>
+ * With equal speeds and no dwell time, a section starts with the first fix whose speed is at least
+ * the running speed, and ends with the first following fix whose speed is lower.
+ * <p>
+ * Its distance is the distance between the start and end fixes. Each fix is processed in constant
+ * time and copied: callers can reuse the same {@link Fix} instance for every call.
+ */
+public class SectionTracker {
+
+    /**
+     * Result of {@link #onFix(Fix)}: no section started or ended with the fix
+     */
+    public static final int NO_CHANGE = 0;
+    /**
+     * Result of {@link #onFix(Fix)}: a section started with the fix
+     */
+    public static final int SECTION_STARTED = 1;
+    /**
+     * Result of {@link #onFix(Fix)}: a section ended with the fix, its values are available
+     */
+    public static final int SECTION_ENDED = 2;
+
+    /**
+     * Minimum speed to start a section (in m/s)
+     */
+    private final float mEnterSpeed;
+    /**
+     * Speed under which a section ends (in m/s)
+     */
+    private final float mExitSpeed;
+    /**
+     * Minimum time the speed must stay at least the enter speed to start a section (in nanoseconds)
+     */
+    private final long mMinEnterDwellNanos;
+    /**
+     * Minimum time the speed must stay lower than the exit speed to end a section (in nanoseconds)
+     */
+    private final long mMinExitDwellNanos;
+
+    private boolean mActive;
+    /**
+     * True while the speed crossed the threshold to start (or end) a section for less than the
+     * dwell time
+     */
+    private boolean mPending;
+    /**
+     * First fix past the threshold while a transition is pending
+     */
+    private final Fix mPendingFix = new Fix();
+    private final Fix mStartFix = new Fix();
+    private final Fix mLastFix = new Fix();
+    /**
+     * Distance between fix where speed was activated and fix where speed was deactivated (in meters)
+     */
+    private float mDistance;
+    /**
+     * Elapsed time between speed activation and speed deactivation (in seconds)
+     */
+    private int mTimeElapsed;
+    /**
+     * Average speed computed between speed activation and speed deactivation (in m/s)
+     */
+    private float mAverageSpeed;
+
+    /**
+     * Create a tracker starting and ending sections on a single threshold, without dwell time.
+     *
+     * @param minSpeedRunning minimum speed to consider user is moving (in m/s), must be positive
+     */
+    public SectionTracker(float minSpeedRunning) {
+        this(minSpeedRunning, minSpeedRunning, 0, 0);
+    }
+
+    /**
+     * @param enterSpeed         minimum speed to start a section (in m/s), must be positive
+     * @param exitSpeed          speed under which a section ends (in m/s), positive and at most the
+     *                           enter speed
+     * @param minEnterDwellNanos minimum time the speed must stay at least the enter speed to start
+     *                           a section (in nanoseconds)
+     * @param minExitDwellNanos  minimum time the speed must stay lower than the exit speed to end a
+     *                           section (in nanoseconds)
+     */
+    public SectionTracker(float enterSpeed, float exitSpeed, long minEnterDwellNanos, long minExitDwellNanos) {
+        if (!(enterSpeed > 0)) {
+            throw new IllegalArgumentException("Running speed must be positive: " + enterSpeed);
+        }
+        if (!(exitSpeed > 0 && exitSpeed <= enterSpeed)) {
+            throw new IllegalArgumentException("Exit speed must be positive and at most " + enterSpeed + ": " + exitSpeed);
+        }
+        if (minEnterDwellNanos < 0 || minExitDwellNanos < 0) {
+            throw new IllegalArgumentException("Dwell times must not be negative");
+        }
+        mEnterSpeed = enterSpeed;
+        mExitSpeed = exitSpeed;
+        mMinEnterDwellNanos = minEnterDwellNanos;
+        mMinExitDwellNanos = minExitDwellNanos;
+    }
+
+    /**
+     * Process a new fix.
+     *
+     * @param fix the new fix
+     * @return {@link #NO_CHANGE}, {@link #SECTION_STARTED} or {@link #SECTION_ENDED}
+     */
+    public int onFix(Fix fix) {
+        mLastFix.set(fix);
+        boolean crossed = mActive ? fix.getSpeed() < mExitSpeed : fix.getSpeed() >= mEnterSpeed;
+        if (!crossed) {
+            // Back on the side of the current state: cancel any pending transition
+            mPending = false;
+            return NO_CHANGE;
+        }
+        if (!mPending) {
+            mPending = true;
+            mPendingFix.set(fix);
+        }
+        if (!hasDwelt(fix, mActive ? mMinExitDwellNanos : mMinEnterDwellNanos)) {
+            return NO_CHANGE;
+        }
+        if (!mActive) {
+            // Starting point for tracking
+            mStartFix.set(mPendingFix);
+            mActive = true;
+            mPending = false;
+            return SECTION_STARTED;
+        }
+        // Ending point for tracking
+        computeSectionTo(mPendingFix);
+        // Reset stored fixes to be ready for next record
+        resetFixes();
+        return SECTION_ENDED;
+    }
+
+    private boolean hasDwelt(Fix fix, long minDwellNanos) {
+        return minDwellNanos == 0 || fix.getElapsedRealtimeNanos() - mPendingFix.getElapsedRealtimeNanos() >= minDwellNanos;
+    }
+
+    /**
+     * End the current section at the last known fix, or at the first fix under the exit speed if
+     * the section was about to end, for example when the location provider becomes unavailable.
+     * Section values are computed from the start fix as if a section were active.
+     */
+    public void endSection() {
+        computeSectionTo(mActive && mPending ? mPendingFix : mLastFix);
+        resetFixes();
+    }
+
+    /**
+     * Compute distance, elapsed time and average speed from the start fix of the current section
+     * to a given fix.
+     *
+     * @param toFix end of the section
+     */
+    public void computeSectionTo(Fix toFix) {
+        mDistance = computeDistance(mStartFix, toFix);
+        mTimeElapsed = computeTimeElapsed(mStartFix, toFix);
+        // A section shorter than a second has no meaningful average, rather than an infinite one
+        mAverageSpeed = mTimeElapsed > 0 ? mDistance / mTimeElapsed : 0;
+    }
+
+    /**
+     * @return true if a section started and didn't end yet
+     */
+    public boolean isSectionActive() {
+        return mActive;
+    }
+
+    /**
+     * @return distance of the last section (in meters)
+     */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * @return elapsed time of the last section (in seconds)
+     */
+    public int getTimeElapsed() {
+        return mTimeElapsed;
+    }
+
+    /**
+     * @return average speed of the last section (in m/s)
+     */
+    public float getAverageSpeed() {
+        return mAverageSpeed;
+    }
+
+    private void resetFixes() {
+        mActive = false;
+        mPending = false;
+        mPendingFix.reset();
+        mStartFix.reset();
+        mLastFix.reset();
+    }
+
+    private static float computeDistance(Fix from, Fix to) {
+        return Math.max(0, Geodesy.distanceBetween(from.getLatitude(), from.getLongitude(),
+                to.getLatitude(), to.getLongitude()));
+    }
+
+    private static int computeTimeElapsed(Fix from, Fix to) {
+        return (int) Math.max(0, TimeUnit.NANOSECONDS.toSeconds(to.getElapsedRealtimeNanos() - from.getElapsedRealtimeNanos()));
+    }
+}
@@ -0,0 +1,187 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An ordered list of {@link Stage}s each fix goes through, until a stage drops it.
+ * <p>
+ * For each stage, the pipeline counts invocations and drops and measures the time spent in the
+ * stage. Reading the clock costs about as much as a simple stage, so only one fix out of
+ * {@link Builder#setTimingInterval(int) timing interval} is timed and cumulative times are
+ * extrapolated from the timed fixes.
+ * <p>
+ * Counters are updated by the thread processing fixes without synchronization: when read from
+ * another thread, they are only indicative.
+ */
+public final class Pipeline {
+
+    private final String[] mNames;
+    private final Stage[] mStages;
+    private final long[] mInvocationCounts;
+    private final long[] mTimedCounts;
+    private final long[] mTimedNanos;
+    private final long[] mDropCounts;
+    private final int mTimingInterval;
+    /**
+     * Number of fixes to process before timing one
+     */
+    private int mUntimedCount;
+
+    private Pipeline(List<String> names, List<Stage> stages, int timingInterval) {
+        mNames = names.toArray(new String[names.size()]);
+        mStages = stages.toArray(new Stage[stages.size()]);
+        mInvocationCounts = new long[mStages.length];
+        mTimedCounts = new long[mStages.length];
+        mTimedNanos = new long[mStages.length];
+        mDropCounts = new long[mStages.length];
+        mTimingInterval = timingInterval;
+    }
+
+    /**
+     * Send a fix through the stages, in order.
+     *
+     * @param fix the fix to process
+     * @return true if the fix went through all the stages, false if a stage dropped it
+     */
+    public boolean process(Fix fix) {
+        if (mUntimedCount > 0) {
+            mUntimedCount--;
+            for (int i = 0; i < mStages.length; i++) {
+                mInvocationCounts[i]++;
+                if (!mStages[i].process(fix)) {
+                    mDropCounts[i]++;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        mUntimedCount = mTimingInterval - 1;
+        long time = System.nanoTime();
+        for (int i = 0; i < mStages.length; i++) {
+            boolean passed = mStages[i].process(fix);
+            long now = System.nanoTime();
+            mTimedNanos[i] += now - time;
+            mTimedCounts[i]++;
+            mInvocationCounts[i]++;
+            time = now;
+            if (!passed) {
+                mDropCounts[i]++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getStageCount() {
+        return mStages.length;
+    }
+
+    public String getStageName(int stage) {
+        return mNames[stage];
+    }
+
+    /**
+     * @return number of fixes processed by a stage
+     */
+    public long getInvocationCount(int stage) {
+        return mInvocationCounts[stage];
+    }
+
+    /**
+     * @return total time spent in a stage (in nanoseconds), extrapolated from timed fixes
+     */
+    public long getCumulativeNanos(int stage) {
+        long timedCount = mTimedCounts[stage];
+        return timedCount == 0 ? 0 : mTimedNanos[stage] * mInvocationCounts[stage] / timedCount;
+    }
+
+    /**
+     * @return average time spent in a stage per fix (in nanoseconds)
+     */
+    public double getAverageNanos(int stage) {
+        long timedCount = mTimedCounts[stage];
+        return timedCount == 0 ? 0d : (double) mTimedNanos[stage] / timedCount;
+    }
+
+    /**
+     * @return number of fixes dropped by a stage
+     */
+    public long getDropCount(int stage) {
+        return mDropCounts[stage];
+    }
+
+    /**
+     * Set all the counters back to zero.
+     */
+    public void resetCounters() {
+        for (int i = 0; i < mStages.length; i++) {
+            mInvocationCounts[i] = 0;
+            mTimedCounts[i] = 0;
+            mTimedNanos[i] = 0;
+            mDropCounts[i] = 0;
+        }
+        mUntimedCount = 0;
+    }
+
+    /**
+     * @return one line per stage with its counters and its average time per fix
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Pipeline");
+        for (int i = 0; i < mStages.length; i++) {
+            builder.append(String.format(Locale.US, "%n  %-10s %10d fixes %8d dropped %8.0f ns/fix", mNames[i],
+                    mInvocationCounts[i], mDropCounts[i], getAverageNanos(i)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Builds a {@link Pipeline}, stages are run in the order they are added.
+     */
+    public static class Builder {
+
+        private final List<String> mNames = new ArrayList<>();
+        private final List<Stage> mStages = new ArrayList<>();
+        private int mTimingInterval = 1;
+
+        /**
+         * Append a stage.
+         *
+         * @param name  name of the stage, used to report its counters
+         * @param stage the stage
+         * @return this builder
+         */
+        public Builder add(String name, Stage stage) {
+            if (stage == null) {
+                throw new IllegalArgumentException("Stage " + name + " is null");
+            }
+            mNames.add(name);
+            mStages.add(stage);
+            return this;
+        }
+
+        /**
+         * Time only one fix out of a given number, 1 (the default) to time every fix.
+         *
+         * @param timingInterval number of fixes between two timed fixes
+         * @return this builder
+         */
+        public Builder setTimingInterval(int timingInterval) {
+            if (timingInterval <= 0) {
+                throw new IllegalArgumentException("Timing interval must be positive: " + timingInterval);
+            }
+            mTimingInterval = timingInterval;
+            return this;
+        }
+
+        public Pipeline build() {
+            return new Pipeline(mNames, mStages, mTimingInterval);
+        }
+    }
+}
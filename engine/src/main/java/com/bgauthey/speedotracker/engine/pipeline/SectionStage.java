@@ -0,0 +1,35 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+import com.bgauthey.speedotracker.engine.SectionTracker;
+
+/**
+ * Detects sections with a {@link SectionTracker}. Following stages read the result of the last
+ * fix with {@link #getLastResult()}.
+ */
+public class SectionStage implements Stage {
+
+    private final SectionTracker mTracker;
+    private int mLastResult = SectionTracker.NO_CHANGE;
+
+    public SectionStage(SectionTracker tracker) {
+        mTracker = tracker;
+    }
+
+    @Override
+    public boolean process(Fix fix) {
+        mLastResult = mTracker.onFix(fix);
+        return true;
+    }
+
+    public SectionTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * @return result of {@link SectionTracker#onFix(Fix)} for the last processed fix
+     */
+    public int getLastResult() {
+        return mLastResult;
+    }
+}
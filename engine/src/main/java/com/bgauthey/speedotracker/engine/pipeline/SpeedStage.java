@@ -0,0 +1,39 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+import com.bgauthey.speedotracker.engine.FixSpeedEstimator;
+
+/**
+ * Replaces the speed of each fix by the speed estimated by a {@link FixSpeedEstimator}, so that
+ * following stages get a speed even for fixes without one.
+ */
+public class SpeedStage implements Stage {
+
+    private volatile FixSpeedEstimator mEstimator;
+
+    public SpeedStage(FixSpeedEstimator estimator) {
+        mEstimator = estimator;
+    }
+
+    @Override
+    public boolean process(Fix fix) {
+        float speed = mEstimator.estimate(fix);
+        fix.set(fix.getLatitude(), fix.getLongitude(), speed, fix.getAccuracy(), fix.getElapsedRealtimeNanos());
+        return true;
+    }
+
+    public FixSpeedEstimator getEstimator() {
+        return mEstimator;
+    }
+
+    /**
+     * Replace the estimator. Must be called before fixes are processed, or on the thread
+     * processing them.
+     *
+     * @param estimator the estimator, reset before its first fix
+     */
+    public void setEstimator(FixSpeedEstimator estimator) {
+        estimator.reset();
+        mEstimator = estimator;
+    }
+}
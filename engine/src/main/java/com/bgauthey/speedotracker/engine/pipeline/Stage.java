@@ -0,0 +1,17 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+
+/**
+ * A step of a fix processing {@link Pipeline}.
+ */
+public interface Stage {
+
+    /**
+     * Process a fix. Stages may modify the fix before it goes to the next stage.
+     *
+     * @param fix the fix to process
+     * @return true to pass the fix to the next stage, false to drop it
+     */
+    boolean process(Fix fix);
+}
@@ -0,0 +1,17 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+
+/**
+ * Drops fixes which can't be processed: coordinates out of range, or coordinates or speed not
+ * being finite numbers. The speed of a fix without speed isn't checked.
+ */
+public class ValidFixFilter implements Stage {
+
+    @Override
+    public boolean process(Fix fix) {
+        return Math.abs(fix.getLatitude()) <= 90d
+                && Math.abs(fix.getLongitude()) <= 180d
+                && (!fix.hasSpeed() || (!Float.isNaN(fix.getSpeed()) && !Float.isInfinite(fix.getSpeed())));
+    }
+}
@@ -0,0 +1,224 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link DeadReckoning}, with motion logs replayed by {@link MotionLogReplayer}
+ */
+public class DeadReckoningTest {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final long SENSOR_INTERVAL_NANOS = SECOND_NANOS / 100;
+    private static final long FIX_INTERVAL_NANOS = SECOND_NANOS;
+    private static final long FRAME_INTERVAL_NANOS = SECOND_NANOS / 60;
+    /**
+     * Forward axis of the device in the vehicle: lying tilted in a cup holder
+     */
+    private static final float[] FORWARD = {0.6f, 0f, 0.8f};
+
+    private DeadReckoning mDeadReckoning;
+
+    @Before
+    public void setUp() {
+        mDeadReckoning = new DeadReckoning();
+    }
+
+    @Test
+    public void shouldKeepFixSpeedUntilCalibrated() {
+        mDeadReckoning.onFix(10f, 0);
+        mDeadReckoning.onAcceleration(3f, 0f, 0f, SECOND_NANOS / 10);
+        mDeadReckoning.onAcceleration(3f, 0f, 0f, SECOND_NANOS / 5);
+
+        assertFalse(mDeadReckoning.isCalibrated());
+        assertEquals(10f, mDeadReckoning.getSpeed());
+    }
+
+    @Test
+    public void shouldIntegrateAccelerationAlongForwardAxis() throws IOException {
+        replay(createDriveLog(0f), new ErrorFrameListener());
+        assertTrue(mDeadReckoning.isCalibrated());
+
+        float speed = mDeadReckoning.getSpeed();
+        long time = 1000 * SECOND_NANOS;
+        mDeadReckoning.onFix(speed, time);
+        // 2 m/s^2 forward for half a second, then sideways acceleration which must be ignored
+        mDeadReckoning.onAcceleration(2 * FORWARD[0], 2 * FORWARD[1], 2 * FORWARD[2], time);
+        mDeadReckoning.onAcceleration(2 * FORWARD[0], 2 * FORWARD[1], 2 * FORWARD[2], time + SECOND_NANOS / 2);
+        assertEquals(speed + 1f, mDeadReckoning.getSpeed(), 0.1f);
+        mDeadReckoning.onAcceleration(0f, 3f, 0f, time + SECOND_NANOS / 2);
+        mDeadReckoning.onAcceleration(0f, 3f, 0f, time + SECOND_NANOS);
+        assertEquals(speed + 1f, mDeadReckoning.getSpeed(), 0.2f);
+    }
+
+    @Test
+    public void shouldCorrectEstimateWithFixes() {
+        calibrate();
+        long time = 1000 * SECOND_NANOS;
+        mDeadReckoning.onFix(10f, time);
+        mDeadReckoning.onAcceleration(FORWARD[0], FORWARD[1], FORWARD[2], time);
+        mDeadReckoning.onAcceleration(FORWARD[0], FORWARD[1], FORWARD[2], time + SECOND_NANOS);
+
+        mDeadReckoning.onFix(12f, time + SECOND_NANOS);
+
+        assertEquals(12f, mDeadReckoning.getSpeed());
+    }
+
+    @Test
+    public void shouldStopIntegratingWithoutFixes() {
+        calibrate();
+        long time = 1000 * SECOND_NANOS;
+        mDeadReckoning.onFix(10f, time);
+        for (long t = time; t <= time + 10 * SECOND_NANOS; t += SENSOR_INTERVAL_NANOS) {
+            mDeadReckoning.onAcceleration(FORWARD[0], FORWARD[1], FORWARD[2], t);
+        }
+
+        float horizonSeconds = (float) mDeadReckoning.getMaxHorizonNanos() / SECOND_NANOS;
+        assertEquals(10f + horizonSeconds, mDeadReckoning.getSpeed(), 0.1f);
+    }
+
+    @Test
+    public void shouldLagLessThanFixesUnderHardAcceleration() throws IOException {
+        ErrorFrameListener listener = new ErrorFrameListener();
+        replay(createDriveLog(0.3f), listener);
+
+        float estimateError = listener.mEstimateError / listener.mFrameCount;
+        float fixError = listener.mFixError / listener.mFrameCount;
+        assertTrue("Estimate error " + estimateError + ", fix error " + fixError, estimateError < fixError / 2);
+    }
+
+    @Test
+    public void shouldNotAllocateWhenIntegrating() {
+        Assume.assumeTrue(isAllocationMeasurementSupported());
+        calibrate();
+        int sampleCount = 1_000_000;
+        long startAllocatedBytes = getAllocatedBytes();
+        long time = 1000 * SECOND_NANOS;
+        for (int i = 0; i < sampleCount; i++) {
+            if (i % 100 == 0) {
+                mDeadReckoning.onFix(10f + i % 3, time);
+            }
+            mDeadReckoning.onAcceleration(1f, 0f, 1f, time);
+            mDeadReckoning.getSpeed();
+            time += SENSOR_INTERVAL_NANOS;
+        }
+        long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+
+        // Allow some noise from the measurement and the JIT, far below one object per sample
+        assertTrue("Allocated " + allocatedBytes + " bytes for " + sampleCount + " samples", allocatedBytes < sampleCount);
+    }
+
+    /**
+     * Learn the forward axis with a few accelerations.
+     */
+    private void calibrate() {
+        long time = 0;
+        float speed = 0f;
+        mDeadReckoning.onFix(speed, time);
+        for (int i = 0; i < 5; i++) {
+            mDeadReckoning.onAcceleration(2 * FORWARD[0], 2 * FORWARD[1], 2 * FORWARD[2], time);
+            time += SECOND_NANOS;
+            mDeadReckoning.onAcceleration(2 * FORWARD[0], 2 * FORWARD[1], 2 * FORWARD[2], time);
+            speed += 2f;
+            mDeadReckoning.onFix(speed, time);
+        }
+        assertTrue(mDeadReckoning.isCalibrated());
+    }
+
+    private void replay(String log, MotionLogReplayer.FrameListener listener) throws IOException {
+        MotionLogReplayer replayer = new MotionLogReplayer(mDeadReckoning, FRAME_INTERVAL_NANOS);
+        replayer.replay(new BufferedReader(new StringReader(log)), listener);
+    }
+
+    /**
+     * Write the motion log of a drive with hard accelerations and brakings: sensor samples at
+     * 100 Hz with noise, a fix per second.
+     *
+     * @param noise standard deviation of the sensor noise (in m/s^2)
+     */
+    private static String createDriveLog(float noise) {
+        Random random = new Random(42);
+        StringBuilder log = new StringBuilder("# drive with hard accelerations\n");
+        float speed = 0f;
+        for (long time = 0; time <= 60 * SECOND_NANOS; time += SENSOR_INTERVAL_NANOS) {
+            float acceleration = getAcceleration(time);
+            if (time % FIX_INTERVAL_NANOS == 0) {
+                log.append("f,").append(time).append(',').append(speed).append('\n');
+            }
+            log.append("a,").append(time);
+            for (float axis : FORWARD) {
+                log.append(',').append(acceleration * axis + (float) random.nextGaussian() * noise);
+            }
+            log.append('\n');
+            speed = Math.max(0f, speed + acceleration * SENSOR_INTERVAL_NANOS / SECOND_NANOS);
+        }
+        return log.toString();
+    }
+
+    /**
+     * @return acceleration of the drive (in m/s^2): cycles of 6 s at full throttle, 4 s cruising,
+     * 3 s hard braking and 2 s cruising
+     */
+    private static float getAcceleration(long time) {
+        long second = (time / SECOND_NANOS) % 15;
+        if (second < 6) {
+            return 4f;
+        } else if (second >= 10 && second < 13) {
+            return -7f;
+        }
+        return 0f;
+    }
+
+    /**
+     * @return true speed of the drive at a time, integrated as the log does
+     */
+    private static float getTrueSpeed(long time) {
+        float speed = 0f;
+        for (long t = 0; t < time; t += SENSOR_INTERVAL_NANOS) {
+            speed = Math.max(0f, speed + getAcceleration(t) * SENSOR_INTERVAL_NANOS / SECOND_NANOS);
+        }
+        return speed;
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Sums the errors of the estimate and of the last fix speed against the true speed.
+     */
+    private static class ErrorFrameListener implements MotionLogReplayer.FrameListener {
+
+        private float mEstimateError;
+        private float mFixError;
+        private int mFrameCount;
+
+        @Override
+        public void onFrame(long nanos, float speed, float lastFixSpeed) {
+            float trueSpeed = getTrueSpeed(nanos);
+            mEstimateError += Math.abs(speed - trueSpeed);
+            mFixError += Math.abs(lastFixSpeed - trueSpeed);
+            mFrameCount++;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FixFusion}
+ */
+public class FixFusionTest {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final float GPS_ACCURACY = 5f;
+    private static final float NETWORK_ACCURACY = 40f;
+    /**
+     * Latitude difference of about 100 m
+     */
+    private static final double HUNDRED_METERS = 100d / 111_133d;
+
+    private FixFusion mFusion;
+    private Fix mFix;
+
+    @Before
+    public void setUp() {
+        mFusion = new FixFusion();
+        mFix = new Fix();
+    }
+
+    @Test
+    public void shouldKeepFirstFixOfAnySource() {
+        assertTrue(mFusion.onFix(fix(45d, NETWORK_ACCURACY, 0), false));
+        assertEquals(0f, mFix.getSpeed());
+    }
+
+    @Test
+    public void shouldDropOlderAndDuplicateFixes() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 2 * SECOND_NANOS), true);
+
+        assertFalse(mFusion.onFix(fix(45d, GPS_ACCURACY, 2 * SECOND_NANOS), true));
+        assertFalse(mFusion.onFix(fix(45d, GPS_ACCURACY, SECOND_NANOS), true));
+        assertEquals(2, mFusion.getDroppedCount());
+    }
+
+    @Test
+    public void shouldPreferAccurateFixes() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 0), true);
+
+        // A network fix soon after a GPS fix is dropped
+        assertFalse(mFusion.onFix(fix(45d, NETWORK_ACCURACY, SECOND_NANOS / 2), false));
+        assertTrue(mFusion.onFix(fix(45d, GPS_ACCURACY, SECOND_NANOS), true));
+    }
+
+    @Test
+    public void shouldFillGapsWithLessAccurateFixes() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 0), true);
+
+        // No GPS fix for a few seconds: the last one is no more accurate than a network fix
+        assertTrue(mFusion.onFix(fix(45d, NETWORK_ACCURACY, 2 * SECOND_NANOS), false));
+        // And GPS fixes take over again at once
+        assertTrue(mFusion.onFix(fix(45d, GPS_ACCURACY, 3 * SECOND_NANOS), true));
+    }
+
+    @Test
+    public void shouldKeepLastSpeedForCloseFixesWithoutSpeed() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 0, 20f), true);
+
+        assertTrue(mFusion.onFix(fix(45d + HUNDRED_METERS, NETWORK_ACCURACY, 2 * SECOND_NANOS), false));
+        assertEquals(20f, mFix.getSpeed());
+    }
+
+    @Test
+    public void shouldComputeSpeedOfDistantFixesWithoutSpeed() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 0, 20f), true);
+
+        assertTrue(mFusion.onFix(fix(45d + HUNDRED_METERS, NETWORK_ACCURACY, 10 * SECOND_NANOS), false));
+        assertEquals(10f, mFix.getSpeed(), 0.1f);
+    }
+
+    @Test
+    public void shouldStartNewStreamOnceReset() {
+        mFusion.onFix(fix(45d, GPS_ACCURACY, 10 * SECOND_NANOS), true);
+        mFusion.reset();
+
+        assertTrue(mFusion.onFix(fix(45d, NETWORK_ACCURACY, SECOND_NANOS), false));
+        assertEquals(2, mFusion.getKeptCount());
+    }
+
+    private Fix fix(double latitude, float accuracy, long elapsedRealtimeNanos) {
+        return fix(latitude, accuracy, elapsedRealtimeNanos, 0f);
+    }
+
+    private Fix fix(double latitude, float accuracy, long elapsedRealtimeNanos, float speed) {
+        return mFix.set(latitude, 5d, speed, accuracy, elapsedRealtimeNanos);
+    }
+}
@@ -0,0 +1,35 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link Geodesy}
+ */
+public class GeodesyTest {
+
+    @Test
+    public void shouldComputeNullDistanceBetweenSamePoints() {
+        assertEquals(0f, Geodesy.distanceBetween(45.1885, 5.7245, 45.1885, 5.7245));
+    }
+
+    @Test
+    public void shouldComputeDistanceAlongMeridian() {
+        // One degree of latitude at 45 degrees north is 111 132 m on the WGS84 ellipsoid
+        assertEquals(111132f, Geodesy.distanceBetween(44.5, 5d, 45.5, 5d), 1f);
+    }
+
+    @Test
+    public void shouldComputeVincentyReferenceDistance() {
+        // Flinders Peak to Buninyong, reference example of Vincenty's inverse formula: 54 972.271 m
+        float distance = Geodesy.distanceBetween(-37.95103342, 144.42486789, -37.65282114, 143.92649554);
+        assertEquals(54972.271f, distance, 0.01f);
+    }
+
+    @Test
+    public void shouldBeSymmetric() {
+        assertEquals(Geodesy.distanceBetween(48.8566, 2.3522, 45.1885, 5.7245),
+                Geodesy.distanceBetween(45.1885, 5.7245, 48.8566, 2.3522), 0.01f);
+    }
+}
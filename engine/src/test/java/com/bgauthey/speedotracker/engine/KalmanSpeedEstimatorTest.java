@@ -0,0 +1,158 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link KalmanSpeedEstimator}, compared with {@link RawSpeedEstimator} on a
+ * simulated drive with noisy positions
+ */
+public class KalmanSpeedEstimatorTest {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final int DRIVE_SECONDS = 900;
+    private static final double LATITUDE = 45.1885;
+    private static final double LONGITUDE = 5.7245;
+    private static final double METERS_PER_DEGREE = 6_371_000d * Math.PI / 180d;
+    private static final float ACCURACY = 5f;
+    private static final float DOPPLER_ERROR = 0.3f;
+
+    private KalmanSpeedEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new KalmanSpeedEstimator();
+    }
+
+    @Test
+    public void shouldKeepSpeedOfFirstFix() {
+        assertEquals(12f, mEstimator.estimate(new Fix().set(LATITUDE, LONGITUDE, 12f, ACCURACY, 0)));
+        mEstimator.reset();
+        assertEquals(0f, mEstimator.estimate(new Fix().set(LATITUDE, LONGITUDE, 0f, ACCURACY, 0).setHasSpeed(false)));
+    }
+
+    @Test
+    public void shouldFollowDopplerSpeed() {
+        Drive drive = new Drive(true);
+        float error = drive.run(mEstimator);
+
+        assertTrue("Mean error " + error, error < 0.5f);
+    }
+
+    @Test
+    public void shouldDeriveSpeedFromPositions() {
+        float kalmanError = new Drive(false).run(mEstimator);
+        float rawError = new Drive(false).run(new RawSpeedEstimator());
+
+        assertTrue("Kalman error " + kalmanError + ", raw error " + rawError, kalmanError < rawError / 2);
+        assertTrue("Kalman error " + kalmanError, kalmanError < 2f);
+    }
+
+    @Test
+    public void shouldNotReadMissingSpeedAsStop() {
+        Fix fix = new Fix();
+        double y = 0;
+        for (int second = 0; second < 60; second++) {
+            boolean hasSpeed = second < 50;
+            fix.set(LATITUDE + y / METERS_PER_DEGREE, LONGITUDE, hasSpeed ? 20f : 0f, ACCURACY, second * SECOND_NANOS)
+                    .setHasSpeed(hasSpeed);
+            float speed = mEstimator.estimate(fix);
+            if (second > 10) {
+                assertEquals("Speed at " + second + " s", 20f, speed, 2f);
+            }
+            y += 20;
+        }
+    }
+
+    @Test
+    public void shouldEstimateNoSpeedWhenStopped() {
+        Fix fix = new Fix();
+        Random random = new Random(7);
+        for (int second = 0; second < 60; second++) {
+            fix.set(LATITUDE + random.nextGaussian() * ACCURACY / METERS_PER_DEGREE, LONGITUDE, 0f, ACCURACY,
+                    second * SECOND_NANOS);
+            mEstimator.estimate(fix);
+        }
+
+        assertEquals(0f, mEstimator.getSpeed(), 0.5f);
+    }
+
+    @Test
+    public void shouldNotAllocateWhenEstimating() {
+        Assume.assumeTrue(isAllocationMeasurementSupported());
+        Fix fix = new Fix();
+        int fixCount = 1_000_000;
+        mEstimator.estimate(fix.set(LATITUDE, LONGITUDE, 10f, ACCURACY, 0));
+        long startAllocatedBytes = getAllocatedBytes();
+        for (int i = 1; i < fixCount; i++) {
+            fix.set(LATITUDE + i * 1e-4, LONGITUDE, 10f, ACCURACY, i * SECOND_NANOS).setHasSpeed(i % 3 != 0);
+            mEstimator.estimate(fix);
+        }
+        long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+
+        // Allow some noise from the measurement and the JIT, far below one object per fix
+        assertTrue("Allocated " + allocatedBytes + " bytes for " + fixCount + " fixes", allocatedBytes < fixCount);
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A drive of one fix per second along a slowly turning road, accelerating between 0 and
+     * 30 m/s, with positions off by {@link #ACCURACY} meters.
+     */
+    private static class Drive {
+
+        private final boolean mHasSpeed;
+        private final Random mRandom = new Random(42);
+
+        Drive(boolean hasSpeed) {
+            mHasSpeed = hasSpeed;
+        }
+
+        /**
+         * @return mean error of the estimated speed (in m/s)
+         */
+        float run(FixSpeedEstimator estimator) {
+            Fix fix = new Fix();
+            double x = 0;
+            double y = 0;
+            double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE));
+            float error = 0f;
+            for (int second = 0; second < DRIVE_SECONDS; second++) {
+                double speed = 15 - 15 * Math.cos(second * 2 * Math.PI / 120);
+                double heading = second * 0.005;
+                x += speed * Math.sin(heading);
+                y += speed * Math.cos(heading);
+                double latitude = LATITUDE + (y + mRandom.nextGaussian() * ACCURACY) / METERS_PER_DEGREE;
+                double longitude = LONGITUDE + (x + mRandom.nextGaussian() * ACCURACY) / metersPerDegreeLongitude;
+                float doppler = Math.max(0f, (float) (speed + mRandom.nextGaussian() * DOPPLER_ERROR));
+                fix.set(latitude, longitude, mHasSpeed ? doppler : 0f, ACCURACY, second * SECOND_NANOS)
+                        .setHasSpeed(mHasSpeed);
+                float estimate = estimator.estimate(fix);
+                // Skip the first fixes, while the filter learns the heading
+                if (second >= 10) {
+                    error += Math.abs(estimate - speed);
+                }
+            }
+            return error / (DRIVE_SECONDS - 10);
+        }
+    }
+}
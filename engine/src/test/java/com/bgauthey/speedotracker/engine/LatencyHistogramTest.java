@@ -0,0 +1,123 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    private static final long MILLIS_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private LatencyHistogram mHistogram;
+
+    @Before
+    public void setUp() {
+        mHistogram = new LatencyHistogram("fix->process");
+    }
+
+    @Test
+    public void shouldHaveContiguousBuckets() {
+        int last = LatencyHistogram.getBucket(LatencyHistogram.MAX_LATENCY_NANOS);
+        assertEquals(0, LatencyHistogram.getBucketLowerNanos(0));
+        for (int bucket = 1; bucket <= last; bucket++) {
+            long lower = LatencyHistogram.getBucketLowerNanos(bucket);
+            assertEquals(lower - 1, LatencyHistogram.getBucketUpperNanos(bucket - 1));
+            assertEquals(bucket, LatencyHistogram.getBucket(lower));
+            assertEquals(bucket - 1, LatencyHistogram.getBucket(lower - 1));
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketWidth() {
+        // 1 to 1000 ms
+        for (int i = 1; i <= 1000; i++) {
+            mHistogram.record(i * MILLIS_NANOS);
+        }
+
+        assertEquals(1000, mHistogram.getCount());
+        assertEquals(1000 * MILLIS_NANOS, mHistogram.getMaxNanos());
+        assertWithinBucket(500 * MILLIS_NANOS, mHistogram.getPercentileNanos(50));
+        assertWithinBucket(990 * MILLIS_NANOS, mHistogram.getPercentileNanos(99));
+        assertEquals(1000 * MILLIS_NANOS, mHistogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void shouldCountOutOfRangeLatencies() {
+        mHistogram.record(-5 * MILLIS_NANOS);
+        mHistogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, mHistogram.getCount());
+        // Negative latencies are in the first bucket, under a microsecond
+        assertTrue(mHistogram.getPercentileNanos(50) < 1000);
+        assertEquals(Long.MAX_VALUE, mHistogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void shouldForgetLatenciesOnReset() {
+        mHistogram.record(3 * MILLIS_NANOS);
+        mHistogram.reset();
+
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getMaxNanos());
+        assertEquals(0, mHistogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void shouldDumpNonEmptyBuckets() {
+        mHistogram.record(3 * MILLIS_NANOS);
+        mHistogram.record(3 * MILLIS_NANOS);
+        mHistogram.record(200 * MILLIS_NANOS);
+        StringWriter writer = new StringWriter();
+        mHistogram.dump(new PrintWriter(writer));
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("fix->process: count=3 p50=3."));
+        assertTrue(lines[1], lines[1].endsWith(": 2"));
+        assertTrue(lines[2], lines[2].endsWith(": 1"));
+    }
+
+    @Test
+    public void shouldNotAllocateWhenRecording() {
+        Assume.assumeTrue(isAllocationMeasurementSupported());
+        int recordCount = 1_000_000;
+        mHistogram.record(0);
+        long startAllocatedBytes = getAllocatedBytes();
+        for (int i = 0; i < recordCount; i++) {
+            mHistogram.record(i * 1000L);
+        }
+        long allocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+
+        // Allow some noise from the measurement and the JIT, far below one object per latency
+        assertTrue("Allocated " + allocatedBytes + " bytes for " + recordCount + " latencies", allocatedBytes < recordCount);
+    }
+
+    private static void assertWithinBucket(long expectedNanos, long actualNanos) {
+        assertTrue("Expected about " + expectedNanos + ", got " + actualNanos,
+                actualNanos >= expectedNanos && actualNanos <= expectedNanos + expectedNanos / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+
+    private static boolean isAllocationMeasurementSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
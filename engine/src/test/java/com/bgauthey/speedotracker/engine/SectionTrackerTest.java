@@ -0,0 +1,216 @@
+package com.bgauthey.speedotracker.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SectionTracker}
+ */
+public class SectionTrackerTest {
+
+    private static final float MIN_SPEED_RUNNING = 5f / 3.6f;
+    private static final float EXIT_SPEED = 3f / 3.6f;
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    private static final long ENTER_DWELL_NANOS = 2 * SECOND_NANOS;
+    private static final long EXIT_DWELL_NANOS = 3 * SECOND_NANOS;
+
+    private SectionTracker mTracker;
+    private Fix mFix;
+
+    @Before
+    public void setUp() {
+        mTracker = new SectionTracker(MIN_SPEED_RUNNING);
+        mFix = new Fix();
+    }
+
+    @Test
+    public void shouldStartSectionAtRunningSpeed() {
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, 0f, 0)));
+        assertFalse(mTracker.isSectionActive());
+
+        assertEquals(SectionTracker.SECTION_STARTED, mTracker.onFix(fix(45d, MIN_SPEED_RUNNING, 1)));
+        assertTrue(mTracker.isSectionActive());
+
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, 20f, 2)));
+        assertTrue(mTracker.isSectionActive());
+    }
+
+    @Test
+    public void shouldEndSectionBelowRunningSpeed() {
+        mTracker.onFix(fix(45d, 10f, 0));
+
+        assertEquals(SectionTracker.SECTION_ENDED, mTracker.onFix(fix(45d, MIN_SPEED_RUNNING - 0.01f, 1)));
+        assertFalse(mTracker.isSectionActive());
+
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, 0f, 2)));
+    }
+
+    @Test
+    public void shouldComputeSectionValues() {
+        // 0.01 degree of latitude is about 1112 m
+        mTracker.onFix(fix(45d, 10f, 0));
+        mTracker.onFix(fix(45.005, 12f, 50));
+        mTracker.onFix(fix(45.01, 0f, 100));
+
+        assertEquals(1111.5f, mTracker.getDistance(), 1f);
+        assertEquals(100, mTracker.getTimeElapsed());
+        assertEquals(mTracker.getDistance() / 100, mTracker.getAverageSpeed(), 1e-6f);
+    }
+
+    @Test
+    public void shouldKeepValuesOfLastSection() {
+        mTracker.onFix(fix(45d, 10f, 0));
+        mTracker.onFix(fix(45.01, 0f, 100));
+        float averageSpeed = mTracker.getAverageSpeed();
+
+        mTracker.onFix(fix(45.01, 10f, 200));
+
+        assertEquals(averageSpeed, mTracker.getAverageSpeed());
+    }
+
+    @Test
+    public void shouldEndSectionAtLastFix() {
+        mTracker.onFix(fix(45d, 10f, 0));
+        mTracker.onFix(fix(45.01, 10f, 100));
+
+        mTracker.endSection();
+
+        assertFalse(mTracker.isSectionActive());
+        assertEquals(100, mTracker.getTimeElapsed());
+        assertEquals(1111.5f, mTracker.getDistance(), 1f);
+    }
+
+    @Test
+    public void shouldNotKeepReferenceToFixes() {
+        mTracker.onFix(fix(45d, 10f, 0));
+        // The same instance is filled again by the caller
+        mFix.reset();
+
+        mTracker.onFix(fix(45.01, 0f, 100));
+
+        assertEquals(100, mTracker.getTimeElapsed());
+        assertEquals(1111.5f, mTracker.getDistance(), 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullRunningSpeed() {
+        new SectionTracker(0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectExitSpeedAboveEnterSpeed() {
+        new SectionTracker(MIN_SPEED_RUNNING, MIN_SPEED_RUNNING + 1, 0, 0);
+    }
+
+    @Test
+    public void shouldNotComputeInfiniteAverageOfInstantSection() {
+        mTracker.onFix(fix(45d, 10f, 0));
+        mTracker.onFix(fix(45.01, 0f, 0));
+
+        assertEquals(0, mTracker.getTimeElapsed());
+        assertEquals(0f, mTracker.getAverageSpeed());
+    }
+
+    @Test
+    public void shouldStartSectionAfterEnterDwell() {
+        mTracker = createHysteresisTracker();
+
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, 10f, 0)));
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, 10f, 1)));
+        assertFalse(mTracker.isSectionActive());
+        assertEquals(SectionTracker.SECTION_STARTED, mTracker.onFix(fix(45d, 10f, 2)));
+        assertTrue(mTracker.isSectionActive());
+    }
+
+    @Test
+    public void shouldNotStartSectionOnSpeedSpike() {
+        mTracker = createHysteresisTracker();
+
+        mTracker.onFix(fix(45d, 10f, 0));
+        mTracker.onFix(fix(45d, 0f, 1));
+        mTracker.onFix(fix(45d, 10f, 2));
+
+        assertFalse(mTracker.isSectionActive());
+    }
+
+    @Test
+    public void shouldKeepSectionBetweenExitAndEnterSpeeds() {
+        mTracker = createHysteresisTracker();
+        startSection(0);
+
+        for (int second = 3; second < 100; second++) {
+            assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45d, (EXIT_SPEED + MIN_SPEED_RUNNING) / 2, second)));
+        }
+        assertTrue(mTracker.isSectionActive());
+    }
+
+    @Test
+    public void shouldEndSectionAtFirstStoppedFixAfterExitDwell() {
+        mTracker = createHysteresisTracker();
+        startSection(0);
+        mTracker.onFix(fix(45.005, 10f, 50));
+
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45.01, 0f, 100)));
+        assertEquals(SectionTracker.NO_CHANGE, mTracker.onFix(fix(45.01, 0f, 102)));
+        assertTrue(mTracker.isSectionActive());
+        assertEquals(SectionTracker.SECTION_ENDED, mTracker.onFix(fix(45.01, 0f, 103)));
+
+        // The section started with the first running fix and ended with the first stopped one
+        assertEquals(100, mTracker.getTimeElapsed());
+        assertEquals(1111.5f, mTracker.getDistance(), 1f);
+    }
+
+    @Test
+    public void shouldEndPendingSectionAtFirstStoppedFix() {
+        mTracker = createHysteresisTracker();
+        startSection(0);
+        mTracker.onFix(fix(45.01, 0f, 100));
+        mTracker.onFix(fix(45.01, 0f, 101));
+
+        mTracker.endSection();
+
+        assertFalse(mTracker.isSectionActive());
+        assertEquals(100, mTracker.getTimeElapsed());
+    }
+
+    @Test
+    public void shouldFlapLessInStopAndGoTraffic() {
+        SectionTracker hysteresisTracker = createHysteresisTracker();
+        int singleThresholdTransitions = 0;
+        int hysteresisTransitions = 0;
+        // Crawling around the running speed, with noise of +/- 3 km/h
+        Random random = new Random(42);
+        for (int second = 0; second < 3600; second++) {
+            float speed = Math.max(0, MIN_SPEED_RUNNING + (random.nextFloat() * 2 - 1) * 3f / 3.6f);
+            if (mTracker.onFix(fix(45d, speed, second)) != SectionTracker.NO_CHANGE) {
+                singleThresholdTransitions++;
+            }
+            if (hysteresisTracker.onFix(fix(45d, speed, second)) != SectionTracker.NO_CHANGE) {
+                hysteresisTransitions++;
+            }
+        }
+
+        assertTrue(singleThresholdTransitions + " vs " + hysteresisTransitions,
+                hysteresisTransitions * 10 < singleThresholdTransitions);
+    }
+
+    private static SectionTracker createHysteresisTracker() {
+        return new SectionTracker(MIN_SPEED_RUNNING, EXIT_SPEED, ENTER_DWELL_NANOS, EXIT_DWELL_NANOS);
+    }
+
+    private void startSection(int second) {
+        mTracker.onFix(fix(45d, 10f, second));
+        mTracker.onFix(fix(45d, 10f, second + 2));
+        assertTrue(mTracker.isSectionActive());
+    }
+
+    private Fix fix(double latitude, float speed, int second) {
+        return mFix.set(latitude, 5d, speed, 5f, second * SECOND_NANOS);
+    }
+}
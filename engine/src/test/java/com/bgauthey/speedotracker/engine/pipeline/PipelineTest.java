@@ -0,0 +1,139 @@
+package com.bgauthey.speedotracker.engine.pipeline;
+
+import com.bgauthey.speedotracker.engine.Fix;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link Pipeline}
+ */
+public class PipelineTest {
+
+    private List<String> mCalls;
+    private Fix mFix;
+
+    @Before
+    public void setUp() {
+        mCalls = new ArrayList<>();
+        mFix = new Fix().set(45d, 5d, 10f, 5f, 0L);
+    }
+
+    @Test
+    public void shouldRunStagesInOrder() {
+        Pipeline pipeline = new Pipeline.Builder()
+                .add("first", new RecordingStage("first", true))
+                .add("second", new RecordingStage("second", true))
+                .add("third", new RecordingStage("third", true))
+                .build();
+
+        assertTrue(pipeline.process(mFix));
+
+        assertEquals(3, mCalls.size());
+        assertEquals("first", mCalls.get(0));
+        assertEquals("second", mCalls.get(1));
+        assertEquals("third", mCalls.get(2));
+    }
+
+    @Test
+    public void shouldStopAtDroppingStage() {
+        Pipeline pipeline = new Pipeline.Builder()
+                .add("first", new RecordingStage("first", true))
+                .add("filter", new RecordingStage("filter", false))
+                .add("last", new RecordingStage("last", true))
+                .build();
+
+        assertFalse(pipeline.process(mFix));
+
+        assertEquals(2, mCalls.size());
+        assertEquals(1, pipeline.getDropCount(1));
+        assertEquals(0, pipeline.getInvocationCount(2));
+    }
+
+    @Test
+    public void shouldCountInvocationsAndTime() {
+        Pipeline pipeline = new Pipeline.Builder()
+                .add("first", new RecordingStage("first", true))
+                .add("last", new RecordingStage("last", true))
+                .build();
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.process(mFix);
+        }
+
+        assertEquals(2, pipeline.getStageCount());
+        assertEquals("last", pipeline.getStageName(1));
+        assertEquals(10, pipeline.getInvocationCount(0));
+        assertEquals(10, pipeline.getInvocationCount(1));
+        assertEquals(0, pipeline.getDropCount(0));
+        assertTrue(pipeline.getCumulativeNanos(0) > 0);
+    }
+
+    @Test
+    public void shouldTimeOneFixOutOfInterval() {
+        Pipeline pipeline = new Pipeline.Builder()
+                .add("first", new RecordingStage("first", true))
+                .setTimingInterval(4)
+                .build();
+
+        for (int i = 0; i < 8; i++) {
+            pipeline.process(mFix);
+        }
+
+        assertEquals(8, pipeline.getInvocationCount(0));
+        // Time of the 2 timed fixes extrapolated to the 8 fixes
+        assertEquals(4 * (long) (pipeline.getAverageNanos(0) * 2), pipeline.getCumulativeNanos(0), 4);
+    }
+
+    @Test
+    public void shouldResetCounters() {
+        Pipeline pipeline = new Pipeline.Builder()
+                .add("filter", new RecordingStage("filter", false))
+                .build();
+        pipeline.process(mFix);
+
+        pipeline.resetCounters();
+
+        assertEquals(0, pipeline.getInvocationCount(0));
+        assertEquals(0, pipeline.getDropCount(0));
+        assertEquals(0, pipeline.getCumulativeNanos(0));
+    }
+
+    @Test
+    public void shouldDropInvalidFixes() {
+        ValidFixFilter filter = new ValidFixFilter();
+
+        assertTrue(filter.process(mFix));
+        assertFalse(filter.process(mFix.set(45d, 5d, Float.NaN, 5f, 0L)));
+        assertFalse(filter.process(mFix.set(45d, 5d, Float.POSITIVE_INFINITY, 5f, 0L)));
+        assertFalse(filter.process(mFix.set(Double.NaN, 5d, 10f, 5f, 0L)));
+        assertFalse(filter.process(mFix.set(45d, 181d, 10f, 5f, 0L)));
+    }
+
+    /**
+     * Stage recording its calls and always passing or dropping fixes.
+     */
+    private class RecordingStage implements Stage {
+
+        private final String mName;
+        private final boolean mPass;
+
+        RecordingStage(String name, boolean pass) {
+            mName = name;
+            mPass = pass;
+        }
+
+        @Override
+        public boolean process(Fix fix) {
+            mCalls.add(mName);
+            return mPass;
+        }
+    }
+}